@@ -90,5 +90,22 @@ db.transactions.insertMany([
     }
 ]);
 
+// Indexes for the application database (kept in sync with MongoIndexManager, which also
+// creates them at startup)
+var app = db.getSiblingDB('nexuspay');
+app.sales.createIndex({ "sale_date": 1 }, { name: "sale_date" });
+app.sales.createIndex({ "customer_id": 1, "sale_date": 1 }, { name: "customer_id_sale_date" });
+app.sales.createIndex({ "region": 1, "sale_date": 1 }, { name: "region_sale_date" });
+app.sales.createIndex({ "product_id": 1, "sale_date": 1 }, { name: "product_id_sale_date" });
+app.purchases.createIndex({ "purchase_date": 1 }, { name: "purchase_date" });
+app.purchases.createIndex({ "user_id": 1, "status": 1 }, { name: "user_id_status" });
+app.transactions.createIndex({ "transactionId": 1 }, { name: "transactionId" });
+app.transactions.createIndex({ "status": 1, "scheduledRetryDate": 1 }, { name: "status_scheduledRetryDate" });
+app.customer_profiles.createIndex({ "last_purchase": 1 }, { name: "last_purchase" });
+app.customer_profiles.createIndex({ "category_count": 1 }, { name: "category_count" });
+app.generated_bills.createIndex({ "run_id": 1, "customer_id": 1 }, { name: "run_id_customer_id" });
+app.generated_bills.createIndex({ "bill_number": 1 }, { name: "bill_number", unique: true });
+app.generated_bills.createIndex({ "customer_id": 1, "period_start": 1 }, { name: "customer_id_period_start" });
+
 print("MongoDB initialization completed successfully!");
 print("Created transactions collection with " + db.transactions.count() + " sample records");
@@ -4,65 +4,90 @@
 
 -- Ensure the script is idempotent by using 'CREATE TABLE IF NOT EXISTS'
 
+-- Tables match the JPA entities (model/User, CardDetail, SubscriptionPlan, UserSubscription, Bill),
+-- so Hibernate's ddl-auto=update finds them complete and the JDBC subscription billing scheduler
+-- (subscription_plan_id join, ON CONFLICT (bill_number)) runs against a fresh install
+
 -- Table for Users
 CREATE TABLE IF NOT EXISTS users (
-    id SERIAL PRIMARY KEY,
+    id BIGSERIAL PRIMARY KEY,
     email VARCHAR(255) UNIQUE NOT NULL,
-    name VARCHAR(255),
-    created_at TIMESTAMPTZ DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMPTZ DEFAULT CURRENT_TIMESTAMP
+    name VARCHAR(255) NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
 -- Table for Card Details
 CREATE TABLE IF NOT EXISTS card_details (
-    id SERIAL PRIMARY KEY,
-    user_id INTEGER NOT NULL REFERENCES users(id),
-    cardholder_name VARCHAR(255),
-    last_4_digits VARCHAR(4) NOT NULL,
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    card_number_last4 VARCHAR(4) NOT NULL,
+    card_holder_name VARCHAR(255) NOT NULL,
     card_type VARCHAR(50),
     expiry_month INTEGER NOT NULL,
     expiry_year INTEGER NOT NULL,
-    created_at TIMESTAMPTZ DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMPTZ DEFAULT CURRENT_TIMESTAMP
+    is_default BOOLEAN DEFAULT FALSE,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
 -- Table for Subscription Plans
 CREATE TABLE IF NOT EXISTS subscription_plans (
-    id SERIAL PRIMARY KEY,
+    id BIGSERIAL PRIMARY KEY,
     name VARCHAR(255) UNIQUE NOT NULL,
-    monthly_price NUMERIC(10, 2) NOT NULL,
-    yearly_price NUMERIC(10, 2) NOT NULL,
-    features TEXT,
-    active BOOLEAN DEFAULT TRUE,
-    created_at TIMESTAMPTZ DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMPTZ DEFAULT CURRENT_TIMESTAMP
+    description TEXT,
+    monthly_price NUMERIC(10, 2),
+    yearly_price NUMERIC(10, 2),
+    features TEXT NOT NULL,
+    active BOOLEAN NOT NULL DEFAULT TRUE,
+    is_default BOOLEAN DEFAULT FALSE,
+    plan_type VARCHAR(255), -- e.g., 'BASIC', 'PREMIUM', 'ENTERPRISE', 'CUSTOM'
+    discount_percentage INTEGER DEFAULT 0,
+    offer_valid_until TIMESTAMP,
+    max_users INTEGER,
+    max_bills_per_month INTEGER,
+    priority_support BOOLEAN DEFAULT FALSE,
+    custom_branding BOOLEAN DEFAULT FALSE,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
 -- Table for User Subscriptions
 CREATE TABLE IF NOT EXISTS user_subscriptions (
-    id SERIAL PRIMARY KEY,
-    user_id INTEGER NOT NULL REFERENCES users(id),
-    plan_id INTEGER NOT NULL REFERENCES subscription_plans(id),
-    status VARCHAR(50) NOT NULL, -- e.g., 'ACTIVE', 'CANCELLED', 'EXPIRED'
-    billing_cycle VARCHAR(50) NOT NULL, -- e.g., 'MONTHLY', 'YEARLY'
-    start_date TIMESTAMPTZ NOT NULL,
-    end_date TIMESTAMPTZ,
-    next_billing_date TIMESTAMPTZ,
-    created_at TIMESTAMPTZ DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMPTZ DEFAULT CURRENT_TIMESTAMP
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL REFERENCES users(id),
+    subscription_plan_id BIGINT NOT NULL REFERENCES subscription_plans(id),
+    billing_cycle VARCHAR(255) NOT NULL, -- e.g., 'MONTHLY', 'YEARLY'
+    status VARCHAR(255) NOT NULL, -- 'ACTIVE', 'CANCELLED', 'EXPIRED', 'PENDING'
+    start_date TIMESTAMP NOT NULL,
+    end_date TIMESTAMP,
+    next_billing_date TIMESTAMP,
+    amount NUMERIC(10, 2),
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
 -- Table for Bills
 CREATE TABLE IF NOT EXISTS bills (
-    id SERIAL PRIMARY KEY,
-    user_subscription_id INTEGER NOT NULL REFERENCES user_subscriptions(id),
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL REFERENCES users(id),
+    subscription_id BIGINT NOT NULL REFERENCES user_subscriptions(id),
+    bill_number VARCHAR(255) UNIQUE NOT NULL,
     amount NUMERIC(10, 2) NOT NULL,
-    due_date DATE NOT NULL,
-    status VARCHAR(50) NOT NULL, -- e.g., 'PENDING', 'PAID', 'FAILED'
-    created_at TIMESTAMPTZ DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMPTZ DEFAULT CURRENT_TIMESTAMP
+    status VARCHAR(255) NOT NULL, -- 'PENDING', 'PAID', 'FAILED', 'CANCELLED'
+    billing_period_start TIMESTAMP,
+    billing_period_end TIMESTAMP,
+    due_date TIMESTAMP,
+    paid_date TIMESTAMP,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
+-- Index the subscription billing scan: active subscriptions in (next_billing_date, id) order
+CREATE INDEX IF NOT EXISTS idx_user_subscriptions_next_billing
+    ON user_subscriptions(next_billing_date, id)
+    WHERE status = 'ACTIVE';
+
 -- Insert initial data for subscription plans
 -- We use ON CONFLICT DO NOTHING to prevent errors on subsequent runs
 INSERT INTO subscription_plans (name, monthly_price, yearly_price, features, active) VALUES
@@ -0,0 +1,269 @@
+package com.apiserver.apinexus.analytics;
+
+import java.util.*;
+
+/**
+ * Customer-level co-purchase counts: for every pair of products, how many customers bought
+ * both. Products are mapped to dense int indexes and a pair is packed into one long key
+ * (lower index in the high half), counted in an open-addressing table of primitives, so no
+ * object is allocated per pair.
+ * <p>
+ * The pair table never holds more than maxPairs entries. When it is full, pairs whose count
+ * (plus error) is at or below a rising floor are dropped, lossy-counting style; a pair seen
+ * again afterwards starts over with the floor as its error. Reported counts are therefore
+ * lower bounds, at most {@code maxError} below the true count, and exact while the table
+ * has never been pruned. Not thread-safe; queries do not modify state.
+ */
+public final class CoPurchaseCounts {
+
+    /**
+     * A product pair with its association measures over all customers.
+     * support = customers / all customers, confidence = customers / customers of the less
+     * popular product (the stronger of the two rule directions), lift = support / (support A x support B).
+     */
+    public record ProductPair(long productA, long productB, long customers, long maxError,
+                              double support, double confidence, double lift) {}
+
+    private static final int MIN_TABLE_SIZE = 1 << 12;
+
+    private final int maxPairs;
+    private final int maxTableSize;
+
+    // Product dictionary and per-product customer counts, by dense index
+    private final Map<Long, Integer> productIndex = new HashMap<>();
+    private long[] productIds = new long[64];
+    private int[] productCustomers = new int[64];
+
+    private final Map<Long, Basket> baskets = new HashMap<>();
+
+    // Pair table: key 0 marks an empty slot (index pairs are strictly ordered, so 0|0 never occurs)
+    private long[] keys;
+    private int[] counts;
+    private int[] errors;
+    private int size;
+    private int floor;
+
+    public CoPurchaseCounts(int maxPairs) {
+        if (maxPairs < 16) {
+            throw new IllegalArgumentException("maxPairs must be at least 16");
+        }
+        this.maxPairs = maxPairs;
+        // Large enough that maxPairs entries stay under a 0.75 load factor
+        this.maxTableSize = Integer.highestOneBit((int) Math.min(1 << 30, (long) maxPairs * 4 / 3)) << 1;
+        allocate(Math.min(MIN_TABLE_SIZE, maxTableSize));
+    }
+
+    /**
+     * Record that a customer bought a product. Repeat purchases of a product by the same
+     * customer change nothing; a new product adds one to its pair with each product already
+     * in the customer's basket.
+     */
+    public void add(long customerId, long productId) {
+        int product = indexOf(productId);
+        Basket basket = baskets.computeIfAbsent(customerId, k -> new Basket());
+        if (!basket.add(product)) {
+            return;
+        }
+        productCustomers[product]++;
+        for (int i = 0; i < basket.size; i++) {
+            int other = basket.items[i];
+            if (other != product) {
+                increment(other < product ? pack(other, product) : pack(product, other));
+            }
+        }
+    }
+
+    public void clear() {
+        productIndex.clear();
+        productIds = new long[64];
+        productCustomers = new int[64];
+        baskets.clear();
+        allocate(Math.min(MIN_TABLE_SIZE, maxTableSize));
+        floor = 0;
+    }
+
+    public int customerCount() {
+        return baskets.size();
+    }
+
+    public int productCount() {
+        return productIndex.size();
+    }
+
+    public int pairCount() {
+        return size;
+    }
+
+    /**
+     * Largest count a pair may have lost to pruning (0 while counts are exact)
+     */
+    public int getMaxError() {
+        return floor;
+    }
+
+    /**
+     * Approximate heap held by the pair table and baskets
+     */
+    public long memoryBytes() {
+        long bytes = (long) keys.length * (8 + 4 + 4) + (long) productIds.length * (8 + 4);
+        for (Basket basket : baskets.values()) {
+            bytes += 16 + 4L * basket.items.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Strongest pairs passing all thresholds, by customer count then lift
+     */
+    public List<ProductPair> topPairs(long minCustomers, double minConfidence, double minLift, int limit) {
+        double allCustomers = baskets.size();
+        List<ProductPair> candidates = new ArrayList<>();
+        for (int slot = 0; slot < keys.length; slot++) {
+            long key = keys[slot];
+            if (key == 0 || counts[slot] < minCustomers) {
+                continue;
+            }
+            int a = (int) (key >>> 32);
+            int b = (int) key;
+            double customersA = productCustomers[a];
+            double customersB = productCustomers[b];
+            double together = counts[slot];
+            double confidence = together / Math.min(customersA, customersB);
+            double lift = together * allCustomers / (customersA * customersB);
+            if (confidence < minConfidence || lift < minLift) {
+                continue;
+            }
+            long productA = productIds[a];
+            long productB = productIds[b];
+            candidates.add(new ProductPair(Math.min(productA, productB), Math.max(productA, productB),
+                counts[slot], errors[slot], together / allCustomers, confidence, lift));
+        }
+        return TopK.largest(candidates, limit, Comparator.comparingLong(ProductPair::customers)
+            .thenComparingDouble(ProductPair::lift)
+            .thenComparing(Comparator.comparingLong(ProductPair::productA).reversed()));
+    }
+
+    private int indexOf(long productId) {
+        Integer index = productIndex.get(productId);
+        if (index != null) {
+            return index;
+        }
+        int next = productIndex.size();
+        if (next == productIds.length) {
+            productIds = Arrays.copyOf(productIds, next * 2);
+            productCustomers = Arrays.copyOf(productCustomers, next * 2);
+        }
+        productIds[next] = productId;
+        productIndex.put(productId, next);
+        return next;
+    }
+
+    private static long pack(int lower, int higher) {
+        return ((long) lower << 32) | (higher & 0xFFFFFFFFL);
+    }
+
+    private void increment(long key) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                counts[slot]++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size >= maxPairs) {
+            prune();
+            increment(key);
+            return;
+        }
+        keys[slot] = key;
+        counts[slot] = 1;
+        errors[slot] = floor;
+        size++;
+        if (size > keys.length * 3 / 4 && keys.length < maxTableSize) {
+            rehash(keys.length * 2, -1);
+        }
+    }
+
+    /**
+     * Raise the floor just far enough that at most three quarters of the budget stays in use.
+     * Every pair in the table has count + error above the previous floor, so the floor only grows.
+     */
+    private void prune() {
+        int[] values = new int[size];
+        int n = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0) {
+                values[n++] = counts[slot] + errors[slot];
+            }
+        }
+        Arrays.sort(values);
+        floor = values[size - maxPairs * 3 / 4 - 1];
+        rehash(keys.length, floor);
+    }
+
+    /**
+     * Rebuild into a table of the given size, dropping pairs whose count + error is at or below dropAtOrBelow
+     */
+    private void rehash(int tableSize, int dropAtOrBelow) {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        int[] oldErrors = errors;
+        allocate(tableSize);
+        int mask = tableSize - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == 0 || oldCounts[i] + oldErrors[i] <= dropAtOrBelow) {
+                continue;
+            }
+            int slot = slot(oldKeys[i], mask);
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            counts[slot] = oldCounts[i];
+            errors[slot] = oldErrors[i];
+            size++;
+        }
+    }
+
+    private void allocate(int tableSize) {
+        keys = new long[tableSize];
+        counts = new int[tableSize];
+        errors = new int[tableSize];
+        size = 0;
+    }
+
+    private static int slot(long key, int mask) {
+        // MurmurHash3 finalizer: packed indexes are small and sequential
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9a34f6a8b5bL;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    /**
+     * Distinct product indexes one customer has bought, kept sorted
+     */
+    private static final class Basket {
+        private int[] items = new int[4];
+        private int size;
+
+        boolean add(int product) {
+            int position = Arrays.binarySearch(items, 0, size, product);
+            if (position >= 0) {
+                return false;
+            }
+            position = -position - 1;
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            System.arraycopy(items, position, items, position + 1, size - position);
+            items[position] = product;
+            size++;
+            return true;
+        }
+    }
+}
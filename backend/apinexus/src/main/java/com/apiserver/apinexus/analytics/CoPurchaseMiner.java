@@ -0,0 +1,101 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.model.Sale;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Product pairs bought by the same customers, kept current as sales are recorded so bundle
+ * suggestions need no scan. Pairs are filtered by the configured minimum customers, confidence
+ * and lift; the pair table is capped at sales.bundles.max-pairs (16 bytes per slot).
+ */
+@Component
+public class CoPurchaseMiner implements SalesSink {
+
+    private final boolean enabled;
+    private final int maxPairs;
+    private final long minCustomers;
+    private final double minConfidence;
+    private final double minLift;
+    private final CoPurchaseCounts counts;
+
+    private volatile boolean loaded;
+
+    public CoPurchaseMiner(
+            @Value("${sales.bundles.miner-enabled:false}") boolean enabled,
+            @Value("${sales.bundles.max-pairs:1000000}") int maxPairs,
+            @Value("${sales.bundles.min-customers:3}") long minCustomers,
+            @Value("${sales.bundles.min-confidence:0.0}") double minConfidence,
+            @Value("${sales.bundles.min-lift:0.0}") double minLift) {
+        this.enabled = enabled;
+        this.maxPairs = maxPairs;
+        this.minCustomers = minCustomers;
+        this.minConfidence = minConfidence;
+        this.minLift = minLift;
+        // Only the live instance needs a table; request-scoped counts come from newCounts()
+        this.counts = enabled ? new CoPurchaseCounts(maxPairs) : null;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isLoaded() {
+        return enabled && loaded;
+    }
+
+    @EventListener
+    public void onSalesCleared(SalesClearedEvent event) {
+        if (enabled) {
+            reset();
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        counts.clear();
+    }
+
+    @Override
+    public synchronized void append(Collection<Sale> sales) {
+        for (Sale sale : sales) {
+            if (sale.getCustomerId() != null && sale.getProductId() != null) {
+                counts.add(sale.getCustomerId(), sale.getProductId());
+            }
+        }
+    }
+
+    @Override
+    public void markLoaded() {
+        loaded = true;
+        System.out.println("Co-purchase miner loaded: " + counts.pairCount() + " pairs over "
+            + counts.customerCount() + " customers, ~" + counts.memoryBytes() / (1024 * 1024) + " MB");
+    }
+
+    /**
+     * Empty counts with the configured budget, for callers that build pairs from their own scan
+     */
+    public CoPurchaseCounts newCounts() {
+        return new CoPurchaseCounts(maxPairs);
+    }
+
+    /**
+     * Strongest pairs from the live counts, or empty until they are loaded
+     */
+    public synchronized Optional<List<CoPurchaseCounts.ProductPair>> topPairs(int limit) {
+        return isLoaded() ? Optional.of(topPairs(counts, limit)) : Optional.empty();
+    }
+
+    /**
+     * Strongest pairs in the given counts under the configured thresholds
+     */
+    public List<CoPurchaseCounts.ProductPair> topPairs(CoPurchaseCounts source, int limit) {
+        return source.topPairs(minCustomers, minConfidence, minLift, limit);
+    }
+}
@@ -0,0 +1,196 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.model.CustomerProfile;
+import com.apiserver.apinexus.model.Sale;
+import com.apiserver.apinexus.repository.CustomerProfileRepository;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Per-customer recency/frequency/monetary profiles in the customer_profiles collection,
+ * maintained incrementally from sale writes. Marketing segments (lapsed 30-60 days, single
+ * category, premium) become indexed lookups on last_purchase and category_count instead of
+ * rebuilding per-customer sets from every sale. Rebuilds run through a {@link SalesRebuildGuard},
+ * so sales recorded during a rebuild are counted once.
+ */
+@Component
+public class CustomerProfileIndex {
+
+    public enum Segment { LAPSED, SINGLE_CATEGORY, PREMIUM }
+
+    private final MongoTemplate mongoTemplate;
+    private final CustomerProfileRepository customerProfileRepository;
+    private final SalesRebuildGuard rebuildGuard;
+
+    @Value("${customers.profiles.enabled:true}")
+    private boolean enabled;
+
+    private volatile boolean ready;
+    private volatile boolean missedSales;
+
+    public CustomerProfileIndex(MongoTemplate mongoTemplate, CustomerProfileRepository customerProfileRepository) {
+        this.mongoTemplate = mongoTemplate;
+        this.customerProfileRepository = customerProfileRepository;
+        this.rebuildGuard = new SalesRebuildGuard(mongoTemplate, "customer_profiles", 1, this::record);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * True once the profiles cover every existing sale and can answer segment queries
+     */
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    public void markReady() {
+        ready = true;
+    }
+
+    /**
+     * Whether the last rebuild completed and no sales were missed since
+     */
+    public boolean isBuilt() {
+        return rebuildGuard.isBuilt();
+    }
+
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onSalesRecorded(SalesRecordedEvent event) {
+        if (enabled) {
+            if (!rebuildGuard.tryRecord(event.getSales())) {
+                // The sale is saved; reads fall back to raw sales until the next rebuild
+                ready = false;
+            }
+        } else if (!missedSales) {
+            // Rebuilt on the next start with profiles enabled
+            rebuildGuard.invalidateQuietly();
+            missedSales = true;
+        }
+    }
+
+    @EventListener
+    public void onSalesCleared(SalesClearedEvent event) {
+        mongoTemplate.remove(new Query(), CustomerProfile.class);
+    }
+
+    /**
+     * Fold the given sales into their customers' profiles.
+     * Sales of one customer are merged first, so a batch costs one upsert per customer.
+     */
+    public void record(Collection<Sale> sales) {
+        Map<Long, CustomerProfile> increments = new HashMap<>();
+        for (Sale sale : sales) {
+            if (sale.getCustomerId() != null) {
+                increments.computeIfAbsent(sale.getCustomerId(), CustomerProfile::new).add(sale);
+            }
+        }
+        if (increments.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CustomerProfile.class);
+        for (CustomerProfile increment : increments.values()) {
+            bulk.upsert(Query.query(Criteria.where("_id").is(increment.getCustomerId())), merge(increment));
+        }
+        bulk.execute();
+    }
+
+    /**
+     * Drop all profiles and rebuild them from the raw sales collection; segment queries fall back
+     * to raw sales until it completes
+     */
+    public long rebuild() {
+        ready = false;
+        long processed = rebuildGuard.rebuild(() -> mongoTemplate.remove(new Query(), CustomerProfile.class));
+        ready = true;
+        return processed;
+    }
+
+    public long totalCustomers() {
+        return customerProfileRepository.count();
+    }
+
+    /**
+     * Customers whose last purchase was between 60 and 30 days before asOf
+     */
+    public long lapsedCustomers(LocalDateTime asOf) {
+        return customerProfileRepository.countByLastPurchaseBetween(asOf.minusDays(60), asOf.minusDays(30));
+    }
+
+    public long singleCategoryCustomers() {
+        return customerProfileRepository.countByCategoryCount(1);
+    }
+
+    public long premiumCustomers() {
+        return customerProfileRepository.countByPremiumTrue();
+    }
+
+    /**
+     * Profiles in a segment, highest monetary total first (sorted within the indexed match)
+     */
+    public List<CustomerProfile> segment(Segment segment, LocalDateTime asOf, int limit) {
+        PageRequest page = PageRequest.of(0, limit, Sort.by(Sort.Direction.DESC, "monetaryTotal"));
+        switch (segment) {
+            case LAPSED:
+                return customerProfileRepository.findByLastPurchaseBetween(asOf.minusDays(60), asOf.minusDays(30), page);
+            case SINGLE_CATEGORY:
+                return customerProfileRepository.findByCategoryCount(1, page);
+            default:
+                return mongoTemplate.find(Query.query(Criteria.where("premium").is(true)).with(page),
+                    CustomerProfile.class);
+        }
+    }
+
+    /**
+     * Pipeline upsert merging an increment into the stored profile. The second stage sees the
+     * merged category set, which a classic $addToSet update cannot size (MongoDB 4.2+).
+     */
+    private AggregationUpdate merge(CustomerProfile increment) {
+        Document merged = new Document()
+            .append("premium", new Document("$or", List.of(
+                new Document("$ifNull", List.of("$premium", false)), increment.getPremium())))
+            .append("first_purchase", new Document("$min", Arrays.asList("$first_purchase",
+                mongoValue(increment.getFirstPurchase()))))
+            .append("last_purchase", new Document("$max", Arrays.asList("$last_purchase",
+                mongoValue(increment.getLastPurchase()))))
+            .append("purchase_count", new Document("$add", List.of(
+                new Document("$ifNull", List.of("$purchase_count", 0L)), increment.getPurchaseCount())))
+            .append("monetary_total", new Document("$add", List.of(
+                new Document("$ifNull", List.of("$monetary_total", 0.0)), increment.getMonetaryTotal())))
+            .append("categories", new Document("$setUnion", List.of(
+                new Document("$ifNull", List.of("$categories", List.of())),
+                new ArrayList<>(increment.getCategories()))));
+        if (increment.getCustomerName() != null) {
+            merged.append("customer_name", increment.getCustomerName());
+        }
+        AggregationOperation mergeStage = context -> new Document("$set", merged);
+        AggregationOperation countStage = context -> new Document("$set",
+            new Document("category_count", new Document("$size", "$categories")));
+        return AggregationUpdate.from(List.of(mergeStage, countStage));
+    }
+
+    /**
+     * Dates go through the template's converter so they are stored like mapped entity fields
+     */
+    private Object mongoValue(Object value) {
+        return value != null ? mongoTemplate.getConverter().convertToMongoType(value) : null;
+    }
+}
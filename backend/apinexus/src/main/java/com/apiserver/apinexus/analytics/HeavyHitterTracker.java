@@ -0,0 +1,124 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.dto.HeavyHitterDTO;
+import com.apiserver.apinexus.dto.ProductSalesDTO;
+import com.apiserver.apinexus.model.Sale;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * All-time top products, categories and customers by revenue, kept continuously in
+ * Space-Saving sketches as sales are recorded, so a top-N read costs O(capacity) in memory
+ * instead of a scan and a sort over the sales.
+ */
+@Component
+public class HeavyHitterTracker implements SalesSink {
+
+    public enum Dimension { PRODUCT, CATEGORY, CUSTOMER }
+
+    private final boolean enabled;
+    private final SpaceSavingSketch<Long, ProductLabel> products;
+    private final SpaceSavingSketch<String, String> categories;
+    private final SpaceSavingSketch<Long, String> customers;
+
+    private volatile boolean loaded;
+
+    public HeavyHitterTracker(
+            @Value("${sales.topk.sketch-enabled:false}") boolean enabled,
+            @Value("${sales.topk.sketch-capacity:1000}") int capacity) {
+        this.enabled = enabled;
+        this.products = new SpaceSavingSketch<>(capacity);
+        this.categories = new SpaceSavingSketch<>(capacity);
+        this.customers = new SpaceSavingSketch<>(capacity);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isLoaded() {
+        return enabled && loaded;
+    }
+
+    @EventListener
+    public void onSalesCleared(SalesClearedEvent event) {
+        if (enabled) {
+            reset();
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        products.clear();
+        categories.clear();
+        customers.clear();
+    }
+
+    @Override
+    public synchronized void append(Collection<Sale> sales) {
+        for (Sale sale : sales) {
+            double revenue = sale.getFinalAmount() != null ? sale.getFinalAmount() : 0.0;
+            int quantity = sale.getQuantity() != null ? sale.getQuantity() : 0;
+            products.offer(sale.getProductId(), new ProductLabel(sale.getProductName(), sale.getCategory()), revenue, quantity);
+            categories.offer(sale.getCategory(), sale.getCategory(), revenue, quantity);
+            customers.offer(sale.getCustomerId(), sale.getCustomerName(), revenue, quantity);
+        }
+    }
+
+    @Override
+    public void markLoaded() {
+        loaded = true;
+    }
+
+    /**
+     * All-time top products, only when every returned counter is exact. An untracked product
+     * can never outweigh the lightest counter, so exact counters at the top are the true top-N;
+     * otherwise the caller should compute the answer from the sales.
+     */
+    public synchronized Optional<List<ProductSalesDTO>> topProducts(int limit) {
+        if (!isLoaded() || limit > products.getCapacity()) {
+            return Optional.empty();
+        }
+        List<SpaceSavingSketch.Counter<Long, ProductLabel>> top = products.top(limit);
+        if (!top.stream().allMatch(SpaceSavingSketch.Counter::isExact)) {
+            return Optional.empty();
+        }
+        return Optional.of(top.stream()
+            .map(c -> new ProductSalesDTO(c.getKey(), c.getLabel().productName(), c.getLabel().category(),
+                c.getQuantity(), c.getWeight(), c.getCount()))
+            .collect(Collectors.toList()));
+    }
+
+    /**
+     * Estimated heavy hitters with their error bounds, or empty when the sketches are off
+     */
+    public synchronized Optional<List<HeavyHitterDTO>> heavyHitters(Dimension dimension, int limit) {
+        if (!isLoaded()) {
+            return Optional.empty();
+        }
+        switch (dimension) {
+            case PRODUCT:
+                return Optional.of(toDtos(products.top(limit), label -> label.productName()));
+            case CATEGORY:
+                return Optional.of(toDtos(categories.top(limit), label -> label));
+            default:
+                return Optional.of(toDtos(customers.top(limit), label -> label));
+        }
+    }
+
+    private static <K, L> List<HeavyHitterDTO> toDtos(List<SpaceSavingSketch.Counter<K, L>> counters,
+                                                      Function<L, String> label) {
+        return counters.stream()
+            .map(c -> new HeavyHitterDTO(String.valueOf(c.getKey()), label.apply(c.getLabel()),
+                c.getWeight(), c.getError(), c.getQuantity(), c.getCount()))
+            .collect(Collectors.toList());
+    }
+
+    private record ProductLabel(String productName, String category) {}
+}
@@ -0,0 +1,120 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.dto.CategorySalesDTO;
+import com.apiserver.apinexus.dto.ProductSalesDTO;
+import com.apiserver.apinexus.dto.SalesAnalyticsDTO;
+import com.apiserver.apinexus.dto.TimePeriodSalesDTO;
+import com.apiserver.apinexus.repository.projection.SaleMetrics;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * JVM-side sales aggregation, each view computed in one pass over a (possibly cursor-backed) stream.
+ * This is the reference behaviour the Mongo pipelines in {@link MongoSalesAggregator} must match.
+ */
+public final class InMemorySalesAggregator {
+    
+    private InMemorySalesAggregator() {}
+    
+    public static SalesAnalyticsDTO analytics(Stream<SaleMetrics> sales) {
+        double totalRevenue = 0.0;
+        int totalSales = 0;
+        int totalQuantity = 0;
+        double totalDiscounts = 0.0;
+        int premiumSales = 0;
+        
+        Iterator<SaleMetrics> iterator = sales.iterator();
+        while (iterator.hasNext()) {
+            SaleMetrics sale = iterator.next();
+            totalRevenue += sale.finalAmount();
+            totalSales++;
+            totalQuantity += sale.quantity();
+            totalDiscounts += sale.discountApplied() != null ? sale.discountApplied() : 0.0;
+            if (sale.premium()) {
+                premiumSales++;
+            }
+        }
+        
+        return toAnalytics(totalRevenue, totalSales, totalQuantity, totalDiscounts, premiumSales);
+    }
+    
+    public static List<ProductSalesDTO> byProduct(Stream<SaleMetrics> sales) {
+        Map<Long, ProductSalesDTO> productSalesMap = new HashMap<>();
+        
+        sales.forEach(sale -> {
+            Long productId = sale.productId();
+            ProductSalesDTO dto = productSalesMap.getOrDefault(productId, 
+                new ProductSalesDTO(productId, sale.productName(), sale.category(), 0, 0.0, 0));
+            
+            dto.setTotalQuantity(dto.getTotalQuantity() + sale.quantity());
+            dto.setTotalRevenue(dto.getTotalRevenue() + sale.finalAmount());
+            dto.setSalesCount(dto.getSalesCount() + 1);
+            
+            productSalesMap.put(productId, dto);
+        });
+        
+        return productSalesMap.values().stream()
+            .sorted((a, b) -> Double.compare(b.getTotalRevenue(), a.getTotalRevenue()))
+            .collect(Collectors.toList());
+    }
+    
+    public static List<CategorySalesDTO> byCategory(Stream<SaleMetrics> sales) {
+        Map<String, CategorySalesDTO> categorySalesMap = new HashMap<>();
+        
+        sales.forEach(sale -> {
+            String category = sale.category();
+            CategorySalesDTO dto = categorySalesMap.getOrDefault(category,
+                new CategorySalesDTO(category, 0, 0.0, 0));
+            
+            dto.setTotalQuantity(dto.getTotalQuantity() + sale.quantity());
+            dto.setTotalRevenue(dto.getTotalRevenue() + sale.finalAmount());
+            dto.setSalesCount(dto.getSalesCount() + 1);
+            
+            categorySalesMap.put(category, dto);
+        });
+        
+        return categorySalesMap.values().stream()
+            .sorted((a, b) -> Double.compare(b.getTotalRevenue(), a.getTotalRevenue()))
+            .collect(Collectors.toList());
+    }
+    
+    public static List<TimePeriodSalesDTO> byPeriod(SalesPeriod period, Stream<SaleMetrics> sales) {
+        Map<String, TimePeriodSalesDTO> periodSalesMap = new HashMap<>();
+        
+        sales.forEach(sale -> {
+            String periodKey = sale.saleDate().format(period.getFormatter());
+            TimePeriodSalesDTO dto = periodSalesMap.getOrDefault(periodKey,
+                new TimePeriodSalesDTO(periodKey, 0.0, 0, 0));
+            
+            dto.setRevenue(dto.getRevenue() + sale.finalAmount());
+            dto.setSalesCount(dto.getSalesCount() + 1);
+            dto.setQuantity(dto.getQuantity() + sale.quantity());
+            
+            periodSalesMap.put(periodKey, dto);
+        });
+        
+        return periodSalesMap.values().stream()
+            .sorted(Comparator.comparing(TimePeriodSalesDTO::getPeriod))
+            .collect(Collectors.toList());
+    }
+    
+    /**
+     * Build the summary DTO from raw totals, applying the API's rounding rules
+     */
+    static SalesAnalyticsDTO toAnalytics(double totalRevenue, int totalSales, int totalQuantity,
+                                         double totalDiscounts, int premiumSales) {
+        double averageOrderValue = totalSales > 0 ? totalRevenue / totalSales : 0.0;
+        
+        return new SalesAnalyticsDTO(
+            Math.round(totalRevenue * 100.0) / 100.0,
+            totalSales,
+            totalQuantity,
+            Math.round(averageOrderValue * 100.0) / 100.0,
+            Math.round(totalDiscounts * 100.0) / 100.0,
+            premiumSales,
+            totalSales - premiumSales
+        );
+    }
+}
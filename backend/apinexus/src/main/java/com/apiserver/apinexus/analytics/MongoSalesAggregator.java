@@ -0,0 +1,196 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.dto.CategorySalesDTO;
+import com.apiserver.apinexus.dto.DimensionSalesDTO;
+import com.apiserver.apinexus.dto.ProductSalesDTO;
+import com.apiserver.apinexus.dto.SalesAnalyticsDTO;
+import com.apiserver.apinexus.dto.TimePeriodSalesDTO;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+
+/**
+ * Sales aggregations executed as MongoDB pipelines ($match/$group/$sort) so only
+ * the grouped rows leave the server. Results mirror {@link InMemorySalesAggregator}.
+ */
+@Component
+public class MongoSalesAggregator {
+    
+    static final String SALES_COLLECTION = "sales";
+    
+    private static final AggregationOptions OPTIONS = AggregationOptions.builder()
+        .allowDiskUse(true)
+        .build();
+    
+    private final MongoTemplate mongoTemplate;
+    
+    public MongoSalesAggregator(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+    
+    public SalesAnalyticsDTO analytics(LocalDateTime startDate, LocalDateTime endDate) {
+        List<AggregationOperation> stages = rangeStages(startDate, endDate);
+        stages.add(group()
+            .sum("final_amount").as("revenue")
+            .count().as("count")
+            .sum("quantity").as("quantity")
+            .sum(ConditionalOperators.ifNull("discount_applied").then(0)).as("discounts")
+            .sum(ConditionalOperators.when(Criteria.where("is_premium_customer").is(true)).then(1).otherwise(0))
+                .as("premium"));
+        
+        Document totals = run(stages).stream().findFirst().orElse(new Document());
+        return InMemorySalesAggregator.toAnalytics(
+            doubleOf(totals, "revenue"),
+            intOf(totals, "count"),
+            intOf(totals, "quantity"),
+            doubleOf(totals, "discounts"),
+            intOf(totals, "premium")
+        );
+    }
+    
+    public List<ProductSalesDTO> byProduct(LocalDateTime startDate, LocalDateTime endDate) {
+        return byProduct(startDate, endDate, 0);
+    }
+    
+    /**
+     * Highest-revenue products only; $sort followed by $limit runs as a bounded top-k sort on the server
+     */
+    public List<ProductSalesDTO> topProducts(int limit, LocalDateTime startDate, LocalDateTime endDate) {
+        return limit > 0 ? byProduct(startDate, endDate, limit) : new ArrayList<>();
+    }
+    
+    private List<ProductSalesDTO> byProduct(LocalDateTime startDate, LocalDateTime endDate, int limit) {
+        List<AggregationOperation> stages = rangeStages(startDate, endDate);
+        stages.add(group("product_id")
+            .first("product_name").as("productName")
+            .first("category").as("category")
+            .sum("quantity").as("quantity")
+            .sum("final_amount").as("revenue")
+            .count().as("count"));
+        stages.add(sort(Sort.Direction.DESC, "revenue"));
+        if (limit > 0) {
+            stages.add(limit(limit));
+        }
+        
+        return run(stages).stream()
+            .map(doc -> new ProductSalesDTO(
+                doc.get("_id") != null ? ((Number) doc.get("_id")).longValue() : null,
+                doc.getString("productName"),
+                doc.getString("category"),
+                intOf(doc, "quantity"),
+                doubleOf(doc, "revenue"),
+                intOf(doc, "count")))
+            .collect(Collectors.toList());
+    }
+    
+    public List<CategorySalesDTO> byCategory(LocalDateTime startDate, LocalDateTime endDate) {
+        List<AggregationOperation> stages = rangeStages(startDate, endDate);
+        stages.add(group("category")
+            .sum("quantity").as("quantity")
+            .sum("final_amount").as("revenue")
+            .count().as("count"));
+        stages.add(sort(Sort.Direction.DESC, "revenue"));
+        
+        return run(stages).stream()
+            .map(doc -> new CategorySalesDTO(
+                doc.getString("_id"),
+                intOf(doc, "quantity"),
+                doubleOf(doc, "revenue"),
+                intOf(doc, "count")))
+            .collect(Collectors.toList());
+    }
+    
+    public List<DimensionSalesDTO> byDimension(SalesDimension dimension, LocalDateTime startDate, LocalDateTime endDate) {
+        List<AggregationOperation> stages = rangeStages(startDate, endDate);
+        stages.add(group(dimension.getField())
+            .sum("quantity").as("quantity")
+            .sum("final_amount").as("revenue")
+            .count().as("count"));
+        stages.add(sort(Sort.Direction.DESC, "revenue"));
+        
+        return run(stages).stream()
+            .map(doc -> new DimensionSalesDTO(
+                doc.getString("_id"),
+                intOf(doc, "quantity"),
+                doubleOf(doc, "revenue"),
+                intOf(doc, "count")))
+            .collect(Collectors.toList());
+    }
+    
+    public List<TimePeriodSalesDTO> byPeriod(SalesPeriod period, LocalDateTime startDate, LocalDateTime endDate) {
+        // Week numbers follow the JVM locale, so weekly keys are folded from daily buckets
+        String format = period.getMongoFormat() != null
+            ? period.getMongoFormat()
+            : SalesPeriod.DAILY.getMongoFormat();
+        
+        List<AggregationOperation> stages = rangeStages(startDate, endDate);
+        stages.add(project("final_amount", "quantity")
+            .and(DateOperators.dateOf("sale_date")
+                .withTimezone(DateOperators.Timezone.valueOf(ZoneId.systemDefault().getId()))
+                .toString(format))
+            .as("period"));
+        stages.add(group("period")
+            .sum("final_amount").as("revenue")
+            .count().as("count")
+            .sum("quantity").as("quantity"));
+        
+        Map<String, TimePeriodSalesDTO> periodSalesMap = new HashMap<>();
+        for (Document doc : run(stages)) {
+            String key = doc.getString("_id");
+            if (period.getMongoFormat() == null) {
+                key = LocalDate.parse(key).format(period.getFormatter());
+            }
+            TimePeriodSalesDTO dto = periodSalesMap.computeIfAbsent(key,
+                k -> new TimePeriodSalesDTO(k, 0.0, 0, 0));
+            dto.setRevenue(dto.getRevenue() + doubleOf(doc, "revenue"));
+            dto.setSalesCount(dto.getSalesCount() + intOf(doc, "count"));
+            dto.setQuantity(dto.getQuantity() + intOf(doc, "quantity"));
+        }
+        
+        return periodSalesMap.values().stream()
+            .sorted(Comparator.comparing(TimePeriodSalesDTO::getPeriod))
+            .collect(Collectors.toList());
+    }
+    
+    /**
+     * Initial $match on sale_date, using the same exclusive bounds as
+     * SaleRepository.findBySaleDateBetween
+     */
+    private List<AggregationOperation> rangeStages(LocalDateTime startDate, LocalDateTime endDate) {
+        List<AggregationOperation> stages = new ArrayList<>();
+        if (startDate != null && endDate != null) {
+            stages.add(match(Criteria.where("sale_date").gt(startDate).lt(endDate)));
+        }
+        return stages;
+    }
+    
+    private List<Document> run(List<AggregationOperation> stages) {
+        Aggregation aggregation = newAggregation(stages).withOptions(OPTIONS);
+        return mongoTemplate.aggregate(aggregation, SALES_COLLECTION, Document.class).getMappedResults();
+    }
+    
+    private static int intOf(Document doc, String key) {
+        Object value = doc.get(key);
+        return value != null ? ((Number) value).intValue() : 0;
+    }
+    
+    private static double doubleOf(Document doc, String key) {
+        Object value = doc.get(key);
+        return value != null ? ((Number) value).doubleValue() : 0.0;
+    }
+}
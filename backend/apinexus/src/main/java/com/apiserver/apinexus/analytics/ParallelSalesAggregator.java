@@ -0,0 +1,156 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.dto.CategorySalesDTO;
+import com.apiserver.apinexus.dto.ProductSalesDTO;
+import com.apiserver.apinexus.repository.projection.SaleMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * JVM-side product and category aggregation for large ranges. The sales are cut into chunks
+ * as they come off the cursor; each chunk is summed on the fork-join pool into its own map of
+ * primitive accumulators (one object per key, none per row) and the partial maps are merged
+ * in chunk order. Ranges under the threshold are summed on the calling thread.
+ */
+@Component
+public class ParallelSalesAggregator {
+
+    static final int CHUNK_SIZE = 16_384;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Row count from which chunks are handed to the pool; 0 or less keeps everything on the caller
+     */
+    @Value("${sales.analytics.parallel-threshold:100000}")
+    private int parallelThreshold;
+
+    public ParallelSalesAggregator() {
+        this.pool = ForkJoinPool.commonPool();
+    }
+
+    ParallelSalesAggregator(ForkJoinPool pool, int parallelThreshold) {
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public List<ProductSalesDTO> byProduct(Stream<SaleMetrics> sales) {
+        return aggregate(sales, SaleMetrics::productId).entrySet().stream()
+            .map(e -> new ProductSalesDTO(e.getKey(), e.getValue().productName, e.getValue().category,
+                e.getValue().quantity, e.getValue().revenue, e.getValue().count))
+            .sorted((a, b) -> Double.compare(b.getTotalRevenue(), a.getTotalRevenue()))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Highest-revenue products, selected with a bounded heap instead of sorting every product
+     */
+    public List<ProductSalesDTO> topProducts(Stream<SaleMetrics> sales, int limit) {
+        return TopK.largest(aggregate(sales, SaleMetrics::productId).entrySet(), limit,
+                Comparator.comparingDouble((Map.Entry<Long, Totals> e) -> e.getValue().revenue)).stream()
+            .map(e -> new ProductSalesDTO(e.getKey(), e.getValue().productName, e.getValue().category,
+                e.getValue().quantity, e.getValue().revenue, e.getValue().count))
+            .collect(Collectors.toList());
+    }
+
+    public List<CategorySalesDTO> byCategory(Stream<SaleMetrics> sales) {
+        return aggregate(sales, SaleMetrics::category).entrySet().stream()
+            .map(e -> new CategorySalesDTO(e.getKey(), e.getValue().quantity, e.getValue().revenue, e.getValue().count))
+            .sorted((a, b) -> Double.compare(b.getTotalRevenue(), a.getTotalRevenue()))
+            .collect(Collectors.toList());
+    }
+
+    private <K> Map<K, Totals> aggregate(Stream<SaleMetrics> sales, Function<SaleMetrics, K> key) {
+        Iterator<SaleMetrics> iterator = sales.iterator();
+        if (parallelThreshold <= 0) {
+            return sumChunk(drain(iterator, Integer.MAX_VALUE), key);
+        }
+
+        List<SaleMetrics> head = drain(iterator, parallelThreshold);
+        if (!iterator.hasNext()) {
+            return sumChunk(head, key);
+        }
+
+        // Bound the chunks in flight so a fast cursor cannot buffer the whole range
+        int maxInFlight = Math.max(2, pool.getParallelism() * 2);
+        Deque<ForkJoinTask<Map<K, Totals>>> inFlight = new ArrayDeque<>();
+        Map<K, Totals> merged = new LinkedHashMap<>();
+
+        for (int from = 0; from < head.size(); from += CHUNK_SIZE) {
+            List<SaleMetrics> chunk = head.subList(from, Math.min(from + CHUNK_SIZE, head.size()));
+            inFlight.add(pool.submit(() -> sumChunk(chunk, key)));
+        }
+        while (iterator.hasNext()) {
+            List<SaleMetrics> chunk = drain(iterator, CHUNK_SIZE);
+            inFlight.add(pool.submit(() -> sumChunk(chunk, key)));
+            while (inFlight.size() > maxInFlight) {
+                mergeInto(merged, inFlight.poll().join());
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            mergeInto(merged, inFlight.poll().join());
+        }
+        return merged;
+    }
+
+    private static <K> Map<K, Totals> sumChunk(List<SaleMetrics> chunk, Function<SaleMetrics, K> key) {
+        Map<K, Totals> totals = new HashMap<>();
+        for (SaleMetrics sale : chunk) {
+            K k = key.apply(sale);
+            Totals acc = totals.get(k);
+            if (acc == null) {
+                acc = new Totals(sale.productName(), sale.category());
+                totals.put(k, acc);
+            }
+            acc.quantity += sale.quantity();
+            acc.revenue += sale.finalAmount();
+            acc.count++;
+        }
+        return totals;
+    }
+
+    /**
+     * Partials arrive in chunk order, so names seen first in the range win, as in the sequential path
+     */
+    private static <K> void mergeInto(Map<K, Totals> merged, Map<K, Totals> partial) {
+        partial.forEach((k, totals) -> {
+            Totals acc = merged.putIfAbsent(k, totals);
+            if (acc != null) {
+                acc.quantity += totals.quantity;
+                acc.revenue += totals.revenue;
+                acc.count += totals.count;
+            }
+        });
+    }
+
+    private static List<SaleMetrics> drain(Iterator<SaleMetrics> iterator, int limit) {
+        List<SaleMetrics> rows = new ArrayList<>(Math.min(limit, CHUNK_SIZE));
+        while (rows.size() < limit && iterator.hasNext()) {
+            rows.add(iterator.next());
+        }
+        return rows;
+    }
+
+    /**
+     * Mutable running totals for one product or category
+     */
+    private static final class Totals {
+        final String productName;
+        final String category;
+        int quantity;
+        double revenue;
+        int count;
+
+        Totals(String productName, String category) {
+            this.productName = productName;
+            this.category = category;
+        }
+    }
+}
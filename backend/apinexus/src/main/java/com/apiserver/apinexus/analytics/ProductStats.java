@@ -0,0 +1,118 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.dto.ProductPerformanceDTO;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Running statistics for one product, updated in O(1) per sale: first and last sale, totals,
+ * and an exponentially decayed daily velocity. The decayed velocity weights each unit sold by
+ * exp(-rate x age in days) (half-life sales.velocity.half-life-days), so it follows recent demand
+ * where the lifetime average reacts slowly. Sales may arrive in any order. Not thread-safe.
+ */
+public final class ProductStats {
+
+    private final double decayPerDay;
+    private String productName;
+    private String category;
+    private int salesCount;
+    private int totalQuantity;
+    private double totalRevenue;
+    private double unitPriceSum;
+    private LocalDateTime firstSaleDate;
+    private LocalDateTime lastSaleDate;
+    // Decayed quantity as of decayedAt (epoch days)
+    private double decayedQuantity;
+    private double decayedAt = Double.NEGATIVE_INFINITY;
+
+    public ProductStats(double halfLifeDays) {
+        this.decayPerDay = Math.log(2) / halfLifeDays;
+    }
+
+    public void add(String productName, String category, int quantity, double revenue, double unitPrice,
+                    LocalDateTime saleDate) {
+        if (this.productName == null) {
+            this.productName = productName;
+            this.category = category;
+        }
+        salesCount++;
+        totalQuantity += quantity;
+        totalRevenue += revenue;
+        unitPriceSum += unitPrice;
+        if (firstSaleDate == null || saleDate.isBefore(firstSaleDate)) {
+            firstSaleDate = saleDate;
+        }
+        if (lastSaleDate == null || saleDate.isAfter(lastSaleDate)) {
+            lastSaleDate = saleDate;
+        }
+
+        double day = epochDays(saleDate);
+        if (day >= decayedAt) {
+            decayedQuantity = decayedQuantity * Math.exp(-decayPerDay * (day - decayedAt)) + quantity;
+            decayedAt = day;
+        } else {
+            // Older than what has been seen: add it already decayed to the reference time
+            decayedQuantity += quantity * Math.exp(-decayPerDay * (decayedAt - day));
+        }
+    }
+
+    public int getSalesCount() {
+        return salesCount;
+    }
+
+    /**
+     * Units per day with exponentially fading weight on older sales, as of the given time
+     */
+    public double decayedVelocity(LocalDateTime asOf) {
+        if (salesCount == 0) {
+            return 0.0;
+        }
+        double age = Math.max(0.0, epochDays(asOf) - decayedAt);
+        // A constant rate of v units/day accumulates to v / decayPerDay
+        return decayedQuantity * Math.exp(-decayPerDay * age) * decayPerDay;
+    }
+
+    /**
+     * Performance and classification as of the given time, or null before the first sale
+     */
+    public ProductPerformanceDTO toPerformance(Long productId, LocalDateTime asOf) {
+        if (salesCount == 0 || firstSaleDate == null) {
+            return null;
+        }
+
+        int daysSinceFirst = (int) ChronoUnit.DAYS.between(firstSaleDate, asOf);
+        int daysSinceLast = (int) ChronoUnit.DAYS.between(lastSaleDate, asOf);
+
+        double avgPrice = unitPriceSum / salesCount;
+
+        double velocityScore = daysSinceFirst > 0 ? (double) totalQuantity / daysSinceFirst : 0.0;
+
+        String status;
+        if (velocityScore > 2.0) status = "TOP_PERFORMER";
+        else if (velocityScore > 0.5) status = "STEADY";
+        else if (daysSinceLast > 30) status = "STAGNANT";
+        else status = "SLOW_MOVING";
+
+        return new ProductPerformanceDTO(
+            productId,
+            productName,
+            category,
+            salesCount,
+            totalQuantity,
+            totalRevenue,
+            totalRevenue / salesCount,
+            avgPrice,
+            daysSinceFirst,
+            daysSinceLast,
+            status,
+            velocityScore,
+            decayedVelocity(asOf)
+        );
+    }
+
+    private static double epochDays(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) / 86_400.0;
+    }
+}
@@ -0,0 +1,109 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.dto.ProductPerformanceDTO;
+import com.apiserver.apinexus.model.Sale;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Per-product statistics kept current as sales are recorded, so product performance and its
+ * TOP_PERFORMER / STEADY / SLOW_MOVING / STAGNANT classification are a lookup instead of a
+ * scan over the product's history. Each sale costs O(1); memory is one entry per product.
+ */
+@Component
+public class ProductVelocityTracker implements SalesSink {
+
+    public static final double DEFAULT_HALF_LIFE_DAYS = 7.0;
+
+    private final boolean enabled;
+    private final double halfLifeDays;
+    private final Map<Long, ProductStats> stats = new HashMap<>();
+
+    private volatile boolean loaded;
+
+    public ProductVelocityTracker(
+            @Value("${sales.velocity.tracker-enabled:false}") boolean enabled,
+            @Value("${sales.velocity.half-life-days:7}") double halfLifeDays) {
+        this.enabled = enabled;
+        this.halfLifeDays = halfLifeDays;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isLoaded() {
+        return enabled && loaded;
+    }
+
+    public double getHalfLifeDays() {
+        return halfLifeDays;
+    }
+
+    @EventListener
+    public void onSalesCleared(SalesClearedEvent event) {
+        if (enabled) {
+            reset();
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        stats.clear();
+    }
+
+    @Override
+    public synchronized void append(Collection<Sale> sales) {
+        for (Sale sale : sales) {
+            if (sale.getProductId() == null || sale.getSaleDate() == null) {
+                continue;
+            }
+            stats.computeIfAbsent(sale.getProductId(), k -> new ProductStats(halfLifeDays)).add(
+                sale.getProductName(),
+                sale.getCategory(),
+                sale.getQuantity() != null ? sale.getQuantity() : 0,
+                sale.getFinalAmount() != null ? sale.getFinalAmount() : 0.0,
+                sale.getUnitPrice() != null ? sale.getUnitPrice() : 0.0,
+                sale.getSaleDate());
+        }
+    }
+
+    @Override
+    public void markLoaded() {
+        loaded = true;
+    }
+
+    /**
+     * One product's performance as of the given time; empty until loaded or for an unsold product
+     */
+    public synchronized Optional<ProductPerformanceDTO> performance(Long productId, LocalDateTime asOf) {
+        if (!isLoaded()) {
+            return Optional.empty();
+        }
+        ProductStats product = stats.get(productId);
+        return product != null ? Optional.ofNullable(product.toPerformance(productId, asOf)) : Optional.empty();
+    }
+
+    /**
+     * Every product's performance, highest velocity first, or empty until loaded
+     */
+    public synchronized Optional<List<ProductPerformanceDTO>> productPerformance(LocalDateTime asOf) {
+        if (!isLoaded()) {
+            return Optional.empty();
+        }
+        List<ProductPerformanceDTO> performances = new ArrayList<>(stats.size());
+        for (Map.Entry<Long, ProductStats> entry : stats.entrySet()) {
+            ProductPerformanceDTO performance = entry.getValue().toPerformance(entry.getKey(), asOf);
+            if (performance != null) {
+                performances.add(performance);
+            }
+        }
+        performances.sort(Comparator.comparing(ProductPerformanceDTO::getVelocityScore).reversed());
+        return Optional.of(performances);
+    }
+}
@@ -0,0 +1,39 @@
+package com.apiserver.apinexus.analytics;
+
+import java.time.LocalDateTime;
+
+/**
+ * Identity of one cached sales view. Built through {@link #of}, which normalizes the request so
+ * equivalent calls share an entry: a range missing either bound is unbounded (as the service
+ * treats it) and periods are reduced to their {@link SalesPeriod}.
+ */
+public record SalesCacheKey(
+    String view,
+    LocalDateTime startDate,
+    LocalDateTime endDate,
+    SalesPeriod period,
+    Integer limit,
+    Long productId
+) {
+
+    public static SalesCacheKey of(String view, LocalDateTime startDate, LocalDateTime endDate) {
+        return of(view, startDate, endDate, null, null, null);
+    }
+
+    public static SalesCacheKey of(String view, LocalDateTime startDate, LocalDateTime endDate,
+                                   SalesPeriod period, Integer limit, Long productId) {
+        boolean bounded = startDate != null && endDate != null;
+        return new SalesCacheKey(
+            view,
+            bounded ? startDate : null,
+            bounded ? endDate : null,
+            period,
+            limit,
+            productId
+        );
+    }
+
+    public boolean isBounded() {
+        return startDate != null;
+    }
+}
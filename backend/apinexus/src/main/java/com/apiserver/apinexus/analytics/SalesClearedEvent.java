@@ -0,0 +1,8 @@
+package com.apiserver.apinexus.analytics;
+
+/**
+ * Published after the whole sales collection has been deleted,
+ * so derived stores can drop what they built from it.
+ */
+public class SalesClearedEvent {
+}
@@ -0,0 +1,385 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.dto.CategorySalesDTO;
+import com.apiserver.apinexus.dto.DimensionSalesDTO;
+import com.apiserver.apinexus.dto.ProductSalesDTO;
+import com.apiserver.apinexus.dto.SalesAnalyticsDTO;
+import com.apiserver.apinexus.dto.TimePeriodSalesDTO;
+import com.apiserver.apinexus.model.Sale;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Column-oriented copy of the sales collection held in primitive arrays. String and id
+ * attributes are dictionary-encoded to int codes, so every group-by is a loop over
+ * arrays that adds into per-code accumulators without allocating per row.
+ * Disabled by default; reads return empty until the startup load has finished.
+ */
+@Component
+public class SalesCube implements SalesSink {
+
+    private static final int INITIAL_CAPACITY = 1 << 14;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Value("${sales.cube.enabled:false}")
+    private boolean enabled;
+
+    private volatile boolean loaded;
+
+    private int size;
+    // Sale time as local wall-clock millis (LocalDateTime read as UTC), so day buckets are exact
+    private long[] saleMillis;
+    private int[] productCodes;
+    private int[] categoryCodes;
+    private int[] regionCodes;
+    private int[] paymentCodes;
+    private int[] quantities;
+    private double[] amounts;
+    private double[] discounts;
+    private boolean[] premium;
+
+    private Dictionary<Long> products;
+    private Dictionary<String> categories;
+    private Dictionary<String> regions;
+    private Dictionary<String> paymentMethods;
+    // First name and category seen per product code, as the other aggregators report them
+    private List<String> productNames;
+    private List<String> productCategories;
+
+    private long minDay;
+    private long maxDay;
+
+    public SalesCube() {
+        clear();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isLoaded() {
+        return enabled && loaded;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @EventListener
+    public void onSalesCleared(SalesClearedEvent event) {
+        if (enabled) {
+            reset();
+        }
+    }
+
+    @Override
+    public void reset() {
+        lock.writeLock().lock();
+        try {
+            clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void markLoaded() {
+        loaded = true;
+    }
+
+    @Override
+    public void append(Collection<Sale> sales) {
+        lock.writeLock().lock();
+        try {
+            ensureCapacity(size + sales.size());
+            for (Sale sale : sales) {
+                if (sale.getSaleDate() == null) {
+                    continue;
+                }
+                int row = size++;
+                long millis = toMillis(sale.getSaleDate());
+                saleMillis[row] = millis;
+                int product = products.encode(sale.getProductId());
+                if (product == productNames.size()) {
+                    productNames.add(sale.getProductName());
+                    productCategories.add(sale.getCategory());
+                }
+                productCodes[row] = product;
+                categoryCodes[row] = categories.encode(sale.getCategory());
+                regionCodes[row] = regions.encode(sale.getRegion());
+                paymentCodes[row] = paymentMethods.encode(sale.getPaymentMethod());
+                quantities[row] = sale.getQuantity() != null ? sale.getQuantity() : 0;
+                amounts[row] = sale.getFinalAmount() != null ? sale.getFinalAmount() : 0.0;
+                discounts[row] = sale.getDiscountApplied() != null ? sale.getDiscountApplied() : 0.0;
+                premium[row] = sale.getIsPremiumCustomer() != null && sale.getIsPremiumCustomer();
+
+                long day = Math.floorDiv(millis, MILLIS_PER_DAY);
+                minDay = Math.min(minDay, day);
+                maxDay = Math.max(maxDay, day);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Range bounds are exclusive, like SaleRepository.findBySaleDateBetween; null bounds mean all sales
+     */
+    public Optional<SalesAnalyticsDTO> analytics(LocalDateTime startDate, LocalDateTime endDate) {
+        if (!isLoaded()) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            long from = lowerBound(startDate, endDate);
+            long to = upperBound(startDate, endDate);
+            double revenue = 0.0;
+            double discount = 0.0;
+            int count = 0;
+            int quantity = 0;
+            int premiumCount = 0;
+            for (int i = 0; i < size; i++) {
+                long t = saleMillis[i];
+                if (t > from && t < to) {
+                    revenue += amounts[i];
+                    discount += discounts[i];
+                    quantity += quantities[i];
+                    count++;
+                    if (premium[i]) {
+                        premiumCount++;
+                    }
+                }
+            }
+            return Optional.of(InMemorySalesAggregator.toAnalytics(revenue, count, quantity, discount, premiumCount));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Optional<List<ProductSalesDTO>> byProduct(LocalDateTime startDate, LocalDateTime endDate) {
+        return group(() -> productCodes, () -> products.size(), startDate, endDate, (groups, code) ->
+            new ProductSalesDTO(products.decode(code), productNames.get(code), productCategories.get(code),
+                groups.quantity[code], groups.revenue[code], groups.count[code]))
+            .map(list -> sortByRevenue(list, ProductSalesDTO::getTotalRevenue));
+    }
+
+    public Optional<List<ProductSalesDTO>> topProducts(int limit, LocalDateTime startDate, LocalDateTime endDate) {
+        return group(() -> productCodes, () -> products.size(), startDate, endDate, (groups, code) ->
+            new ProductSalesDTO(products.decode(code), productNames.get(code), productCategories.get(code),
+                groups.quantity[code], groups.revenue[code], groups.count[code]))
+            .map(list -> TopK.largest(list, limit, Comparator.comparingDouble(ProductSalesDTO::getTotalRevenue)));
+    }
+
+    public Optional<List<CategorySalesDTO>> byCategory(LocalDateTime startDate, LocalDateTime endDate) {
+        return group(() -> categoryCodes, () -> categories.size(), startDate, endDate, (groups, code) ->
+            new CategorySalesDTO(categories.decode(code), groups.quantity[code], groups.revenue[code], groups.count[code]))
+            .map(list -> sortByRevenue(list, CategorySalesDTO::getTotalRevenue));
+    }
+
+    public Optional<List<DimensionSalesDTO>> byDimension(SalesDimension dimension, LocalDateTime startDate, LocalDateTime endDate) {
+        boolean region = dimension == SalesDimension.REGION;
+        return group(() -> region ? regionCodes : paymentCodes, () -> (region ? regions : paymentMethods).size(),
+            startDate, endDate, (groups, code) ->
+                new DimensionSalesDTO((region ? regions : paymentMethods).decode(code),
+                    groups.quantity[code], groups.revenue[code], groups.count[code]))
+            .map(list -> sortByRevenue(list, DimensionSalesDTO::getTotalRevenue));
+    }
+
+    /**
+     * Per-period totals: rows are summed into one slot per calendar day, then the days are
+     * folded into period keys, so each day is formatted once whatever the row count
+     */
+    public Optional<List<TimePeriodSalesDTO>> byPeriod(SalesPeriod period, LocalDateTime startDate, LocalDateTime endDate) {
+        if (!isLoaded()) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return Optional.of(new ArrayList<>());
+            }
+            long from = lowerBound(startDate, endDate);
+            long to = upperBound(startDate, endDate);
+            int days = (int) (maxDay - minDay + 1);
+            double[] revenue = new double[days];
+            int[] quantity = new int[days];
+            int[] count = new int[days];
+            for (int i = 0; i < size; i++) {
+                long t = saleMillis[i];
+                if (t > from && t < to) {
+                    int day = (int) (Math.floorDiv(t, MILLIS_PER_DAY) - minDay);
+                    revenue[day] += amounts[i];
+                    quantity[day] += quantities[i];
+                    count[day]++;
+                }
+            }
+
+            Map<String, TimePeriodSalesDTO> periodSalesMap = new HashMap<>();
+            for (int day = 0; day < days; day++) {
+                if (count[day] == 0) {
+                    continue;
+                }
+                String periodKey = LocalDate.ofEpochDay(minDay + day).format(period.getFormatter());
+                TimePeriodSalesDTO dto = periodSalesMap.computeIfAbsent(periodKey,
+                    k -> new TimePeriodSalesDTO(k, 0.0, 0, 0));
+                dto.setRevenue(dto.getRevenue() + revenue[day]);
+                dto.setSalesCount(dto.getSalesCount() + count[day]);
+                dto.setQuantity(dto.getQuantity() + quantity[day]);
+            }
+            return Optional.of(periodSalesMap.values().stream()
+                .sorted(Comparator.comparing(TimePeriodSalesDTO::getPeriod))
+                .collect(Collectors.toList()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Column and dictionary are looked up under the read lock, since a reset swaps them
+     */
+    private <T> Optional<List<T>> group(Supplier<int[]> codes, IntSupplier cardinality,
+                                        LocalDateTime startDate, LocalDateTime endDate, RowMapper<T> mapper) {
+        if (!isLoaded()) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            int[] column = codes.get();
+            Groups groups = new Groups(cardinality.getAsInt());
+            long from = lowerBound(startDate, endDate);
+            long to = upperBound(startDate, endDate);
+            for (int i = 0; i < size; i++) {
+                long t = saleMillis[i];
+                if (t > from && t < to) {
+                    int code = column[i];
+                    groups.revenue[code] += amounts[i];
+                    groups.quantity[code] += quantities[i];
+                    groups.count[code]++;
+                }
+            }
+
+            List<T> result = new ArrayList<>();
+            for (int code = 0; code < groups.count.length; code++) {
+                if (groups.count[code] > 0) {
+                    result.add(mapper.map(groups, code));
+                }
+            }
+            return Optional.of(result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static <T> List<T> sortByRevenue(List<T> rows, ToDoubleFunction<T> revenue) {
+        rows.sort((a, b) -> Double.compare(revenue.applyAsDouble(b), revenue.applyAsDouble(a)));
+        return rows;
+    }
+
+    private void clear() {
+        size = 0;
+        saleMillis = new long[INITIAL_CAPACITY];
+        productCodes = new int[INITIAL_CAPACITY];
+        categoryCodes = new int[INITIAL_CAPACITY];
+        regionCodes = new int[INITIAL_CAPACITY];
+        paymentCodes = new int[INITIAL_CAPACITY];
+        quantities = new int[INITIAL_CAPACITY];
+        amounts = new double[INITIAL_CAPACITY];
+        discounts = new double[INITIAL_CAPACITY];
+        premium = new boolean[INITIAL_CAPACITY];
+        products = new Dictionary<>();
+        categories = new Dictionary<>();
+        regions = new Dictionary<>();
+        paymentMethods = new Dictionary<>();
+        productNames = new ArrayList<>();
+        productCategories = new ArrayList<>();
+        minDay = Long.MAX_VALUE;
+        maxDay = Long.MIN_VALUE;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= saleMillis.length) {
+            return;
+        }
+        int capacity = Math.max(required, saleMillis.length * 2);
+        saleMillis = Arrays.copyOf(saleMillis, capacity);
+        productCodes = Arrays.copyOf(productCodes, capacity);
+        categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+        regionCodes = Arrays.copyOf(regionCodes, capacity);
+        paymentCodes = Arrays.copyOf(paymentCodes, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        discounts = Arrays.copyOf(discounts, capacity);
+        premium = Arrays.copyOf(premium, capacity);
+    }
+
+    private static long lowerBound(LocalDateTime startDate, LocalDateTime endDate) {
+        return startDate != null && endDate != null ? toMillis(startDate) : Long.MIN_VALUE;
+    }
+
+    private static long upperBound(LocalDateTime startDate, LocalDateTime endDate) {
+        return startDate != null && endDate != null ? toMillis(endDate) : Long.MAX_VALUE;
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Value to dense int code mapping, codes assigned in first-seen order
+     */
+    private static class Dictionary<K> {
+        private final Map<K, Integer> codes = new HashMap<>();
+        private final List<K> values = new ArrayList<>();
+
+        int encode(K value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        K decode(int code) {
+            return values.get(code);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    /**
+     * Per-code accumulators for one group-by
+     */
+    private static class Groups {
+        final double[] revenue;
+        final int[] quantity;
+        final int[] count;
+
+        Groups(int cardinality) {
+            revenue = new double[cardinality];
+            quantity = new int[cardinality];
+            count = new int[cardinality];
+        }
+    }
+
+    private interface RowMapper<T> {
+        T map(Groups groups, int code);
+    }
+}
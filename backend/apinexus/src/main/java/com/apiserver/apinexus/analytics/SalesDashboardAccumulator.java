@@ -0,0 +1,109 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.dto.*;
+import com.apiserver.apinexus.repository.projection.SaleMetrics;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Feeds every dashboard view (totals, per product, per category, per period, top-N)
+ * from a single pass over the sales, so one read of the range serves the whole page.
+ */
+public class SalesDashboardAccumulator implements Consumer<SaleMetrics> {
+
+    private final SalesPeriod period;
+    private final Long productFilter;
+
+    private double totalRevenue;
+    private int totalSales;
+    private int totalQuantity;
+    private double totalDiscounts;
+    private int premiumSales;
+
+    private final Map<Long, ProductSalesDTO> productSales = new HashMap<>();
+    private final Map<String, CategorySalesDTO> categorySales = new HashMap<>();
+    private final Map<String, TimePeriodSalesDTO> periodSales = new HashMap<>();
+    private final Map<Long, String> products = new LinkedHashMap<>();
+
+    // Period keys depend only on the calendar day, so format each day once
+    private final Map<LocalDate, String> periodKeys = new HashMap<>();
+
+    /**
+     * @param productFilter when set, only that product's sales feed the aggregates;
+     *                      the product list still covers every product in the range
+     */
+    public SalesDashboardAccumulator(SalesPeriod period, Long productFilter) {
+        this.period = period;
+        this.productFilter = productFilter;
+    }
+
+    @Override
+    public void accept(SaleMetrics sale) {
+        products.putIfAbsent(sale.productId(), sale.productName());
+        if (productFilter != null && !productFilter.equals(sale.productId())) {
+            return;
+        }
+
+        double revenue = sale.finalAmount();
+        int quantity = sale.quantity();
+
+        totalRevenue += revenue;
+        totalSales++;
+        totalQuantity += quantity;
+        totalDiscounts += sale.discountApplied() != null ? sale.discountApplied() : 0.0;
+        if (sale.premium()) {
+            premiumSales++;
+        }
+
+        ProductSalesDTO product = productSales.computeIfAbsent(sale.productId(),
+            id -> new ProductSalesDTO(id, sale.productName(), sale.category(), 0, 0.0, 0));
+        product.setTotalQuantity(product.getTotalQuantity() + quantity);
+        product.setTotalRevenue(product.getTotalRevenue() + revenue);
+        product.setSalesCount(product.getSalesCount() + 1);
+
+        CategorySalesDTO category = categorySales.computeIfAbsent(sale.category(),
+            c -> new CategorySalesDTO(c, 0, 0.0, 0));
+        category.setTotalQuantity(category.getTotalQuantity() + quantity);
+        category.setTotalRevenue(category.getTotalRevenue() + revenue);
+        category.setSalesCount(category.getSalesCount() + 1);
+
+        String periodKey = periodKeys.computeIfAbsent(sale.saleDate().toLocalDate(),
+            day -> day.format(period.getFormatter()));
+        TimePeriodSalesDTO periodDto = periodSales.computeIfAbsent(periodKey,
+            k -> new TimePeriodSalesDTO(k, 0.0, 0, 0));
+        periodDto.setRevenue(periodDto.getRevenue() + revenue);
+        periodDto.setSalesCount(periodDto.getSalesCount() + 1);
+        periodDto.setQuantity(periodDto.getQuantity() + quantity);
+    }
+
+    public SalesDashboardDTO toDashboard(int topLimit) {
+        List<ProductSalesDTO> byProduct = productSales.values().stream()
+            .sorted((a, b) -> Double.compare(b.getTotalRevenue(), a.getTotalRevenue()))
+            .collect(Collectors.toList());
+
+        List<CategorySalesDTO> byCategory = categorySales.values().stream()
+            .sorted((a, b) -> Double.compare(b.getTotalRevenue(), a.getTotalRevenue()))
+            .collect(Collectors.toList());
+
+        List<TimePeriodSalesDTO> byPeriod = periodSales.values().stream()
+            .sorted(Comparator.comparing(TimePeriodSalesDTO::getPeriod))
+            .collect(Collectors.toList());
+
+        List<ProductOptionDTO> productOptions = products.entrySet().stream()
+            .map(e -> new ProductOptionDTO(e.getKey(), e.getValue()))
+            .sorted(Comparator.comparing(ProductOptionDTO::getProductName, Comparator.nullsLast(String::compareTo)))
+            .collect(Collectors.toList());
+
+        return new SalesDashboardDTO(
+            InMemorySalesAggregator.toAnalytics(totalRevenue, totalSales, totalQuantity, totalDiscounts, premiumSales),
+            byProduct,
+            byCategory,
+            byPeriod,
+            byProduct.stream().limit(Math.max(topLimit, 0)).collect(Collectors.toList()),
+            productOptions
+        );
+    }
+}
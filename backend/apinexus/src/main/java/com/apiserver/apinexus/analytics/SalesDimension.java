@@ -0,0 +1,22 @@
+package com.apiserver.apinexus.analytics;
+
+/**
+ * String attributes of a sale the generic group-by views can break revenue down by
+ */
+public enum SalesDimension {
+    REGION("region"),
+    PAYMENT_METHOD("payment_method");
+
+    private final String field;
+
+    SalesDimension(String field) {
+        this.field = field;
+    }
+
+    /**
+     * Stored field name in the sales collection
+     */
+    public String getField() {
+        return field;
+    }
+}
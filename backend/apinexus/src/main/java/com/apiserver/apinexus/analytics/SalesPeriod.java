@@ -0,0 +1,53 @@
+package com.apiserver.apinexus.analytics;
+
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Time bucketing used by the sales "by period" views.
+ * Keys produced here are the same strings the API has always returned.
+ */
+public enum SalesPeriod {
+    DAILY("yyyy-MM-dd", "%Y-%m-%d"),
+    WEEKLY("yyyy-'W'ww", null),
+    MONTHLY("yyyy-MM", "%Y-%m"),
+    YEARLY("yyyy", "%Y");
+    
+    private final DateTimeFormatter formatter;
+    private final String mongoFormat;
+    
+    SalesPeriod(String pattern, String mongoFormat) {
+        this.formatter = DateTimeFormatter.ofPattern(pattern);
+        this.mongoFormat = mongoFormat;
+    }
+    
+    public DateTimeFormatter getFormatter() {
+        return formatter;
+    }
+    
+    /**
+     * $dateToString format producing the same key server-side, or null when the
+     * key (locale-dependent week numbering) can only be built in the JVM.
+     */
+    public String getMongoFormat() {
+        return mongoFormat;
+    }
+    
+    /**
+     * Resolve the request parameter, falling back to daily for unknown values
+     */
+    public static SalesPeriod from(String period) {
+        if (period == null) {
+            return DAILY;
+        }
+        switch (period.toLowerCase()) {
+            case "weekly":
+                return WEEKLY;
+            case "monthly":
+                return MONTHLY;
+            case "yearly":
+                return YEARLY;
+            default:
+                return DAILY;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.model.Sale;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Rebuilds a Mongo store derived from the sales collection (rollups, customer profiles) while
+ * sales keep being recorded, and remembers whether the last rebuild completed.
+ * <p>
+ * While the scan runs, recorded sales are buffered by id instead of applied, as the scan may
+ * still reach them. Sales the scan reaches are dropped from the buffer; sales it has already
+ * passed (tracked only for ids minted shortly before the rebuild began) are not buffered; the
+ * rest are applied when the scan ends, under the lock that holds off new writes, so every sale
+ * is counted once. A completed rebuild is recorded in derived_store_builds with the store's
+ * layout version; the record is removed when a rebuild starts and whenever the store misses sales,
+ * so an unfinished, stale or outdated store is rebuilt on the next start instead of being trusted
+ * because it is not empty.
+ */
+class SalesRebuildGuard {
+
+    static final String BUILDS_COLLECTION = "derived_store_builds";
+
+    private static final int BATCH_SIZE = 1000;
+    // Sales with ids minted this long before a rebuild may still have their event in flight
+    private static final long IN_FLIGHT_MS = 60_000L;
+
+    private final MongoTemplate mongoTemplate;
+    private final String store;
+    private final int version;
+    private final Consumer<Collection<Sale>> recorder;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object buffers = new Object();
+    // Both non-null only while a rebuild scans; guarded by buffers
+    private Map<String, Sale> pending;
+    private Set<String> scanned;
+    private volatile Instant inFlightSince;
+
+    /**
+     * version identifies the layout of the store's documents; raise it when they gain fields, so
+     * stores built before are rebuilt
+     */
+    SalesRebuildGuard(MongoTemplate mongoTemplate, String store, int version, Consumer<Collection<Sale>> recorder) {
+        this.mongoTemplate = mongoTemplate;
+        this.store = store;
+        this.version = version;
+        this.recorder = recorder;
+    }
+
+    /**
+     * Apply recorded sales, or hold them back while a rebuild is scanning
+     */
+    void record(Collection<Sale> sales) {
+        lock.readLock().lock();
+        try {
+            synchronized (buffers) {
+                if (pending != null) {
+                    for (Sale sale : sales) {
+                        if (!scanned.contains(sale.getId())) {
+                            pending.put(sale.getId(), sale);
+                        }
+                    }
+                    return;
+                }
+            }
+            recorder.accept(sales);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Like record, but never fails the sale write that published the sales: a failed write is
+     * logged and the completed rebuild forgotten, so the store is rebuilt on the next start.
+     * Returns whether the sales were applied
+     */
+    boolean tryRecord(Collection<Sale> sales) {
+        try {
+            record(sales);
+            return true;
+        } catch (RuntimeException e) {
+            System.err.println("Failed to apply " + sales.size() + " sales to " + store
+                + ", rebuilding it on the next start: " + e.getMessage());
+            invalidateQuietly();
+            return false;
+        }
+    }
+
+    /**
+     * Empty the store with clear, refill it from every sale and record the completed rebuild;
+     * returns the number of sales applied
+     */
+    long rebuild(Runnable clear) {
+        lock.writeLock().lock();
+        try {
+            invalidate();
+            synchronized (buffers) {
+                pending = new LinkedHashMap<>();
+                scanned = new HashSet<>();
+            }
+            inFlightSince = Instant.now().minusMillis(IN_FLIGHT_MS);
+            clear.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        boolean completed = false;
+        try {
+            long processed = scan();
+            lock.writeLock().lock();
+            try {
+                List<Sale> caughtUp;
+                synchronized (buffers) {
+                    caughtUp = new ArrayList<>(pending.values());
+                }
+                recorder.accept(caughtUp);
+                mongoTemplate.upsert(Query.query(Criteria.where("_id").is(store)),
+                    Update.update("completed_at", new Date()).set("version", version), BUILDS_COLLECTION);
+                completed = true;
+                return processed + caughtUp.size();
+            } finally {
+                stopBuffering();
+                lock.writeLock().unlock();
+            }
+        } finally {
+            if (!completed) {
+                // Writes go straight to the partial store again; it is rebuilt on the next start
+                lock.writeLock().lock();
+                try {
+                    stopBuffering();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * True when the last rebuild completed at the current version and no sales have been missed since
+     */
+    boolean isBuilt() {
+        return mongoTemplate.exists(Query.query(Criteria.where("_id").is(store).and("version").is(version)),
+            Document.class, BUILDS_COLLECTION);
+    }
+
+    /**
+     * Forget the completed rebuild, so the store is rebuilt on the next start
+     */
+    void invalidate() {
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(store)), BUILDS_COLLECTION);
+    }
+
+    /**
+     * invalidate for the event path, where a failure is logged rather than thrown
+     */
+    void invalidateQuietly() {
+        try {
+            invalidate();
+        } catch (RuntimeException e) {
+            System.err.println("Failed to mark " + store + " for rebuild: " + e.getMessage());
+        }
+    }
+
+    private long scan() {
+        long processed = 0;
+        List<Sale> batch = new ArrayList<>(BATCH_SIZE);
+        try (Stream<Sale> stream = mongoTemplate.stream(new Query(), Sale.class)) {
+            Iterator<Sale> sales = stream.iterator();
+            while (sales.hasNext()) {
+                Sale sale = sales.next();
+                boolean recent = mintedSince(sale.getId(), inFlightSince);
+                synchronized (buffers) {
+                    if (pending.remove(sale.getId()) == null && recent) {
+                        scanned.add(sale.getId());
+                    }
+                }
+                batch.add(sale);
+                if (batch.size() == BATCH_SIZE) {
+                    recorder.accept(batch);
+                    processed += batch.size();
+                    batch.clear();
+                }
+            }
+        }
+        recorder.accept(batch);
+        return processed + batch.size();
+    }
+
+    private void stopBuffering() {
+        synchronized (buffers) {
+            pending = null;
+            scanned = null;
+        }
+    }
+
+    /**
+     * Whether an id was minted at or after since; ids that are not ObjectIds count as recent
+     */
+    private static boolean mintedSince(String id, Instant since) {
+        if (id == null || !ObjectId.isValid(id)) {
+            return true;
+        }
+        return !new ObjectId(id).getDate().toInstant().isBefore(since);
+    }
+}
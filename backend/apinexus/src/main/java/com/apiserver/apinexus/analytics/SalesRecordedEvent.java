@@ -0,0 +1,22 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.model.Sale;
+
+import java.util.List;
+
+/**
+ * Published after sales have been written, either one at a time through
+ * SalesService.createSale or in batches by a bulk import.
+ */
+public class SalesRecordedEvent {
+    
+    private final List<Sale> sales;
+    
+    public SalesRecordedEvent(List<Sale> sales) {
+        this.sales = List.copyOf(sales);
+    }
+    
+    public List<Sale> getSales() {
+        return sales;
+    }
+}
@@ -0,0 +1,100 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.model.Sale;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Size- and TTL-bounded cache of computed sales views. Writes only evict the entries whose date
+ * range contains one of the new sales (plus the unbounded ones); every other range stays cached.
+ * Hit, miss and eviction counts are published as the "sales.analytics" cache meters.
+ */
+@Component
+public class SalesResultCache {
+
+    static final String CACHE_NAME = "sales.analytics";
+
+    private final Cache<SalesCacheKey, Object> cache;
+    private final boolean enabled;
+
+    public SalesResultCache(
+            @Value("${sales.cache.enabled:true}") boolean enabled,
+            @Value("${sales.cache.max-size:1000}") long maxSize,
+            @Value("${sales.cache.ttl-seconds:300}") long ttlSeconds,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Cached value for the key, computing and storing it on a miss
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(SalesCacheKey key, Supplier<T> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        return (T) cache.get(key, k -> loader.get());
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * Runs after the derived stores (rollups, cube listen at highest precedence) have taken the
+     * sales in, so a view recomputed straight after the eviction already sees them
+     */
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onSalesRecorded(SalesRecordedEvent event) {
+        LocalDateTime[] saleDates = event.getSales().stream()
+            .map(Sale::getSaleDate)
+            .filter(Objects::nonNull)
+            .sorted()
+            .toArray(LocalDateTime[]::new);
+        if (saleDates.length > 0) {
+            cache.asMap().keySet().removeIf(key -> covers(key, saleDates));
+        }
+    }
+
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onSalesCleared(SalesClearedEvent event) {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Whether any of the sorted sale dates falls inside the key's exclusive range
+     */
+    static boolean covers(SalesCacheKey key, LocalDateTime[] sortedSaleDates) {
+        if (!key.isBounded()) {
+            return true;
+        }
+        int index = Arrays.binarySearch(sortedSaleDates, key.startDate());
+        // First date strictly after the start bound
+        int first = index >= 0 ? index + 1 : -index - 1;
+        while (first < sortedSaleDates.length && sortedSaleDates[first].equals(key.startDate())) {
+            first++;
+        }
+        return first < sortedSaleDates.length && sortedSaleDates[first].isBefore(key.endDate());
+    }
+}
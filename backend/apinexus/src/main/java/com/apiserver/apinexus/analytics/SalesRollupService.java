@@ -0,0 +1,318 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.dto.SalesAnalyticsDTO;
+import com.apiserver.apinexus.dto.TimePeriodSalesDTO;
+import com.apiserver.apinexus.model.Sale;
+import com.apiserver.apinexus.model.SalesRollup;
+import com.apiserver.apinexus.model.SalesRollup.Dimension;
+import com.apiserver.apinexus.model.SalesRollup.Granularity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Incrementally maintained hour/day/month sales buckets per product, category and region.
+ * Period and summary reads come from the bucket documents instead of the raw sales, once the
+ * buckets are known to cover every sale (see {@link #isReady()}); until then reads are empty and
+ * callers aggregate raw sales. Rebuilds run through a {@link SalesRebuildGuard}, so sales recorded
+ * during a rebuild are counted once.
+ */
+@Component
+public class SalesRollupService {
+
+    static final String ALL_KEY = "*";
+    // 2: buckets carry premium_revenue
+    private static final int LAYOUT_VERSION = 2;
+
+    private final MongoTemplate mongoTemplate;
+    private final SalesRebuildGuard rebuildGuard;
+
+    @Value("${sales.rollup.enabled:true}")
+    private boolean enabled;
+
+    private volatile boolean ready;
+    private volatile boolean missedSales;
+
+    public SalesRollupService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+        this.rebuildGuard = new SalesRebuildGuard(mongoTemplate, "sales_rollups", LAYOUT_VERSION, this::record);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * True once the buckets cover every existing sale and can serve reads
+     */
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    public void markReady() {
+        ready = true;
+    }
+
+    /**
+     * Whether the last rebuild completed and no sales were missed since
+     */
+    public boolean isBuilt() {
+        return rebuildGuard.isBuilt();
+    }
+
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onSalesRecorded(SalesRecordedEvent event) {
+        if (enabled) {
+            if (!rebuildGuard.tryRecord(event.getSales())) {
+                // The sale is saved; reads fall back to raw sales until the next rebuild
+                ready = false;
+            }
+        } else if (!missedSales) {
+            // Rebuilt on the next start with rollups enabled
+            rebuildGuard.invalidateQuietly();
+            missedSales = true;
+        }
+    }
+
+    @EventListener
+    public void onSalesCleared(SalesClearedEvent event) {
+        mongoTemplate.remove(new Query(), SalesRollup.class);
+    }
+
+    /**
+     * Add the given sales to every bucket they fall into.
+     * Sales sharing a bucket are merged first, so a batch costs one upsert per touched bucket.
+     */
+    public void record(Collection<Sale> sales) {
+        Map<String, SalesRollup> increments = new HashMap<>();
+        for (Sale sale : sales) {
+            if (sale.getSaleDate() == null) {
+                continue;
+            }
+            for (Granularity granularity : Granularity.values()) {
+                LocalDateTime bucketStart = bucketStart(sale.getSaleDate(), granularity);
+                for (Dimension dimension : Dimension.values()) {
+                    String key = keyOf(sale, dimension);
+                    if (key == null) {
+                        continue;
+                    }
+                    String id = granularity + "|" + dimension + "|" + key + "|" + bucketStart;
+                    SalesRollup rollup = increments.computeIfAbsent(id, k ->
+                        new SalesRollup(k, granularity, bucketStart, dimension, key, 0.0, 0L, 0L, 0.0, 0L, 0.0));
+                    add(rollup, sale, 1);
+                }
+            }
+        }
+        if (increments.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SalesRollup.class);
+        for (SalesRollup rollup : increments.values()) {
+            Update update = new Update()
+                .setOnInsert("granularity", rollup.getGranularity())
+                .setOnInsert("bucketStart", rollup.getBucketStart())
+                .setOnInsert("dimension", rollup.getDimension())
+                .setOnInsert("key", rollup.getKey())
+                .inc("revenue", rollup.getRevenue())
+                .inc("salesCount", rollup.getSalesCount())
+                .inc("quantity", rollup.getQuantity())
+                .inc("discount", rollup.getDiscount())
+                .inc("premiumCount", rollup.getPremiumCount())
+                .inc("premiumRevenue", rollup.getPremiumRevenue());
+            bulk.upsert(Query.query(Criteria.where("_id").is(rollup.getId())), update);
+        }
+        bulk.execute();
+    }
+
+    /**
+     * Drop all buckets and rebuild them from the raw sales collection; reads fall back to raw
+     * sales until it completes
+     */
+    public long rebuild() {
+        ready = false;
+        long processed = rebuildGuard.rebuild(() -> {
+            mongoTemplate.remove(new Query(), SalesRollup.class);
+            ensureIndexes();
+        });
+        ready = true;
+        return processed;
+    }
+
+    public void ensureIndexes() {
+        mongoTemplate.indexOps(SalesRollup.class).createIndex(new Index()
+            .on("granularity", Sort.Direction.ASC)
+            .on("dimension", Sort.Direction.ASC)
+            .on("bucket_start", Sort.Direction.ASC)
+            .named("granularity_dimension_bucket_start"));
+    }
+
+    /**
+     * Period view read from buckets. Buckets cover [startDate, endDate), so a range is only
+     * served when both bounds sit on an hour boundary; otherwise the result is empty and
+     * the caller should aggregate raw sales. Like the raw-sales paths the start is exclusive.
+     */
+    public Optional<List<TimePeriodSalesDTO>> byPeriod(SalesPeriod period, LocalDateTime startDate, LocalDateTime endDate) {
+        Granularity natural = (period == SalesPeriod.MONTHLY || period == SalesPeriod.YEARLY)
+            ? Granularity.MONTH
+            : Granularity.DAY;
+
+        return granularityFor(natural, startDate, endDate).map(granularity -> {
+            Map<String, TimePeriodSalesDTO> periodSalesMap = new HashMap<>();
+            for (SalesRollup rollup : read(granularity, startDate, endDate)) {
+                String periodKey = rollup.getBucketStart().format(period.getFormatter());
+                TimePeriodSalesDTO dto = periodSalesMap.computeIfAbsent(periodKey,
+                    k -> new TimePeriodSalesDTO(k, 0.0, 0, 0));
+                dto.setRevenue(dto.getRevenue() + rollup.getRevenue());
+                dto.setSalesCount(dto.getSalesCount() + rollup.getSalesCount().intValue());
+                dto.setQuantity(dto.getQuantity() + rollup.getQuantity().intValue());
+            }
+            return periodSalesMap.values().stream()
+                .sorted(Comparator.comparing(TimePeriodSalesDTO::getPeriod))
+                .collect(Collectors.toList());
+        });
+    }
+
+    /**
+     * Summary read from buckets, under the same range rules as {@link #byPeriod}
+     */
+    public Optional<SalesAnalyticsDTO> analytics(LocalDateTime startDate, LocalDateTime endDate) {
+        return granularityFor(Granularity.MONTH, startDate, endDate).map(granularity -> {
+            double revenue = 0.0;
+            double discount = 0.0;
+            long count = 0;
+            long quantity = 0;
+            long premium = 0;
+            for (SalesRollup rollup : read(granularity, startDate, endDate)) {
+                revenue += rollup.getRevenue();
+                discount += rollup.getDiscount();
+                count += rollup.getSalesCount();
+                quantity += rollup.getQuantity();
+                premium += rollup.getPremiumCount();
+            }
+            return InMemorySalesAggregator.toAnalytics(revenue, (int) count, (int) quantity, discount, (int) premium);
+        });
+    }
+
+    /**
+     * All-time totals per key of a dimension (e.g. revenue per category), summed from the month
+     * buckets; empty until the buckets are ready
+     */
+    public Optional<Map<String, SalesRollup>> totals(Dimension dimension) {
+        if (!isReady()) {
+            return Optional.empty();
+        }
+        Query query = Query.query(Criteria.where("granularity").is(Granularity.MONTH).and("dimension").is(dimension));
+        Map<String, SalesRollup> totals = new HashMap<>();
+        for (SalesRollup rollup : mongoTemplate.find(query, SalesRollup.class)) {
+            SalesRollup total = totals.computeIfAbsent(rollup.getKey(), key ->
+                new SalesRollup(null, Granularity.MONTH, null, dimension, key, 0.0, 0L, 0L, 0.0, 0L, 0.0));
+            total.setRevenue(total.getRevenue() + rollup.getRevenue());
+            total.setSalesCount(total.getSalesCount() + rollup.getSalesCount());
+            total.setQuantity(total.getQuantity() + rollup.getQuantity());
+            total.setDiscount(total.getDiscount() + rollup.getDiscount());
+            total.setPremiumCount(total.getPremiumCount() + rollup.getPremiumCount());
+            total.setPremiumRevenue(total.getPremiumRevenue() + rollup.getPremiumRevenue());
+        }
+        return Optional.of(totals);
+    }
+
+    /**
+     * Buckets in [startDate, endDate). The range start is exclusive everywhere else
+     * (findBySaleDateBetween, the Mongo pipelines), so sales at exactly startDate are taken
+     * back out of the first bucket; that is one indexed lookup on sale_date.
+     */
+    private List<SalesRollup> read(Granularity granularity, LocalDateTime startDate, LocalDateTime endDate) {
+        Criteria criteria = Criteria.where("granularity").is(granularity)
+            .and("dimension").is(Dimension.ALL);
+        if (startDate == null || endDate == null) {
+            return mongoTemplate.find(Query.query(criteria), SalesRollup.class);
+        }
+        criteria = criteria.and("bucketStart").gte(startDate).lt(endDate);
+        List<SalesRollup> rollups = mongoTemplate.find(Query.query(criteria), SalesRollup.class);
+        rollups.stream()
+            .filter(rollup -> rollup.getBucketStart().equals(startDate))
+            .findFirst()
+            .ifPresent(first -> mongoTemplate.find(Query.query(Criteria.where("saleDate").is(startDate)), Sale.class)
+                .forEach(sale -> add(first, sale, -1)));
+        return rollups;
+    }
+
+    /**
+     * Coarsest granularity no coarser than the natural one whose boundaries line up with the range
+     */
+    private Optional<Granularity> granularityFor(Granularity natural, LocalDateTime startDate, LocalDateTime endDate) {
+        if (!isReady()) {
+            return Optional.empty();
+        }
+        if (startDate == null || endDate == null) {
+            return Optional.of(natural);
+        }
+        for (int i = natural.ordinal(); i >= 0; i--) {
+            Granularity granularity = Granularity.values()[i];
+            if (isAligned(startDate, granularity) && isAligned(endDate, granularity)) {
+                return Optional.of(granularity);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static boolean isAligned(LocalDateTime dateTime, Granularity granularity) {
+        return bucketStart(dateTime, granularity).equals(dateTime);
+    }
+
+    static LocalDateTime bucketStart(LocalDateTime dateTime, Granularity granularity) {
+        switch (granularity) {
+            case HOUR:
+                return dateTime.truncatedTo(ChronoUnit.HOURS);
+            case DAY:
+                return dateTime.truncatedTo(ChronoUnit.DAYS);
+            default:
+                return dateTime.toLocalDate().withDayOfMonth(1).atTime(LocalTime.MIDNIGHT);
+        }
+    }
+
+    private static String keyOf(Sale sale, Dimension dimension) {
+        switch (dimension) {
+            case PRODUCT:
+                return sale.getProductId() != null ? sale.getProductId().toString() : null;
+            case CATEGORY:
+                return sale.getCategory();
+            case REGION:
+                return sale.getRegion();
+            default:
+                return ALL_KEY;
+        }
+    }
+
+    /**
+     * Add (sign 1) or remove (sign -1) one sale
+     */
+    private static void add(SalesRollup rollup, Sale sale, int sign) {
+        rollup.setRevenue(rollup.getRevenue() + sign * (sale.getFinalAmount() != null ? sale.getFinalAmount() : 0.0));
+        rollup.setSalesCount(rollup.getSalesCount() + sign);
+        rollup.setQuantity(rollup.getQuantity() + sign * (sale.getQuantity() != null ? sale.getQuantity() : 0));
+        rollup.setDiscount(rollup.getDiscount() + sign * (sale.getDiscountApplied() != null ? sale.getDiscountApplied() : 0.0));
+        if (sale.getIsPremiumCustomer() != null && sale.getIsPremiumCustomer()) {
+            rollup.setPremiumCount(rollup.getPremiumCount() + sign);
+            rollup.setPremiumRevenue(rollup.getPremiumRevenue()
+                + sign * (sale.getFinalAmount() != null ? sale.getFinalAmount() : 0.0));
+        }
+    }
+}
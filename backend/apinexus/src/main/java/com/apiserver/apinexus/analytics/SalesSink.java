@@ -0,0 +1,29 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.model.Sale;
+
+import java.util.Collection;
+
+/**
+ * In-process structure derived from the sales collection. It is filled once at startup by
+ * {@link com.apiserver.apinexus.initializer.SalesSinkInitializer} (one shared scan for every
+ * enabled sink) and kept current afterwards from the {@link SalesRecordedEvent}s the
+ * initializer forwards to it. Sales recorded while the load runs are held back and appended
+ * just before {@link #markLoaded()}, so a sink never misses or double-counts one.
+ */
+public interface SalesSink {
+
+    boolean isEnabled();
+
+    /**
+     * Drop everything held so far, before a full load
+     */
+    void reset();
+
+    void append(Collection<Sale> sales);
+
+    /**
+     * Called once the startup load has been appended; reads may be served from here on
+     */
+    void markLoaded();
+}
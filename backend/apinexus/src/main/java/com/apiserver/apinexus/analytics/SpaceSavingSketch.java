@@ -0,0 +1,145 @@
+package com.apiserver.apinexus.analytics;
+
+import java.util.*;
+
+/**
+ * Weighted Space-Saving heavy-hitter sketch over a fixed number of counters. While there are
+ * no more distinct keys than counters every total is exact; after that, a new key takes over
+ * the smallest counter and inherits its weight as the error bound, so each estimate is at most
+ * {@code error} above the true total and any key heavier than total/capacity is guaranteed kept.
+ * Counters live in an indexed min-heap, so an update costs O(log capacity). Not thread-safe.
+ *
+ * @param <K> tracked key
+ * @param <L> descriptive label kept with a counter (e.g. product name), taken from its first sale
+ */
+public class SpaceSavingSketch<K, L> {
+
+    private final int capacity;
+    private final Map<K, Counter<K, L>> counters;
+    private final List<Counter<K, L>> heap;
+    private double totalWeight;
+
+    public SpaceSavingSketch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Sketch capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new ArrayList<>(capacity);
+    }
+
+    public void offer(K key, L label, double weight, int quantity) {
+        totalWeight += weight;
+        Counter<K, L> counter = counters.get(key);
+        if (counter == null) {
+            if (heap.size() < capacity) {
+                counter = new Counter<>(key, label, heap.size());
+                heap.add(counter);
+            } else {
+                // Evict the lightest key; the newcomer may have had up to that weight already
+                counter = heap.get(0);
+                counters.remove(counter.key);
+                counter.reassign(key, label);
+            }
+            counters.put(key, counter);
+        }
+        counter.weight += weight;
+        counter.quantity += quantity;
+        counter.count++;
+        siftDown(counter.index);
+    }
+
+    /**
+     * The k heaviest counters, heaviest first
+     */
+    public List<Counter<K, L>> top(int k) {
+        return TopK.largest(heap, k, Comparator.comparingDouble(c -> c.weight));
+    }
+
+    public double getTotalWeight() {
+        return totalWeight;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return heap.size();
+    }
+
+    public void clear() {
+        counters.clear();
+        heap.clear();
+        totalWeight = 0.0;
+    }
+
+    // Weights only grow, so a changed counter can only need to move down the min-heap
+    private void siftDown(int index) {
+        int size = heap.size();
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && heap.get(left).weight < heap.get(smallest).weight) {
+                smallest = left;
+            }
+            if (right < size && heap.get(right).weight < heap.get(smallest).weight) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        Counter<K, L> a = heap.get(i);
+        Counter<K, L> b = heap.get(j);
+        heap.set(i, b);
+        heap.set(j, a);
+        a.index = j;
+        b.index = i;
+    }
+
+    /**
+     * One tracked key. {@code weight} overestimates the true total by at most {@code error};
+     * {@code quantity} and {@code count} cover only the sales seen since the key took the counter.
+     */
+    public static final class Counter<K, L> {
+        private K key;
+        private L label;
+        private double weight;
+        private double error;
+        private int quantity;
+        private int count;
+        private int index;
+
+        private Counter(K key, L label, int index) {
+            this.key = key;
+            this.label = label;
+            this.index = index;
+        }
+
+        private void reassign(K newKey, L newLabel) {
+            key = newKey;
+            label = newLabel;
+            error = weight;
+            quantity = 0;
+            count = 0;
+        }
+
+        public K getKey() { return key; }
+        public L getLabel() { return label; }
+        public double getWeight() { return weight; }
+        public double getError() { return error; }
+        public int getQuantity() { return quantity; }
+        public int getCount() { return count; }
+
+        public boolean isExact() {
+            return error == 0.0;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.dto.ProductPerformanceDTO;
+import com.apiserver.apinexus.repository.projection.SuggestionSaleView;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Everything the suggestion generators need from the sales collection, collected in one
+ * pass, or taken from pre-aggregated totals when the trackers already hold the rest. A snapshot is read-only once built, so one instance can feed all generators of a
+ * request (or be shared between requests) without further reads.
+ */
+public final class SuggestionSnapshot {
+
+    /**
+     * Discount, revenue and sale count for one category
+     */
+    public record CategoryTotals(double totalDiscount, double totalRevenue, long salesCount) {}
+
+    private final LocalDateTime asOf;
+    private final long salesScanned;
+    private final Map<String, CategoryTotals> categoryTotals;
+    private final List<ProductPerformanceDTO> productPerformance;
+    private final long totalCustomers;
+    private final long premiumCustomers;
+    private final double regularCustomerRevenue;
+    private final long singleCategoryCustomers;
+    private final long lapsedCustomers;
+    private final Map<String, Double> revenueByRegion;
+    private final Map<String, Long> salesCountByRegion;
+    private final CoPurchaseCounts coPurchases;
+
+    private SuggestionSnapshot(Builder builder) {
+        this.asOf = builder.asOf;
+        this.salesScanned = builder.salesScanned;
+        this.categoryTotals = Collections.unmodifiableMap(builder.categoryTotals.entrySet().stream()
+            .collect(Collectors.toMap(Map.Entry::getKey,
+                e -> new CategoryTotals(e.getValue()[0], e.getValue()[1], (long) e.getValue()[2]))));
+        this.productPerformance = Collections.unmodifiableList(builder.productPerformance());
+        this.totalCustomers = builder.customers.size();
+        this.premiumCustomers = builder.premiumCustomers.size();
+        this.regularCustomerRevenue = builder.regularCustomerRevenue;
+        this.singleCategoryCustomers = builder.customerCategories.values().stream()
+            .filter(categories -> categories.size() == 1)
+            .count();
+        this.lapsedCustomers = builder.windowCustomers.stream()
+            .filter(id -> !builder.recentCustomers.contains(id))
+            .count();
+        this.revenueByRegion = Collections.unmodifiableMap(builder.revenueByRegion);
+        this.salesCountByRegion = Collections.unmodifiableMap(builder.salesCountByRegion);
+        this.coPurchases = builder.coPurchases;
+    }
+
+    public static Builder builder(LocalDateTime asOf) {
+        return new Builder(asOf, null);
+    }
+
+    /**
+     * Builder that also counts co-purchased product pairs into the given (empty) counts
+     */
+    public static Builder builder(LocalDateTime asOf, CoPurchaseCounts coPurchases) {
+        return new Builder(asOf, coPurchases);
+    }
+
+    /**
+     * Reference time for every "days since" and 30/60-day window in the snapshot
+     */
+    public LocalDateTime getAsOf() {
+        return asOf;
+    }
+
+    public long getSalesScanned() {
+        return salesScanned;
+    }
+
+    public Map<String, CategoryTotals> getCategoryTotals() {
+        return categoryTotals;
+    }
+
+    /**
+     * Per-product performance, highest velocity first
+     */
+    public List<ProductPerformanceDTO> getProductPerformance() {
+        return productPerformance;
+    }
+
+    public long getTotalCustomers() {
+        return totalCustomers;
+    }
+
+    public long getPremiumCustomers() {
+        return premiumCustomers;
+    }
+
+    public double getRegularCustomerRevenue() {
+        return regularCustomerRevenue;
+    }
+
+    public long getSingleCategoryCustomers() {
+        return singleCategoryCustomers;
+    }
+
+    /**
+     * Customers who bought 30-60 days ago but not in the last 30 days
+     */
+    public long getLapsedCustomers() {
+        return lapsedCustomers;
+    }
+
+    public Map<String, Double> getRevenueByRegion() {
+        return revenueByRegion;
+    }
+
+    public Map<String, Long> getSalesCountByRegion() {
+        return salesCountByRegion;
+    }
+
+    /**
+     * Co-purchase counts, when the builder was given counts to fill
+     */
+    public Optional<CoPurchaseCounts> getCoPurchases() {
+        return Optional.ofNullable(coPurchases);
+    }
+
+    /**
+     * Single-use accumulator; memory follows the customer and product counts, not the sale count
+     */
+    public static final class Builder {
+
+        private final LocalDateTime asOf;
+        private final LocalDateTime thirtyDaysAgo;
+        private final LocalDateTime sixtyDaysAgo;
+        private long salesScanned;
+
+        // Per category: discount, revenue, sale count
+        private final Map<String, double[]> categoryTotals = new HashMap<>();
+        private final Map<Long, ProductStats> productStats = new HashMap<>();
+        private double velocityHalfLifeDays = ProductVelocityTracker.DEFAULT_HALF_LIFE_DAYS;
+        private boolean customerSets = true;
+        private boolean customerCategorySets = true;
+        private final Set<Long> customers = new HashSet<>();
+        private final Set<Long> premiumCustomers = new HashSet<>();
+        private final Map<Long, Set<String>> customerCategories = new HashMap<>();
+        private final Set<Long> recentCustomers = new HashSet<>();
+        private final Set<Long> windowCustomers = new HashSet<>();
+        private double regularCustomerRevenue;
+        private final Map<String, Double> revenueByRegion = new HashMap<>();
+        private final Map<String, Long> salesCountByRegion = new HashMap<>();
+        private final CoPurchaseCounts coPurchases;
+
+        private Builder(LocalDateTime asOf, CoPurchaseCounts coPurchases) {
+            this.asOf = asOf;
+            this.coPurchases = coPurchases;
+            this.thirtyDaysAgo = asOf.minusDays(30);
+            this.sixtyDaysAgo = asOf.minusDays(60);
+        }
+
+        /**
+         * Half-life of the decayed product velocity; set before adding sales
+         */
+        public Builder velocityHalfLifeDays(double days) {
+            this.velocityHalfLifeDays = days;
+            return this;
+        }
+
+        /**
+         * Skip the customer id sets behind total, premium and lapsed customer counts (which
+         * then read 0), for callers that take those counts from sketches instead
+         */
+        public Builder withoutCustomerSets() {
+            this.customerSets = false;
+            return this;
+        }
+
+        /**
+         * Skip the per-customer category sets behind the single-category count (which then reads 0)
+         */
+        public Builder withoutCustomerCategories() {
+            this.customerCategorySets = false;
+            return this;
+        }
+
+        /**
+         * Add pre-aggregated totals for a category, for snapshots built without a sales scan
+         */
+        public Builder addCategory(String category, double totalDiscount, double totalRevenue, long salesCount) {
+            double[] totals = categoryTotals.computeIfAbsent(category, k -> new double[3]);
+            totals[0] += totalDiscount;
+            totals[1] += totalRevenue;
+            totals[2] += salesCount;
+            return this;
+        }
+
+        /**
+         * Add pre-aggregated totals for a region, for snapshots built without a sales scan
+         */
+        public Builder addRegion(String region, double revenue, long salesCount) {
+            revenueByRegion.merge(region, revenue, Double::sum);
+            salesCountByRegion.merge(region, salesCount, Long::sum);
+            return this;
+        }
+
+        /**
+         * Add revenue from sales to regular (non-premium) customers, for snapshots built without a sales scan
+         */
+        public Builder addRegularCustomerRevenue(double revenue) {
+            regularCustomerRevenue += revenue;
+            return this;
+        }
+
+        public Builder add(SuggestionSaleView sale) {
+            salesScanned++;
+
+            double[] totals = categoryTotals.computeIfAbsent(sale.category(), k -> new double[3]);
+            totals[0] += sale.discountApplied() != null ? sale.discountApplied() : 0.0;
+            totals[1] += sale.finalAmount();
+            totals[2]++;
+
+            productStats.computeIfAbsent(sale.productId(), k -> new ProductStats(velocityHalfLifeDays))
+                .add(sale.productName(), sale.category(), sale.quantity(), sale.finalAmount(), sale.unitPrice(),
+                    sale.saleDate());
+
+            Long customerId = sale.customerId();
+            if (!sale.premium()) {
+                regularCustomerRevenue += sale.finalAmount();
+            }
+            if (customerCategorySets) {
+                customerCategories.computeIfAbsent(customerId, k -> new HashSet<>()).add(sale.category());
+            }
+            if (customerSets) {
+                customers.add(customerId);
+                if (sale.premium()) {
+                    premiumCustomers.add(customerId);
+                }
+                if (sale.saleDate().isAfter(thirtyDaysAgo)) {
+                    recentCustomers.add(customerId);
+                } else if (sale.saleDate().isBefore(thirtyDaysAgo) && sale.saleDate().isAfter(sixtyDaysAgo)) {
+                    windowCustomers.add(customerId);
+                }
+            }
+
+            revenueByRegion.merge(sale.region(), sale.finalAmount(), Double::sum);
+            salesCountByRegion.merge(sale.region(), 1L, Long::sum);
+
+            if (coPurchases != null) {
+                coPurchases.add(customerId, sale.productId());
+            }
+            return this;
+        }
+
+        public SuggestionSnapshot build() {
+            return new SuggestionSnapshot(this);
+        }
+
+        private List<ProductPerformanceDTO> productPerformance() {
+            List<ProductPerformanceDTO> performances = new ArrayList<>();
+            for (Map.Entry<Long, ProductStats> entry : productStats.entrySet()) {
+                ProductPerformanceDTO performance = entry.getValue().toPerformance(entry.getKey(), asOf);
+                if (performance != null) {
+                    performances.add(performance);
+                }
+            }
+            performances.sort(Comparator.comparing(ProductPerformanceDTO::getVelocityScore).reversed());
+            return performances;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.apiserver.apinexus.analytics;
+
+import java.util.*;
+
+/**
+ * Exact top-K selection with a bounded min-heap: O(n log k) time and O(k) memory,
+ * instead of sorting all n items and cutting the list afterwards.
+ */
+public final class TopK {
+
+    private TopK() {}
+
+    /**
+     * The k largest items under the given order, largest first
+     */
+    public static <T> List<T> largest(Iterable<T> items, int k, Comparator<? super T> order) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        PriorityQueue<T> heap = new PriorityQueue<>(Math.min(k, 1024) + 1, order);
+        for (T item : items) {
+            if (heap.size() < k) {
+                heap.add(item);
+            } else if (order.compare(item, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(item);
+            }
+        }
+
+        List<T> result = new ArrayList<>(heap);
+        result.sort(order.reversed());
+        return result;
+    }
+}
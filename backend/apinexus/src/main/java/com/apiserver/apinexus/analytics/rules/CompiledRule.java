@@ -0,0 +1,426 @@
+package com.apiserver.apinexus.analytics.rules;
+
+import com.apiserver.apinexus.dto.SuggestionDTO;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link SuggestionRule} resolved against its scope: field names become column indexes,
+ * conditions become filters over a selection of rows, and templates are split into literal
+ * and field parts. Every name is checked here, so a typo fails when the rules are loaded
+ * rather than when they are evaluated. A condition comparing a field with a constant or an
+ * aggregate runs as a tight loop over one column; the first condition sees every row of the
+ * scope and each later one only the rows still selected.
+ */
+public final class CompiledRule {
+
+    private static final Pattern AGGREGATE = Pattern.compile("(avg|sum|min|max|count)\\((\\w+)\\)");
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{([^{}:]+)(?::([^{}]+))?}");
+    private static final int DEFAULT_LIMIT = 10;
+
+    @FunctionalInterface
+    private interface RowValue {
+        double value(FactTable table, int row);
+    }
+
+    @FunctionalInterface
+    private interface RowTest {
+        boolean test(FactTable table, int row);
+    }
+
+    /**
+     * Keeps the selected rows that pass, compacted to the front; returns how many remain
+     */
+    @FunctionalInterface
+    private interface Filter {
+        int apply(FactTable table, int[] rows, int count);
+    }
+
+    /**
+     * A value and whether it is the same for every row (a constant or an aggregate)
+     */
+    private record Operand(RowValue value, boolean invariant) {}
+
+    @FunctionalInterface
+    private interface RowText {
+        String text(FactTable table, int row);
+    }
+
+    private final String id;
+    private final RuleScope scope;
+    private final Filter[] conditions;
+    private final String category;
+    private final String priority;
+    private final RowText title;
+    private final RowText description;
+    private final RowText actionable;
+    private final double impactScore;
+    private final String metric;
+    private final RowValue currentValue;
+    private final RowValue potentialValue;
+    private final RowValue orderBy;
+    private final int limit;
+
+    private CompiledRule(SuggestionRule rule) {
+        this.id = required(rule.getId(), "id", "?");
+        this.scope = parseScope(rule);
+        List<SuggestionRule.Condition> when = rule.getWhen() != null ? rule.getWhen() : List.of();
+        this.conditions = new Filter[when.size()];
+        for (int i = 0; i < conditions.length; i++) {
+            conditions[i] = condition(when.get(i));
+        }
+        this.category = required(rule.getCategory(), "category", id);
+        this.priority = required(rule.getPriority(), "priority", id);
+        this.title = template(required(rule.getTitle(), "title", id));
+        this.description = rule.getDescription() != null ? template(rule.getDescription()) : null;
+        this.actionable = rule.getActionable() != null ? template(rule.getActionable()) : null;
+        this.impactScore = rule.getImpactScore() != null ? rule.getImpactScore() : 50.0;
+        this.metric = rule.getMetric();
+        this.currentValue = rule.getCurrentValue() != null ? value(rule.getCurrentValue()).value() : null;
+        this.potentialValue = rule.getPotentialValue() != null ? value(rule.getPotentialValue()).value() : null;
+        this.orderBy = rule.getOrderBy() != null ? reference(rule.getOrderBy()).value() : null;
+        this.limit = rule.getLimit() != null ? rule.getLimit() : DEFAULT_LIMIT;
+    }
+
+    /**
+     * Resolve and check a declared rule
+     *
+     * @throws IllegalArgumentException naming the rule and the offending part
+     */
+    public static CompiledRule compile(SuggestionRule rule) {
+        return new CompiledRule(rule);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public RuleScope getScope() {
+        return scope;
+    }
+
+    /**
+     * Append this rule's suggestions for the given facts
+     */
+    public void evaluate(RuleFacts facts, List<SuggestionDTO> out) {
+        FactTable table = facts.table(scope);
+        if (table.rows() == 0 || limit <= 0) {
+            return;
+        }
+        int[] rows = new int[table.rows()];
+        for (int row = 0; row < rows.length; row++) {
+            rows[row] = row;
+        }
+        int selected = rows.length;
+        for (Filter condition : conditions) {
+            selected = condition.apply(table, rows, selected);
+            if (selected == 0) {
+                return;
+            }
+        }
+
+        // The best `limit` matches, kept sorted by orderBy descending (or in row order)
+        int[] matches = new int[Math.min(limit, selected)];
+        double[] keys = new double[matches.length];
+        int count = 0;
+        for (int i = 0; i < selected; i++) {
+            int row = rows[i];
+            if (orderBy == null) {
+                matches[count++] = row;
+                if (count == matches.length) {
+                    break;
+                }
+                continue;
+            }
+            double key = orderBy.value(table, row);
+            if (count == matches.length && key <= keys[count - 1]) {
+                continue;
+            }
+            int position = count < matches.length ? count++ : count - 1;
+            while (position > 0 && keys[position - 1] < key) {
+                keys[position] = keys[position - 1];
+                matches[position] = matches[position - 1];
+                position--;
+            }
+            keys[position] = key;
+            matches[position] = row;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int row = matches[i];
+            out.add(new SuggestionDTO(
+                category,
+                priority,
+                title.text(table, row),
+                description != null ? description.text(table, row) : null,
+                actionable != null ? actionable.text(table, row) : null,
+                impactScore,
+                metric,
+                currentValue != null ? currentValue.value(table, row) : null,
+                potentialValue != null ? potentialValue.value(table, row) : null
+            ));
+        }
+    }
+
+    private RuleScope parseScope(SuggestionRule rule) {
+        String name = required(rule.getScope(), "scope", id);
+        try {
+            return RuleScope.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw invalid("unknown scope '" + name + "', expected one of " + Arrays.toString(RuleScope.values()));
+        }
+    }
+
+    private Filter condition(SuggestionRule.Condition condition) {
+        String field = required(condition.getField(), "condition field", id);
+        String op = required(condition.getOp(), "condition op", id);
+        int textColumn = scope.textColumn(field);
+        if (textColumn >= 0) {
+            return textCondition(textColumn, field, op, condition.getValue());
+        }
+
+        RowValue left = reference(field).value();
+        Object spec = condition.getValue();
+        if (spec == null) {
+            throw invalid("condition on '" + field + "' has no value");
+        }
+        Operand right = value(spec);
+        int column = scope.numericColumn(field);
+        if (column >= 0 && right.invariant()) {
+            return columnFilter(column, op, right.value(), field);
+        }
+        RowValue threshold = right.value();
+        return rowFilter(switch (op) {
+            case ">" -> (t, r) -> left.value(t, r) > threshold.value(t, r);
+            case ">=" -> (t, r) -> left.value(t, r) >= threshold.value(t, r);
+            case "<" -> (t, r) -> left.value(t, r) < threshold.value(t, r);
+            case "<=" -> (t, r) -> left.value(t, r) <= threshold.value(t, r);
+            case "==" -> (t, r) -> left.value(t, r) == threshold.value(t, r);
+            case "!=" -> (t, r) -> left.value(t, r) != threshold.value(t, r);
+            default -> throw invalid("unknown operator '" + op + "' on '" + field + "'");
+        });
+    }
+
+    /**
+     * A column compared with a value that is the same for every row, evaluated once per pass.
+     * One loop per operator keeps each loop free of calls.
+     */
+    private Filter columnFilter(int column, String op, RowValue threshold, String field) {
+        return switch (op) {
+            case ">" -> (t, rows, count) -> {
+                double[] values = t.column(column);
+                double limit = threshold.value(t, 0);
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    int row = rows[i];
+                    if (values[row] > limit) rows[kept++] = row;
+                }
+                return kept;
+            };
+            case ">=" -> (t, rows, count) -> {
+                double[] values = t.column(column);
+                double limit = threshold.value(t, 0);
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    int row = rows[i];
+                    if (values[row] >= limit) rows[kept++] = row;
+                }
+                return kept;
+            };
+            case "<" -> (t, rows, count) -> {
+                double[] values = t.column(column);
+                double limit = threshold.value(t, 0);
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    int row = rows[i];
+                    if (values[row] < limit) rows[kept++] = row;
+                }
+                return kept;
+            };
+            case "<=" -> (t, rows, count) -> {
+                double[] values = t.column(column);
+                double limit = threshold.value(t, 0);
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    int row = rows[i];
+                    if (values[row] <= limit) rows[kept++] = row;
+                }
+                return kept;
+            };
+            case "==" -> (t, rows, count) -> {
+                double[] values = t.column(column);
+                double limit = threshold.value(t, 0);
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    int row = rows[i];
+                    if (values[row] == limit) rows[kept++] = row;
+                }
+                return kept;
+            };
+            case "!=" -> (t, rows, count) -> {
+                double[] values = t.column(column);
+                double limit = threshold.value(t, 0);
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    int row = rows[i];
+                    if (values[row] != limit) rows[kept++] = row;
+                }
+                return kept;
+            };
+            default -> throw invalid("unknown operator '" + op + "' on '" + field + "'");
+        };
+    }
+
+    private static Filter rowFilter(RowTest test) {
+        return (t, rows, count) -> {
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                if (test.test(t, row)) rows[kept++] = row;
+            }
+            return kept;
+        };
+    }
+
+    private Filter textCondition(int column, String field, String op, Object value) {
+        switch (op) {
+            case "==", "!=" -> {
+                if (!(value instanceof String expected)) {
+                    throw invalid("'" + field + "' is a text field and needs a text value");
+                }
+                return rowFilter(op.equals("==") ? (t, r) -> expected.equals(t.text(column, r))
+                    : (t, r) -> !expected.equals(t.text(column, r)));
+            }
+            case "in" -> {
+                if (!(value instanceof Collection<?> values)) {
+                    throw invalid("'in' on '" + field + "' needs a list of values");
+                }
+                Set<String> expected = new HashSet<>();
+                values.forEach(v -> expected.add(String.valueOf(v)));
+                return rowFilter((t, r) -> expected.contains(t.text(column, r)));
+            }
+            default -> throw invalid("operator '" + op + "' is not supported on text field '" + field + "'");
+        }
+    }
+
+    /**
+     * A number, a field or aggregate name, or {"field": f, "times": x, "plus": y}
+     */
+    private Operand value(Object spec) {
+        if (spec instanceof Number number) {
+            double constant = number.doubleValue();
+            return new Operand((t, r) -> constant, true);
+        }
+        if (spec instanceof String name) {
+            return reference(name);
+        }
+        if (spec instanceof Map<?, ?> map) {
+            Object field = map.get("field");
+            if (!(field instanceof String name)) {
+                throw invalid("value " + map + " needs a 'field'");
+            }
+            Operand base = reference(name);
+            RowValue baseValue = base.value();
+            double times = number(map.get("times"), 1.0, map);
+            double plus = number(map.get("plus"), 0.0, map);
+            return new Operand((t, r) -> baseValue.value(t, r) * times + plus, base.invariant());
+        }
+        throw invalid("cannot use " + spec + " as a value");
+    }
+
+    /**
+     * A numeric field of the current row, or an aggregate such as avg(revenue) over the scope
+     */
+    private Operand reference(String name) {
+        Matcher aggregate = AGGREGATE.matcher(name.trim());
+        if (aggregate.matches()) {
+            FactTable.Aggregate function = FactTable.Aggregate.valueOf(aggregate.group(1).toUpperCase());
+            int column = numericColumn(aggregate.group(2));
+            return new Operand((t, r) -> t.aggregate(function, column), true);
+        }
+        int column = numericColumn(name.trim());
+        return new Operand((t, r) -> t.number(column, r), false);
+    }
+
+    private int numericColumn(String field) {
+        int column = scope.numericColumn(field);
+        if (column < 0) {
+            throw invalid("unknown numeric field '" + field + "' for scope " + scope
+                + ", expected one of " + scope.getNumericFields());
+        }
+        return column;
+    }
+
+    private RowText template(String template) {
+        List<RowText> parts = new ArrayList<>();
+        Matcher placeholder = PLACEHOLDER.matcher(template);
+        int end = 0;
+        while (placeholder.find()) {
+            String literal = template.substring(end, placeholder.start());
+            if (!literal.isEmpty()) {
+                parts.add((t, r) -> literal);
+            }
+            parts.add(placeholder(placeholder.group(1).trim(), placeholder.group(2)));
+            end = placeholder.end();
+        }
+        String tail = template.substring(end);
+        if (parts.isEmpty()) {
+            return (t, r) -> tail;
+        }
+        if (!tail.isEmpty()) {
+            parts.add((t, r) -> tail);
+        }
+        RowText[] compiled = parts.toArray(new RowText[0]);
+        return (t, r) -> {
+            StringBuilder text = new StringBuilder();
+            for (RowText part : compiled) {
+                text.append(part.text(t, r));
+            }
+            return text.toString();
+        };
+    }
+
+    private RowText placeholder(String name, String format) {
+        int textColumn = scope.textColumn(name);
+        if (textColumn >= 0) {
+            return (t, r) -> String.valueOf(t.text(textColumn, r));
+        }
+        RowValue value = reference(name).value();
+        if (format != null) {
+            try {
+                String.format(Locale.ROOT, format, 0.0);
+            } catch (IllegalFormatException e) {
+                throw invalid("bad format '" + format + "' for '" + name + "'");
+            }
+            return (t, r) -> String.format(Locale.ROOT, format, value.value(t, r));
+        }
+        return (t, r) -> {
+            double v = value.value(t, r);
+            return v == Math.rint(v) && Math.abs(v) < 1e15 ? Long.toString((long) v)
+                : String.format(Locale.ROOT, "%.2f", v);
+        };
+    }
+
+    private double number(Object value, double defaultValue, Object context) {
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        throw invalid("expected a number in " + context);
+    }
+
+    private String required(String value, String name, String ruleId) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Rule " + ruleId + ": missing " + name);
+        }
+        return value;
+    }
+
+    private IllegalArgumentException invalid(String message) {
+        return new IllegalArgumentException("Rule " + id + ": " + message);
+    }
+}
@@ -0,0 +1,141 @@
+package com.apiserver.apinexus.analytics.rules;
+
+import java.util.Arrays;
+
+/**
+ * Rows of one {@link RuleScope}, stored by column so a compiled condition is an array read
+ * and a comparison. Aggregates over a column are computed on first use and then reused by
+ * every rule of the evaluation. Not thread-safe.
+ */
+public final class FactTable {
+
+    public enum Aggregate { AVG, SUM, MIN, MAX, COUNT }
+
+    private final RuleScope scope;
+    private final int rows;
+    private final double[][] numeric;
+    private final String[][] text;
+    private final double[][] aggregates;
+
+    private FactTable(RuleScope scope, int rows, double[][] numeric, String[][] text) {
+        this.scope = scope;
+        this.rows = rows;
+        this.numeric = numeric;
+        this.text = text;
+        this.aggregates = new double[Aggregate.values().length][numeric.length];
+        for (double[] values : aggregates) {
+            Arrays.fill(values, Double.NaN);
+        }
+    }
+
+    public static Builder builder(RuleScope scope, int expectedRows) {
+        return new Builder(scope, expectedRows);
+    }
+
+    public RuleScope getScope() {
+        return scope;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public double number(int column, int row) {
+        return numeric[column][row];
+    }
+
+    /**
+     * A numeric column's backing array (valid up to {@link #rows()}); not to be modified
+     */
+    double[] column(int column) {
+        return numeric[column];
+    }
+
+    public String text(int column, int row) {
+        return text[column][row];
+    }
+
+    /**
+     * Aggregate of a numeric column over all rows (0 for an empty table)
+     */
+    public double aggregate(Aggregate aggregate, int column) {
+        double value = aggregates[aggregate.ordinal()][column];
+        if (Double.isNaN(value)) {
+            value = compute(aggregate, numeric[column]);
+            aggregates[aggregate.ordinal()][column] = value;
+        }
+        return value;
+    }
+
+    private double compute(Aggregate aggregate, double[] values) {
+        if (aggregate == Aggregate.COUNT) {
+            return rows;
+        }
+        if (rows == 0) {
+            return 0.0;
+        }
+        double result = aggregate == Aggregate.MIN ? Double.POSITIVE_INFINITY
+            : aggregate == Aggregate.MAX ? Double.NEGATIVE_INFINITY : 0.0;
+        for (int row = 0; row < rows; row++) {
+            double value = values[row];
+            switch (aggregate) {
+                case MIN -> result = Math.min(result, value);
+                case MAX -> result = Math.max(result, value);
+                default -> result += value;
+            }
+        }
+        return aggregate == Aggregate.AVG ? result / rows : result;
+    }
+
+    public static final class Builder {
+        private final RuleScope scope;
+        private final double[][] numeric;
+        private final String[][] text;
+        private int rows;
+
+        private Builder(RuleScope scope, int expectedRows) {
+            this.scope = scope;
+            int capacity = Math.max(1, expectedRows);
+            this.numeric = new double[scope.getNumericFields().size()][capacity];
+            this.text = new String[scope.getTextFields().size()][capacity];
+        }
+
+        /**
+         * Append a row; values are in the order of the scope's numeric and text fields
+         */
+        public Builder row(double[] numbers, String... texts) {
+            if (numbers.length != numeric.length || texts.length != text.length) {
+                throw new IllegalArgumentException("Row does not match the " + scope + " fields");
+            }
+            if (rows == capacity()) {
+                grow();
+            }
+            for (int column = 0; column < numbers.length; column++) {
+                numeric[column][rows] = numbers[column];
+            }
+            for (int column = 0; column < texts.length; column++) {
+                text[column][rows] = texts[column];
+            }
+            rows++;
+            return this;
+        }
+
+        public FactTable build() {
+            return new FactTable(scope, rows, numeric, text);
+        }
+
+        private int capacity() {
+            return numeric.length > 0 ? numeric[0].length : text.length > 0 ? text[0].length : Integer.MAX_VALUE;
+        }
+
+        private void grow() {
+            int capacity = capacity() * 2;
+            for (int column = 0; column < numeric.length; column++) {
+                numeric[column] = Arrays.copyOf(numeric[column], capacity);
+            }
+            for (int column = 0; column < text.length; column++) {
+                text[column] = Arrays.copyOf(text[column], capacity);
+            }
+        }
+    }
+}
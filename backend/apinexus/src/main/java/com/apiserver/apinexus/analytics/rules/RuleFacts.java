@@ -0,0 +1,126 @@
+package com.apiserver.apinexus.analytics.rules;
+
+import com.apiserver.apinexus.analytics.LongIntMap;
+import com.apiserver.apinexus.analytics.SuggestionSnapshot;
+import com.apiserver.apinexus.dto.ProductPerformanceDTO;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The statistics rules are evaluated against: one {@link FactTable} per scope, built once per
+ * evaluation from data the suggestion snapshot has already collected, so adding rules never
+ * adds reads. A scope that was not supplied evaluates as an empty table.
+ */
+public final class RuleFacts {
+
+    private final Map<RuleScope, FactTable> tables;
+
+    private RuleFacts(Map<RuleScope, FactTable> tables) {
+        this.tables = tables;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public FactTable table(RuleScope scope) {
+        return tables.get(scope);
+    }
+
+    public static final class Builder {
+        private final Map<RuleScope, FactTable> tables = new EnumMap<>(RuleScope.class);
+
+        private Builder() {
+            for (RuleScope scope : RuleScope.values()) {
+                tables.put(scope, FactTable.builder(scope, 0).build());
+            }
+        }
+
+        public Builder table(FactTable table) {
+            tables.put(table.getScope(), table);
+            return this;
+        }
+
+        /**
+         * Product rows, with stock looked up by product id (0 when unknown)
+         */
+        public Builder products(List<ProductPerformanceDTO> performances, LongIntMap stockLevels) {
+            FactTable.Builder table = FactTable.builder(RuleScope.PRODUCT, performances.size());
+            for (ProductPerformanceDTO p : performances) {
+                table.row(new double[] {
+                    p.getProductId(),
+                    value(p.getSalesCount()),
+                    value(p.getTotalQuantitySold()),
+                    value(p.getTotalRevenue()),
+                    value(p.getAvgOrderValue()),
+                    value(p.getAvgUnitPrice()),
+                    value(p.getDaysSinceFirstSale()),
+                    value(p.getDaysSinceLastSale()),
+                    value(p.getVelocityScore()),
+                    value(p.getRecentVelocity()),
+                    stockLevels.get(p.getProductId(), 0)
+                }, p.getProductName(), p.getCategory(), p.getPerformanceStatus());
+            }
+            return table(table.build());
+        }
+
+        public Builder categories(Map<String, SuggestionSnapshot.CategoryTotals> categoryTotals) {
+            double revenue = categoryTotals.values().stream()
+                .mapToDouble(SuggestionSnapshot.CategoryTotals::totalRevenue).sum();
+            FactTable.Builder table = FactTable.builder(RuleScope.CATEGORY, categoryTotals.size());
+            categoryTotals.forEach((category, totals) -> table.row(new double[] {
+                totals.totalRevenue(),
+                totals.totalDiscount(),
+                totals.salesCount(),
+                ratio(totals.totalDiscount(), totals.salesCount()),
+                ratio(totals.totalDiscount(), totals.totalRevenue() + totals.totalDiscount()),
+                ratio(totals.totalRevenue(), revenue)
+            }, category));
+            return table(table.build());
+        }
+
+        public Builder regions(Map<String, Double> revenueByRegion, Map<String, Long> salesCountByRegion) {
+            double revenue = revenueByRegion.values().stream().mapToDouble(Double::doubleValue).sum();
+            FactTable.Builder table = FactTable.builder(RuleScope.REGION, revenueByRegion.size());
+            revenueByRegion.forEach((region, regionRevenue) -> {
+                long salesCount = salesCountByRegion.getOrDefault(region, 0L);
+                table.row(new double[] {
+                    regionRevenue,
+                    salesCount,
+                    ratio(regionRevenue, salesCount),
+                    ratio(regionRevenue, revenue)
+                }, region);
+            });
+            return table(table.build());
+        }
+
+        public Builder customers(long totalCustomers, long premiumCustomers, double regularCustomerRevenue,
+                                 long singleCategoryCustomers, long lapsedCustomers) {
+            return table(FactTable.builder(RuleScope.CUSTOMERS, 1).row(new double[] {
+                totalCustomers,
+                premiumCustomers,
+                ratio(premiumCustomers, totalCustomers),
+                totalCustomers - premiumCustomers,
+                regularCustomerRevenue,
+                singleCategoryCustomers,
+                ratio(singleCategoryCustomers, totalCustomers),
+                lapsedCustomers,
+                ratio(lapsedCustomers, totalCustomers)
+            }).build());
+        }
+
+        public RuleFacts build() {
+            return new RuleFacts(new EnumMap<>(tables));
+        }
+
+        private static double value(Number number) {
+            return number != null ? number.doubleValue() : 0.0;
+        }
+
+        private static double ratio(double numerator, double denominator) {
+            return denominator != 0 ? numerator / denominator : 0.0;
+        }
+    }
+}
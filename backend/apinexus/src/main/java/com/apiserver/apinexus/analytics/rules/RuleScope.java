@@ -0,0 +1,60 @@
+package com.apiserver.apinexus.analytics.rules;
+
+import java.util.List;
+
+/**
+ * What a rule iterates over, and the fields each row of that scope offers. Numeric fields can
+ * be compared and aggregated (avg, sum, min, max, count over all rows of the scope); text
+ * fields can be compared for equality and used in templates.
+ */
+public enum RuleScope {
+
+    PRODUCT(
+        List.of("productId", "salesCount", "totalQuantitySold", "totalRevenue", "avgOrderValue", "avgUnitPrice",
+            "daysSinceFirstSale", "daysSinceLastSale", "velocityScore", "recentVelocity", "stock"),
+        List.of("productName", "category", "performanceStatus")),
+
+    CATEGORY(
+        List.of("totalRevenue", "totalDiscount", "salesCount", "avgDiscount", "discountRate", "revenueShare"),
+        List.of("category")),
+
+    REGION(
+        List.of("revenue", "salesCount", "avgOrderValue", "revenueShare"),
+        List.of("region")),
+
+    // A single row of customer-base totals
+    CUSTOMERS(
+        List.of("totalCustomers", "premiumCustomers", "premiumRate", "regularCustomers", "regularCustomerRevenue",
+            "singleCategoryCustomers", "singleCategoryRate", "lapsedCustomers", "lapsedRate"),
+        List.of());
+
+    private final List<String> numericFields;
+    private final List<String> textFields;
+
+    RuleScope(List<String> numericFields, List<String> textFields) {
+        this.numericFields = numericFields;
+        this.textFields = textFields;
+    }
+
+    public List<String> getNumericFields() {
+        return numericFields;
+    }
+
+    public List<String> getTextFields() {
+        return textFields;
+    }
+
+    /**
+     * Column of a numeric field, or -1
+     */
+    public int numericColumn(String field) {
+        return numericFields.indexOf(field);
+    }
+
+    /**
+     * Column of a text field, or -1
+     */
+    public int textColumn(String field) {
+        return textFields.indexOf(field);
+    }
+}
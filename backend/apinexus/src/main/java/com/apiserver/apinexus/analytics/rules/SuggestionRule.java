@@ -0,0 +1,50 @@
+package com.apiserver.apinexus.analytics.rules;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A suggestion rule as declared in the rules file. For every row of its scope that meets all
+ * conditions, the rule emits one suggestion; at most {@code limit} rows, largest
+ * {@code orderBy} first.
+ * <p>
+ * Values ({@code value}, {@code currentValue}, {@code potentialValue}) are a number, a field
+ * name, or an object {@code {"field": f, "times": x, "plus": y}} where the field may be an
+ * aggregate over the whole scope, e.g. {@code "avg(revenue)"}. Templates insert fields as
+ * {@code {field}} or {@code {field:%.1f}}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SuggestionRule {
+    private String id;
+    private String scope; // PRODUCT, CATEGORY, REGION, CUSTOMERS
+    private List<Condition> when = new ArrayList<>();
+    private String category; // INVENTORY, PRICING, MARKETING, PRODUCT, REGIONAL
+    private String priority; // HIGH, MEDIUM, LOW
+    private String title;
+    private String description;
+    private String actionable;
+    private Double impactScore;
+    private String metric;
+    private Object currentValue;
+    private Object potentialValue;
+    private String orderBy;
+    private Integer limit;
+
+    /**
+     * field op value, with op one of > >= < <= == != (text fields: == != in)
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Condition {
+        private String field;
+        private String op;
+        private Object value;
+    }
+}
@@ -0,0 +1,106 @@
+package com.apiserver.apinexus.analytics.rules;
+
+import com.apiserver.apinexus.dto.SuggestionDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Suggestion rules declared in a JSON or YAML file (suggestions.rules.location, a list under
+ * "rules") and compiled once at startup. Evaluation runs every rule over facts already
+ * collected for the suggestion snapshot, so a rule costs a pass over its scope's rows and
+ * never a read of the sales collection. A malformed rule fails startup with the rule's id.
+ */
+@Component
+public class SuggestionRuleEngine {
+
+    /**
+     * Layout of the rules file
+     */
+    public static class RulesFile {
+        private List<SuggestionRule> rules = new ArrayList<>();
+
+        public List<SuggestionRule> getRules() {
+            return rules;
+        }
+
+        public void setRules(List<SuggestionRule> rules) {
+            this.rules = rules;
+        }
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final boolean enabled;
+    private final List<CompiledRule> rules;
+
+    public SuggestionRuleEngine(
+            @Value("${suggestions.rules.enabled:true}") boolean enabled,
+            @Value("${suggestions.rules.location:classpath:suggestion-rules.json}") Resource location) {
+        this.enabled = enabled;
+        this.rules = enabled ? compile(load(location)) : List.of();
+        if (enabled) {
+            System.out.println("Loaded " + rules.size() + " suggestion rules from " + location.getDescription());
+        }
+    }
+
+    public SuggestionRuleEngine(List<SuggestionRule> rules) {
+        this.enabled = true;
+        this.rules = compile(rules);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public List<CompiledRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Suggestions of every rule, in rule order
+     */
+    public List<SuggestionDTO> evaluate(RuleFacts facts) {
+        List<SuggestionDTO> suggestions = new ArrayList<>();
+        for (CompiledRule rule : rules) {
+            rule.evaluate(facts, suggestions);
+        }
+        return suggestions;
+    }
+
+    public static List<SuggestionRule> load(Resource location) {
+        String name = location.getFilename() != null ? location.getFilename().toLowerCase() : "";
+        try (InputStream in = location.getInputStream()) {
+            RulesFile file;
+            if (name.endsWith(".yml") || name.endsWith(".yaml")) {
+                Object tree = new Yaml().load(in);
+                file = tree != null ? MAPPER.convertValue(tree, RulesFile.class) : new RulesFile();
+            } else {
+                file = MAPPER.readValue(in, RulesFile.class);
+            }
+            return file.getRules() != null ? file.getRules() : List.of();
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("Cannot read suggestion rules from " + location.getDescription()
+                + ": " + e.getMessage(), e);
+        }
+    }
+
+    public static List<CompiledRule> compile(List<SuggestionRule> declared) {
+        List<CompiledRule> compiled = new ArrayList<>(declared.size());
+        Set<String> ids = new HashSet<>();
+        for (SuggestionRule rule : declared) {
+            CompiledRule compiledRule = CompiledRule.compile(rule);
+            if (!ids.add(compiledRule.getId())) {
+                throw new IllegalArgumentException("Rule " + compiledRule.getId() + " is declared twice");
+            }
+            compiled.add(compiledRule);
+        }
+        return List.copyOf(compiled);
+    }
+}
@@ -0,0 +1,29 @@
+package com.apiserver.apinexus.config;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index usage per collection ($indexStats): how often each index served a query since it was
+ * (re)loaded, which shows both missing indexes and ones that are never used.
+ * GET /actuator/mongoindexes
+ */
+@Component
+@Endpoint(id = "mongoindexes")
+public class MongoIndexEndpoint {
+
+    private final MongoIndexManager mongoIndexManager;
+
+    public MongoIndexEndpoint(MongoIndexManager mongoIndexManager) {
+        this.mongoIndexManager = mongoIndexManager;
+    }
+
+    @ReadOperation
+    public Map<String, List<Map<String, Object>>> indexStats() {
+        return mongoIndexManager.indexStats();
+    }
+}
@@ -0,0 +1,141 @@
+package com.apiserver.apinexus.config;
+
+import com.apiserver.apinexus.model.CustomerProfile;
+import com.apiserver.apinexus.model.GeneratedBill;
+import com.apiserver.apinexus.model.Purchase;
+import com.apiserver.apinexus.model.Sale;
+import com.apiserver.apinexus.model.Transaction;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+
+/**
+ * Owns the secondary indexes the sales, purchases, transaction, customer profile and generated bill repositories rely on. The definitions
+ * here are the single source of truth (mongo-init.js mirrors them for fresh containers);
+ * {@link #ensureIndexes()} creates whatever is missing and verifies the key order of what exists.
+ */
+@Component
+public class MongoIndexManager {
+
+    private static final Map<Class<?>, List<Index>> INDEXES = new LinkedHashMap<>();
+
+    static {
+        INDEXES.put(Sale.class, List.of(
+            // findBySaleDateBetween, every ranged aggregation
+            new Index().on("sale_date", Sort.Direction.ASC).named("sale_date"),
+            // findByCustomerId, customer bills over a period, billing runs in customer order
+            new Index().on("customer_id", Sort.Direction.ASC).on("sale_date", Sort.Direction.ASC)
+                .named("customer_id_sale_date"),
+            // findByRegion, regional views over a period
+            new Index().on("region", Sort.Direction.ASC).on("sale_date", Sort.Direction.ASC)
+                .named("region_sale_date"),
+            // findByProductId, per-product history
+            new Index().on("product_id", Sort.Direction.ASC).on("sale_date", Sort.Direction.ASC)
+                .named("product_id_sale_date")
+        ));
+        INDEXES.put(Purchase.class, List.of(
+            // findByPurchaseDateBetween
+            new Index().on("purchase_date", Sort.Direction.ASC).named("purchase_date"),
+            // findByUserIdAndStatus, and findByUserId through the prefix
+            new Index().on("user_id", Sort.Direction.ASC).on("status", Sort.Direction.ASC)
+                .named("user_id_status")
+        ));
+        INDEXES.put(CustomerProfile.class, List.of(
+            // Recency segments (lapsed 30-60 days)
+            new Index().on("last_purchase", Sort.Direction.ASC).named("last_purchase"),
+            // Single-category customers
+            new Index().on("category_count", Sort.Direction.ASC).named("category_count")
+        ));
+        INDEXES.put(Transaction.class, List.of(
+            // Payment status polling by findByTransactionId
+            new Index().on("transactionId", Sort.Direction.ASC).named("transactionId"),
+            // Failed payments due for retry, oldest first
+            new Index().on("status", Sort.Direction.ASC).on("scheduledRetryDate", Sort.Direction.ASC)
+                .named("status_scheduledRetryDate")
+        ));
+        INDEXES.put(GeneratedBill.class, List.of(
+            // A billing run's bills in customer order
+            new Index().on("run_id", Sort.Direction.ASC).on("customer_id", Sort.Direction.ASC)
+                .named("run_id_customer_id"),
+            // findByBillNumber; a number never names two bills
+            new Index().on("bill_number", Sort.Direction.ASC).unique().named("bill_number"),
+            // A customer's bills by period
+            new Index().on("customer_id", Sort.Direction.ASC).on("period_start", Sort.Direction.ASC)
+                .named("customer_id_period_start")
+        ));
+    }
+
+    private final MongoTemplate mongoTemplate;
+
+    public MongoIndexManager(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Create missing indexes and check existing ones, returning one report line per index
+     */
+    public List<String> ensureIndexes() {
+        List<String> report = new ArrayList<>();
+        for (Map.Entry<Class<?>, List<Index>> entry : INDEXES.entrySet()) {
+            IndexOperations indexOps = mongoTemplate.indexOps(entry.getKey());
+            String collection = mongoTemplate.getCollectionName(entry.getKey());
+            for (Index index : entry.getValue()) {
+                String name = index.getIndexOptions().getString("name");
+                try {
+                    indexOps.createIndex(index);
+                } catch (Exception e) {
+                    // Same keys under another name, or this name with other keys
+                    report.add("✗ " + collection + "." + name + ": " + e.getMessage());
+                    continue;
+                }
+                report.add((matches(indexOps.getIndexInfo(), name, index.getIndexKeys()) ? "✓ " : "✗ ")
+                    + collection + "." + name + " " + index.getIndexKeys().toJson());
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Per-index usage counters from $indexStats, keyed by collection
+     */
+    public Map<String, List<Map<String, Object>>> indexStats() {
+        Map<String, List<Map<String, Object>>> stats = new LinkedHashMap<>();
+        for (Class<?> type : INDEXES.keySet()) {
+            String collection = mongoTemplate.getCollectionName(type);
+            List<Map<String, Object>> rows = mongoTemplate.aggregate(
+                    newAggregation(ctx -> new Document("$indexStats", new Document())), collection, Document.class)
+                .getMappedResults().stream()
+                .map(doc -> {
+                    Document accesses = doc.get("accesses", new Document());
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("name", doc.getString("name"));
+                    row.put("key", doc.get("key"));
+                    row.put("ops", accesses.get("ops"));
+                    row.put("since", accesses.get("since"));
+                    return row;
+                })
+                .collect(Collectors.toList());
+            stats.put(collection, rows);
+        }
+        return stats;
+    }
+
+    private static boolean matches(List<IndexInfo> existing, String name, Document expectedKeys) {
+        return existing.stream()
+            .filter(info -> name.equals(info.getName()))
+            .findFirst()
+            .map(info -> info.getIndexFields().stream().map(IndexField::getKey).collect(Collectors.toList())
+                .equals(new ArrayList<>(expectedKeys.keySet())))
+            .orElse(false);
+    }
+}
@@ -0,0 +1,17 @@
+package com.apiserver.apinexus.config;
+
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MongoMonitoringConfig {
+
+    /**
+     * Attach the slow query logger to the MongoDB client Spring Boot builds
+     */
+    @Bean
+    MongoClientSettingsBuilderCustomizer slowQueryLoggingCustomizer(SlowQueryLogger slowQueryLogger) {
+        return settings -> settings.addCommandListener(slowQueryLogger);
+    }
+}
@@ -0,0 +1,154 @@
+package com.apiserver.apinexus.config;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Driver-level listener that times read commands against the sales and purchases collections.
+ * When one exceeds the threshold its query plan is fetched with explain (queryPlanner verbosity,
+ * on a background thread so the caller is not slowed further) and logged in one line, e.g.
+ * {@code IXSCAN(customer_id_sale_date) > FETCH} or {@code COLLSCAN}.
+ */
+@Component
+public class SlowQueryLogger implements CommandListener {
+
+    private static final Set<String> WATCHED_COLLECTIONS = Set.of("sales", "purchases");
+    private static final Set<String> READ_COMMANDS = Set.of("find", "aggregate", "count", "distinct");
+    // Session and cluster fields the driver adds, which explain does not accept
+    private static final Set<String> DRIVER_FIELDS = Set.of("lsid", "txnNumber", "$db", "$clusterTime", "$readPreference");
+
+    private final ObjectProvider<MongoTemplate> mongoTemplate;
+    private final Map<Integer, BsonDocument> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService explainer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(16), r -> {
+            Thread thread = new Thread(r, "slow-query-explain");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+
+    @Value("${mongo.slow-query.threshold-ms:200}")
+    private long thresholdMs;
+
+    @Value("${mongo.slow-query.explain:true}")
+    private boolean explain;
+
+    public SlowQueryLogger(ObjectProvider<MongoTemplate> mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (thresholdMs <= 0 || !READ_COMMANDS.contains(event.getCommandName())) {
+            return;
+        }
+        BsonValue collection = event.getCommand().get(event.getCommandName());
+        if (collection != null && collection.isString() && WATCHED_COLLECTIONS.contains(collection.asString().getValue())) {
+            // The event's document is only valid during the callback
+            inFlight.put(event.getRequestId(), event.getCommand().clone());
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        BsonDocument command = inFlight.remove(event.getRequestId());
+        if (command == null) {
+            return;
+        }
+        long elapsedMs = event.getElapsedTime(TimeUnit.MILLISECONDS);
+        if (elapsedMs < thresholdMs) {
+            return;
+        }
+        String summary = event.getCommandName() + " on " + command.get(event.getCommandName()).asString().getValue()
+            + " took " + elapsedMs + " ms";
+        if (!explain) {
+            System.out.println("Slow MongoDB query: " + summary + " " + filterOf(command));
+            return;
+        }
+        explainer.execute(() -> System.out.println("Slow MongoDB query: " + summary + ", plan " + explain(command)));
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        inFlight.remove(event.getRequestId());
+    }
+
+    private String explain(BsonDocument command) {
+        try {
+            BsonDocument explained = new BsonDocument();
+            command.forEach((key, value) -> {
+                if (!DRIVER_FIELDS.contains(key)) {
+                    explained.put(key, value);
+                }
+            });
+            Document result = mongoTemplate.getObject().getDb().runCommand(
+                new Document("explain", explained).append("verbosity", "queryPlanner"));
+            Document winningPlan = findWinningPlan(result);
+            return winningPlan != null ? describe(winningPlan) : "unavailable";
+        } catch (Exception e) {
+            return "unavailable (" + e.getMessage() + ")";
+        }
+    }
+
+    private static String filterOf(BsonDocument command) {
+        BsonValue filter = command.containsKey("filter") ? command.get("filter") : command.get("pipeline");
+        return filter != null ? filter.toString() : "";
+    }
+
+    /**
+     * Find and aggregate explains nest the planner output differently, so search for it
+     */
+    private static Document findWinningPlan(Object node) {
+        if (node instanceof Document doc) {
+            if (doc.get("winningPlan") instanceof Document plan) {
+                // Newer servers wrap the classic plan tree in queryPlan
+                return plan.get("queryPlan") instanceof Document queryPlan ? queryPlan : plan;
+            }
+            for (Object value : doc.values()) {
+                Document found = findWinningPlan(value);
+                if (found != null) {
+                    return found;
+                }
+            }
+        } else if (node instanceof List<?> list) {
+            for (Object value : list) {
+                Document found = findWinningPlan(value);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Plan tree flattened leaf-first, e.g. IXSCAN(sale_date) > FETCH > SORT
+     */
+    static String describe(Document plan) {
+        List<String> stages = new ArrayList<>();
+        Document stage = plan;
+        while (stage != null) {
+            String name = stage.getString("stage");
+            String index = stage.getString("indexName");
+            stages.add(index != null ? name + "(" + index + ")" : name);
+            Object input = stage.get("inputStage");
+            if (input == null && stage.get("inputStages") instanceof List<?> inputs && !inputs.isEmpty()) {
+                input = inputs.get(0);
+            }
+            stage = input instanceof Document next ? next : null;
+        }
+        Collections.reverse(stages);
+        return String.join(" > ", stages);
+    }
+}
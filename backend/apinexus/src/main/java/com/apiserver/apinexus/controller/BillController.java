@@ -3,12 +3,22 @@ package com.apiserver.apinexus.controller;
 import com.apiserver.apinexus.dto.BillGenerationRequestDTO;
 import com.apiserver.apinexus.dto.GeneratedBillDTO;
 import com.apiserver.apinexus.model.Bill;
+import com.apiserver.apinexus.model.BillingRun;
 import com.apiserver.apinexus.service.BillService;
+import com.apiserver.apinexus.service.BillingJobService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/bills")
@@ -17,6 +27,7 @@ import java.util.List;
 public class BillController {
     
     private final BillService billService;
+    private final BillingJobService billingJobService;
     
     @GetMapping("/user/{userId}")
     public ResponseEntity<List<Bill>> getUserBills(@PathVariable Long userId) {
@@ -33,4 +44,95 @@ public class BillController {
         GeneratedBillDTO bill = billService.generateBillFromSales(request);
         return ResponseEntity.ok(bill);
     }
+    
+    /**
+     * A stored sales bill by its number
+     * GET /api/bills/generated/{billNumber}
+     */
+    @GetMapping("/generated/{billNumber}")
+    public ResponseEntity<GeneratedBillDTO> getGeneratedBill(@PathVariable String billNumber) {
+        return billService.getGeneratedBill(billNumber)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+    
+    /**
+     * Stored sales bills of a customer with periods inside [startDate, endDate]
+     * GET /api/bills/generated?customerId=42&startDate=2024-01-01&endDate=2024-12-31
+     */
+    @GetMapping("/generated")
+    public ResponseEntity<List<GeneratedBillDTO>> getGeneratedBills(
+            @RequestParam Long customerId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        return ResponseEntity.ok(billService.getGeneratedBills(customerId, startDate, endDate));
+    }
+    
+    /**
+     * Start billing every customer with sales in the period, exported as NDJSON or CSV
+     * POST /api/bills/batch?format=NDJSON
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<BillingRun> startBillingRun(
+            @RequestBody BillGenerationRequestDTO request,
+            @RequestParam(defaultValue = "NDJSON") String format) {
+        BillingRun.ExportFormat exportFormat;
+        try {
+            exportFormat = BillingRun.ExportFormat.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(billingJobService.start(request, exportFormat));
+    }
+    
+    /**
+     * Progress of a billing run: status, checkpoint, bills written and bills/sec
+     * GET /api/bills/batch/{runId}
+     */
+    @GetMapping("/batch/{runId}")
+    public ResponseEntity<BillingRun> getBillingRun(@PathVariable String runId) {
+        return billingJobService.getRun(runId)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+    
+    /**
+     * Continue a failed or interrupted billing run from its last checkpoint
+     * POST /api/bills/batch/{runId}/resume
+     */
+    @PostMapping("/batch/{runId}/resume")
+    public ResponseEntity<BillingRun> resumeBillingRun(@PathVariable String runId) {
+        Optional<BillingRun> run = billingJobService.getRun(runId);
+        if (run.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!billingJobService.resume(runId)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(run.get());
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(run.get());
+    }
+    
+    /**
+     * The export of a completed billing run, streamed from disk
+     * GET /api/bills/batch/{runId}/export
+     */
+    @GetMapping("/batch/{runId}/export")
+    public ResponseEntity<Resource> getBillingRunExport(@PathVariable String runId) {
+        Optional<BillingRun> run = billingJobService.getRun(runId);
+        if (run.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (run.get().getStatus() != BillingRun.Status.COMPLETED) {
+            return ResponseEntity.noContent().build();
+        }
+        FileSystemResource export = new FileSystemResource(billingJobService.getExportPath(run.get()));
+        if (!export.exists()) {
+            return ResponseEntity.notFound().build();
+        }
+        boolean csv = run.get().getExportFormat() == BillingRun.ExportFormat.CSV;
+        return ResponseEntity.ok()
+            .contentType(csv ? MediaType.parseMediaType("text/csv") : MediaType.parseMediaType("application/x-ndjson"))
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + export.getFilename() + "\"")
+            .body(export);
+    }
 }
@@ -3,11 +3,17 @@ package com.apiserver.apinexus.controller;
 import com.apiserver.apinexus.dto.PaymentRequest;
 import com.apiserver.apinexus.dto.PaymentResponse;
 import com.apiserver.apinexus.model.Transaction;
+import com.apiserver.apinexus.service.PaymentQueue;
 import com.apiserver.apinexus.service.PaymentService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
+import java.util.Optional;
+
 @RestController
 @RequestMapping("/api/payments")
 @RequiredArgsConstructor
@@ -15,9 +21,35 @@ import org.springframework.web.bind.annotation.*;
 public class PaymentController {
     
     private final PaymentService paymentService;
+    private final PaymentQueue paymentQueue;
     
+    /**
+     * Pay a bill. With payments.async.enabled the payment is queued and 202 is returned with the
+     * transaction id to poll; 400 when the bill does not exist, 503 when the queue is full.
+     * POST /api/payments/initiate
+     */
     @PostMapping("/initiate")
     public ResponseEntity<PaymentResponse> initiatePayment(@RequestBody PaymentRequest request) {
+        if (paymentQueue.isEnabled()) {
+            Optional<Transaction> queued;
+            try {
+                queued = paymentQueue.submit(request.getBillId(), request.getPaymentMethod());
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(
+                    new PaymentResponse(false, null, "Error: " + e.getMessage())
+                );
+            }
+            if (queued.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(new PaymentResponse(false, null, "Too many payments in progress, please retry"));
+            }
+            String transactionId = queued.get().getTransactionId();
+            return ResponseEntity.accepted()
+                .location(URI.create("/api/payments/status/" + transactionId))
+                .body(new PaymentResponse(false, transactionId, "Payment queued for processing"));
+        }
+        
         try {
             Transaction transaction = paymentService.initiatePayment(request.getBillId(), request.getPaymentMethod());
             
@@ -39,6 +71,17 @@ public class PaymentController {
         }
     }
     
+    /**
+     * Current state of a payment: PENDING while queued, then SUCCESS, FAILED or CANCELLED
+     * GET /api/payments/status/{transactionId}
+     */
+    @GetMapping("/status/{transactionId}")
+    public ResponseEntity<Transaction> getPaymentStatus(@PathVariable String transactionId) {
+        return paymentQueue.getPayment(transactionId)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+    
     @PostMapping("/retry/{transactionId}")
     public ResponseEntity<PaymentResponse> retryPayment(@PathVariable String transactionId) {
         try {
@@ -50,8 +93,10 @@ public class PaymentController {
             
             if (transaction.getStatus() == Transaction.TransactionStatus.SUCCESS) {
                 response.setMessage("Payment retry successful");
-            } else {
+            } else if (transaction.getScheduledRetryDate() != null) {
                 response.setMessage("Payment retry failed. Scheduled for next retry on " + transaction.getScheduledRetryDate());
+            } else {
+                response.setMessage("Payment retry failed. " + transaction.getFailureReason());
             }
             
             return ResponseEntity.ok(response);
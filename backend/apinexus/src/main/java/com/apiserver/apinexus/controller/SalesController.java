@@ -1,5 +1,7 @@
 package com.apiserver.apinexus.controller;
 
+import com.apiserver.apinexus.analytics.HeavyHitterTracker;
+import com.apiserver.apinexus.analytics.SalesDimension;
 import com.apiserver.apinexus.dto.*;
 import com.apiserver.apinexus.model.Sale;
 import com.apiserver.apinexus.service.SalesService;
@@ -9,6 +11,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -89,6 +92,32 @@ public class SalesController {
         return ResponseEntity.ok(periodSales);
     }
     
+    /**
+     * Get sales grouped by region
+     * GET /api/sales/by-region
+     */
+    @GetMapping("/by-region")
+    public ResponseEntity<List<DimensionSalesDTO>> getSalesByRegionSummary(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+        
+        List<DimensionSalesDTO> regionSales = salesService.getSalesByDimension(SalesDimension.REGION, startDate, endDate);
+        return ResponseEntity.ok(regionSales);
+    }
+    
+    /**
+     * Get sales grouped by payment method
+     * GET /api/sales/by-payment-method
+     */
+    @GetMapping("/by-payment-method")
+    public ResponseEntity<List<DimensionSalesDTO>> getSalesByPaymentMethod(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+        
+        List<DimensionSalesDTO> paymentSales = salesService.getSalesByDimension(SalesDimension.PAYMENT_METHOD, startDate, endDate);
+        return ResponseEntity.ok(paymentSales);
+    }
+    
     /**
      * Get top selling products
      * GET /api/sales/top-products?limit=10
@@ -103,6 +132,57 @@ public class SalesController {
         return ResponseEntity.ok(topProducts);
     }
     
+    /**
+     * Get approximate all-time heavy hitters (product, category or customer) with error bounds
+     * GET /api/sales/heavy-hitters?dimension=product&limit=10
+     */
+    @GetMapping("/heavy-hitters")
+    public ResponseEntity<List<HeavyHitterDTO>> getHeavyHitters(
+            @RequestParam(defaultValue = "product") String dimension,
+            @RequestParam(defaultValue = "10") int limit) {
+        
+        HeavyHitterTracker.Dimension resolved;
+        try {
+            resolved = HeavyHitterTracker.Dimension.valueOf(dimension.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        return salesService.getHeavyHitters(resolved, limit)
+            .map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.noContent().build());
+    }
+    
+    /**
+     * Get the estimated number of distinct customers in a segment, per day range
+     * GET /api/sales/customers/distinct?segment=region:North&startDate=2025-01-01&endDate=2025-01-31
+     */
+    @GetMapping("/customers/distinct")
+    public ResponseEntity<DistinctCustomersDTO> getDistinctCustomers(
+            @RequestParam(defaultValue = "all") String segment,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        
+        return salesService.getDistinctCustomers(segment, startDate, endDate)
+            .map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.noContent().build());
+    }
+    
+    /**
+     * Get every dashboard view in one response, built from a single pass over the range
+     * GET /api/sales/dashboard?period=daily&limit=5&productId=...&startDate=...&endDate=...
+     */
+    @GetMapping("/dashboard")
+    public ResponseEntity<SalesDashboardDTO> getSalesDashboard(
+            @RequestParam(defaultValue = "daily") String period,
+            @RequestParam(defaultValue = "5") int limit,
+            @RequestParam(required = false) Long productId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+        
+        SalesDashboardDTO dashboard = salesService.getSalesDashboard(period, limit, productId, startDate, endDate);
+        return ResponseEntity.ok(dashboard);
+    }
+    
     /**
      * Get sales by region
      * GET /api/sales/region/{region}
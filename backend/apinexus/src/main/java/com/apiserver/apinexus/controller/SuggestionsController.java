@@ -1,8 +1,15 @@
 package com.apiserver.apinexus.controller;
 
+import com.apiserver.apinexus.analytics.CustomerProfileIndex;
+import com.apiserver.apinexus.dto.ProductPerformanceDTO;
 import com.apiserver.apinexus.dto.SuggestionDTO;
+import com.apiserver.apinexus.dto.SuggestionSnapshotDTO;
+import com.apiserver.apinexus.model.CustomerProfile;
+import com.apiserver.apinexus.service.SuggestionRefreshService;
 import com.apiserver.apinexus.service.SuggestionService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -17,8 +24,11 @@ public class SuggestionsController {
     @Autowired
     private SuggestionService suggestionService;
     
+    @Autowired
+    private SuggestionRefreshService suggestionRefreshService;
+    
     /**
-     * Get all suggestions
+     * Get all suggestions from the latest precomputed snapshot
      * GET /api/suggestions
      */
     @GetMapping
@@ -26,7 +36,8 @@ public class SuggestionsController {
             @RequestParam(required = false) String category,
             @RequestParam(required = false) String priority) {
         
-        List<SuggestionDTO> suggestions = suggestionService.getAllSuggestions();
+        SuggestionRefreshService.Snapshot snapshot = suggestionRefreshService.current();
+        List<SuggestionDTO> suggestions = snapshot.suggestions();
         
         // Filter by category if provided
         if (category != null && !category.isEmpty()) {
@@ -42,7 +53,25 @@ public class SuggestionsController {
                 .collect(Collectors.toList());
         }
         
-        return ResponseEntity.ok(suggestions);
+        return ResponseEntity.ok().headers(snapshotHeaders(snapshot)).body(suggestions);
+    }
+    
+    /**
+     * Latest precomputed snapshot with its version and freshness
+     * GET /api/suggestions/snapshot
+     */
+    @GetMapping("/snapshot")
+    public ResponseEntity<SuggestionSnapshotDTO> getSuggestionSnapshot() {
+        SuggestionRefreshService.Snapshot snapshot = suggestionRefreshService.current();
+        return ResponseEntity.ok(new SuggestionSnapshotDTO(
+            snapshot.version(),
+            snapshot.computedAt(),
+            suggestionRefreshService.staleAfter(snapshot),
+            snapshot.salesScanned(),
+            suggestionRefreshService.getPendingSales(),
+            suggestionRefreshService.getRefreshAfterSales(),
+            snapshot.suggestions()
+        ));
     }
     
     /**
@@ -91,14 +120,54 @@ public class SuggestionsController {
     }
     
     /**
-     * Get high priority suggestions only
+     * Get one product's performance and velocity classification
+     * GET /api/suggestions/products/{productId}/performance
+     */
+    @GetMapping("/products/{productId}/performance")
+    public ResponseEntity<ProductPerformanceDTO> getProductPerformance(@PathVariable Long productId) {
+        return suggestionService.getProductPerformance(productId)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+    
+    /**
+     * Get the customers of a marketing segment (lapsed, single_category or premium), highest spend first
+     * GET /api/suggestions/customers?segment=lapsed&limit=100
+     */
+    @GetMapping("/customers")
+    public ResponseEntity<List<CustomerProfile>> getCustomerSegment(
+            @RequestParam String segment,
+            @RequestParam(defaultValue = "100") int limit) {
+        
+        CustomerProfileIndex.Segment resolved;
+        try {
+            resolved = CustomerProfileIndex.Segment.valueOf(segment.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        return suggestionService.getCustomerSegment(resolved, limit)
+            .map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.noContent().build());
+    }
+    
+    /**
+     * Get high priority suggestions only, from the latest precomputed snapshot
      * GET /api/suggestions/high-priority
      */
     @GetMapping("/high-priority")
     public ResponseEntity<List<SuggestionDTO>> getHighPrioritySuggestions() {
-        List<SuggestionDTO> suggestions = suggestionService.getAllSuggestions().stream()
-            .filter(s -> "HIGH".equals(s.getPriority()))
-            .collect(Collectors.toList());
-        return ResponseEntity.ok(suggestions);
+        SuggestionRefreshService.Snapshot snapshot = suggestionRefreshService.current();
+        return ResponseEntity.ok().headers(snapshotHeaders(snapshot)).body(snapshot.highPriority());
+    }
+    
+    /**
+     * Snapshot version, when it was computed and when it is due to be replaced at the latest
+     */
+    private HttpHeaders snapshotHeaders(SuggestionRefreshService.Snapshot snapshot) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("X-Suggestions-Version", String.valueOf(snapshot.version()));
+        headers.add("X-Suggestions-Computed-At", snapshot.computedAt().toString());
+        headers.add("X-Suggestions-Stale-After", suggestionRefreshService.staleAfter(snapshot).toString());
+        return headers;
     }
 }
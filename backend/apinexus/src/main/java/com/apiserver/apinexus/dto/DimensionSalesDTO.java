@@ -0,0 +1,15 @@
+package com.apiserver.apinexus.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DimensionSalesDTO {
+    private String key;
+    private Integer totalQuantity;
+    private Double totalRevenue;
+    private Integer salesCount;
+}
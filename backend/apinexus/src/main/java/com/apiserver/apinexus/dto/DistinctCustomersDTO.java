@@ -0,0 +1,18 @@
+package com.apiserver.apinexus.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DistinctCustomersDTO {
+    private String segment; // all, premium, regular, region:<name>, category:<name>
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private Long estimatedCustomers;
+    private Double relativeError; // Expected relative standard error of the estimate
+}
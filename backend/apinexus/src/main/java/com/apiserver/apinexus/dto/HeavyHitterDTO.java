@@ -0,0 +1,18 @@
+package com.apiserver.apinexus.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HeavyHitterDTO {
+    private String key;
+    private String label;
+    private Double revenue;
+    // Revenue may be overstated by at most this much; 0 means the totals are exact
+    private Double maxError;
+    private Integer totalQuantity;
+    private Integer salesCount;
+}
@@ -0,0 +1,13 @@
+package com.apiserver.apinexus.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductOptionDTO {
+    private Long productId;
+    private String productName;
+}
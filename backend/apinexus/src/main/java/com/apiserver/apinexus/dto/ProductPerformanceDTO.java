@@ -20,4 +20,5 @@ public class ProductPerformanceDTO {
     private Integer daysSinceLastSale;
     private String performanceStatus; // TOP_PERFORMER, STEADY, SLOW_MOVING, STAGNANT
     private Double velocityScore; // Sales per day
+    private Double recentVelocity; // Units per day, exponentially weighted towards recent sales
 }
@@ -0,0 +1,19 @@
+package com.apiserver.apinexus.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesDashboardDTO {
+    private SalesAnalyticsDTO analytics;
+    private List<ProductSalesDTO> productSales;
+    private List<CategorySalesDTO> categorySales;
+    private List<TimePeriodSalesDTO> periodSales;
+    private List<ProductSalesDTO> topProducts;
+    private List<ProductOptionDTO> products; // Every product sold in the range, ignoring the product filter
+}
@@ -0,0 +1,21 @@
+package com.apiserver.apinexus.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SuggestionSnapshotDTO {
+    private Long version;
+    private LocalDateTime computedAt;
+    private LocalDateTime staleAfter; // Next scheduled refresh at the latest
+    private Long salesScanned;
+    private Long pendingSales; // Sales recorded since computedAt
+    private Long refreshAfterSales; // Pending sales that trigger an early refresh
+    private List<SuggestionDTO> suggestions;
+}
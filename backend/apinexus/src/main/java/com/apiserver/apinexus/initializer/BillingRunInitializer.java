@@ -0,0 +1,37 @@
+package com.apiserver.apinexus.initializer;
+
+import com.apiserver.apinexus.model.BillingRun;
+import com.apiserver.apinexus.service.BillingJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Resumes billing runs that were still running when their owner stopped (its lease expired),
+ * each from its last checkpoint. Runs another live instance still holds are left alone.
+ */
+@Component
+@Order(10)
+public class BillingRunInitializer implements CommandLineRunner {
+    
+    @Autowired
+    private BillingJobService billingJobService;
+    
+    @Value("${bills.batch.resume-on-startup:true}")
+    private boolean resumeOnStartup;
+    
+    @Override
+    public void run(String... args) throws Exception {
+        if (!resumeOnStartup) {
+            return;
+        }
+        
+        for (BillingRun run : billingJobService.getInterruptedRuns()) {
+            System.out.println("Resuming billing run " + run.getId() + " (" + run.getPeriod() + ") after customer "
+                + run.getLastCustomerId() + ", " + run.getBillsWritten() + " bills already written");
+            billingJobService.resume(run.getId());
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.apiserver.apinexus.initializer;
+
+import com.apiserver.apinexus.analytics.CustomerProfileIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rebuilds the customer profiles unless a completed rebuild is on record (first start after
+ * upgrading, a rebuild that stopped part-way, or sales recorded while profiles were disabled).
+ * Later writes keep them current incrementally.
+ */
+@Component
+@Order(9)
+public class CustomerProfileInitializer implements CommandLineRunner {
+    
+    @Autowired
+    private CustomerProfileIndex customerProfileIndex;
+    
+    @Override
+    public void run(String... args) throws Exception {
+        if (!customerProfileIndex.isEnabled()) {
+            return;
+        }
+        
+        if (customerProfileIndex.isBuilt()) {
+            customerProfileIndex.markReady();
+            return;
+        }
+        
+        System.out.println("Building customer profiles from existing sales...");
+        long processed = customerProfileIndex.rebuild();
+        System.out.println("Customer profiles built from " + processed + " sales.");
+    }
+}
@@ -0,0 +1,24 @@
+package com.apiserver.apinexus.initializer;
+
+import com.apiserver.apinexus.config.MongoIndexManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates and verifies the sales and purchases indexes before any startup data work reads them
+ */
+@Component
+@Order(5)
+public class MongoIndexInitializer implements CommandLineRunner {
+
+    @Autowired
+    private MongoIndexManager mongoIndexManager;
+
+    @Override
+    public void run(String... args) throws Exception {
+        System.out.println("Checking MongoDB indexes...");
+        mongoIndexManager.ensureIndexes().forEach(line -> System.out.println("  " + line));
+    }
+}
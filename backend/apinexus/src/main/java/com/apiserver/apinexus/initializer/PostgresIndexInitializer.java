@@ -0,0 +1,36 @@
+package com.apiserver.apinexus.initializer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the Postgres indexes Hibernate cannot declare (partial indexes), so installs whose
+ * tables were created by ddl-auto get them too. Same statements as the files in migrations/.
+ */
+@Component
+@Order(3)
+public class PostgresIndexInitializer implements CommandLineRunner {
+
+    private static final String[] INDEXES = {
+        // Subscription billing scan (migrations/user_subscriptions_next_billing_date.sql)
+        "CREATE INDEX IF NOT EXISTS idx_user_subscriptions_next_billing"
+            + " ON user_subscriptions(next_billing_date, id) WHERE status = 'ACTIVE'"
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void run(String... args) throws Exception {
+        for (String index : INDEXES) {
+            try {
+                jdbcTemplate.execute(index);
+            } catch (Exception e) {
+                System.err.println("Could not create Postgres index: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.apiserver.apinexus.initializer;
 
 import com.apiserver.apinexus.model.Sale;
 import com.apiserver.apinexus.repository.SaleRepository;
+import com.apiserver.apinexus.service.SalesService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.core.annotation.Order;
@@ -21,6 +22,9 @@ public class SalesDataInitializer implements CommandLineRunner {
     @Autowired
     private SaleRepository saleRepository;
     
+    @Autowired
+    private SalesService salesService;
+    
     @Autowired
     private JdbcTemplate jdbcTemplate;
     
@@ -156,7 +160,7 @@ public class SalesDataInitializer implements CommandLineRunner {
         int batchSize = 100;
         for (int i = 0; i < sales.size(); i += batchSize) {
             int end = Math.min(i + batchSize, sales.size());
-            saleRepository.saveAll(sales.subList(i, end));
+            salesService.importSales(sales.subList(i, end));
             System.out.println("Saved " + end + "/" + sales.size() + " sales...");
         }
         
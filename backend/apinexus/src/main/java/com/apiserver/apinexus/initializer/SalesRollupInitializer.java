@@ -0,0 +1,38 @@
+package com.apiserver.apinexus.initializer;
+
+import com.apiserver.apinexus.analytics.SalesRollupService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rebuilds the sales rollup buckets unless a completed rebuild is on record (first start after
+ * upgrading, a rebuild that stopped part-way, or sales recorded while rollups were disabled).
+ * Later writes keep them current incrementally.
+ */
+@Component
+@Order(7)
+public class SalesRollupInitializer implements CommandLineRunner {
+    
+    @Autowired
+    private SalesRollupService salesRollupService;
+    
+    @Override
+    public void run(String... args) throws Exception {
+        if (!salesRollupService.isEnabled()) {
+            return;
+        }
+        
+        salesRollupService.ensureIndexes();
+        
+        if (salesRollupService.isBuilt()) {
+            salesRollupService.markReady();
+            return;
+        }
+        
+        System.out.println("Building sales rollups from existing sales...");
+        long processed = salesRollupService.rebuild();
+        System.out.println("Sales rollups built from " + processed + " sales.");
+    }
+}
@@ -0,0 +1,138 @@
+package com.apiserver.apinexus.initializer;
+
+import com.apiserver.apinexus.analytics.SalesClearedEvent;
+import com.apiserver.apinexus.analytics.SalesRecordedEvent;
+import com.apiserver.apinexus.analytics.SalesSink;
+import com.apiserver.apinexus.model.Sale;
+import com.apiserver.apinexus.repository.SaleRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Loads every enabled in-memory sales structure from a single scan of the sales collection,
+ * after the sample data and rollups are in place, and forwards recorded sales to them.
+ * <p>
+ * A sale written while the scan runs may be behind the cursor already, so sales recorded
+ * before the load completes are buffered by id. Any the scan reaches anyway are dropped from
+ * the buffer; the rest are appended right before the sinks are marked loaded, under the same
+ * lock that forwards later events, so every sale is counted exactly once.
+ */
+@Component
+@Order(8)
+public class SalesSinkInitializer implements CommandLineRunner {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Autowired
+    private List<SalesSink> sinks;
+
+    @Autowired
+    private SaleRepository saleRepository;
+
+    private final Object lock = new Object();
+    // Sales recorded before the load completed, by id; guarded by lock
+    private final Map<String, Sale> pending = new LinkedHashMap<>();
+    // Sinks kept current from events, null until the load completes; guarded by lock
+    private List<SalesSink> loaded;
+    private volatile boolean pendingEmpty = true;
+
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onSalesRecorded(SalesRecordedEvent event) {
+        synchronized (lock) {
+            if (loaded != null) {
+                for (SalesSink sink : loaded) {
+                    sink.append(event.getSales());
+                }
+                return;
+            }
+            for (Sale sale : event.getSales()) {
+                pending.put(sale.getId(), sale);
+            }
+            pendingEmpty = pending.isEmpty();
+        }
+    }
+
+    @EventListener
+    public void onSalesCleared(SalesClearedEvent event) {
+        synchronized (lock) {
+            pending.clear();
+            pendingEmpty = true;
+        }
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        List<SalesSink> enabled = sinks.stream()
+            .filter(SalesSink::isEnabled)
+            .collect(Collectors.toList());
+        if (enabled.isEmpty()) {
+            synchronized (lock) {
+                pending.clear();
+                pendingEmpty = true;
+                loaded = enabled;
+            }
+            return;
+        }
+
+        System.out.println("Loading in-memory sales structures: " + enabled.stream()
+            .map(sink -> sink.getClass().getSimpleName())
+            .collect(Collectors.joining(", ")));
+        long started = System.currentTimeMillis();
+        enabled.forEach(SalesSink::reset);
+
+        long processed = 0;
+        List<Sale> batch = new ArrayList<>(BATCH_SIZE);
+        try (Stream<Sale> stream = saleRepository.streamAllBy()) {
+            Iterator<Sale> sales = stream.iterator();
+            while (sales.hasNext()) {
+                Sale sale = sales.next();
+                batch.add(sale);
+                if (!pendingEmpty) {
+                    synchronized (lock) {
+                        pending.remove(sale.getId());
+                        pendingEmpty = pending.isEmpty();
+                    }
+                }
+                if (batch.size() == BATCH_SIZE) {
+                    for (SalesSink sink : enabled) {
+                        sink.append(batch);
+                    }
+                    processed += batch.size();
+                    batch.clear();
+                }
+            }
+        }
+        int caughtUp;
+        synchronized (lock) {
+            batch.addAll(pending.values());
+            caughtUp = pending.size();
+            pending.clear();
+            pendingEmpty = true;
+            for (SalesSink sink : enabled) {
+                sink.append(batch);
+                sink.markLoaded();
+            }
+            loaded = enabled;
+        }
+        processed += batch.size() - caughtUp;
+        if (caughtUp > 0) {
+            System.out.println("Added " + caughtUp + " sales recorded during the load.");
+        }
+
+        System.out.println("Loaded " + processed + " sales into memory in "
+            + (System.currentTimeMillis() - started) + " ms.");
+    }
+}
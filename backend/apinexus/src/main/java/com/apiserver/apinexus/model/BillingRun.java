@@ -0,0 +1,89 @@
+package com.apiserver.apinexus.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * MongoDB Document tracking one batch billing run and its checkpoint: every customer up to
+ * last_customer_id is billed, and the export file is complete up to export_offset bytes.
+ * While a run executes, the instance in owner holds it until lease_expires_at.
+ * Collection: billing_runs
+ */
+@Document(collection = "billing_runs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BillingRun {
+    
+    @Id
+    private String id;
+    
+    @Field("period")
+    private String period;
+    
+    @Field("period_start")
+    private LocalDate periodStart;
+    
+    @Field("period_end")
+    private LocalDate periodEnd;
+    
+    @Field("status")
+    private Status status;
+    
+    @Field("export_format")
+    private ExportFormat exportFormat;
+    
+    @Field("export_path")
+    private String exportPath;
+    
+    @Field("export_offset")
+    private Long exportOffset;
+    
+    @Field("last_customer_id")
+    private Long lastCustomerId;
+    
+    @Field("bills_written")
+    private Long billsWritten;
+    
+    @Field("sales_read")
+    private Long salesRead;
+    
+    @Field("elapsed_ms")
+    private Long elapsedMs; // summed over resumes
+    
+    @Field("bills_per_second")
+    private Double billsPerSecond;
+    
+    @Field("started_at")
+    private LocalDateTime startedAt;
+    
+    @Field("updated_at")
+    private LocalDateTime updatedAt;
+    
+    @Field("finished_at")
+    private LocalDateTime finishedAt;
+    
+    @Field("error")
+    private String error;
+    
+    @Field("owner")
+    private String owner;
+    
+    @Field("lease_expires_at")
+    private LocalDateTime leaseExpiresAt; // renewed at every checkpoint
+    
+    public enum Status {
+        RUNNING, COMPLETED, FAILED
+    }
+    
+    public enum ExportFormat {
+        NDJSON, CSV
+    }
+}
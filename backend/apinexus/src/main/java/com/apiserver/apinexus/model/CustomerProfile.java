@@ -0,0 +1,154 @@
+package com.apiserver.apinexus.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * MongoDB Document holding one customer's recency, frequency and monetary profile,
+ * maintained from sale writes
+ * Collection: customer_profiles
+ */
+@Document(collection = "customer_profiles")
+public class CustomerProfile {
+    
+    @Id
+    private Long customerId;
+    
+    @Field("customer_name")
+    private String customerName;
+    
+    @Field("premium")
+    private Boolean premium;
+    
+    @Field("first_purchase")
+    private LocalDateTime firstPurchase;
+    
+    @Field("last_purchase")
+    private LocalDateTime lastPurchase;
+    
+    @Field("purchase_count")
+    private Long purchaseCount;
+    
+    @Field("monetary_total")
+    private Double monetaryTotal;
+    
+    @Field("categories")
+    private Set<String> categories = new HashSet<>();
+    
+    @Field("category_count")
+    private Integer categoryCount;
+    
+    // Constructors
+    public CustomerProfile() {}
+    
+    public CustomerProfile(Long customerId) {
+        this.customerId = customerId;
+        this.premium = false;
+        this.purchaseCount = 0L;
+        this.monetaryTotal = 0.0;
+        this.categoryCount = 0;
+    }
+    
+    /**
+     * Fold one sale into the profile
+     */
+    public void add(Sale sale) {
+        if (sale.getCustomerName() != null) {
+            customerName = sale.getCustomerName();
+        }
+        premium = premium || Boolean.TRUE.equals(sale.getIsPremiumCustomer());
+        LocalDateTime saleDate = sale.getSaleDate();
+        if (saleDate != null) {
+            if (firstPurchase == null || saleDate.isBefore(firstPurchase)) {
+                firstPurchase = saleDate;
+            }
+            if (lastPurchase == null || saleDate.isAfter(lastPurchase)) {
+                lastPurchase = saleDate;
+            }
+        }
+        purchaseCount++;
+        monetaryTotal += sale.getFinalAmount() != null ? sale.getFinalAmount() : 0.0;
+        if (sale.getCategory() != null) {
+            categories.add(sale.getCategory());
+        }
+        categoryCount = categories.size();
+    }
+    
+    // Getters and Setters
+    public Long getCustomerId() {
+        return customerId;
+    }
+    
+    public void setCustomerId(Long customerId) {
+        this.customerId = customerId;
+    }
+    
+    public String getCustomerName() {
+        return customerName;
+    }
+    
+    public void setCustomerName(String customerName) {
+        this.customerName = customerName;
+    }
+    
+    public Boolean getPremium() {
+        return premium;
+    }
+    
+    public void setPremium(Boolean premium) {
+        this.premium = premium;
+    }
+    
+    public LocalDateTime getFirstPurchase() {
+        return firstPurchase;
+    }
+    
+    public void setFirstPurchase(LocalDateTime firstPurchase) {
+        this.firstPurchase = firstPurchase;
+    }
+    
+    public LocalDateTime getLastPurchase() {
+        return lastPurchase;
+    }
+    
+    public void setLastPurchase(LocalDateTime lastPurchase) {
+        this.lastPurchase = lastPurchase;
+    }
+    
+    public Long getPurchaseCount() {
+        return purchaseCount;
+    }
+    
+    public void setPurchaseCount(Long purchaseCount) {
+        this.purchaseCount = purchaseCount;
+    }
+    
+    public Double getMonetaryTotal() {
+        return monetaryTotal;
+    }
+    
+    public void setMonetaryTotal(Double monetaryTotal) {
+        this.monetaryTotal = monetaryTotal;
+    }
+    
+    public Set<String> getCategories() {
+        return categories;
+    }
+    
+    public void setCategories(Set<String> categories) {
+        this.categories = categories;
+    }
+    
+    public Integer getCategoryCount() {
+        return categoryCount;
+    }
+    
+    public void setCategoryCount(Integer categoryCount) {
+        this.categoryCount = categoryCount;
+    }
+}
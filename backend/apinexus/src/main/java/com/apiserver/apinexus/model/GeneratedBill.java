@@ -0,0 +1,47 @@
+package com.apiserver.apinexus.model;
+
+import com.apiserver.apinexus.dto.GeneratedBillDTO;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDate;
+
+/**
+ * MongoDB Document holding a generated sales bill, from a billing run or a single bill request,
+ * with the version of the sales it was computed from
+ * Collection: generated_bills
+ */
+@Document(collection = "generated_bills")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GeneratedBill {
+    
+    @Id
+    private String id; // BillKey id, shared by billing runs and single bills of the same customer and period
+    
+    @Field("run_id")
+    private String runId; // run that last wrote the bill, null for single bills
+    
+    @Field("customer_id")
+    private Long customerId;
+    
+    @Field("bill_number")
+    private String billNumber;
+    
+    @Field("period_start")
+    private LocalDate periodStart;
+    
+    @Field("period_end")
+    private LocalDate periodEnd;
+    
+    @Field("data_version")
+    private String dataVersion;
+    
+    @Field("bill")
+    private GeneratedBillDTO bill;
+}
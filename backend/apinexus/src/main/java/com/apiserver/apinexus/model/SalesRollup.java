@@ -0,0 +1,63 @@
+package com.apiserver.apinexus.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+
+/**
+ * MongoDB Document holding pre-aggregated sales totals for one time bucket
+ * and one dimension value (e.g. DAY / CATEGORY / "Electronics").
+ * Collection: sales_rollups
+ */
+@Document(collection = "sales_rollups")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesRollup {
+    
+    @Id
+    private String id;
+    
+    @Field("granularity")
+    private Granularity granularity;
+    
+    @Field("bucket_start")
+    private LocalDateTime bucketStart;
+    
+    @Field("dimension")
+    private Dimension dimension;
+    
+    @Field("key")
+    private String key;
+    
+    @Field("revenue")
+    private Double revenue;
+    
+    @Field("sales_count")
+    private Long salesCount;
+    
+    @Field("quantity")
+    private Long quantity;
+    
+    @Field("discount")
+    private Double discount;
+    
+    @Field("premium_count")
+    private Long premiumCount;
+    
+    @Field("premium_revenue")
+    private Double premiumRevenue;
+    
+    public enum Granularity {
+        HOUR, DAY, MONTH
+    }
+    
+    public enum Dimension {
+        ALL, PRODUCT, CATEGORY, REGION
+    }
+}
@@ -38,6 +38,14 @@ public class Transaction {
     
     private Integer retryCount = 0;
     
+    // Retry lineage: the failed transaction this one retries, the first transaction of the
+    // chain, and (on a failed transaction) the transaction that retried it
+    private String parentTransactionId;
+    
+    private String rootTransactionId;
+    
+    private String retriedByTransactionId;
+    
     private Map<String, Object> metadata;
     
     private LocalDateTime createdAt = LocalDateTime.now();
@@ -1,12 +1,22 @@
 package com.apiserver.apinexus.repository;
 
 import com.apiserver.apinexus.model.Bill;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface BillRepository extends JpaRepository<Bill, Long> {
     List<Bill> findByUserId(Long userId);
     List<Bill> findByStatus(Bill.BillStatus status);
+    
+    // SELECT ... FOR UPDATE, so concurrent payments of one bill are charged one at a time
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM Bill b WHERE b.id = :id")
+    Optional<Bill> findByIdForUpdate(@Param("id") Long id);
 }
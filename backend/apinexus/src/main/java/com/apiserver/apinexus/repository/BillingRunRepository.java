@@ -0,0 +1,13 @@
+package com.apiserver.apinexus.repository;
+
+import com.apiserver.apinexus.model.BillingRun;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface BillingRunRepository extends MongoRepository<BillingRun, String> {
+    
+    List<BillingRun> findByStatus(BillingRun.Status status);
+}
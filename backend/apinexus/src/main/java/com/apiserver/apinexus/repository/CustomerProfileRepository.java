@@ -0,0 +1,23 @@
+package com.apiserver.apinexus.repository;
+
+import com.apiserver.apinexus.model.CustomerProfile;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface CustomerProfileRepository extends MongoRepository<CustomerProfile, Long> {
+    
+    // Last purchase in a window (exclusive bounds), served by the last_purchase index
+    long countByLastPurchaseBetween(LocalDateTime from, LocalDateTime to);
+    List<CustomerProfile> findByLastPurchaseBetween(LocalDateTime from, LocalDateTime to, Pageable pageable);
+    
+    // Customers by number of distinct categories bought, served by the category_count index
+    long countByCategoryCount(Integer categoryCount);
+    List<CustomerProfile> findByCategoryCount(Integer categoryCount, Pageable pageable);
+    
+    long countByPremiumTrue();
+}
@@ -0,0 +1,20 @@
+package com.apiserver.apinexus.repository;
+
+import com.apiserver.apinexus.model.GeneratedBill;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface GeneratedBillRepository extends MongoRepository<GeneratedBill, String> {
+    
+    // Served by the unique bill_number index
+    Optional<GeneratedBill> findByBillNumber(String billNumber);
+    
+    // A customer's bills whose period lies within [from, to], served by the customer_id + period_start index
+    List<GeneratedBill> findByCustomerIdAndPeriodStartGreaterThanEqualAndPeriodEndLessThanEqual(
+        Long customerId, LocalDate from, LocalDate to);
+}
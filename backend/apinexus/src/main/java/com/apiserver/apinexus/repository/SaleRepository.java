@@ -9,7 +9,7 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
-public interface SaleRepository extends MongoRepository<Sale, String> {
+public interface SaleRepository extends MongoRepository<Sale, String>, SaleRepositoryCustom {
     
     // Find sales by product
     List<Sale> findByProductId(Long productId);
@@ -0,0 +1,50 @@
+package com.apiserver.apinexus.repository;
+
+import com.apiserver.apinexus.model.Sale;
+import com.apiserver.apinexus.repository.projection.BillSaleView;
+import com.apiserver.apinexus.repository.projection.SaleMetrics;
+import com.apiserver.apinexus.repository.projection.SuggestionSaleView;
+
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+/**
+ * Cursor-backed sale reads. Documents are pulled from the server in batches of
+ * sales.stream.batch-size while the stream is consumed; callers must close the stream.
+ */
+public interface SaleRepositoryCustom {
+    
+    Stream<Sale> streamAllBy();
+    
+    Stream<Sale> streamBySaleDateBetween(LocalDateTime startDate, LocalDateTime endDate);
+    
+    // Projected streams: only the listed fields are fetched and decoded
+    
+    /**
+     * Analytics fields for sales in the range, or for every sale when either bound is null
+     */
+    Stream<SaleMetrics> streamMetrics(LocalDateTime startDate, LocalDateTime endDate);
+    
+    Stream<SuggestionSaleView> streamSuggestionSales();
+    
+    /**
+     * Bill fields for sales in the range, narrowed on the server to one customer id, or else to
+     * customer names containing customerName (case-insensitive) when it is given
+     */
+    Stream<BillSaleView> streamBillSales(LocalDateTime startDate, LocalDateTime endDate,
+                                         Long customerId, String customerName);
+    
+    /**
+     * Version of the sales streamBillSales would return, in the form of BillAssembler#getDataVersion;
+     * any sale added to or removed from the selection, or edited in its quantity or amounts, changes it
+     */
+    String billDataVersion(LocalDateTime startDate, LocalDateTime endDate, Long customerId, String customerName);
+    
+    /**
+     * Bill fields for sales in the range of customers after afterCustomerId (all customers when
+     * null), ordered by customer id so each customer's sales arrive together; sales without a
+     * customer id are left out
+     */
+    Stream<BillSaleView> streamBillSalesByCustomer(LocalDateTime startDate, LocalDateTime endDate,
+                                                   Long afterCustomerId);
+}
@@ -0,0 +1,132 @@
+package com.apiserver.apinexus.repository;
+
+import com.apiserver.apinexus.model.Sale;
+import com.apiserver.apinexus.repository.projection.BillSaleView;
+import com.apiserver.apinexus.repository.projection.SaleMetrics;
+import com.apiserver.apinexus.repository.projection.SuggestionSaleView;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+public class SaleRepositoryCustomImpl implements SaleRepositoryCustom {
+    
+    private final MongoTemplate mongoTemplate;
+    
+    @Value("${sales.stream.batch-size:1000}")
+    private int batchSize;
+    
+    public SaleRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+    
+    @Override
+    public Stream<Sale> streamAllBy() {
+        return stream(new Query());
+    }
+    
+    @Override
+    public Stream<Sale> streamBySaleDateBetween(LocalDateTime startDate, LocalDateTime endDate) {
+        // Same exclusive bounds as the derived findBySaleDateBetween
+        return stream(Query.query(Criteria.where("saleDate").gt(startDate).lt(endDate)));
+    }
+    
+    @Override
+    public Stream<SaleMetrics> streamMetrics(LocalDateTime startDate, LocalDateTime endDate) {
+        Query query = startDate != null && endDate != null
+            ? Query.query(Criteria.where("saleDate").gt(startDate).lt(endDate))
+            : new Query();
+        return project(query, SaleMetrics.class);
+    }
+    
+    @Override
+    public Stream<SuggestionSaleView> streamSuggestionSales() {
+        return project(new Query(), SuggestionSaleView.class);
+    }
+    
+    @Override
+    public Stream<BillSaleView> streamBillSales(LocalDateTime startDate, LocalDateTime endDate,
+                                                Long customerId, String customerName) {
+        return project(Query.query(billCriteria(startDate, endDate, customerId, customerName)), BillSaleView.class);
+    }
+    
+    @Override
+    public String billDataVersion(LocalDateTime startDate, LocalDateTime endDate, Long customerId, String customerName) {
+        // Same sums as BillAssembler#getDataVersion, amounts in whole cents so they add up exactly
+        TypedAggregation<Sale> aggregation = Aggregation.newAggregation(Sale.class,
+            Aggregation.match(billCriteria(startDate, endDate, customerId, customerName)),
+            Aggregation.group()
+                .count().as("count")
+                .max("_id").as("maxId")
+                .sum("quantity").as("quantity")
+                .sum(cents("totalPrice")).as("totalCents")
+                .sum(cents("finalAmount")).as("finalCents"));
+        Document version = mongoTemplate.aggregate(aggregation, Document.class).getUniqueMappedResult();
+        if (version == null) {
+            return BillSaleView.dataVersion(0, null, 0, 0, 0);
+        }
+        Object maxId = version.get("maxId");
+        return BillSaleView.dataVersion(longValue(version.get("count")), maxId != null ? maxId.toString() : null,
+            longValue(version.get("quantity")), longValue(version.get("totalCents")),
+            longValue(version.get("finalCents")));
+    }
+    
+    @Override
+    public Stream<BillSaleView> streamBillSalesByCustomer(LocalDateTime startDate, LocalDateTime endDate,
+                                                          Long afterCustomerId) {
+        // Walks the customer_id + sale_date index in order, so no in-memory sort
+        Query query = Query.query(Criteria.where("customerId")
+                .gt(afterCustomerId != null ? afterCustomerId : Long.MIN_VALUE)
+                .and("saleDate").gt(startDate).lt(endDate))
+            .with(Sort.by("customerId", "saleDate"));
+        return project(query, BillSaleView.class);
+    }
+    
+    private static Criteria billCriteria(LocalDateTime startDate, LocalDateTime endDate,
+                                         Long customerId, String customerName) {
+        Criteria criteria = Criteria.where("saleDate").gt(startDate).lt(endDate);
+        if (customerId != null) {
+            // Served by the customer_id + sale_date index
+            criteria = criteria.and("customerId").is(customerId);
+        } else if (customerName != null && !customerName.isEmpty()) {
+            criteria = criteria.and("customerName").regex(Pattern.quote(customerName), "i");
+        }
+        return criteria;
+    }
+    
+    /**
+     * Amount in whole cents, like BillSaleView#cents
+     */
+    private static AggregationExpression cents(String field) {
+        return ArithmeticOperators.Floor.floorValueOf(
+            ArithmeticOperators.Add.valueOf(ArithmeticOperators.Multiply.valueOf(field).multiplyBy(100)).add(0.5));
+    }
+    
+    private static long longValue(Object value) {
+        return value instanceof Number number ? Math.round(number.doubleValue()) : 0L;
+    }
+    
+    private Stream<Sale> stream(Query query) {
+        return mongoTemplate.stream(query.cursorBatchSize(batchSize), Sale.class);
+    }
+    
+    /**
+     * DTO projection: the find only returns the fields the record declares
+     */
+    private <T> Stream<T> project(Query query, Class<T> view) {
+        return mongoTemplate.query(Sale.class)
+            .as(view)
+            .matching(query.cursorBatchSize(batchSize))
+            .stream();
+    }
+}
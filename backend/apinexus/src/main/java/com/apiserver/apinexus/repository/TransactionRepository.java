@@ -4,10 +4,12 @@ import com.apiserver.apinexus.model.Transaction;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface TransactionRepository extends MongoRepository<Transaction, String> {
     List<Transaction> findByUserId(Long userId);
     List<Transaction> findByStatus(Transaction.TransactionStatus status);
     List<Transaction> findByBillId(Long billId);
+    Optional<Transaction> findByTransactionId(String transactionId);
 }
@@ -0,0 +1,41 @@
+package com.apiserver.apinexus.repository.projection;
+
+import com.apiserver.apinexus.model.Sale;
+
+/**
+ * Fields a sales bill is built from
+ */
+public record BillSaleView(
+    String id,
+    Long customerId,
+    String customerName,
+    String productName,
+    Integer quantity,
+    Double unitPrice,
+    Double totalPrice,
+    Double discountApplied,
+    Double finalAmount,
+    String paymentMethod
+) {
+    
+    public static BillSaleView from(Sale sale) {
+        return new BillSaleView(sale.getId(), sale.getCustomerId(), sale.getCustomerName(), sale.getProductName(),
+            sale.getQuantity(), sale.getUnitPrice(), sale.getTotalPrice(), sale.getDiscountApplied(),
+            sale.getFinalAmount(), sale.getPaymentMethod());
+    }
+    
+    /**
+     * Version of a selection of sales, as "count:max id:quantity:total cents:final cents"; built
+     * by BillAssembler from the sales read and by SaleRepositoryCustom#billDataVersion in Mongo
+     */
+    public static String dataVersion(long count, String maxId, long quantity, long totalCents, long finalCents) {
+        return count + ":" + (maxId != null ? maxId : "") + ":" + quantity + ":" + totalCents + ":" + finalCents;
+    }
+    
+    /**
+     * Amount in whole cents, as floor(amount * 100 + 0.5) so Mongo computes the same value
+     */
+    public static long cents(Double amount) {
+        return amount != null ? (long) Math.floor(amount * 100 + 0.5) : 0L;
+    }
+}
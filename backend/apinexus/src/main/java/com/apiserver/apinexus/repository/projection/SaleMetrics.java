@@ -0,0 +1,29 @@
+package com.apiserver.apinexus.repository.projection;
+
+import com.apiserver.apinexus.model.Sale;
+
+import java.time.LocalDateTime;
+
+/**
+ * Fields the sales analytics and dashboard aggregations read from a sale
+ */
+public record SaleMetrics(
+    Long productId,
+    String productName,
+    String category,
+    Integer quantity,
+    Double finalAmount,
+    Double discountApplied,
+    LocalDateTime saleDate,
+    Boolean isPremiumCustomer
+) {
+    
+    public static SaleMetrics from(Sale sale) {
+        return new SaleMetrics(sale.getProductId(), sale.getProductName(), sale.getCategory(), sale.getQuantity(),
+            sale.getFinalAmount(), sale.getDiscountApplied(), sale.getSaleDate(), sale.getIsPremiumCustomer());
+    }
+    
+    public boolean premium() {
+        return isPremiumCustomer != null && isPremiumCustomer;
+    }
+}
@@ -0,0 +1,33 @@
+package com.apiserver.apinexus.repository.projection;
+
+import com.apiserver.apinexus.model.Sale;
+
+import java.time.LocalDateTime;
+
+/**
+ * Fields every suggestion generator reads from a sale, fetched together in one scan
+ */
+public record SuggestionSaleView(
+    Long customerId,
+    Long productId,
+    String productName,
+    String category,
+    String region,
+    Integer quantity,
+    Double unitPrice,
+    Double finalAmount,
+    Double discountApplied,
+    LocalDateTime saleDate,
+    Boolean isPremiumCustomer
+) {
+    
+    public static SuggestionSaleView from(Sale sale) {
+        return new SuggestionSaleView(sale.getCustomerId(), sale.getProductId(), sale.getProductName(),
+            sale.getCategory(), sale.getRegion(), sale.getQuantity(), sale.getUnitPrice(), sale.getFinalAmount(),
+            sale.getDiscountApplied(), sale.getSaleDate(), sale.getIsPremiumCustomer());
+    }
+    
+    public boolean premium() {
+        return isPremiumCustomer != null && isPremiumCustomer;
+    }
+}
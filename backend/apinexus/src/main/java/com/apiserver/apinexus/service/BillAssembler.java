@@ -0,0 +1,154 @@
+package com.apiserver.apinexus.service;
+
+import com.apiserver.apinexus.dto.BillLineItemDTO;
+import com.apiserver.apinexus.dto.GeneratedBillDTO;
+import com.apiserver.apinexus.repository.projection.BillSaleView;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Builds one sales bill from a single pass over its sales: line items grouped by product in
+ * first-seen order, the payment method tally and the customer of the first sale. Holds only
+ * per-product and per-method totals, so a bill over any number of sales needs memory in
+ * proportion to the distinct products it lists.
+ */
+public class BillAssembler {
+    
+    public static final double TAX_RATE = 0.10; // 10% tax
+    
+    private final Map<String, BillLineItemDTO> lineItems = new LinkedHashMap<>();
+    private final Map<String, Long> paymentMethodCounts = new HashMap<>();
+    private int totalTransactions;
+    private int totalItemsSold;
+    private Long customerId;
+    private String customerName;
+    private String maxSaleId;
+    private long totalCents;
+    private long finalCents;
+    
+    public void add(BillSaleView sale) {
+        if (totalTransactions == 0) {
+            customerId = sale.customerId();
+            customerName = sale.customerName();
+        }
+        if (sale.id() != null && (maxSaleId == null || sale.id().compareTo(maxSaleId) > 0)) {
+            maxSaleId = sale.id();
+        }
+        int quantity = value(sale.quantity());
+        totalTransactions++;
+        totalItemsSold += quantity;
+        totalCents += BillSaleView.cents(sale.totalPrice());
+        finalCents += BillSaleView.cents(sale.finalAmount());
+        paymentMethodCounts.merge(sale.paymentMethod(), 1L, Long::sum);
+        
+        // Group sales by product to create line items
+        BillLineItemDTO item = lineItems.get(sale.productName());
+        if (item != null) {
+            item.setQuantity(item.getQuantity() + quantity);
+            item.setSubtotal(item.getSubtotal() + value(sale.totalPrice()));
+            item.setDiscount(item.getDiscount() + value(sale.discountApplied()));
+            item.setTotal(item.getTotal() + value(sale.finalAmount()));
+        } else {
+            item = new BillLineItemDTO();
+            item.setProductName(sale.productName());
+            item.setQuantity(quantity);
+            item.setUnitPrice(sale.unitPrice());
+            item.setSubtotal(value(sale.totalPrice()));
+            item.setDiscount(value(sale.discountApplied()));
+            item.setTotal(value(sale.finalAmount()));
+            lineItems.put(sale.productName(), item);
+        }
+    }
+    
+    public boolean isEmpty() {
+        return totalTransactions == 0;
+    }
+    
+    public int getTotalTransactions() {
+        return totalTransactions;
+    }
+    
+    /**
+     * Version of the sales added: their count and max sale id, so a newly recorded or deleted sale
+     * changes it (ObjectId hex sorts by creation), and their summed quantity and amounts in cents,
+     * so a sale edited in place changes it too.
+     */
+    public String getDataVersion() {
+        return BillSaleView.dataVersion(totalTransactions, maxSaleId, totalItemsSold, totalCents, finalCents);
+    }
+    
+    public Long getCustomerId() {
+        return customerId;
+    }
+    
+    public String getCustomerName() {
+        return customerName;
+    }
+    
+    /**
+     * The bill for everything added so far; customer fields are left empty unless withCustomer
+     */
+    public GeneratedBillDTO build(String billNumber, String period, LocalDate periodStart, LocalDate periodEnd,
+                                  boolean withCustomer) {
+        List<BillLineItemDTO> items = new ArrayList<>(lineItems.values());
+        
+        // Calculate totals
+        double subtotal = items.stream().mapToDouble(BillLineItemDTO::getSubtotal).sum();
+        double totalDiscount = items.stream().mapToDouble(BillLineItemDTO::getDiscount).sum();
+        double taxableAmount = subtotal - totalDiscount;
+        double taxAmount = taxableAmount * TAX_RATE;
+        double grandTotal = taxableAmount + taxAmount;
+        
+        GeneratedBillDTO bill = new GeneratedBillDTO();
+        bill.setBillNumber(billNumber);
+        // Millisecond precision, as stored in Mongo, so a stored bill reads back unchanged
+        bill.setGeneratedDate(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+        bill.setPeriod(period);
+        bill.setPeriodStartDate(periodStart);
+        bill.setPeriodEndDate(periodEnd);
+        if (withCustomer && !isEmpty()) {
+            bill.setCustomerName(customerName);
+            bill.setCustomerId(customerId);
+        }
+        bill.setLineItems(items);
+        bill.setSubtotal(subtotal);
+        bill.setTotalDiscount(totalDiscount);
+        bill.setTaxableAmount(taxableAmount);
+        bill.setTaxRate(TAX_RATE);
+        bill.setTaxAmount(taxAmount);
+        bill.setGrandTotal(grandTotal);
+        bill.setTotalTransactions(totalTransactions);
+        bill.setTotalItemsSold(totalItemsSold);
+        bill.setPaymentMethod(mostCommonPaymentMethod());
+        return bill;
+    }
+    
+    /**
+     * Most common payment method; ties go to the alphabetically first so repeated runs agree
+     */
+    private String mostCommonPaymentMethod() {
+        String best = null;
+        long bestCount = 0;
+        for (Map.Entry<String, Long> entry : paymentMethodCounts.entrySet()) {
+            String method = entry.getKey();
+            long count = entry.getValue();
+            if (count > bestCount || (count == bestCount && method != null
+                    && (best == null || method.compareTo(best) < 0))) {
+                best = method;
+                bestCount = count;
+            }
+        }
+        return bestCount > 0 ? best : "N/A";
+    }
+    
+    private static int value(Integer number) {
+        return number != null ? number : 0;
+    }
+    
+    private static double value(Double number) {
+        return number != null ? number : 0.0;
+    }
+}
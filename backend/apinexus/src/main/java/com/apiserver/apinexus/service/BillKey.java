@@ -0,0 +1,52 @@
+package com.apiserver.apinexus.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.HexFormat;
+
+/**
+ * Identifies a sales bill by whose sales it covers and over which dates. The same customer
+ * (id, or name match ignoring case) and period always give the same store id, and together
+ * with the data version the same bill number, so a bill can be regenerated or re-downloaded
+ * without getting a new number unless its sales changed.
+ */
+public record BillKey(String customer, LocalDate periodStart, LocalDate periodEnd) {
+    
+    public static BillKey of(Long customerId, String customerName, LocalDate periodStart, LocalDate periodEnd) {
+        String customer;
+        if (customerId != null) {
+            customer = "id:" + customerId;
+        } else if (customerName != null && !customerName.isEmpty()) {
+            customer = "name:" + customerName.toLowerCase();
+        } else {
+            customer = "all";
+        }
+        return new BillKey(customer, periodStart, periodEnd);
+    }
+    
+    /**
+     * Store id of this customer's bill for the period
+     */
+    public String id() {
+        return sha256(customer + "|" + periodStart + "|" + periodEnd).substring(0, 24);
+    }
+    
+    /**
+     * Bill number for the bill over the given version of the sales; 96 bits like the id, so
+     * numbers stay unique across every customer, period and version
+     */
+    public String billNumber(String dataVersion) {
+        return "SB-" + sha256(id() + "|" + dataVersion).substring(0, 24).toUpperCase();
+    }
+    
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.apiserver.apinexus.service;
+
+import com.apiserver.apinexus.dto.BillGenerationRequestDTO;
+import com.apiserver.apinexus.dto.GeneratedBillDTO;
+import com.apiserver.apinexus.model.BillingRun;
+import com.apiserver.apinexus.model.GeneratedBill;
+import com.apiserver.apinexus.repository.BillingRunRepository;
+import com.apiserver.apinexus.repository.SaleRepository;
+import com.apiserver.apinexus.repository.projection.BillSaleView;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Bills every customer for a period in one pass over the period's sales, read in customer id
+ * order so each customer's sales arrive together and are folded by a {@link BillAssembler}.
+ * Bills are bulk-upserted into generated_bills and appended to an NDJSON or CSV export every
+ * bills.batch.batch-size customers; after each batch the run records the last billed customer
+ * and the export length. A run that stops part-way (crash, restart, failure) resumes from that
+ * checkpoint: the export is cut back to the recorded length and billing continues with the next
+ * customer, re-upserting at most one batch. When the export holds less than the checkpoint (the
+ * run was taken over by an instance that does not share export-dir, or the file was lost), the run
+ * starts again from the first customer. Bills are stored under their {@link BillKey}, so
+ * running a period again replaces the earlier run's bills instead of adding copies.
+ * <p>
+ * An instance executes a run only after claiming it: the claim sets the run's owner and a lease
+ * of bills.batch.lease-ms, renewed at every checkpoint. Other instances take over a RUNNING run
+ * only once its lease has expired, and an owner that lost its lease stops at the next checkpoint.
+ * Throughput is published as bills.batch.bills (count), bills.batch.throughput (bills/sec of the
+ * latest run) and the bills.batch.run timer.
+ */
+@Service
+public class BillingJobService {
+    
+    public static final String BILLS_COUNTER = "bills.batch.bills";
+    public static final String THROUGHPUT_GAUGE = "bills.batch.throughput";
+    public static final String RUN_TIMER = "bills.batch.run";
+    
+    private static final String CSV_HEADER = "bill_number,customer_id,customer_name,period_start,period_end,"
+        + "transactions,items_sold,subtotal,discount,tax,grand_total,payment_method\n";
+    
+    private final SaleRepository saleRepository;
+    private final BillingRunRepository billingRunRepository;
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Path exportDir;
+    private final int batchSize;
+    private final long leaseMs;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final Counter billsCounter;
+    private final Set<String> activeRuns = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "billing-run");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile double throughput;
+    
+    public BillingJobService(
+            SaleRepository saleRepository,
+            BillingRunRepository billingRunRepository,
+            MongoTemplate mongoTemplate,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${bills.batch.export-dir:exports/bills}") String exportDir,
+            @Value("${bills.batch.batch-size:500}") int batchSize,
+            @Value("${bills.batch.lease-ms:300000}") long leaseMs) {
+        this.saleRepository = saleRepository;
+        this.billingRunRepository = billingRunRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.exportDir = Paths.get(exportDir);
+        this.batchSize = Math.max(1, batchSize);
+        this.leaseMs = leaseMs;
+        this.billsCounter = Counter.builder(BILLS_COUNTER)
+            .description("Bills written by batch billing runs")
+            .register(meterRegistry);
+        Gauge.builder(THROUGHPUT_GAUGE, this, service -> service.throughput)
+            .description("Bills per second of the latest batch billing run")
+            .baseUnit("bills/s")
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Record a run for the request's period and start it in the background. Customer filters
+     * on the request are ignored; a run bills every customer with sales in the period.
+     */
+    public BillingRun start(BillGenerationRequestDTO request, BillingRun.ExportFormat format) {
+        BillingRun run = create(request, format);
+        submit(run.getId());
+        return run;
+    }
+    
+    public BillingRun create(BillGenerationRequestDTO request, BillingRun.ExportFormat format) {
+        BillingPeriod period = BillingPeriod.of(request, LocalDate.now());
+        String id = UUID.randomUUID().toString();
+        
+        BillingRun run = new BillingRun();
+        run.setId(id);
+        run.setPeriod(period.description());
+        run.setPeriodStart(period.startDate());
+        run.setPeriodEnd(period.endDate());
+        run.setStatus(BillingRun.Status.RUNNING);
+        run.setExportFormat(format);
+        run.setExportPath(exportDir.resolve(id + "." + format.name().toLowerCase()).toString());
+        run.setExportOffset(0L);
+        run.setBillsWritten(0L);
+        run.setSalesRead(0L);
+        run.setElapsedMs(0L);
+        run.setBillsPerSecond(0.0);
+        run.setStartedAt(LocalDateTime.now());
+        run.setUpdatedAt(run.getStartedAt());
+        // Held by this instance from the start, so no other instance picks it up before it runs
+        run.setOwner(instanceId);
+        run.setLeaseExpiresAt(run.getStartedAt().plusNanos(leaseMs * 1_000_000L));
+        return billingRunRepository.save(run);
+    }
+    
+    public Optional<BillingRun> getRun(String runId) {
+        return billingRunRepository.findById(runId);
+    }
+    
+    /**
+     * Continue an interrupted or failed run from its checkpoint in the background;
+     * false when the run is already complete or already executing here
+     */
+    public boolean resume(String runId) {
+        Optional<BillingRun> run = billingRunRepository.findById(runId);
+        if (run.isEmpty() || run.get().getStatus() == BillingRun.Status.COMPLETED) {
+            return false;
+        }
+        return submit(runId);
+    }
+    
+    /**
+     * RUNNING runs whose owner stopped renewing its lease (e.g. a previous process that exited)
+     */
+    public List<BillingRun> getInterruptedRuns() {
+        LocalDateTime now = LocalDateTime.now();
+        List<BillingRun> runs = new ArrayList<>(billingRunRepository.findByStatus(BillingRun.Status.RUNNING));
+        runs.removeIf(run -> activeRuns.contains(run.getId())
+            || (run.getLeaseExpiresAt() != null && run.getLeaseExpiresAt().isAfter(now)
+                && !instanceId.equals(run.getOwner())));
+        return runs;
+    }
+    
+    /**
+     * Run (or continue) a billing run on the calling thread and return its final state. A run
+     * leased by another instance is returned as it is, without running it.
+     */
+    public BillingRun execute(String runId) {
+        BillingRun run = billingRunRepository.findById(runId)
+            .orElseThrow(() -> new IllegalArgumentException("Billing run not found: " + runId));
+        if (run.getStatus() == BillingRun.Status.COMPLETED) {
+            return run;
+        }
+        BillingRun claimed = claim(runId);
+        if (claimed == null) {
+            System.out.println("Billing run " + runId + " is held by another instance until "
+                + run.getLeaseExpiresAt());
+            return run;
+        }
+        run = claimed;
+        run.setStatus(BillingRun.Status.RUNNING);
+        run.setError(null);
+        
+        long started = System.nanoTime();
+        long elapsedBefore = run.getElapsedMs();
+        Path path = Paths.get(run.getExportPath());
+        BillingPeriod period = new BillingPeriod(run.getPeriodStart(), run.getPeriodEnd(), run.getPeriod());
+        String outcome = "failed";
+        boolean leaseLost = false;
+        
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            long exported = Files.exists(path) ? Files.size(path) : 0L;
+            if (exported < run.getExportOffset()) {
+                // Resuming would append after a hole: bill everyone again (bills are upserted by key)
+                System.out.println("Billing run " + runId + " export has " + exported + " of "
+                    + run.getExportOffset() + " checkpointed bytes; restarting it from the first customer");
+                run.setLastCustomerId(null);
+                run.setExportOffset(0L);
+                run.setBillsWritten(0L);
+                run.setSalesRead(0L);
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+                 Stream<BillSaleView> sales = saleRepository.streamBillSalesByCustomer(
+                     period.startDateTime(), period.endDateTime(), run.getLastCustomerId())) {
+                
+                // Drop whatever was written after the last checkpoint
+                channel.truncate(run.getExportOffset());
+                channel.position(run.getExportOffset());
+                if (run.getExportOffset() == 0 && run.getExportFormat() == BillingRun.ExportFormat.CSV) {
+                    writer.write(CSV_HEADER);
+                }
+                
+                List<GeneratedBill> pending = new ArrayList<>(batchSize);
+                BillAssembler assembler = null;
+                Long customerId = null;
+                Iterator<BillSaleView> iterator = sales.iterator();
+                while (iterator.hasNext()) {
+                    BillSaleView sale = iterator.next();
+                    if (!sale.customerId().equals(customerId)) {
+                        if (assembler != null) {
+                            pending.add(bill(run, period, customerId, assembler));
+                            if (pending.size() >= batchSize) {
+                                checkpoint(run, pending, writer, channel, customerId, started, elapsedBefore);
+                            }
+                        }
+                        customerId = sale.customerId();
+                        assembler = new BillAssembler();
+                    }
+                    assembler.add(sale);
+                }
+                if (assembler != null) {
+                    pending.add(bill(run, period, customerId, assembler));
+                }
+                checkpoint(run, pending, writer, channel, customerId, started, elapsedBefore);
+            }
+            
+            run.setStatus(BillingRun.Status.COMPLETED);
+            run.setFinishedAt(LocalDateTime.now());
+            outcome = "completed";
+            System.out.println("Billing run " + runId + " completed: " + run.getBillsWritten() + " bills in "
+                + run.getElapsedMs() + " ms (" + String.format("%.1f", run.getBillsPerSecond()) + " bills/sec)");
+        } catch (LeaseLostException e) {
+            leaseLost = true;
+            outcome = "lease_lost";
+            System.err.println("Billing run " + runId + " stopped: " + e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            run.setStatus(BillingRun.Status.FAILED);
+            run.setError(e.getMessage());
+            System.err.println("Billing run " + runId + " failed after " + run.getBillsWritten() + " bills: "
+                + e.getMessage());
+        } finally {
+            if (!leaseLost) {
+                run.setOwner(null);
+                run.setLeaseExpiresAt(null);
+                run.setUpdatedAt(LocalDateTime.now());
+                try {
+                    saveOwned(run);
+                } catch (LeaseLostException e) {
+                    System.err.println("Billing run " + runId + " not saved: " + e.getMessage());
+                }
+            }
+            Timer.builder(RUN_TIMER)
+                .description("Batch billing run duration")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+        return run;
+    }
+    
+    public Path getExportPath(BillingRun run) {
+        return Paths.get(run.getExportPath());
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    private boolean submit(String runId) {
+        if (!activeRuns.add(runId)) {
+            return false;
+        }
+        executor.submit(() -> {
+            try {
+                execute(runId);
+            } catch (RuntimeException e) {
+                System.err.println("Billing run " + runId + " could not run: " + e.getMessage());
+            } finally {
+                activeRuns.remove(runId);
+            }
+        });
+        return true;
+    }
+    
+    /**
+     * Take the run for this instance unless another instance holds an unexpired lease on it
+     */
+    private BillingRun claim(String runId) {
+        LocalDateTime now = LocalDateTime.now();
+        Query claimable = Query.query(Criteria.where("_id").is(runId)
+            .and("status").ne(BillingRun.Status.COMPLETED)
+            .orOperator(
+                Criteria.where("owner").is(instanceId),
+                Criteria.where("owner").is(null),
+                Criteria.where("leaseExpiresAt").lt(now)));
+        Update lease = Update.update("owner", instanceId)
+            .set("leaseExpiresAt", now.plusNanos(leaseMs * 1_000_000L));
+        return mongoTemplate.findAndModify(claimable, lease, FindAndModifyOptions.options().returnNew(true),
+            BillingRun.class);
+    }
+    
+    /**
+     * Save the run only while this instance still owns it
+     */
+    private void saveOwned(BillingRun run) {
+        BillingRun previous = mongoTemplate.findAndReplace(
+            Query.query(Criteria.where("_id").is(run.getId()).and("owner").is(instanceId)), run);
+        if (previous == null) {
+            throw new LeaseLostException("Billing run " + run.getId() + " was taken over by another instance");
+        }
+    }
+    
+    private GeneratedBill bill(BillingRun run, BillingPeriod period, Long customerId, BillAssembler assembler) {
+        // Stored and numbered like a single bill for this customer, so both agree while the sales are unchanged
+        BillKey key = BillKey.of(customerId, null, period.startDate(), period.endDate());
+        String dataVersion = assembler.getDataVersion();
+        String billNumber = key.billNumber(dataVersion);
+        GeneratedBillDTO bill = assembler.build(billNumber, period.description(), period.startDate(),
+            period.endDate(), true);
+        return new GeneratedBill(key.id(), run.getId(), customerId, billNumber,
+            period.startDate(), period.endDate(), dataVersion, bill);
+    }
+    
+    /**
+     * Persist and export the pending bills, then record that everything up to lastCustomerId is done
+     */
+    private void checkpoint(BillingRun run, List<GeneratedBill> pending, Writer writer, FileChannel channel,
+                            Long lastCustomerId, long started, long elapsedBefore) throws IOException {
+        // Renew the lease first, so an instance that lost the run never writes another batch
+        LocalDateTime leaseExpiresAt = LocalDateTime.now().plusNanos(leaseMs * 1_000_000L);
+        if (mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(run.getId()).and("owner").is(instanceId)),
+                Update.update("leaseExpiresAt", leaseExpiresAt), BillingRun.class).getMatchedCount() == 0) {
+            throw new LeaseLostException("Billing run " + run.getId() + " was taken over by another instance");
+        }
+        run.setLeaseExpiresAt(leaseExpiresAt);
+        if (!pending.isEmpty()) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, GeneratedBill.class);
+            for (GeneratedBill bill : pending) {
+                // Upsert by bill key, so bills re-made after a resume or by a later run replace the earlier copy
+                bulk.replaceOne(Query.query(Criteria.where("_id").is(bill.getId())), bill,
+                    FindAndReplaceOptions.options().upsert());
+            }
+            bulk.execute();
+            
+            long sales = 0;
+            for (GeneratedBill bill : pending) {
+                writer.write(line(run.getExportFormat(), bill.getBill()));
+                sales += bill.getBill().getTotalTransactions();
+            }
+            run.setBillsWritten(run.getBillsWritten() + pending.size());
+            run.setSalesRead(run.getSalesRead() + sales);
+            run.setLastCustomerId(lastCustomerId);
+            billsCounter.increment(pending.size());
+            pending.clear();
+        }
+        writer.flush();
+        
+        long elapsedMs = elapsedBefore + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        run.setExportOffset(channel.position());
+        run.setElapsedMs(elapsedMs);
+        run.setBillsPerSecond(elapsedMs > 0 ? run.getBillsWritten() * 1000.0 / elapsedMs : 0.0);
+        run.setUpdatedAt(LocalDateTime.now());
+        saveOwned(run);
+        throughput = run.getBillsPerSecond();
+    }
+    
+    private String line(BillingRun.ExportFormat format, GeneratedBillDTO bill) {
+        if (format == BillingRun.ExportFormat.CSV) {
+            return String.join(",",
+                csv(bill.getBillNumber()),
+                String.valueOf(bill.getCustomerId()),
+                csv(bill.getCustomerName()),
+                String.valueOf(bill.getPeriodStartDate()),
+                String.valueOf(bill.getPeriodEndDate()),
+                String.valueOf(bill.getTotalTransactions()),
+                String.valueOf(bill.getTotalItemsSold()),
+                amount(bill.getSubtotal()),
+                amount(bill.getTotalDiscount()),
+                amount(bill.getTaxAmount()),
+                amount(bill.getGrandTotal()),
+                csv(bill.getPaymentMethod())) + "\n";
+        }
+        try {
+            return objectMapper.writeValueAsString(bill) + "\n";
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+    
+    private static String amount(Double value) {
+        return String.format(Locale.ROOT, "%.2f", value != null ? value : 0.0);
+    }
+    
+    private static class LeaseLostException extends RuntimeException {
+        LeaseLostException(String message) {
+            super(message);
+        }
+    }
+}
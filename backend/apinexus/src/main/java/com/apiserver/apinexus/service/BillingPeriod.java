@@ -0,0 +1,60 @@
+package com.apiserver.apinexus.service;
+
+import com.apiserver.apinexus.dto.BillGenerationRequestDTO;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * The dates a bill request covers and how the bill describes them
+ */
+public record BillingPeriod(LocalDate startDate, LocalDate endDate, String description) {
+    
+    /**
+     * WEEK, MONTH and YEAR resolve to the current calendar week/month/year around today;
+     * CUSTOM uses the request's own dates
+     */
+    public static BillingPeriod of(BillGenerationRequestDTO request, LocalDate today) {
+        LocalDate startDate = request.getStartDate();
+        LocalDate endDate = request.getEndDate();
+        String periodDescription;
+        
+        if (request.getPeriod() != BillGenerationRequestDTO.TimePeriod.CUSTOM) {
+            switch (request.getPeriod()) {
+                case WEEK:
+                    startDate = today.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                    endDate = startDate.plusDays(6);
+                    periodDescription = "Week of " + startDate.format(DateTimeFormatter.ofPattern("MMM dd, yyyy"));
+                    break;
+                case MONTH:
+                    startDate = today.with(TemporalAdjusters.firstDayOfMonth());
+                    endDate = today.with(TemporalAdjusters.lastDayOfMonth());
+                    periodDescription = today.format(DateTimeFormatter.ofPattern("MMMM yyyy"));
+                    break;
+                case YEAR:
+                    startDate = today.with(TemporalAdjusters.firstDayOfYear());
+                    endDate = today.with(TemporalAdjusters.lastDayOfYear());
+                    periodDescription = today.format(DateTimeFormatter.ofPattern("yyyy"));
+                    break;
+                default:
+                    periodDescription = "Custom Period";
+            }
+        } else {
+            periodDescription = String.format("%s to %s", 
+                startDate.format(DateTimeFormatter.ofPattern("MMM dd, yyyy")),
+                endDate.format(DateTimeFormatter.ofPattern("MMM dd, yyyy")));
+        }
+        return new BillingPeriod(startDate, endDate, periodDescription);
+    }
+    
+    public LocalDateTime startDateTime() {
+        return startDate.atStartOfDay();
+    }
+    
+    public LocalDateTime endDateTime() {
+        return endDate.atTime(23, 59, 59);
+    }
+}
@@ -0,0 +1,307 @@
+package com.apiserver.apinexus.service;
+
+import com.apiserver.apinexus.model.Transaction;
+import com.apiserver.apinexus.repository.TransactionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes payments off the request thread. A submitted payment is saved as PENDING and
+ * queued; payments.async.workers workers (virtual threads on Java 21+) charge queued payments,
+ * and the caller polls the transaction for the outcome. At most payments.async.queue-capacity
+ * payments wait at a time. When the queue is full, submit refuses the payment instead of
+ * queueing it, so a spike turns into quick rejections rather than exhausted request threads and
+ * JDBC connections. Queue depth, rejections and processing time are published as payments.queue.*.
+ * <p>
+ * The queue lives in memory, so a worker claims a payment before charging it by moving its
+ * scheduledRetryDate payments.async.lease-ms ahead, renews the claim every
+ * payments.async.renew-ms while it works, and writes the outcome only if it still holds the
+ * claim. Payments left PENDING by a restart or a crashed instance (a lapsed claim, or never
+ * claimed within lease-ms) are claimed again and re-queued every payments.async.recover-ms,
+ * starting at startup. A payment that fails unexpectedly is marked FAILED and left to
+ * {@link PaymentRetryScheduler}.
+ */
+@Service
+public class PaymentQueue {
+    
+    public static final String DEPTH_GAUGE = "payments.queue.depth";
+    public static final String REJECTED_COUNTER = "payments.queue.rejected";
+    public static final String PROCESS_TIMER = "payments.queue.process";
+    
+    private final PaymentService paymentService;
+    private final TransactionRepository transactionRepository;
+    private final MongoTemplate mongoTemplate;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final long leaseMs;
+    private final ThreadPoolExecutor executor;
+    private final Counter rejectedCounter;
+    // Claims held by this instance's workers, by transaction document id
+    private final Map<String, Claim> inFlight = new ConcurrentHashMap<>();
+    
+    public PaymentQueue(
+            PaymentService paymentService,
+            TransactionRepository transactionRepository,
+            MongoTemplate mongoTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${payments.async.enabled:false}") boolean enabled,
+            @Value("${payments.async.workers:16}") int workers,
+            @Value("${payments.async.queue-capacity:1000}") int queueCapacity,
+            @Value("${payments.async.lease-ms:300000}") long leaseMs) {
+        this.paymentService = paymentService;
+        this.transactionRepository = transactionRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.leaseMs = leaseMs;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), threadFactory(),
+            new ThreadPoolExecutor.AbortPolicy());
+        this.rejectedCounter = Counter.builder(REJECTED_COUNTER)
+            .description("Payments refused because the queue was full")
+            .register(meterRegistry);
+        Gauge.builder(DEPTH_GAUGE, executor, e -> e.getQueue().size())
+            .description("Payments waiting for a worker")
+            .register(meterRegistry);
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Save a PENDING transaction for the bill and queue it; empty when the queue is full,
+     * in which case the transaction is recorded as CANCELLED. IllegalArgumentException when
+     * the bill does not exist.
+     */
+    public Optional<Transaction> submit(Long billId, String paymentMethod) {
+        Transaction transaction = paymentService.createPendingPayment(billId, paymentMethod);
+        try {
+            executor.execute(() -> process(transaction));
+            return Optional.of(transaction);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            transaction.setStatus(Transaction.TransactionStatus.CANCELLED);
+            transaction.setFailureReason("Payment queue full");
+            transaction.setUpdatedAt(LocalDateTime.now());
+            transactionRepository.save(transaction);
+            return Optional.empty();
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${payments.async.recover-ms:60000}")
+    public void scheduledRecovery() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int recovered = recoverPending(LocalDateTime.now());
+            if (recovered > 0) {
+                System.out.println("Re-queued " + recovered + " pending payments");
+            }
+        } catch (Exception e) {
+            System.err.println("Pending payment recovery failed: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Move the claims of payments still being processed lease-ms ahead
+     */
+    @Scheduled(fixedDelayString = "${payments.async.renew-ms:60000}")
+    public void renewClaims() {
+        for (Map.Entry<String, Claim> entry : inFlight.entrySet()) {
+            Claim claim = entry.getValue();
+            synchronized (claim) {
+                LocalDateTime until = leaseUntil(LocalDateTime.now());
+                try {
+                    if (mongoTemplate.updateFirst(held(entry.getKey(), claim.until),
+                            Update.update("scheduledRetryDate", until), Transaction.class).getModifiedCount() > 0) {
+                        claim.until = until;
+                    }
+                } catch (Exception e) {
+                    System.err.println("Could not renew claim on payment " + entry.getKey() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Claim and re-queue PENDING payments that no worker is processing as of asOf, as many as
+     * the queue has room for; returns the number re-queued
+     */
+    public int recoverPending(LocalDateTime asOf) {
+        FindAndModifyOptions returnNew = FindAndModifyOptions.options().returnNew(true);
+        int recovered = 0;
+        while (executor.getQueue().remainingCapacity() > 0) {
+            Transaction transaction = mongoTemplate.findAndModify(stale(asOf), lease(asOf), returnNew, Transaction.class);
+            if (transaction == null) {
+                break;
+            }
+            try {
+                executor.execute(() -> run(transaction));
+                recovered++;
+            } catch (RejectedExecutionException e) {
+                // Claimed but not queued: recovered again once the claim lapses
+                break;
+            }
+        }
+        return recovered;
+    }
+    
+    public Optional<Transaction> getPayment(String transactionId) {
+        return transactionRepository.findByTransactionId(transactionId);
+    }
+    
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+    
+    /**
+     * Stop taking payments and let queued ones finish (up to 30 seconds); payments still queued
+     * stay PENDING and are recovered by the next instance to run
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            System.err.println("Payment queue shut down with " + executor.getQueue().size()
+                + " payments still pending");
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Process a submitted payment unless it was already claimed by recovery
+     */
+    private void process(Transaction transaction) {
+        LocalDateTime now = LocalDateTime.now();
+        Query unclaimed = Query.query(Criteria.where("transactionId").is(transaction.getTransactionId())
+            .and("status").is(Transaction.TransactionStatus.PENDING)
+            .orOperator(Criteria.where("scheduledRetryDate").is(null), Criteria.where("scheduledRetryDate").lte(now)));
+        Transaction claimed = mongoTemplate.findAndModify(unclaimed, lease(now),
+            FindAndModifyOptions.options().returnNew(true), Transaction.class);
+        if (claimed != null) {
+            run(claimed);
+        }
+    }
+    
+    /**
+     * Charge a claimed payment and record the outcome if the claim is still held
+     */
+    private void run(Transaction transaction) {
+        long start = System.nanoTime();
+        String outcome = "error";
+        Claim claim = new Claim(transaction.getScheduledRetryDate());
+        inFlight.put(transaction.getId(), claim);
+        try {
+            Transaction processed;
+            try {
+                processed = paymentService.settle(transaction);
+            } catch (RuntimeException e) {
+                System.err.println("Payment " + transaction.getTransactionId() + " failed: " + e.getMessage());
+                processed = paymentService.markFailed(transaction, "Payment processing error: " + e.getMessage());
+            }
+            if (complete(processed, claim)) {
+                outcome = processed.getStatus().name().toLowerCase();
+            } else {
+                outcome = "lost";
+                System.err.println("Payment " + transaction.getTransactionId() + " was claimed again while processing; "
+                    + processed.getStatus() + " not recorded");
+            }
+        } catch (RuntimeException e) {
+            // Still PENDING with a claim; recovered once the claim lapses
+            System.err.println("Could not record payment " + transaction.getTransactionId() + ": " + e.getMessage());
+        } finally {
+            inFlight.remove(transaction.getId());
+            Timer.builder(PROCESS_TIMER)
+                .description("Time to process a queued payment")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    /**
+     * Replace the PENDING transaction with its outcome, unless its claim was lost
+     */
+    private boolean complete(Transaction transaction, Claim claim) {
+        synchronized (claim) {
+            return mongoTemplate.findAndReplace(held(transaction.getId(), claim.until), transaction) != null;
+        }
+    }
+    
+    private static Query held(String id, LocalDateTime claimedUntil) {
+        return Query.query(Criteria.where("_id").is(id)
+            .and("status").is(Transaction.TransactionStatus.PENDING)
+            .and("scheduledRetryDate").is(claimedUntil));
+    }
+    
+    private Update lease(LocalDateTime asOf) {
+        return Update.update("scheduledRetryDate", leaseUntil(asOf));
+    }
+    
+    /**
+     * Truncated to the millisecond Mongo stores, so a claim can be matched exactly
+     */
+    private LocalDateTime leaseUntil(LocalDateTime asOf) {
+        return asOf.truncatedTo(ChronoUnit.MILLIS).plus(leaseMs, ChronoUnit.MILLIS);
+    }
+    
+    private static final class Claim {
+        private LocalDateTime until;
+        
+        private Claim(LocalDateTime until) {
+            this.until = until;
+        }
+    }
+    
+    /**
+     * PENDING payments whose claim has lapsed, or that were never claimed within lease-ms
+     */
+    private Query stale(LocalDateTime asOf) {
+        return Query.query(Criteria.where("status").is(Transaction.TransactionStatus.PENDING)
+                .orOperator(Criteria.where("scheduledRetryDate").lte(asOf),
+                    Criteria.where("scheduledRetryDate").is(null)
+                        .and("transactionDate").lte(asOf.minusNanos(leaseMs * 1_000_000L))))
+            .with(Sort.by(Sort.Direction.ASC, "transactionDate"));
+    }
+    
+    /**
+     * Thread.ofVirtual().factory() when running on Java 21+; the build targets 17,
+     * so it is looked up reflectively
+     */
+    private static ThreadFactory threadFactory() {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "payment-worker-", 1L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return r -> {
+                Thread thread = new Thread(r, "payment-worker-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+}
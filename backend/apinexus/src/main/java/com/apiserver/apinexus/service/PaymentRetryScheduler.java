@@ -0,0 +1,178 @@
+package com.apiserver.apinexus.service;
+
+import com.apiserver.apinexus.model.Transaction;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries FAILED payments whose scheduledRetryDate has passed, oldest first, using the
+ * status + scheduledRetryDate index. Due payments are claimed payments.retry.batch-size at a
+ * time by atomically moving their retry date lease-ms ahead, so several instances never retry
+ * the same payment and a claim left by a crashed instance falls due again. Each retry is a new
+ * transaction linked to the one it retries (see {@link PaymentService#retryPayment(Transaction)});
+ * its own retry date, if any, follows {@link RetryBackoff}.
+ * <p>
+ * Metrics: payments.retry.attempts (by outcome, where skipped means the payment was retried by
+ * hand meanwhile; its rate is the retry throughput), payments.retry.queue.depth (payments due
+ * now), payments.retry.lag (seconds the oldest due payment is past its retry date) and the
+ * payments.retry.batch timer.
+ */
+@Service
+public class PaymentRetryScheduler {
+    
+    public static final String ATTEMPTS_COUNTER = "payments.retry.attempts";
+    public static final String DEPTH_GAUGE = "payments.retry.queue.depth";
+    public static final String LAG_GAUGE = "payments.retry.lag";
+    public static final String BATCH_TIMER = "payments.retry.batch";
+    
+    private final MongoTemplate mongoTemplate;
+    private final PaymentService paymentService;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long leaseMs;
+    
+    private volatile long queueDepth;
+    private volatile double lagSeconds;
+    
+    public PaymentRetryScheduler(
+            MongoTemplate mongoTemplate,
+            PaymentService paymentService,
+            MeterRegistry meterRegistry,
+            @Value("${payments.retry.enabled:true}") boolean enabled,
+            @Value("${payments.retry.batch-size:100}") int batchSize,
+            @Value("${payments.retry.lease-ms:600000}") long leaseMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.paymentService = paymentService;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.leaseMs = leaseMs;
+        Gauge.builder(DEPTH_GAUGE, this, scheduler -> scheduler.queueDepth)
+            .description("Failed payments due for retry")
+            .register(meterRegistry);
+        Gauge.builder(LAG_GAUGE, this, scheduler -> scheduler.lagSeconds)
+            .description("How far the oldest due payment is past its retry date")
+            .baseUnit("seconds")
+            .register(meterRegistry);
+    }
+    
+    @Scheduled(fixedDelayString = "${payments.retry.poll-ms:60000}",
+        initialDelayString = "${payments.retry.poll-ms:60000}")
+    public void scheduledRun() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            int retried = retryDue(LocalDateTime.now());
+            if (retried > 0) {
+                long elapsedMs = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                System.out.println("Payment retries: " + retried + " in " + elapsedMs + " ms ("
+                    + String.format("%.1f", retried * 1000.0 / elapsedMs) + "/s), " + queueDepth + " still due");
+            }
+        } catch (Exception e) {
+            // Claimed payments fall due again once their lease runs out
+            System.err.println("Payment retry run failed: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Retry every payment due at asOf, batch by batch; returns the number retried
+     */
+    public int retryDue(LocalDateTime asOf) {
+        refreshBacklog(asOf);
+        int retried = 0;
+        while (true) {
+            long start = System.nanoTime();
+            List<Transaction> batch = claim(asOf);
+            for (Transaction transaction : batch) {
+                String outcome;
+                try {
+                    Transaction retry = paymentService.retryPayment(transaction);
+                    outcome = retry.getStatus() == Transaction.TransactionStatus.FAILED
+                        && retry.getScheduledRetryDate() == null
+                        ? "exhausted"
+                        : retry.getStatus().name().toLowerCase();
+                } catch (IllegalStateException e) {
+                    // Retried by hand since it was claimed
+                    outcome = "skipped";
+                } catch (RuntimeException e) {
+                    outcome = "error";
+                    System.err.println("Retry of payment " + transaction.getTransactionId() + " failed: "
+                        + e.getMessage());
+                }
+                meterRegistry.counter(ATTEMPTS_COUNTER, "outcome", outcome).increment();
+            }
+            retried += batch.size();
+            if (!batch.isEmpty()) {
+                Timer.builder(BATCH_TIMER)
+                    .description("Time to retry one batch of failed payments")
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            if (batch.size() < batchSize) {
+                break;
+            }
+        }
+        refreshBacklog(asOf);
+        return retried;
+    }
+    
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+    
+    public double getLagSeconds() {
+        return lagSeconds;
+    }
+    
+    /**
+     * Claim up to batch-size due payments, oldest first
+     */
+    private List<Transaction> claim(LocalDateTime asOf) {
+        Update lease = Update.update("scheduledRetryDate", asOf.plusNanos(leaseMs * 1_000_000L));
+        FindAndModifyOptions returnNew = FindAndModifyOptions.options().returnNew(true);
+        List<Transaction> claimed = new ArrayList<>(batchSize);
+        while (claimed.size() < batchSize) {
+            Transaction transaction = mongoTemplate.findAndModify(due(asOf), lease, returnNew, Transaction.class);
+            if (transaction == null) {
+                break;
+            }
+            claimed.add(transaction);
+        }
+        return claimed;
+    }
+    
+    private void refreshBacklog(LocalDateTime asOf) {
+        queueDepth = mongoTemplate.count(due(asOf), Transaction.class);
+        Query oldest = due(asOf).limit(1);
+        oldest.fields().include("scheduledRetryDate");
+        Transaction transaction = mongoTemplate.findOne(oldest, Transaction.class);
+        lagSeconds = transaction != null && transaction.getScheduledRetryDate() != null
+            ? Duration.between(transaction.getScheduledRetryDate(), asOf).toMillis() / 1000.0
+            : 0.0;
+    }
+    
+    private static Query due(LocalDateTime asOf) {
+        return Query.query(Criteria.where("status").is(Transaction.TransactionStatus.FAILED)
+                .and("scheduledRetryDate").lte(asOf))
+            .with(Sort.by(Sort.Direction.ASC, "scheduledRetryDate"));
+    }
+}
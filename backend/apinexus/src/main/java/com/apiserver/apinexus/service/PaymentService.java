@@ -4,97 +4,257 @@ import com.apiserver.apinexus.model.Bill;
 import com.apiserver.apinexus.model.Transaction;
 import com.apiserver.apinexus.repository.BillRepository;
 import com.apiserver.apinexus.repository.TransactionRepository;
-import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.Optional;
 import java.util.Random;
 import java.util.UUID;
 
 @Service
-@RequiredArgsConstructor
 public class PaymentService {
     
     private final BillRepository billRepository;
     private final TransactionRepository transactionRepository;
+    private final MongoTemplate mongoTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RetryBackoff retryBackoff;
     private final Random random = new Random();
     
-    @Transactional
+    private enum ChargeResult {
+        CHARGED, DECLINED, NO_BILL, ALREADY_PAID, BILL_CANCELLED
+    }
+    
+    public PaymentService(BillRepository billRepository, TransactionRepository transactionRepository,
+                          MongoTemplate mongoTemplate, PlatformTransactionManager transactionManager,
+                          RetryBackoff retryBackoff) {
+        this.billRepository = billRepository;
+        this.transactionRepository = transactionRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.retryBackoff = retryBackoff;
+    }
+    
     public Transaction initiatePayment(Long billId, String paymentMethod) {
-        Bill bill = billRepository.findById(billId)
-            .orElseThrow(() -> new RuntimeException("Bill not found"));
+        requireBill(billId);
+        return processPayment(newPayment(billId, paymentMethod));
+    }
+    
+    /**
+     * Reject a payment for a missing (or null) bill before anything is recorded for it
+     */
+    public void requireBill(Long billId) {
+        if (billId == null || !billRepository.existsById(billId)) {
+            throw new IllegalArgumentException("Bill not found");
+        }
+    }
+    
+    /**
+     * A PENDING transaction for the bill, with the bill's user and amount, saved in Mongo only so
+     * its status can be polled while it waits to be processed. IllegalArgumentException when the
+     * bill does not exist.
+     */
+    public Transaction createPendingPayment(Long billId, String paymentMethod) {
+        Bill bill = (billId != null ? billRepository.findById(billId) : Optional.<Bill>empty())
+            .orElseThrow(() -> new IllegalArgumentException("Bill not found"));
+        Transaction transaction = newPayment(billId, paymentMethod);
+        transaction.setUserId(bill.getUser().getId());
+        transaction.setAmount(bill.getAmount());
+        return transactionRepository.save(transaction);
+    }
+    
+    /**
+     * Charge a pending transaction. The bill is read and updated in a short Postgres
+     * transaction; the Mongo transaction is written after it commits, so no JDBC
+     * connection is held across the Mongo write.
+     */
+    public Transaction processPayment(Transaction transaction) {
+        return transactionRepository.save(settle(transaction));
+    }
+    
+    /**
+     * Charge a pending transaction and set its outcome without saving it, for callers that
+     * write the outcome themselves (see {@link PaymentQueue})
+     */
+    public Transaction settle(Transaction transaction) {
+        ChargeResult result = charge(transaction);
         
-        // Create transaction
+        if (result == ChargeResult.DECLINED) {
+            return markFailed(transaction, "Payment declined by provider");
+        }
+        if (result == ChargeResult.CHARGED) {
+            transaction.setStatus(Transaction.TransactionStatus.SUCCESS);
+        } else {
+            // Not retried: there is nothing to charge
+            transaction.setStatus(Transaction.TransactionStatus.CANCELLED);
+            transaction.setFailureReason(cancelReason(result));
+        }
+        transaction.setScheduledRetryDate(null);
+        transaction.setUpdatedAt(LocalDateTime.now());
+        return transaction;
+    }
+    
+    /**
+     * Mark a first payment attempt FAILED and schedule its first retry, without saving it
+     */
+    public Transaction markFailed(Transaction transaction, String reason) {
+        transaction.setStatus(Transaction.TransactionStatus.FAILED);
+        transaction.setFailureReason(reason);
+        transaction.setRetryCount(0);
+        transaction.setScheduledRetryDate(retryBackoff.nextRetry(0, LocalDateTime.now()));
+        transaction.setUpdatedAt(LocalDateTime.now());
+        return transaction;
+    }
+    
+    private Transaction newPayment(Long billId, String paymentMethod) {
         Transaction transaction = new Transaction();
-        transaction.setUserId(bill.getUser().getId());
         transaction.setBillId(billId);
         transaction.setTransactionId("TXN-" + UUID.randomUUID().toString().substring(0, 12).toUpperCase());
-        transaction.setAmount(bill.getAmount());
         transaction.setPaymentMethod(paymentMethod);
         transaction.setTransactionDate(LocalDateTime.now());
         transaction.setStatus(Transaction.TransactionStatus.PENDING);
-        
-        // Simulate payment processing with 80-20 success rate
-        boolean paymentSuccess = random.nextInt(100) < 80; // 80% success rate
-        
-        if (paymentSuccess) {
-            transaction.setStatus(Transaction.TransactionStatus.SUCCESS);
-            bill.setStatus(Bill.BillStatus.PAID);
-            bill.setPaidDate(LocalDateTime.now());
-            billRepository.save(bill);
-        } else {
-            transaction.setStatus(Transaction.TransactionStatus.FAILED);
-            transaction.setFailureReason("Payment declined by provider");
-            transaction.setRetryCount(0);
-            // Schedule retry for next day
-            transaction.setScheduledRetryDate(LocalDateTime.now().plusDays(1));
-            bill.setStatus(Bill.BillStatus.FAILED);
-            billRepository.save(bill);
-        }
-        
-        return transactionRepository.save(transaction);
+        return transaction;
     }
     
-    @Transactional
+    /**
+     * Retry a failed payment by its transaction id (or document id)
+     */
     public Transaction retryPayment(String transactionId) {
-        Transaction transaction = transactionRepository.findById(transactionId)
+        Transaction transaction = transactionRepository.findByTransactionId(transactionId)
+            .or(() -> transactionRepository.findById(transactionId))
             .orElseThrow(() -> new RuntimeException("Transaction not found"));
         
         if (transaction.getStatus() != Transaction.TransactionStatus.FAILED) {
             throw new RuntimeException("Only failed transactions can be retried");
         }
+        if (transaction.getRetriedByTransactionId() != null) {
+            throw new RuntimeException("Transaction was already retried as " + transaction.getRetriedByTransactionId());
+        }
+        return retryPayment(transaction);
+    }
+    
+    /**
+     * Charge a failed payment again as a new transaction linked to it, so it is retried only once.
+     * Before charging, the failed transaction is atomically marked with the new transaction's id;
+     * if it was already marked by someone else (a manual retry racing the scheduler) this throws
+     * IllegalStateException and nothing is charged. Once the new transaction is written the failed
+     * one loses its retry date. A retry that stopped in between (marked, but no new transaction)
+     * falls due again with its retry date and is finished under the same id.
+     */
+    public Transaction retryPayment(Transaction transaction) {
+        boolean resuming = transaction.getRetriedByTransactionId() != null;
+        String retryId = resuming
+            ? transaction.getRetriedByTransactionId()
+            : "TXN-" + UUID.randomUUID().toString().substring(0, 12).toUpperCase();
+        Query unmarked = Query.query(Criteria.where("_id").is(transaction.getId())
+            .and("status").is(Transaction.TransactionStatus.FAILED)
+            .and("retriedByTransactionId").is(transaction.getRetriedByTransactionId()));
+        if (mongoTemplate.findAndModify(unmarked,
+                Update.update("retriedByTransactionId", retryId).set("updatedAt", LocalDateTime.now()),
+                FindAndModifyOptions.options().returnNew(true), Transaction.class) == null) {
+            throw new IllegalStateException("Transaction " + transaction.getTransactionId() + " is already being retried");
+        }
+        transaction.setRetriedByTransactionId(retryId);
         
-        Bill bill = billRepository.findById(transaction.getBillId())
-            .orElseThrow(() -> new RuntimeException("Bill not found"));
+        Optional<Transaction> written = resuming ? transactionRepository.findByTransactionId(retryId) : Optional.empty();
+        if (written.isPresent()) {
+            // Only the failed transaction's retry date was left to clear
+            clearRetryDate(transaction);
+            return written.get();
+        }
         
-        // Create new transaction for retry
         Transaction retryTransaction = new Transaction();
         retryTransaction.setUserId(transaction.getUserId());
         retryTransaction.setBillId(transaction.getBillId());
-        retryTransaction.setTransactionId("TXN-" + UUID.randomUUID().toString().substring(0, 12).toUpperCase());
+        retryTransaction.setTransactionId(retryId);
         retryTransaction.setAmount(transaction.getAmount());
         retryTransaction.setPaymentMethod(transaction.getPaymentMethod());
         retryTransaction.setTransactionDate(LocalDateTime.now());
-        retryTransaction.setRetryCount(transaction.getRetryCount() + 1);
+        retryTransaction.setRetryCount((transaction.getRetryCount() != null ? transaction.getRetryCount() : 0) + 1);
         retryTransaction.setStatus(Transaction.TransactionStatus.RETRYING);
+        retryTransaction.setParentTransactionId(transaction.getTransactionId());
+        retryTransaction.setRootTransactionId(transaction.getRootTransactionId() != null
+            ? transaction.getRootTransactionId() : transaction.getTransactionId());
         
-        // Simulate retry payment with 80-20 success rate
-        boolean paymentSuccess = random.nextInt(100) < 80;
+        ChargeResult result = charge(retryTransaction);
         
-        if (paymentSuccess) {
+        if (result == ChargeResult.CHARGED) {
             retryTransaction.setStatus(Transaction.TransactionStatus.SUCCESS);
-            bill.setStatus(Bill.BillStatus.PAID);
-            bill.setPaidDate(LocalDateTime.now());
-            billRepository.save(bill);
+        } else if (result != ChargeResult.DECLINED) {
+            // The bill was paid (or cancelled) since this payment failed: nothing left to retry
+            retryTransaction.setStatus(Transaction.TransactionStatus.CANCELLED);
+            retryTransaction.setFailureReason(cancelReason(result));
         } else {
             retryTransaction.setStatus(Transaction.TransactionStatus.FAILED);
-            retryTransaction.setFailureReason("Payment declined on retry");
-            retryTransaction.setScheduledRetryDate(LocalDateTime.now().plusDays(1));
-            bill.setStatus(Bill.BillStatus.FAILED);
-            billRepository.save(bill);
+            LocalDateTime nextRetry = retryBackoff.nextRetry(retryTransaction.getRetryCount(), LocalDateTime.now());
+            retryTransaction.setScheduledRetryDate(nextRetry);
+            retryTransaction.setFailureReason(nextRetry != null
+                ? "Payment declined on retry"
+                : "Payment declined on retry; no retries left after " + retryTransaction.getRetryCount());
         }
+        retryTransaction.setUpdatedAt(LocalDateTime.now());
+        Transaction saved = transactionRepository.save(retryTransaction);
         
-        return transactionRepository.save(retryTransaction);
+        clearRetryDate(transaction);
+        return saved;
+    }
+    
+    private void clearRetryDate(Transaction transaction) {
+        transaction.setScheduledRetryDate(null);
+        transaction.setUpdatedAt(LocalDateTime.now());
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(transaction.getId())),
+            Update.update("scheduledRetryDate", null).set("updatedAt", transaction.getUpdatedAt()), Transaction.class);
+    }
+    
+    /**
+     * Simulated charge of the transaction's bill, in a short Postgres transaction that locks the
+     * bill and marks it PAID or FAILED. Fills in the user and amount from the bill. A bill that is
+     * already PAID or CANCELLED is left alone and not charged.
+     */
+    private ChargeResult charge(Transaction transaction) {
+        return transactionTemplate.execute(status -> {
+            Bill bill = billRepository.findByIdForUpdate(transaction.getBillId()).orElse(null);
+            if (bill == null) {
+                return ChargeResult.NO_BILL;
+            }
+            transaction.setUserId(bill.getUser().getId());
+            transaction.setAmount(bill.getAmount());
+            if (bill.getStatus() == Bill.BillStatus.PAID) {
+                return ChargeResult.ALREADY_PAID;
+            }
+            if (bill.getStatus() == Bill.BillStatus.CANCELLED) {
+                return ChargeResult.BILL_CANCELLED;
+            }
+            
+            // Simulate payment processing with 80-20 success rate
+            boolean paymentSuccess = random.nextInt(100) < 80; // 80% success rate
+            
+            if (paymentSuccess) {
+                bill.setStatus(Bill.BillStatus.PAID);
+                bill.setPaidDate(LocalDateTime.now());
+            } else {
+                bill.setStatus(Bill.BillStatus.FAILED);
+            }
+            billRepository.save(bill);
+            return paymentSuccess ? ChargeResult.CHARGED : ChargeResult.DECLINED;
+        });
+    }
+    
+    private static String cancelReason(ChargeResult result) {
+        switch (result) {
+            case ALREADY_PAID:
+                return "Bill already paid";
+            case BILL_CANCELLED:
+                return "Bill cancelled";
+            default:
+                return "Bill not found";
+        }
     }
 }
@@ -0,0 +1,56 @@
+package com.apiserver.apinexus.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * When a failed payment is tried again: base-delay-ms doubled for every retry already made,
+ * capped at max-delay-ms, with the upper half of each delay randomized so payments that failed
+ * together (e.g. during a provider outage) do not all retry at the same moment. After
+ * max-retries retries a payment is not scheduled again.
+ */
+@Component
+public class RetryBackoff {
+    
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final int maxRetries;
+    
+    public RetryBackoff(
+            @Value("${payments.retry.base-delay-ms:3600000}") long baseDelayMs,
+            @Value("${payments.retry.max-delay-ms:604800000}") long maxDelayMs,
+            @Value("${payments.retry.max-retries:5}") int maxRetries) {
+        this.baseDelayMs = Math.max(1L, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+        this.maxRetries = maxRetries;
+    }
+    
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+    
+    /**
+     * Time of the next retry for a payment that has failed after retriesMade retries,
+     * or null when no retries are left
+     */
+    public LocalDateTime nextRetry(int retriesMade, LocalDateTime failedAt) {
+        if (retriesMade >= maxRetries) {
+            return null;
+        }
+        return failedAt.plusNanos(delayMs(retriesMade) * 1_000_000L);
+    }
+    
+    /**
+     * Between half and all of min(max-delay, base-delay * 2^retriesMade)
+     */
+    public long delayMs(int retriesMade) {
+        long delay = retriesMade >= 62 || baseDelayMs > (maxDelayMs >> retriesMade)
+            ? maxDelayMs
+            : baseDelayMs << retriesMade;
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+}
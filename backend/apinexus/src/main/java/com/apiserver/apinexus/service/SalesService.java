@@ -1,15 +1,33 @@
 package com.apiserver.apinexus.service;
 
+import com.apiserver.apinexus.analytics.CustomerReachTracker;
+import com.apiserver.apinexus.analytics.HeavyHitterTracker;
+import com.apiserver.apinexus.analytics.InMemorySalesAggregator;
+import com.apiserver.apinexus.analytics.MongoSalesAggregator;
+import com.apiserver.apinexus.analytics.ParallelSalesAggregator;
+import com.apiserver.apinexus.analytics.SalesClearedEvent;
+import com.apiserver.apinexus.analytics.SalesCacheKey;
+import com.apiserver.apinexus.analytics.SalesCube;
+import com.apiserver.apinexus.analytics.SalesDashboardAccumulator;
+import com.apiserver.apinexus.analytics.SalesDimension;
+import com.apiserver.apinexus.analytics.SalesPeriod;
+import com.apiserver.apinexus.analytics.SalesRecordedEvent;
+import com.apiserver.apinexus.analytics.SalesResultCache;
+import com.apiserver.apinexus.analytics.SalesRollupService;
 import com.apiserver.apinexus.dto.*;
 import com.apiserver.apinexus.model.Sale;
 import com.apiserver.apinexus.repository.SaleRepository;
+import com.apiserver.apinexus.repository.projection.SaleMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class SalesService {
@@ -17,6 +35,36 @@ public class SalesService {
     @Autowired
     private SaleRepository saleRepository;
     
+    @Autowired
+    private MongoSalesAggregator mongoSalesAggregator;
+    
+    @Autowired
+    private SalesRollupService salesRollupService;
+    
+    @Autowired
+    private SalesCube salesCube;
+    
+    @Autowired
+    private ParallelSalesAggregator parallelSalesAggregator;
+    
+    @Autowired
+    private SalesResultCache salesResultCache;
+    
+    @Autowired
+    private HeavyHitterTracker heavyHitterTracker;
+    
+    @Autowired
+    private CustomerReachTracker customerReachTracker;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    /**
+     * Run aggregations as MongoDB pipelines instead of loading every sale into the JVM
+     */
+    @Value("${sales.analytics.pushdown-enabled:true}")
+    private boolean pushdownEnabled;
+    
     /**
      * Get all sales
      */
@@ -35,140 +83,129 @@ public class SalesService {
      * Get sales analytics summary
      */
     public SalesAnalyticsDTO getSalesAnalytics(LocalDateTime startDate, LocalDateTime endDate) {
-        List<Sale> sales = startDate != null && endDate != null 
-            ? getSalesByDateRange(startDate, endDate)
-            : getAllSales();
-        
-        double totalRevenue = sales.stream()
-            .mapToDouble(Sale::getFinalAmount)
-            .sum();
-        
-        int totalSales = sales.size();
-        
-        int totalQuantity = sales.stream()
-            .mapToInt(Sale::getQuantity)
-            .sum();
-        
-        double averageOrderValue = totalSales > 0 ? totalRevenue / totalSales : 0.0;
-        
-        double totalDiscounts = sales.stream()
-            .mapToDouble(sale -> sale.getDiscountApplied() != null ? sale.getDiscountApplied() : 0.0)
-            .sum();
-        
-        int premiumSales = (int) sales.stream()
-            .filter(sale -> sale.getIsPremiumCustomer() != null && sale.getIsPremiumCustomer())
-            .count();
-        
-        int regularSales = totalSales - premiumSales;
-        
-        return new SalesAnalyticsDTO(
-            Math.round(totalRevenue * 100.0) / 100.0,
-            totalSales,
-            totalQuantity,
-            Math.round(averageOrderValue * 100.0) / 100.0,
-            Math.round(totalDiscounts * 100.0) / 100.0,
-            premiumSales,
-            regularSales
-        );
+        return salesResultCache.get(SalesCacheKey.of("analytics", startDate, endDate),
+            () -> computeSalesAnalytics(startDate, endDate));
+    }
+    
+    private SalesAnalyticsDTO computeSalesAnalytics(LocalDateTime startDate, LocalDateTime endDate) {
+        Optional<SalesAnalyticsDTO> fromCube = salesCube.analytics(startDate, endDate);
+        if (fromCube.isPresent()) {
+            return fromCube.get();
+        }
+        Optional<SalesAnalyticsDTO> fromRollups = salesRollupService.analytics(startDate, endDate);
+        if (fromRollups.isPresent()) {
+            return fromRollups.get();
+        }
+        if (pushdownEnabled) {
+            return mongoSalesAggregator.analytics(startDate, endDate);
+        }
+        try (Stream<SaleMetrics> sales = streamSales(startDate, endDate)) {
+            return InMemorySalesAggregator.analytics(sales);
+        }
     }
     
     /**
      * Get sales by product
      */
     public List<ProductSalesDTO> getSalesByProduct(LocalDateTime startDate, LocalDateTime endDate) {
-        List<Sale> sales = startDate != null && endDate != null 
-            ? getSalesByDateRange(startDate, endDate)
-            : getAllSales();
-        
-        Map<Long, ProductSalesDTO> productSalesMap = new HashMap<>();
-        
-        for (Sale sale : sales) {
-            Long productId = sale.getProductId();
-            ProductSalesDTO dto = productSalesMap.getOrDefault(productId, 
-                new ProductSalesDTO(productId, sale.getProductName(), sale.getCategory(), 0, 0.0, 0));
-            
-            dto.setTotalQuantity(dto.getTotalQuantity() + sale.getQuantity());
-            dto.setTotalRevenue(dto.getTotalRevenue() + sale.getFinalAmount());
-            dto.setSalesCount(dto.getSalesCount() + 1);
-            
-            productSalesMap.put(productId, dto);
+        return salesResultCache.get(SalesCacheKey.of("by-product", startDate, endDate),
+            () -> computeSalesByProduct(startDate, endDate));
+    }
+    
+    private List<ProductSalesDTO> computeSalesByProduct(LocalDateTime startDate, LocalDateTime endDate) {
+        Optional<List<ProductSalesDTO>> fromCube = salesCube.byProduct(startDate, endDate);
+        if (fromCube.isPresent()) {
+            return fromCube.get();
+        }
+        if (pushdownEnabled) {
+            return mongoSalesAggregator.byProduct(startDate, endDate);
+        }
+        try (Stream<SaleMetrics> sales = streamSales(startDate, endDate)) {
+            return parallelSalesAggregator.byProduct(sales);
         }
-        
-        return productSalesMap.values().stream()
-            .sorted((a, b) -> Double.compare(b.getTotalRevenue(), a.getTotalRevenue()))
-            .collect(Collectors.toList());
     }
     
     /**
      * Get sales by category
      */
     public List<CategorySalesDTO> getSalesByCategory(LocalDateTime startDate, LocalDateTime endDate) {
-        List<Sale> sales = startDate != null && endDate != null 
-            ? getSalesByDateRange(startDate, endDate)
-            : getAllSales();
-        
-        Map<String, CategorySalesDTO> categorySalesMap = new HashMap<>();
-        
-        for (Sale sale : sales) {
-            String category = sale.getCategory();
-            CategorySalesDTO dto = categorySalesMap.getOrDefault(category,
-                new CategorySalesDTO(category, 0, 0.0, 0));
-            
-            dto.setTotalQuantity(dto.getTotalQuantity() + sale.getQuantity());
-            dto.setTotalRevenue(dto.getTotalRevenue() + sale.getFinalAmount());
-            dto.setSalesCount(dto.getSalesCount() + 1);
-            
-            categorySalesMap.put(category, dto);
+        return salesResultCache.get(SalesCacheKey.of("by-category", startDate, endDate),
+            () -> computeSalesByCategory(startDate, endDate));
+    }
+    
+    private List<CategorySalesDTO> computeSalesByCategory(LocalDateTime startDate, LocalDateTime endDate) {
+        Optional<List<CategorySalesDTO>> fromCube = salesCube.byCategory(startDate, endDate);
+        if (fromCube.isPresent()) {
+            return fromCube.get();
+        }
+        if (pushdownEnabled) {
+            return mongoSalesAggregator.byCategory(startDate, endDate);
+        }
+        try (Stream<SaleMetrics> sales = streamSales(startDate, endDate)) {
+            return parallelSalesAggregator.byCategory(sales);
         }
-        
-        return categorySalesMap.values().stream()
-            .sorted((a, b) -> Double.compare(b.getTotalRevenue(), a.getTotalRevenue()))
-            .collect(Collectors.toList());
     }
     
     /**
      * Get sales by time period (daily, weekly, monthly)
      */
     public List<TimePeriodSalesDTO> getSalesByTimePeriod(String period, LocalDateTime startDate, LocalDateTime endDate) {
-        List<Sale> sales = startDate != null && endDate != null 
-            ? getSalesByDateRange(startDate, endDate)
-            : getAllSales();
-        
-        Map<String, TimePeriodSalesDTO> periodSalesMap = new HashMap<>();
-        DateTimeFormatter formatter;
-        
-        switch (period.toLowerCase()) {
-            case "daily":
-                formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-                break;
-            case "weekly":
-                formatter = DateTimeFormatter.ofPattern("yyyy-'W'ww");
-                break;
-            case "monthly":
-                formatter = DateTimeFormatter.ofPattern("yyyy-MM");
-                break;
-            case "yearly":
-                formatter = DateTimeFormatter.ofPattern("yyyy");
-                break;
-            default:
-                formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+        SalesPeriod salesPeriod = SalesPeriod.from(period);
+        return salesResultCache.get(SalesCacheKey.of("by-period", startDate, endDate, salesPeriod, null, null),
+            () -> computeSalesByTimePeriod(salesPeriod, startDate, endDate));
+    }
+    
+    private List<TimePeriodSalesDTO> computeSalesByTimePeriod(SalesPeriod salesPeriod, LocalDateTime startDate, LocalDateTime endDate) {
+        Optional<List<TimePeriodSalesDTO>> fromCube = salesCube.byPeriod(salesPeriod, startDate, endDate);
+        if (fromCube.isPresent()) {
+            return fromCube.get();
         }
-        
-        for (Sale sale : sales) {
-            String periodKey = sale.getSaleDate().format(formatter);
-            TimePeriodSalesDTO dto = periodSalesMap.getOrDefault(periodKey,
-                new TimePeriodSalesDTO(periodKey, 0.0, 0, 0));
-            
-            dto.setRevenue(dto.getRevenue() + sale.getFinalAmount());
-            dto.setSalesCount(dto.getSalesCount() + 1);
-            dto.setQuantity(dto.getQuantity() + sale.getQuantity());
-            
-            periodSalesMap.put(periodKey, dto);
+        Optional<List<TimePeriodSalesDTO>> fromRollups = salesRollupService.byPeriod(salesPeriod, startDate, endDate);
+        if (fromRollups.isPresent()) {
+            return fromRollups.get();
         }
-        
-        return periodSalesMap.values().stream()
-            .sorted(Comparator.comparing(TimePeriodSalesDTO::getPeriod))
-            .collect(Collectors.toList());
+        if (pushdownEnabled) {
+            return mongoSalesAggregator.byPeriod(salesPeriod, startDate, endDate);
+        }
+        try (Stream<SaleMetrics> sales = streamSales(startDate, endDate)) {
+            return InMemorySalesAggregator.byPeriod(salesPeriod, sales);
+        }
+    }
+    
+    /**
+     * Get sales grouped by region or payment method.
+     * These views have no per-row JVM path: without the cube they always run as a pipeline.
+     */
+    public List<DimensionSalesDTO> getSalesByDimension(SalesDimension dimension, LocalDateTime startDate, LocalDateTime endDate) {
+        return salesResultCache.get(SalesCacheKey.of("by-" + dimension.getField(), startDate, endDate),
+            () -> computeSalesByDimension(dimension, startDate, endDate));
+    }
+    
+    private List<DimensionSalesDTO> computeSalesByDimension(SalesDimension dimension, LocalDateTime startDate, LocalDateTime endDate) {
+        Optional<List<DimensionSalesDTO>> fromCube = salesCube.byDimension(dimension, startDate, endDate);
+        if (fromCube.isPresent()) {
+            return fromCube.get();
+        }
+        return mongoSalesAggregator.byDimension(dimension, startDate, endDate);
+    }
+    
+    /**
+     * Everything the sales dashboard shows, computed in one streaming pass over the range
+     */
+    public SalesDashboardDTO getSalesDashboard(String period, int topLimit, Long productId,
+                                               LocalDateTime startDate, LocalDateTime endDate) {
+        SalesPeriod salesPeriod = SalesPeriod.from(period);
+        return salesResultCache.get(SalesCacheKey.of("dashboard", startDate, endDate, salesPeriod, topLimit, productId),
+            () -> computeSalesDashboard(salesPeriod, topLimit, productId, startDate, endDate));
+    }
+    
+    private SalesDashboardDTO computeSalesDashboard(SalesPeriod salesPeriod, int topLimit, Long productId,
+                                                    LocalDateTime startDate, LocalDateTime endDate) {
+        SalesDashboardAccumulator accumulator = new SalesDashboardAccumulator(salesPeriod, productId);
+        try (Stream<SaleMetrics> sales = streamSales(startDate, endDate)) {
+            sales.forEach(accumulator);
+        }
+        return accumulator.toDashboard(topLimit);
     }
     
     /**
@@ -193,7 +230,28 @@ public class SalesService {
             sale.setFinalAmount(sale.getTotalPrice() - sale.getDiscountApplied());
         }
         
-        return saleRepository.save(sale);
+        Sale saved = saleRepository.save(sale);
+        eventPublisher.publishEvent(new SalesRecordedEvent(List.of(saved)));
+        return saved;
+    }
+    
+    /**
+     * Bulk import a batch of already priced sales
+     */
+    public List<Sale> importSales(List<Sale> sales) {
+        List<Sale> saved = saleRepository.saveAll(sales);
+        eventPublisher.publishEvent(new SalesRecordedEvent(saved));
+        return saved;
+    }
+    
+    /**
+     * Delete every sale, returning how many were removed
+     */
+    public long clearSales() {
+        long count = saleRepository.count();
+        saleRepository.deleteAll();
+        eventPublisher.publishEvent(new SalesClearedEvent());
+        return count;
     }
     
     /**
@@ -204,12 +262,58 @@ public class SalesService {
     }
     
     /**
-     * Get top selling products
+     * Cursor over the analytics fields of the sales for the in-memory aggregation paths; callers close it
+     */
+    private Stream<SaleMetrics> streamSales(LocalDateTime startDate, LocalDateTime endDate) {
+        return saleRepository.streamMetrics(startDate, endDate);
+    }
+    
+    /**
+     * Get top selling products. All-time requests are answered from the heavy-hitter sketch when it
+     * holds exact totals; otherwise only the top {@code limit} products are selected, never a full sort.
      */
     public List<ProductSalesDTO> getTopSellingProducts(int limit, LocalDateTime startDate, LocalDateTime endDate) {
-        List<ProductSalesDTO> productSales = getSalesByProduct(startDate, endDate);
-        return productSales.stream()
-            .limit(limit)
-            .collect(Collectors.toList());
+        if (startDate == null || endDate == null) {
+            Optional<List<ProductSalesDTO>> fromSketch = heavyHitterTracker.topProducts(limit);
+            if (fromSketch.isPresent()) {
+                return fromSketch.get();
+            }
+        }
+        return salesResultCache.get(SalesCacheKey.of("top-products", startDate, endDate, null, limit, null),
+            () -> computeTopSellingProducts(limit, startDate, endDate));
+    }
+    
+    private List<ProductSalesDTO> computeTopSellingProducts(int limit, LocalDateTime startDate, LocalDateTime endDate) {
+        Optional<List<ProductSalesDTO>> fromCube = salesCube.topProducts(limit, startDate, endDate);
+        if (fromCube.isPresent()) {
+            return fromCube.get();
+        }
+        if (pushdownEnabled) {
+            return mongoSalesAggregator.topProducts(limit, startDate, endDate);
+        }
+        try (Stream<SaleMetrics> sales = streamSales(startDate, endDate)) {
+            return parallelSalesAggregator.topProducts(sales, limit);
+        }
+    }
+    
+    /**
+     * Approximate all-time top products, categories or customers with error bounds,
+     * or empty when the heavy-hitter sketches are disabled
+     */
+    public Optional<List<HeavyHitterDTO>> getHeavyHitters(HeavyHitterTracker.Dimension dimension, int limit) {
+        return heavyHitterTracker.heavyHitters(dimension, limit);
+    }
+    
+    /**
+     * Estimated distinct customers of a segment between two days (inclusive, null for unbounded),
+     * or empty when the reach sketches are disabled
+     */
+    public Optional<DistinctCustomersDTO> getDistinctCustomers(String segment, LocalDate startDate, LocalDate endDate) {
+        OptionalLong estimate = customerReachTracker.distinctCustomers(segment, startDate, endDate);
+        if (estimate.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new DistinctCustomersDTO(segment, startDate, endDate, estimate.getAsLong(),
+            customerReachTracker.relativeError()));
     }
 }
@@ -0,0 +1,153 @@
+package com.apiserver.apinexus.service;
+
+import com.apiserver.apinexus.analytics.LongIntMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * market_items stock levels held in memory as a primitive id -> stock_quantity map, so inventory
+ * suggestions and catalog lookups do not query Postgres per request. Every
+ * catalog.stock-cache.poll-ms the rows whose updated_at moved past the last one seen are
+ * re-read (indexed; a trigger from schema.sql and the market_items_stock_updated_at migration
+ * keeps updated_at current on update), and every full-reload-ms the whole table is reloaded,
+ * which also drops deleted items.
+ * A published map is never modified again; a poll that finds changes publishes a new copy.
+ */
+@Service
+public class StockLevelCache {
+
+    private static final String SELECT_ALL = "SELECT id, stock_quantity, updated_at FROM market_items";
+    private static final String SELECT_CHANGED = SELECT_ALL + " WHERE updated_at >= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final long fullReloadMs;
+    private final long commitLagMs;
+
+    private volatile LongIntMap levels;
+    private volatile long loadedAt;
+    // Latest updated_at seen, from the database clock. updated_at is set when the row is written,
+    // not when its transaction commits, so a row can become visible with a time before the
+    // watermark; each poll therefore re-reads from commit-lag-ms before it
+    private Timestamp watermark;
+
+    public StockLevelCache(
+            JdbcTemplate jdbcTemplate,
+            @Value("${catalog.stock-cache.enabled:true}") boolean enabled,
+            @Value("${catalog.stock-cache.full-reload-ms:600000}") long fullReloadMs,
+            @Value("${catalog.stock-cache.commit-lag-ms:60000}") long commitLagMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.fullReloadMs = fullReloadMs;
+        this.commitLagMs = commitLagMs;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Current stock levels by market item id. Loads on first use; with the cache disabled
+     * every call reads the table.
+     */
+    public LongIntMap levels() {
+        if (!enabled) {
+            return loadAll().levels;
+        }
+        LongIntMap current = levels;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (levels == null) {
+                reload();
+            }
+            return levels;
+        }
+    }
+
+    public int stockLevel(long itemId, int defaultValue) {
+        return levels().get(itemId, defaultValue);
+    }
+
+    @Scheduled(fixedDelayString = "${catalog.stock-cache.poll-ms:5000}",
+        initialDelayString = "${catalog.stock-cache.poll-ms:5000}")
+    public void scheduledPoll() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            poll();
+        } catch (Exception e) {
+            // Keep serving the last published levels; the next poll retries
+            System.err.println("Stock level refresh failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Apply rows changed since the last poll, or reload everything when nothing is loaded yet
+     * or the full-reload interval has passed. Returns the number of rows read.
+     */
+    public synchronized int poll() {
+        if (levels == null || watermark == null
+                || System.nanoTime() - loadedAt > TimeUnit.MILLISECONDS.toNanos(fullReloadMs)) {
+            return reload();
+        }
+        LongIntMap[] updated = new LongIntMap[1];
+        Timestamp[] latest = {watermark};
+        int[] rows = new int[1];
+        jdbcTemplate.query(SELECT_CHANGED, rs -> {
+            long id = rs.getLong(1);
+            int stock = rs.getInt(2);
+            Timestamp updatedAt = rs.getTimestamp(3);
+            if (updatedAt != null && updatedAt.after(latest[0])) {
+                latest[0] = updatedAt;
+            }
+            rows[0]++;
+            // Rows re-read inside the look-back usually have not changed; copy only on a real change
+            LongIntMap target = updated[0] != null ? updated[0] : levels;
+            if (!target.containsKey(id) || target.get(id, 0) != stock) {
+                if (updated[0] == null) {
+                    updated[0] = levels.copy();
+                }
+                updated[0].put(id, stock);
+            }
+        }, new Timestamp(watermark.getTime() - commitLagMs));
+        if (updated[0] != null) {
+            levels = updated[0];
+        }
+        watermark = latest[0];
+        return rows[0];
+    }
+
+    /**
+     * Replace the cached levels with a full read of the table
+     */
+    public synchronized int reload() {
+        Load load = loadAll();
+        levels = load.levels;
+        watermark = load.watermark;
+        loadedAt = System.nanoTime();
+        return load.levels.size();
+    }
+
+    private Load loadAll() {
+        LongIntMap loaded = new LongIntMap(1024);
+        Timestamp[] latest = {null};
+        jdbcTemplate.query(SELECT_ALL, rs -> {
+            loaded.put(rs.getLong(1), rs.getInt(2));
+            Timestamp updatedAt = rs.getTimestamp(3);
+            if (updatedAt != null && (latest[0] == null || updatedAt.after(latest[0]))) {
+                latest[0] = updatedAt;
+            }
+        });
+        return new Load(loaded, latest[0] != null ? latest[0] : new Timestamp(0L));
+    }
+
+    private record Load(LongIntMap levels, Timestamp watermark) {}
+}
@@ -0,0 +1,186 @@
+package com.apiserver.apinexus.service;
+
+import com.apiserver.apinexus.model.Bill;
+import com.apiserver.apinexus.model.UserSubscription;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bills active subscriptions whose next_billing_date has come. Due subscriptions are read in
+ * batches in (next_billing_date, id) order, continuing after the last row of the previous
+ * batch (served by the migrations/user_subscriptions_next_billing_date.sql index). Each batch is
+ * one transaction. It locks its rows with FOR UPDATE SKIP LOCKED, batch-inserts their bills and
+ * moves next_billing_date on by one cycle, so several instances can run at once and each
+ * subscription period is billed once.
+ * A subscription that is several cycles behind gets one bill per missed cycle, oldest first.
+ * Bill numbers are BILL-{subscription}-{period start}, and an already existing number is
+ * skipped, so a period is never billed twice.
+ */
+@Service
+public class SubscriptionBillingScheduler {
+    
+    public static final String BILLS_COUNTER = "billing.subscriptions.bills";
+    public static final String RUN_TIMER = "billing.subscriptions.run";
+    
+    // Amount falls back to the plan price when the subscription has none
+    private static final String SELECT_DUE = """
+        SELECT s.id, s.user_id, s.billing_cycle, s.next_billing_date,
+               COALESCE(s.amount, CASE WHEN s.billing_cycle = 'MONTHLY' THEN p.monthly_price ELSE p.yearly_price END)
+        FROM user_subscriptions s
+        JOIN subscription_plans p ON p.id = s.subscription_plan_id
+        WHERE s.status = 'ACTIVE' AND s.next_billing_date <= ?
+          AND (s.next_billing_date, s.id) > (?, ?)
+        ORDER BY s.next_billing_date, s.id
+        LIMIT ?
+        FOR UPDATE OF s SKIP LOCKED""";
+    
+    private static final String INSERT_BILL = """
+        INSERT INTO bills (user_id, subscription_id, bill_number, amount, status,
+                           billing_period_start, billing_period_end, due_date, created_at, updated_at)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+        ON CONFLICT (bill_number) DO NOTHING""";
+    
+    private static final String ADVANCE = """
+        UPDATE user_subscriptions SET next_billing_date = ?, updated_at = ? WHERE id = ?""";
+    
+    private static final DateTimeFormatter PERIOD_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Counter billsCounter;
+    private final boolean enabled;
+    private final int batchSize;
+    
+    public SubscriptionBillingScheduler(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${billing.subscriptions.enabled:true}") boolean enabled,
+            @Value("${billing.subscriptions.batch-size:200}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.billsCounter = Counter.builder(BILLS_COUNTER)
+            .description("Subscription renewal bills created")
+            .register(meterRegistry);
+    }
+    
+    @Scheduled(fixedDelayString = "${billing.subscriptions.poll-ms:60000}",
+        initialDelayString = "${billing.subscriptions.poll-ms:60000}")
+    public void scheduledRun() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int billed = billDue(LocalDateTime.now());
+            if (billed > 0) {
+                System.out.println("Subscription billing: " + billed + " renewal bills created");
+            }
+        } catch (Exception e) {
+            // Batches already committed stay billed; the next run picks up the rest
+            System.err.println("Subscription billing failed: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Bill every subscription due at asOf that no other instance has locked; returns the bills created
+     */
+    public int billDue(LocalDateTime asOf) {
+        long start = System.nanoTime();
+        Timestamp dueBy = Timestamp.valueOf(asOf);
+        Timestamp afterDate = new Timestamp(0L);
+        long afterId = 0L;
+        int billed = 0;
+        while (true) {
+            Timestamp cursorDate = afterDate;
+            long cursorId = afterId;
+            Batch batch = transactionTemplate.execute(status -> billBatch(dueBy, cursorDate, cursorId));
+            if (batch == null || batch.rows() == 0) {
+                break;
+            }
+            billed += batch.billed();
+            afterDate = batch.lastDate();
+            afterId = batch.lastId();
+            if (batch.rows() < batchSize) {
+                break;
+            }
+        }
+        billsCounter.increment(billed);
+        Timer.builder(RUN_TIMER)
+            .description("Subscription billing run duration")
+            .register(meterRegistry)
+            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return billed;
+    }
+    
+    private record Due(long id, long userId, UserSubscription.BillingCycle cycle, LocalDateTime billingDate,
+                       BigDecimal amount) {}
+    
+    private record Batch(int rows, int billed, Timestamp lastDate, long lastId) {}
+    
+    /**
+     * One batch: lock the next due rows after the keyset cursor, insert their bills, advance them
+     */
+    private Batch billBatch(Timestamp dueBy, Timestamp afterDate, long afterId) {
+        List<Due> due = jdbcTemplate.query(SELECT_DUE, (rs, rowNum) -> new Due(
+            rs.getLong(1),
+            rs.getLong(2),
+            UserSubscription.BillingCycle.valueOf(rs.getString(3)),
+            rs.getTimestamp(4).toLocalDateTime(),
+            rs.getBigDecimal(5)
+        ), dueBy, afterDate, afterId, batchSize);
+        if (due.isEmpty()) {
+            return new Batch(0, 0, afterDate, afterId);
+        }
+        
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> bills = new ArrayList<>(due.size());
+        List<Object[]> advances = new ArrayList<>(due.size());
+        for (Due subscription : due) {
+            LocalDateTime periodEnd = BillService.billingPeriodEnd(subscription.cycle(), subscription.billingDate());
+            bills.add(new Object[] {
+                subscription.userId(),
+                subscription.id(),
+                "BILL-" + subscription.id() + "-" + subscription.billingDate().format(PERIOD_FORMAT),
+                subscription.amount(),
+                Bill.BillStatus.PENDING.name(),
+                Timestamp.valueOf(subscription.billingDate()),
+                Timestamp.valueOf(periodEnd),
+                Timestamp.valueOf(BillService.dueDate(subscription.cycle(), subscription.billingDate())),
+                now,
+                now
+            });
+            advances.add(new Object[] {Timestamp.valueOf(periodEnd), now, subscription.id()});
+        }
+        
+        int[] inserted = jdbcTemplate.batchUpdate(INSERT_BILL, bills);
+        jdbcTemplate.batchUpdate(ADVANCE, advances);
+        
+        int billed = 0;
+        for (int count : inserted) {
+            // SUCCESS_NO_INFO (-2) when the driver does not report per-row counts
+            billed += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+        }
+        Due last = due.get(due.size() - 1);
+        return new Batch(due.size(), billed, Timestamp.valueOf(last.billingDate()), last.id());
+    }
+}
@@ -0,0 +1,150 @@
+package com.apiserver.apinexus.service;
+
+import com.apiserver.apinexus.dto.SuggestionDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the suggestion generators concurrently, so a combined request takes about as long as
+ * the slowest generator instead of their sum. Each generator gets suggestions.generators.timeout-ms;
+ * one that fails or runs over is left out and the others' suggestions are still returned.
+ * Latency per generator and outcome is recorded once in the suggestions.generator timer; a generator
+ * that keeps running after its timeout (cancel only interrupts it) is recorded as a timeout only.
+ * Generators run on virtual threads when the JVM has them (Java 21+), else on a fixed pool.
+ */
+@Component
+public class SuggestionGeneratorExecutor {
+
+    public static final String TIMER = "suggestions.generator";
+
+    private final MeterRegistry meterRegistry;
+    private final boolean parallel;
+    private final long timeoutMs;
+    private final ExecutorService executor;
+
+    public SuggestionGeneratorExecutor(
+            MeterRegistry meterRegistry,
+            @Value("${suggestions.generators.parallel:true}") boolean parallel,
+            @Value("${suggestions.generators.timeout-ms:5000}") long timeoutMs,
+            @Value("${suggestions.generators.threads:8}") int threads) {
+        this.meterRegistry = meterRegistry;
+        this.parallel = parallel;
+        this.timeoutMs = timeoutMs;
+        this.executor = parallel ? newExecutor(threads) : null;
+    }
+
+    /**
+     * Run the named generators and concatenate their suggestions in the given order,
+     * skipping any that failed or timed out
+     */
+    public List<SuggestionDTO> runAll(Map<String, Supplier<List<SuggestionDTO>>> generators) {
+        if (!parallel) {
+            List<SuggestionDTO> suggestions = new ArrayList<>();
+            generators.forEach((name, generator) -> {
+                try {
+                    suggestions.addAll(timed(name, generator, new AtomicBoolean()));
+                } catch (RuntimeException e) {
+                    System.err.println("Suggestion generator " + name + " failed: " + e.getMessage());
+                }
+            });
+            return suggestions;
+        }
+
+        long start = System.nanoTime();
+        Map<String, Future<List<SuggestionDTO>>> futures = new LinkedHashMap<>();
+        Map<String, AtomicBoolean> recorded = new HashMap<>();
+        generators.forEach((name, generator) -> {
+            AtomicBoolean outcomeRecorded = new AtomicBoolean();
+            recorded.put(name, outcomeRecorded);
+            futures.put(name, executor.submit(() -> timed(name, generator, outcomeRecorded)));
+        });
+
+        // All generators started together, so they share one deadline
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        List<SuggestionDTO> suggestions = new ArrayList<>();
+        for (Map.Entry<String, Future<List<SuggestionDTO>>> entry : futures.entrySet()) {
+            String name = entry.getKey();
+            Future<List<SuggestionDTO>> future = entry.getValue();
+            try {
+                suggestions.addAll(future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                if (recorded.get(name).compareAndSet(false, true)) {
+                    timer(name, "timeout").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+                System.err.println("Suggestion generator " + name + " timed out after " + timeoutMs
+                    + " ms; returning partial suggestions");
+            } catch (ExecutionException e) {
+                System.err.println("Suggestion generator " + name + " failed: " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                futures.values().forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return suggestions;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Run one generator and record its outcome, unless the caller already recorded it as timed out
+     */
+    private List<SuggestionDTO> timed(String name, Supplier<List<SuggestionDTO>> generator, AtomicBoolean recorded) {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            List<SuggestionDTO> suggestions = generator.get();
+            outcome = "success";
+            return suggestions;
+        } finally {
+            if (recorded.compareAndSet(false, true)) {
+                timer(name, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private Timer timer(String generator, String outcome) {
+        return Timer.builder(TIMER)
+            .description("Suggestion generator latency")
+            .tag("generator", generator)
+            .tag("outcome", outcome)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() when running on Java 21+; the build targets 17,
+     * so it is looked up reflectively
+     */
+    private static ExecutorService newExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "suggestion-generator-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
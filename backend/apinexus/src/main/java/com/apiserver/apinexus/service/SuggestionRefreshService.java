@@ -0,0 +1,175 @@
+package com.apiserver.apinexus.service;
+
+import com.apiserver.apinexus.analytics.SalesClearedEvent;
+import com.apiserver.apinexus.analytics.SalesRecordedEvent;
+import com.apiserver.apinexus.analytics.SuggestionSnapshot;
+import com.apiserver.apinexus.dto.SuggestionDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a precomputed suggestion list so the suggestion endpoints answer from memory. The list
+ * is recomputed in the background every suggestions.refresh.interval-ms, and sooner once
+ * suggestions.refresh.after-sales new sales have been recorded; each recompute publishes a new
+ * immutable, versioned snapshot. The first read computes synchronously if nothing is published yet.
+ */
+@Service
+public class SuggestionRefreshService {
+
+    /**
+     * One published result. Lists are immutable; highPriority is precomputed for its endpoint.
+     */
+    public record Snapshot(
+        long version,
+        LocalDateTime computedAt,
+        long salesScanned,
+        List<SuggestionDTO> suggestions,
+        List<SuggestionDTO> highPriority
+    ) {}
+
+    private final SuggestionService suggestionService;
+    private final boolean enabled;
+    private final long intervalMs;
+    private final long refreshAfterSales;
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong pendingSales = new AtomicLong();
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    // One refresh running and at most one queued; further triggers are already covered by the queued one
+    private final ExecutorService refresher = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(1), r -> {
+            Thread thread = new Thread(r, "suggestion-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+
+    public SuggestionRefreshService(
+            SuggestionService suggestionService,
+            @Value("${suggestions.precompute.enabled:true}") boolean enabled,
+            @Value("${suggestions.refresh.interval-ms:300000}") long intervalMs,
+            @Value("${suggestions.refresh.after-sales:1000}") long refreshAfterSales) {
+        this.suggestionService = suggestionService;
+        this.enabled = enabled;
+        this.intervalMs = intervalMs;
+        this.refreshAfterSales = refreshAfterSales;
+    }
+
+    /**
+     * Latest published snapshot, computing one first if none exists. With precomputation
+     * disabled every call computes a fresh, unpublished snapshot.
+     */
+    public Snapshot current() {
+        if (!enabled) {
+            return compute(0);
+        }
+        Snapshot snapshot = current.get();
+        if (snapshot != null) {
+            return snapshot;
+        }
+        refreshLock.lock();
+        try {
+            // Another caller may have published while this one waited
+            snapshot = current.get();
+            return snapshot != null ? snapshot : refresh();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Time after which the given snapshot is due to be replaced by the scheduled refresh
+     */
+    public LocalDateTime staleAfter(Snapshot snapshot) {
+        return snapshot.computedAt().plusNanos(TimeUnit.MILLISECONDS.toNanos(intervalMs));
+    }
+
+    /**
+     * Sales recorded since the current snapshot started computing
+     */
+    public long getPendingSales() {
+        return pendingSales.get();
+    }
+
+    public long getRefreshAfterSales() {
+        return refreshAfterSales;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Scheduled(fixedDelayString = "${suggestions.refresh.interval-ms:300000}",
+        initialDelayString = "${suggestions.refresh.interval-ms:300000}")
+    public void scheduledRefresh() {
+        if (enabled) {
+            refreshQuietly();
+        }
+    }
+
+    @EventListener
+    public void onSalesRecorded(SalesRecordedEvent event) {
+        if (enabled && current.get() != null
+                && pendingSales.addAndGet(event.getSales().size()) >= refreshAfterSales) {
+            refresher.execute(this::refreshQuietly);
+        }
+    }
+
+    @EventListener
+    public void onSalesCleared(SalesClearedEvent event) {
+        if (enabled && current.get() != null) {
+            refresher.execute(this::refreshQuietly);
+        }
+    }
+
+    /**
+     * Recompute and publish a new snapshot
+     */
+    public Snapshot refresh() {
+        refreshLock.lock();
+        // Sales recorded while computing may be missed by the scan, so they stay pending
+        long pending = pendingSales.getAndSet(0);
+        try {
+            Snapshot snapshot = compute(version.incrementAndGet());
+            current.set(snapshot);
+            return snapshot;
+        } catch (RuntimeException e) {
+            pendingSales.addAndGet(pending);
+            throw e;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            long start = System.currentTimeMillis();
+            Snapshot snapshot = refresh();
+            System.out.println("Refreshed suggestions v" + snapshot.version() + ": " + snapshot.suggestions().size()
+                + " suggestions from " + snapshot.salesScanned() + " sales in "
+                + (System.currentTimeMillis() - start) + " ms");
+        } catch (Exception e) {
+            // Keep serving the previous snapshot; the next trigger retries
+            System.err.println("Suggestion refresh failed: " + e.getMessage());
+        }
+    }
+
+    private Snapshot compute(long snapshotVersion) {
+        SuggestionSnapshot data = suggestionService.buildSnapshot();
+        List<SuggestionDTO> suggestions = List.copyOf(suggestionService.getAllSuggestions(data));
+        List<SuggestionDTO> highPriority = suggestions.stream()
+            .filter(s -> "HIGH".equals(s.getPriority()))
+            .collect(Collectors.toUnmodifiableList());
+        return new Snapshot(snapshotVersion, data.getAsOf(), data.getSalesScanned(), suggestions, highPriority);
+    }
+}
@@ -1,17 +1,29 @@
 package com.apiserver.apinexus.service;
 
+import com.apiserver.apinexus.analytics.CoPurchaseCounts;
+import com.apiserver.apinexus.analytics.CoPurchaseMiner;
+import com.apiserver.apinexus.analytics.CustomerProfileIndex;
+import com.apiserver.apinexus.analytics.CustomerReachTracker;
+import com.apiserver.apinexus.analytics.LongIntMap;
+import com.apiserver.apinexus.analytics.ProductVelocityTracker;
+import com.apiserver.apinexus.analytics.SalesRollupService;
+import com.apiserver.apinexus.analytics.SuggestionSnapshot;
+import com.apiserver.apinexus.analytics.rules.RuleFacts;
+import com.apiserver.apinexus.analytics.rules.SuggestionRuleEngine;
 import com.apiserver.apinexus.dto.ProductPerformanceDTO;
 import com.apiserver.apinexus.dto.SuggestionDTO;
-import com.apiserver.apinexus.model.Sale;
+import com.apiserver.apinexus.model.CustomerProfile;
+import com.apiserver.apinexus.model.SalesRollup;
 import com.apiserver.apinexus.repository.SaleRepository;
+import com.apiserver.apinexus.repository.projection.SuggestionSaleView;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class SuggestionService {
@@ -20,18 +32,55 @@ public class SuggestionService {
     private SaleRepository saleRepository;
     
     @Autowired
-    private JdbcTemplate jdbcTemplate;
+    private StockLevelCache stockLevelCache;
+    
+    @Autowired
+    private CoPurchaseMiner coPurchaseMiner;
+    
+    @Autowired
+    private ProductVelocityTracker productVelocityTracker;
+    
+    @Autowired
+    private CustomerReachTracker customerReachTracker;
+    
+    @Autowired
+    private CustomerProfileIndex customerProfileIndex;
+    
+    @Autowired
+    private SalesRollupService salesRollupService;
+    
+    @Autowired
+    private SuggestionGeneratorExecutor generatorExecutor;
+    
+    @Autowired
+    private SuggestionRuleEngine suggestionRuleEngine;
+    
+    /**
+     * Customer-base counts behind the marketing suggestions
+     */
+    private record CustomerCounts(long total, long premium, long singleCategory, long lapsed) {}
     
     /**
-     * Get all suggestions across categories
+     * Get all suggestions across categories. All generators share one snapshot, so the
+     * sales collection is scanned at most once per call.
      */
     public List<SuggestionDTO> getAllSuggestions() {
-        List<SuggestionDTO> suggestions = new ArrayList<>();
-        suggestions.addAll(getInventorySuggestions());
-        suggestions.addAll(getPricingSuggestions());
-        suggestions.addAll(getMarketingSuggestions());
-        suggestions.addAll(getRegionalSuggestions());
-        suggestions.addAll(getProductBundlingSuggestions());
+        return getAllSuggestions(buildSnapshot());
+    }
+    
+    /**
+     * All suggestions generated from an existing snapshot, without reading sales. The generators
+     * run concurrently; one that fails or times out is left out of the result.
+     */
+    public List<SuggestionDTO> getAllSuggestions(SuggestionSnapshot snapshot) {
+        Map<String, Supplier<List<SuggestionDTO>>> generators = new LinkedHashMap<>();
+        generators.put("inventory", () -> getInventorySuggestions(snapshot));
+        generators.put("pricing", () -> getPricingSuggestions(snapshot));
+        generators.put("marketing", () -> getMarketingSuggestions(snapshot));
+        generators.put("regional", () -> getRegionalSuggestions(snapshot));
+        generators.put("bundling", () -> getProductBundlingSuggestions(snapshot));
+        generators.put("rules", () -> getRuleSuggestions(snapshot));
+        List<SuggestionDTO> suggestions = generatorExecutor.runAll(generators);
         
         // Sort by priority and impact
         suggestions.sort((a, b) -> {
@@ -47,16 +96,20 @@ public class SuggestionService {
      * Inventory optimization suggestions
      */
     public List<SuggestionDTO> getInventorySuggestions() {
+        return getInventorySuggestions(buildSnapshot());
+    }
+    
+    private List<SuggestionDTO> getInventorySuggestions(SuggestionSnapshot snapshot) {
         List<SuggestionDTO> suggestions = new ArrayList<>();
-        List<ProductPerformanceDTO> performances = analyzeProductPerformance();
+        List<ProductPerformanceDTO> performances = productPerformance(snapshot);
         
-        // Get current stock levels from database
-        Map<Long, Integer> stockLevels = getCurrentStockLevels();
+        // Current stock levels, cached in memory and refreshed as market_items change
+        LongIntMap stockLevels = stockLevelCache.levels();
         
         // Top performers needing restock
         for (ProductPerformanceDTO perf : performances) {
             if ("TOP_PERFORMER".equals(perf.getPerformanceStatus())) {
-                Integer currentStock = stockLevels.getOrDefault(perf.getProductId(), 0);
+                int currentStock = stockLevels.get(perf.getProductId(), 0);
                 double dailyVelocity = perf.getVelocityScore();
                 int daysUntilStockout = currentStock > 0 ? (int)(currentStock / dailyVelocity) : 0;
                 
@@ -81,7 +134,7 @@ public class SuggestionService {
         // Slow-moving inventory
         for (ProductPerformanceDTO perf : performances) {
             if ("SLOW_MOVING".equals(perf.getPerformanceStatus()) || "STAGNANT".equals(perf.getPerformanceStatus())) {
-                Integer currentStock = stockLevels.getOrDefault(perf.getProductId(), 0);
+                int currentStock = stockLevels.get(perf.getProductId(), 0);
                 if (currentStock > 20) {
                     suggestions.add(new SuggestionDTO(
                         "INVENTORY",
@@ -106,25 +159,22 @@ public class SuggestionService {
      * Pricing optimization suggestions
      */
     public List<SuggestionDTO> getPricingSuggestions() {
+        return getPricingSuggestions(buildSnapshot());
+    }
+    
+    private List<SuggestionDTO> getPricingSuggestions(SuggestionSnapshot snapshot) {
         List<SuggestionDTO> suggestions = new ArrayList<>();
-        List<Sale> allSales = saleRepository.findAll();
         
         // Analyze price elasticity opportunities
-        Map<String, List<Sale>> salesByCategory = allSales.stream()
-            .collect(Collectors.groupingBy(Sale::getCategory));
-        
-        for (Map.Entry<String, List<Sale>> entry : salesByCategory.entrySet()) {
+        for (Map.Entry<String, SuggestionSnapshot.CategoryTotals> entry : snapshot.getCategoryTotals().entrySet()) {
             String category = entry.getKey();
-            List<Sale> categorySales = entry.getValue();
+            SuggestionSnapshot.CategoryTotals totals = entry.getValue();
+            long categorySalesCount = totals.salesCount();
             
             // Calculate average discount given
-            double avgDiscount = categorySales.stream()
-                .mapToDouble(s -> s.getDiscountApplied() != null ? s.getDiscountApplied() : 0.0)
-                .average().orElse(0.0);
+            double avgDiscount = totals.totalDiscount() / categorySalesCount;
             
-            double totalRevenue = categorySales.stream()
-                .mapToDouble(Sale::getFinalAmount)
-                .sum();
+            double totalRevenue = totals.totalRevenue();
             
             // If high discounts given, suggest premium pricing strategy
             if (avgDiscount / totalRevenue > 0.05) {
@@ -133,7 +183,7 @@ public class SuggestionService {
                     "MEDIUM",
                     "Optimize Discounting Strategy: " + category,
                     String.format("Category has $%.2f average discount per sale (%.1f%% of revenue). Consider value-based pricing.",
-                        avgDiscount / categorySales.size(), (avgDiscount / totalRevenue) * 100),
+                        avgDiscount / categorySalesCount, (avgDiscount / totalRevenue) * 100),
                     "Test 10-15% price increase for premium customers or introduce tiered pricing",
                     65.0,
                     "Discount Rate",
@@ -144,7 +194,7 @@ public class SuggestionService {
         }
         
         // Dynamic pricing opportunities
-        List<ProductPerformanceDTO> topPerformers = analyzeProductPerformance().stream()
+        List<ProductPerformanceDTO> topPerformers = productPerformance(snapshot).stream()
             .filter(p -> "TOP_PERFORMER".equals(p.getPerformanceStatus()))
             .limit(5)
             .collect(Collectors.toList());
@@ -173,28 +223,21 @@ public class SuggestionService {
      * Marketing and customer targeting suggestions
      */
     public List<SuggestionDTO> getMarketingSuggestions() {
+        return getMarketingSuggestions(buildSnapshot());
+    }
+    
+    private List<SuggestionDTO> getMarketingSuggestions(SuggestionSnapshot snapshot) {
         List<SuggestionDTO> suggestions = new ArrayList<>();
-        List<Sale> allSales = saleRepository.findAll();
         
         // Premium customer conversion opportunity
-        long totalCustomers = allSales.stream()
-            .map(Sale::getCustomerId)
-            .distinct()
-            .count();
-        
-        long premiumCustomers = allSales.stream()
-            .filter(s -> s.getIsPremiumCustomer() != null && s.getIsPremiumCustomer())
-            .map(Sale::getCustomerId)
-            .distinct()
-            .count();
+        CustomerCounts customers = customerCounts(snapshot);
+        long totalCustomers = customers.total();
+        long premiumCustomers = customers.premium();
         
         double premiumRate = (double) premiumCustomers / totalCustomers;
         
         if (premiumRate < 0.4) {
-            double potentialRevenue = allSales.stream()
-                .filter(s -> s.getIsPremiumCustomer() == null || !s.getIsPremiumCustomer())
-                .mapToDouble(Sale::getFinalAmount)
-                .sum() * 0.15; // Assume 15% uplift from premium conversion
+            double potentialRevenue = snapshot.getRegularCustomerRevenue() * 0.15; // Assume 15% uplift from premium conversion
             
             suggestions.add(new SuggestionDTO(
                 "MARKETING",
@@ -211,15 +254,7 @@ public class SuggestionService {
         }
         
         // Category cross-sell opportunities
-        Map<Long, Set<String>> customerCategories = new HashMap<>();
-        for (Sale sale : allSales) {
-            customerCategories.computeIfAbsent(sale.getCustomerId(), k -> new HashSet<>())
-                .add(sale.getCategory());
-        }
-        
-        long singleCategoryCustomers = customerCategories.values().stream()
-            .filter(cats -> cats.size() == 1)
-            .count();
+        long singleCategoryCustomers = customers.singleCategory();
         
         if (singleCategoryCustomers > totalCustomers * 0.3) {
             suggestions.add(new SuggestionDTO(
@@ -237,32 +272,20 @@ public class SuggestionService {
         }
         
         // Re-engagement for lapsed customers
-        LocalDateTime thirtyDaysAgo = LocalDateTime.now().minusDays(30);
-        LocalDateTime sixtyDaysAgo = LocalDateTime.now().minusDays(60);
+        long lapsedCustomers = customers.lapsed();
         
-        Set<Long> recentCustomers = allSales.stream()
-            .filter(s -> s.getSaleDate().isAfter(thirtyDaysAgo))
-            .map(Sale::getCustomerId)
-            .collect(Collectors.toSet());
-        
-        Set<Long> lapsedCustomers = allSales.stream()
-            .filter(s -> s.getSaleDate().isBefore(thirtyDaysAgo) && s.getSaleDate().isAfter(sixtyDaysAgo))
-            .map(Sale::getCustomerId)
-            .filter(id -> !recentCustomers.contains(id))
-            .collect(Collectors.toSet());
-        
-        if (lapsedCustomers.size() > 10) {
+        if (lapsedCustomers > 10) {
             suggestions.add(new SuggestionDTO(
                 "MARKETING",
                 "HIGH",
                 "Win-Back Campaign for Lapsed Customers",
                 String.format("%d customers haven't purchased in 30-60 days. Win-back campaigns show 15-25%% reactivation.",
-                    lapsedCustomers.size()),
+                    lapsedCustomers),
                 "Send personalized 'We Miss You' email with 20% off their favorite category",
                 80.0,
                 "Lapsed Customers",
-                (double) lapsedCustomers.size(),
-                lapsedCustomers.size() * 0.2 // 20% reactivation target
+                (double) lapsedCustomers,
+                lapsedCustomers * 0.2 // 20% reactivation target
             ));
         }
         
@@ -273,17 +296,14 @@ public class SuggestionService {
      * Regional performance suggestions
      */
     public List<SuggestionDTO> getRegionalSuggestions() {
+        return getRegionalSuggestions(buildSnapshot());
+    }
+    
+    private List<SuggestionDTO> getRegionalSuggestions(SuggestionSnapshot snapshot) {
         List<SuggestionDTO> suggestions = new ArrayList<>();
-        List<Sale> allSales = saleRepository.findAll();
-        
-        Map<String, Double> revenueByRegion = allSales.stream()
-            .collect(Collectors.groupingBy(
-                Sale::getRegion,
-                Collectors.summingDouble(Sale::getFinalAmount)
-            ));
         
-        Map<String, Long> salesCountByRegion = allSales.stream()
-            .collect(Collectors.groupingBy(Sale::getRegion, Collectors.counting()));
+        Map<String, Double> revenueByRegion = snapshot.getRevenueByRegion();
+        Map<String, Long> salesCountByRegion = snapshot.getSalesCountByRegion();
         
         double avgRegionalRevenue = revenueByRegion.values().stream()
             .mapToDouble(Double::doubleValue)
@@ -337,51 +357,31 @@ public class SuggestionService {
      * Product bundling opportunities
      */
     public List<SuggestionDTO> getProductBundlingSuggestions() {
+        return getProductBundlingSuggestions(buildSnapshot());
+    }
+    
+    private List<SuggestionDTO> getProductBundlingSuggestions(SuggestionSnapshot snapshot) {
         List<SuggestionDTO> suggestions = new ArrayList<>();
-        List<Sale> allSales = saleRepository.findAll();
         
-        // Find products frequently bought by same customers
-        Map<Long, List<Long>> customerProducts = new HashMap<>();
-        for (Sale sale : allSales) {
-            customerProducts.computeIfAbsent(sale.getCustomerId(), k -> new ArrayList<>())
-                .add(sale.getProductId());
-        }
+        // Strongest product pairs bought by the same customers: live counts when the miner
+        // is loaded, otherwise the counts collected with this snapshot
+        List<CoPurchaseCounts.ProductPair> topPairs = coPurchaseMiner.topPairs(3)
+            .orElseGet(() -> snapshot.getCoPurchases()
+                .map(counts -> coPurchaseMiner.topPairs(counts, 3))
+                .orElse(List.of()));
         
-        // Find common product pairs
-        Map<String, Integer> productPairs = new HashMap<>();
-        for (List<Long> products : customerProducts.values()) {
-            Set<Long> uniqueProducts = new HashSet<>(products);
-            List<Long> productList = new ArrayList<>(uniqueProducts);
-            for (int i = 0; i < productList.size(); i++) {
-                for (int j = i + 1; j < productList.size(); j++) {
-                    long p1 = productList.get(i);
-                    long p2 = productList.get(j);
-                    String pair = p1 < p2 ? p1 + "-" + p2 : p2 + "-" + p1;
-                    productPairs.merge(pair, 1, Integer::sum);
-                }
-            }
-        }
-        
-        // Get top 3 pairs
-        List<Map.Entry<String, Integer>> topPairs = productPairs.entrySet().stream()
-            .filter(e -> e.getValue() >= 3)
-            .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-            .limit(3)
-            .collect(Collectors.toList());
-        
-        for (Map.Entry<String, Integer> pair : topPairs) {
-            String[] productIds = pair.getKey().split("-");
+        for (CoPurchaseCounts.ProductPair pair : topPairs) {
             suggestions.add(new SuggestionDTO(
                 "PRODUCT",
                 "MEDIUM",
                 "Create Product Bundle",
-                String.format("Products %s and %s purchased together by %d customers. Strong bundling signal.",
-                    productIds[0], productIds[1], pair.getValue()),
+                String.format("Products %d and %d purchased together by %d customers (%.0f%% confidence, %.1fx lift). Strong bundling signal.",
+                    pair.productA(), pair.productB(), pair.customers(), pair.confidence() * 100, pair.lift()),
                 "Create combo bundle at 10% discount to increase average order value",
                 65.0,
                 "Co-Purchase Frequency",
-                (double) pair.getValue(),
-                pair.getValue() * 2.0 // Assume doubling with bundle
+                (double) pair.customers(),
+                pair.customers() * 2.0 // Assume doubling with bundle
             ));
         }
         
@@ -389,82 +389,127 @@ public class SuggestionService {
     }
     
     /**
-     * Analyze product performance metrics
+     * Suggestions from the declared rules (suggestions.rules.location)
      */
-    private List<ProductPerformanceDTO> analyzeProductPerformance() {
-        List<Sale> allSales = saleRepository.findAll();
-        Map<Long, List<Sale>> salesByProduct = allSales.stream()
-            .collect(Collectors.groupingBy(Sale::getProductId));
-        
-        LocalDateTime now = LocalDateTime.now();
-        List<ProductPerformanceDTO> performances = new ArrayList<>();
-        
-        for (Map.Entry<Long, List<Sale>> entry : salesByProduct.entrySet()) {
-            List<Sale> productSales = entry.getValue();
-            if (productSales.isEmpty()) continue;
-            
-            Sale firstSale = productSales.stream()
-                .min(Comparator.comparing(Sale::getSaleDate))
-                .orElse(null);
-            
-            Sale lastSale = productSales.stream()
-                .max(Comparator.comparing(Sale::getSaleDate))
-                .orElse(null);
-            
-            if (firstSale == null || lastSale == null) continue;
-            
-            int daysSinceFirst = (int) ChronoUnit.DAYS.between(firstSale.getSaleDate(), now);
-            int daysSinceLast = (int) ChronoUnit.DAYS.between(lastSale.getSaleDate(), now);
-            
-            int totalQty = productSales.stream().mapToInt(Sale::getQuantity).sum();
-            double totalRev = productSales.stream().mapToDouble(Sale::getFinalAmount).sum();
-            double avgPrice = productSales.stream().mapToDouble(Sale::getUnitPrice).average().orElse(0.0);
-            
-            double velocityScore = daysSinceFirst > 0 ? (double) totalQty / daysSinceFirst : 0.0;
-            
-            String status;
-            if (velocityScore > 2.0) status = "TOP_PERFORMER";
-            else if (velocityScore > 0.5) status = "STEADY";
-            else if (daysSinceLast > 30) status = "STAGNANT";
-            else status = "SLOW_MOVING";
-            
-            performances.add(new ProductPerformanceDTO(
-                entry.getKey(),
-                productSales.get(0).getProductName(),
-                productSales.get(0).getCategory(),
-                productSales.size(),
-                totalQty,
-                totalRev,
-                totalRev / productSales.size(),
-                avgPrice,
-                daysSinceFirst,
-                daysSinceLast,
-                status,
-                velocityScore
-            ));
+    public List<SuggestionDTO> getRuleSuggestions() {
+        return getRuleSuggestions(buildSnapshot());
+    }
+    
+    private List<SuggestionDTO> getRuleSuggestions(SuggestionSnapshot snapshot) {
+        if (!suggestionRuleEngine.isEnabled() || suggestionRuleEngine.getRules().isEmpty()) {
+            return new ArrayList<>();
         }
-        
-        return performances.stream()
-            .sorted(Comparator.comparing(ProductPerformanceDTO::getVelocityScore).reversed())
-            .collect(Collectors.toList());
+        CustomerCounts customers = customerCounts(snapshot);
+        RuleFacts facts = RuleFacts.builder()
+            .products(productPerformance(snapshot), stockLevelCache.levels())
+            .categories(snapshot.getCategoryTotals())
+            .regions(snapshot.getRevenueByRegion(), snapshot.getSalesCountByRegion())
+            .customers(customers.total(), customers.premium(), snapshot.getRegularCustomerRevenue(),
+                customers.singleCategory(), customers.lapsed())
+            .build();
+        return suggestionRuleEngine.evaluate(facts);
     }
     
     /**
-     * Get current stock levels from market_items table
+     * Read the sales collection once into a snapshot for the generators. When the velocity
+     * tracker, co-purchase miner and profile index already hold products, pairs and customers,
+     * the category and region totals come from the rollups instead and nothing is scanned.
      */
-    private Map<Long, Integer> getCurrentStockLevels() {
-        List<Map<String, Object>> stockData = jdbcTemplate.queryForList(
-            "SELECT id, stock_quantity FROM market_items"
-        );
-        
-        Map<Long, Integer> stockLevels = new HashMap<>();
-        for (Map<String, Object> row : stockData) {
-            Long id = ((Number) row.get("id")).longValue();
-            Integer stock = ((Number) row.get("stock_quantity")).intValue();
-            stockLevels.put(id, stock);
+    public SuggestionSnapshot buildSnapshot() {
+        if (productVelocityTracker.isLoaded() && coPurchaseMiner.isLoaded() && customerProfileIndex.isReady()) {
+            Optional<SuggestionSnapshot> fromRollups = snapshotFromRollups();
+            if (fromRollups.isPresent()) {
+                return fromRollups.get();
+            }
         }
         
-        return stockLevels;
+        // Pairs only need counting here when the miner is not keeping them already
+        SuggestionSnapshot.Builder builder = SuggestionSnapshot.builder(LocalDateTime.now(),
+            coPurchaseMiner.isLoaded() ? null : coPurchaseMiner.newCounts())
+            .velocityHalfLifeDays(productVelocityTracker.getHalfLifeDays());
+        if (customerProfileIndex.isReady()) {
+            builder.withoutCustomerSets().withoutCustomerCategories();
+        } else if (customerReachTracker.isLoaded()) {
+            builder.withoutCustomerSets();
+        }
+        try (Stream<SuggestionSaleView> sales = saleRepository.streamSuggestionSales()) {
+            sales.forEach(builder::add);
+        }
+        return builder.build();
+    }
+    
+    /**
+     * Snapshot of the category, region and regular-customer totals in the rollups, or empty until
+     * they are ready; product and customer fields are left to the trackers
+     */
+    private Optional<SuggestionSnapshot> snapshotFromRollups() {
+        Optional<Map<String, SalesRollup>> categories = salesRollupService.totals(SalesRollup.Dimension.CATEGORY);
+        Optional<Map<String, SalesRollup>> regions = salesRollupService.totals(SalesRollup.Dimension.REGION);
+        Optional<Map<String, SalesRollup>> all = salesRollupService.totals(SalesRollup.Dimension.ALL);
+        if (categories.isEmpty() || regions.isEmpty() || all.isEmpty()) {
+            return Optional.empty();
+        }
+        SuggestionSnapshot.Builder builder = SuggestionSnapshot.builder(LocalDateTime.now())
+            .withoutCustomerSets()
+            .withoutCustomerCategories();
+        categories.get().values().forEach(total ->
+            builder.addCategory(total.getKey(), total.getDiscount(), total.getRevenue(), total.getSalesCount()));
+        regions.get().values().forEach(total ->
+            builder.addRegion(total.getKey(), total.getRevenue(), total.getSalesCount()));
+        all.get().values().forEach(total ->
+            builder.addRegularCustomerRevenue(total.getRevenue() - total.getPremiumRevenue()));
+        return Optional.of(builder.build());
+    }
+    
+    /**
+     * Performance of one product, looked up in the velocity tracker when it is loaded
+     */
+    public Optional<ProductPerformanceDTO> getProductPerformance(Long productId) {
+        if (productVelocityTracker.isLoaded()) {
+            return productVelocityTracker.performance(productId, LocalDateTime.now());
+        }
+        return buildSnapshot().getProductPerformance().stream()
+            .filter(p -> p.getProductId().equals(productId))
+            .findFirst();
+    }
+    
+    /**
+     * Customers in a marketing segment, highest spend first, or empty until the profile index is ready
+     */
+    public Optional<List<CustomerProfile>> getCustomerSegment(CustomerProfileIndex.Segment segment, int limit) {
+        if (!customerProfileIndex.isReady()) {
+            return Optional.empty();
+        }
+        return Optional.of(customerProfileIndex.segment(segment, LocalDateTime.now(), limit));
+    }
+    
+    /**
+     * Customer counts from the profile index when ready (exact, indexed), else from the reach
+     * sketches when loaded (estimates within a few percent), else as collected by the snapshot
+     */
+    private CustomerCounts customerCounts(SuggestionSnapshot snapshot) {
+        if (customerProfileIndex.isReady()) {
+            return new CustomerCounts(
+                customerProfileIndex.totalCustomers(),
+                customerProfileIndex.premiumCustomers(),
+                customerProfileIndex.singleCategoryCustomers(),
+                customerProfileIndex.lapsedCustomers(snapshot.getAsOf()));
+        }
+        return new CustomerCounts(
+            customerReachTracker.distinctCustomers(CustomerReachTracker.ALL, null, null)
+                .orElse(snapshot.getTotalCustomers()),
+            customerReachTracker.distinctCustomers(CustomerReachTracker.PREMIUM, null, null)
+                .orElse(snapshot.getPremiumCustomers()),
+            snapshot.getSingleCategoryCustomers(),
+            customerReachTracker.lapsedCustomers(snapshot.getAsOf()).orElse(snapshot.getLapsedCustomers()));
+    }
+    
+    /**
+     * Product performance from the velocity tracker when loaded, else as collected by the snapshot
+     */
+    private List<ProductPerformanceDTO> productPerformance(SuggestionSnapshot snapshot) {
+        return productVelocityTracker.productPerformance(snapshot.getAsOf())
+            .orElseGet(snapshot::getProductPerformance);
     }
     
     /**
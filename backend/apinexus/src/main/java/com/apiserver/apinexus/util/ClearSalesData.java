@@ -1,6 +1,6 @@
 package com.apiserver.apinexus.util;
 
-import com.apiserver.apinexus.repository.SaleRepository;
+import com.apiserver.apinexus.service.SalesService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.core.annotation.Order;
@@ -11,15 +11,14 @@ import org.springframework.stereotype.Component;
 public class ClearSalesData implements CommandLineRunner {
     
     @Autowired
-    private SaleRepository saleRepository;
+    private SalesService salesService;
     
     @Override
     public void run(String... args) throws Exception {
         // Check if --clear-sales argument is provided
         for (String arg : args) {
             if ("--clear-sales".equals(arg)) {
-                long count = saleRepository.count();
-                saleRepository.deleteAll();
+                long count = salesService.clearSales();
                 System.out.println("\n========================================");
                 System.out.println("CLEARED " + count + " SALES FROM DATABASE");
                 System.out.println("========================================\n");
@@ -2,6 +2,7 @@ package com.apiserver.apinexus.util;
 
 import com.apiserver.apinexus.model.Sale;
 import com.apiserver.apinexus.repository.SaleRepository;
+import com.apiserver.apinexus.service.SalesService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
@@ -19,6 +20,9 @@ public class ExpandSalesData implements CommandLineRunner {
     @Autowired
     private SaleRepository saleRepository;
 
+    @Autowired
+    private SalesService salesService;
+
     private static final Random random = new Random();
 
     // Product data with varied pricing and popularity
@@ -163,7 +167,7 @@ public class ExpandSalesData implements CommandLineRunner {
 
         // Clear existing sales data for fresh start with new patterns
         System.out.println("\n🗑️  Clearing existing sales data...");
-        saleRepository.deleteAll();
+        salesService.clearSales();
         System.out.println("✅ All existing sales cleared!\n");
 
         int totalSales = 3000; // Generate 3000 sales for good variety
@@ -184,7 +188,7 @@ public class ExpandSalesData implements CommandLineRunner {
             int start = i * batchSize;
             int end = Math.min(start + batchSize, newSales.size());
             List<Sale> batch = newSales.subList(start, end);
-            saleRepository.saveAll(batch);
+            salesService.importSales(batch);
             System.out.printf("Saved batch %d/%d (%d sales)%n", i + 1, totalBatches, batch.size());
         }
 
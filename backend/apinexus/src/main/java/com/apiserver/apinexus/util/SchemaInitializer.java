@@ -5,6 +5,8 @@ import java.io.FileReader;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 
 public class SchemaInitializer {
     
@@ -39,7 +41,7 @@ public class SchemaInitializer {
                 String cleanSql = fullSql.replaceAll("--[^\n]*\n", "\n")
                                          .replaceAll("================================================================================", "");
                 
-                String[] statements = cleanSql.split(";");
+                String[] statements = splitStatements(cleanSql);
                 int successCount = 0;
                 int skipCount = 0;
                 
@@ -102,4 +104,28 @@ public class SchemaInitializer {
             System.exit(1);
         }
     }
+    
+    /**
+     * Split on semicolons outside $$-quoted bodies, so function definitions stay whole
+     */
+    static String[] splitStatements(String sql) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inBody = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '$' && i + 1 < sql.length() && sql.charAt(i + 1) == '$') {
+                inBody = !inBody;
+                current.append("$$");
+                i++;
+            } else if (c == ';' && !inBody) {
+                statements.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        statements.add(current.toString());
+        return statements.toArray(new String[0]);
+    }
 }
@@ -0,0 +1,48 @@
+-- Align databases created by an earlier init-scripts/postgres-init.sql with the JPA schema
+-- (user_subscriptions.plan_id and bills.user_subscription_id, no bills.bill_number, older
+-- card_details column names), so the subscription billing scheduler's subscription_plan_id join
+-- and ON CONFLICT (bill_number) work
+
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_name = 'card_details' AND column_name = 'last_4_digits') THEN
+        ALTER TABLE card_details RENAME COLUMN last_4_digits TO card_number_last4;
+    END IF;
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_name = 'card_details' AND column_name = 'cardholder_name') THEN
+        ALTER TABLE card_details RENAME COLUMN cardholder_name TO card_holder_name;
+    END IF;
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_name = 'user_subscriptions' AND column_name = 'plan_id')
+       AND NOT EXISTS (SELECT 1 FROM information_schema.columns
+                       WHERE table_name = 'user_subscriptions' AND column_name = 'subscription_plan_id') THEN
+        ALTER TABLE user_subscriptions RENAME COLUMN plan_id TO subscription_plan_id;
+    END IF;
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_name = 'bills' AND column_name = 'user_subscription_id')
+       AND NOT EXISTS (SELECT 1 FROM information_schema.columns
+                       WHERE table_name = 'bills' AND column_name = 'subscription_id') THEN
+        ALTER TABLE bills RENAME COLUMN user_subscription_id TO subscription_id;
+    END IF;
+END;
+$$;
+
+ALTER TABLE user_subscriptions ADD COLUMN IF NOT EXISTS amount NUMERIC(10, 2);
+
+ALTER TABLE bills ADD COLUMN IF NOT EXISTS user_id BIGINT REFERENCES users(id);
+UPDATE bills b SET user_id = s.user_id FROM user_subscriptions s
+WHERE b.user_id IS NULL AND s.id = b.subscription_id;
+
+-- Existing bills get the scheduler's BILL-{subscription}-{period} form, made unique by their id
+ALTER TABLE bills ADD COLUMN IF NOT EXISTS bill_number VARCHAR(255);
+UPDATE bills SET bill_number = 'BILL-' || subscription_id || '-LEGACY-' || id WHERE bill_number IS NULL;
+ALTER TABLE bills ALTER COLUMN bill_number SET NOT NULL;
+CREATE UNIQUE INDEX IF NOT EXISTS bills_bill_number_key ON bills(bill_number);
+
+ALTER TABLE bills ADD COLUMN IF NOT EXISTS billing_period_start TIMESTAMP;
+ALTER TABLE bills ADD COLUMN IF NOT EXISTS billing_period_end TIMESTAMP;
+ALTER TABLE bills ADD COLUMN IF NOT EXISTS paid_date TIMESTAMP;
+
+-- Display confirmation
+SELECT 'Init-script schema aligned with the JPA entities!' as status;
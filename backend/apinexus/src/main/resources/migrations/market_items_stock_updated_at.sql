@@ -0,0 +1,23 @@
+-- Keep market_items.updated_at current so stock changes can be picked up by polling
+
+-- Index the change-polling query (WHERE updated_at >= ?)
+CREATE INDEX IF NOT EXISTS idx_market_items_updated_at ON market_items(updated_at);
+
+-- Touch updated_at on every update that does not set it explicitly. clock_timestamp() is the
+-- time of the write itself; CURRENT_TIMESTAMP would be the (possibly much earlier) transaction start
+CREATE OR REPLACE FUNCTION market_items_touch_updated_at() RETURNS TRIGGER AS $$
+BEGIN
+    IF NEW.updated_at IS NOT DISTINCT FROM OLD.updated_at THEN
+        NEW.updated_at := clock_timestamp();
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_market_items_updated_at ON market_items;
+CREATE TRIGGER trg_market_items_updated_at
+    BEFORE UPDATE ON market_items
+    FOR EACH ROW EXECUTE FUNCTION market_items_touch_updated_at();
+
+-- Display confirmation
+SELECT 'market_items updated_at trigger installed!' as status;
@@ -0,0 +1,8 @@
+-- Index the subscription billing scan: active subscriptions in (next_billing_date, id) order
+
+CREATE INDEX IF NOT EXISTS idx_user_subscriptions_next_billing
+    ON user_subscriptions(next_billing_date, id)
+    WHERE status = 'ACTIVE';
+
+-- Display confirmation
+SELECT 'user_subscriptions next_billing_date index installed!' as status;
@@ -56,6 +56,24 @@ CREATE INDEX IF NOT EXISTS idx_user_details_email ON user_details(email);
 CREATE INDEX IF NOT EXISTS idx_user_details_is_premium ON user_details(is_premium);
 CREATE INDEX IF NOT EXISTS idx_market_items_category ON market_items(category);
 CREATE INDEX IF NOT EXISTS idx_market_items_is_available ON market_items(is_available);
+CREATE INDEX IF NOT EXISTS idx_market_items_updated_at ON market_items(updated_at);
+
+-- Keep market_items.updated_at current so stock changes are picked up by polling.
+-- Touch updated_at on every update that does not set it explicitly. clock_timestamp() is the
+-- time of the write itself; CURRENT_TIMESTAMP would be the (possibly much earlier) transaction start
+CREATE OR REPLACE FUNCTION market_items_touch_updated_at() RETURNS TRIGGER AS $$
+BEGIN
+    IF NEW.updated_at IS NOT DISTINCT FROM OLD.updated_at THEN
+        NEW.updated_at := clock_timestamp();
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_market_items_updated_at ON market_items;
+CREATE TRIGGER trg_market_items_updated_at
+    BEFORE UPDATE ON market_items
+    FOR EACH ROW EXECUTE FUNCTION market_items_touch_updated_at();
 
 -- Insert sample data for analytics login
 INSERT INTO analytics_login (username, password, email) VALUES
@@ -0,0 +1,47 @@
+package com.apiserver.apinexus;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.net.InetSocketAddress;
+
+/**
+ * One MongoDB shared by every Mongo-backed test in the JVM, so those tests always run:
+ * the server at -Dtest.mongodb.uri when given, else a mongo container when Docker is
+ * available, else an in-process mongo-java-server. Each test class uses its own database.
+ */
+public abstract class MongoTestSupport {
+
+    private static MongoClient client;
+
+    protected static synchronized MongoTemplate mongoTemplate(String database) {
+        if (client == null) {
+            client = MongoClients.create(connectionString());
+        }
+        return new MongoTemplate(client, database);
+    }
+
+    private static String connectionString() {
+        String uri = System.getProperty("test.mongodb.uri");
+        if (uri != null && !uri.isBlank()) {
+            return uri;
+        }
+        if (DockerClientFactory.instance().isDockerAvailable()) {
+            // Stopped with the JVM by the Testcontainers reaper
+            MongoDBContainer container = new MongoDBContainer(DockerImageName.parse("mongo:7.0"));
+            container.start();
+            return container.getConnectionString();
+        }
+        MongoServer server = new MongoServer(new MemoryBackend());
+        InetSocketAddress address = server.bind();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::shutdownNow));
+        System.out.println("Docker not available; Mongo tests use an in-memory server on port " + address.getPort());
+        return "mongodb://" + address.getHostString() + ":" + address.getPort();
+    }
+}
@@ -0,0 +1,94 @@
+package com.apiserver.apinexus.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoPurchaseCountsTest {
+
+    @Test
+    void countsCustomersPerPairWithAssociationMeasures() {
+        CoPurchaseCounts counts = new CoPurchaseCounts(1_000);
+        // Customers 1-3 buy 10 and 20 (1 twice); customer 4 buys 10 and 30; customer 5 only 30
+        for (long customer = 1; customer <= 3; customer++) {
+            counts.add(customer, 10);
+            counts.add(customer, 20);
+        }
+        counts.add(1, 10);
+        counts.add(4, 10);
+        counts.add(4, 30);
+        counts.add(5, 30);
+
+        List<CoPurchaseCounts.ProductPair> pairs = counts.topPairs(1, 0.0, 0.0, 10);
+
+        assertEquals(2, pairs.size());
+        CoPurchaseCounts.ProductPair top = pairs.get(0);
+        assertEquals(10, top.productA());
+        assertEquals(20, top.productB());
+        assertEquals(3, top.customers());
+        assertEquals(0, top.maxError());
+        assertEquals(3.0 / 5, top.support(), 1e-9);
+        assertEquals(1.0, top.confidence(), 1e-9);
+        assertEquals(3.0 * 5 / (4 * 3), top.lift(), 1e-9);
+
+        assertEquals(1, counts.topPairs(2, 0.0, 0.0, 10).size());
+        assertEquals(1, counts.topPairs(1, 0.0, 1.2, 10).size());
+        assertTrue(counts.topPairs(1, 0.9, 0.0, 10).stream().allMatch(p -> p.customers() == 3));
+    }
+
+    @Test
+    void matchesNaivePairCountingWhileUnderBudget() {
+        Random random = new Random(13);
+        CoPurchaseCounts counts = new CoPurchaseCounts(100_000);
+        Map<Long, Set<Long>> baskets = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            long customer = random.nextInt(2_000);
+            long product = random.nextInt(150);
+            counts.add(customer, product);
+            baskets.computeIfAbsent(customer, k -> new HashSet<>()).add(product);
+        }
+
+        Map<List<Long>, Integer> expected = new HashMap<>();
+        for (Set<Long> basket : baskets.values()) {
+            List<Long> products = new ArrayList<>(basket);
+            Collections.sort(products);
+            for (int i = 0; i < products.size(); i++) {
+                for (int j = i + 1; j < products.size(); j++) {
+                    expected.merge(List.of(products.get(i), products.get(j)), 1, Integer::sum);
+                }
+            }
+        }
+
+        List<CoPurchaseCounts.ProductPair> all = counts.topPairs(1, 0.0, 0.0, Integer.MAX_VALUE);
+        assertEquals(expected.size(), all.size());
+        for (CoPurchaseCounts.ProductPair pair : all) {
+            assertEquals(expected.get(List.of(pair.productA(), pair.productB())), (int) pair.customers());
+        }
+        assertEquals(0, counts.getMaxError());
+    }
+
+    @Test
+    void staysWithinBudgetAt100kCustomersAnd5kProducts() {
+        int maxPairs = 200_000;
+        CoPurchaseCounts counts = new CoPurchaseCounts(maxPairs);
+        Random random = new Random(5);
+        // Products 0-49 are popular, so their pairs should survive pruning
+        for (long customer = 0; customer < 100_000; customer++) {
+            for (int i = 0; i < 8; i++) {
+                long product = random.nextInt(4) == 0 ? random.nextInt(50) : random.nextInt(5_000);
+                counts.add(customer, product);
+            }
+        }
+
+        assertTrue(counts.pairCount() <= maxPairs);
+        assertTrue(counts.getMaxError() > 0);
+        assertEquals(100_000, counts.customerCount());
+        List<CoPurchaseCounts.ProductPair> top = counts.topPairs(3, 0.0, 0.0, 10);
+        assertEquals(10, top.size());
+        assertTrue(top.stream().allMatch(p -> p.productB() < 50));
+        System.out.printf("%d pairs kept, max error %d, ~%d MB%n",
+            counts.pairCount(), counts.getMaxError(), counts.memoryBytes() / (1024 * 1024));
+    }
+}
@@ -0,0 +1,79 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.model.Sale;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HyperLogLogTest {
+
+    @Test
+    void estimatesStayWithinErrorBoundsAcrossCardinalities() {
+        for (int cardinality : new int[] {10, 1_000, 50_000, 1_000_000}) {
+            HyperLogLog sketch = new HyperLogLog(12);
+            for (long id = 0; id < cardinality; id++) {
+                sketch.add(id);
+                sketch.add(id); // duplicates do not count
+            }
+            double error = Math.abs(sketch.estimate() - cardinality) / (double) cardinality;
+            assertTrue(error < 4 * sketch.relativeError(), cardinality + ": error " + error);
+        }
+    }
+
+    @Test
+    void mergeEqualsTheSketchOfTheUnion() {
+        HyperLogLog a = new HyperLogLog(11);
+        HyperLogLog b = new HyperLogLog(11);
+        HyperLogLog union = new HyperLogLog(11);
+        for (long id = 0; id < 30_000; id++) {
+            (id % 3 == 0 ? a : b).add(id);
+            union.add(id);
+        }
+        for (long id = 0; id < 10_000; id++) {
+            a.add(id); // overlap
+        }
+        HyperLogLog merged = a.copy();
+        merged.merge(b);
+
+        assertEquals(union.estimate(), merged.estimate());
+        assertThrows(IllegalArgumentException.class, () -> a.merge(new HyperLogLog(12)));
+    }
+
+    @Test
+    void trackerAnswersSegmentsWindowsAndLapsedCustomers() {
+        LocalDateTime now = LocalDateTime.of(2025, 6, 30, 12, 0);
+        // Customers 0-1999 bought 40-50 days ago; only 0-499 came back in the last 30 days
+        List<Sale> sales = new ArrayList<>();
+        for (long customer = 0; customer < 2_000; customer++) {
+            sales.add(sale(customer, now.minusDays(40 + customer % 10), customer % 4 == 0, "North"));
+            if (customer < 500) {
+                sales.add(sale(customer, now.minusDays(customer % 20), customer % 4 == 0, "South"));
+            }
+        }
+        CustomerReachTracker tracker = new CustomerReachTracker(true, 12);
+        assertTrue(tracker.distinctCustomers(CustomerReachTracker.ALL, null, null).isEmpty());
+        tracker.append(sales);
+        tracker.markLoaded();
+
+        assertEquals(2_000, tracker.distinctCustomers(CustomerReachTracker.ALL, null, null).getAsLong(), 100);
+        assertEquals(500, tracker.distinctCustomers(CustomerReachTracker.PREMIUM, null, null).getAsLong(), 25);
+        assertEquals(500, tracker.distinctCustomers(CustomerReachTracker.region("South"), null, null).getAsLong(), 25);
+        LocalDate today = now.toLocalDate();
+        assertEquals(500, tracker.distinctCustomers(CustomerReachTracker.ALL, today.minusDays(29), today).getAsLong(), 25);
+        assertEquals(1_500, tracker.lapsedCustomers(now).getAsLong(), 100);
+    }
+
+    private static Sale sale(long customerId, LocalDateTime date, boolean premium, String region) {
+        Sale sale = new Sale();
+        sale.setCustomerId(customerId);
+        sale.setSaleDate(date);
+        sale.setIsPremiumCustomer(premium);
+        sale.setRegion(region);
+        sale.setCategory("Books");
+        return sale;
+    }
+}
@@ -0,0 +1,51 @@
+package com.apiserver.apinexus.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongIntMapTest {
+
+    @Test
+    void matchesHashMapUnderRandomPutsAndRemoves() {
+        Random random = new Random(3);
+        LongIntMap map = new LongIntMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            // Small key range so keys collide, repeat and get removed; includes 0 and negatives
+            long key = random.nextInt(5_000) - 100;
+            if (random.nextInt(4) == 0) {
+                map.remove(key);
+                expected.remove(key);
+            } else {
+                int value = random.nextInt();
+                map.put(key, value);
+                expected.put(key, value);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (long key = -100; key < 4_900; key++) {
+            assertEquals(expected.containsKey(key), map.containsKey(key), "key " + key);
+            assertEquals(expected.getOrDefault(key, -1), map.get(key, -1), "key " + key);
+        }
+    }
+
+    @Test
+    void copyIsIndependent() {
+        LongIntMap map = new LongIntMap();
+        map.put(7L, 70);
+        LongIntMap copy = map.copy();
+        copy.put(7L, 71);
+        copy.put(8L, 80);
+
+        assertEquals(70, map.get(7L, 0));
+        assertFalse(map.containsKey(8L));
+        assertEquals(71, copy.get(7L, 0));
+        assertEquals(2, copy.size());
+    }
+}
@@ -0,0 +1,174 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.MongoTestSupport;
+import com.apiserver.apinexus.dto.CategorySalesDTO;
+import com.apiserver.apinexus.dto.ProductSalesDTO;
+import com.apiserver.apinexus.dto.SalesAnalyticsDTO;
+import com.apiserver.apinexus.dto.TimePeriodSalesDTO;
+import com.apiserver.apinexus.model.Sale;
+import com.apiserver.apinexus.repository.projection.SaleMetrics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the Mongo pipelines against the in-memory reference path on the same data.
+ */
+class MongoSalesAggregatorEquivalenceTest extends MongoTestSupport {
+
+    private static final double EPSILON = 1e-6;
+
+    private static MongoTemplate mongoTemplate;
+    private static MongoSalesAggregator aggregator;
+    private static List<Sale> sales;
+
+    @BeforeAll
+    static void setUp() {
+        mongoTemplate = mongoTemplate("nexuspay_equivalence_test");
+        mongoTemplate.dropCollection(MongoSalesAggregator.SALES_COLLECTION);
+        aggregator = new MongoSalesAggregator(mongoTemplate);
+
+        sales = generateSales(2_000);
+        mongoTemplate.insertAll(sales);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        mongoTemplate.getDb().drop();
+    }
+
+    @Test
+    void analyticsMatchesInMemory() {
+        assertAnalytics(InMemorySalesAggregator.analytics(metrics(sales)), aggregator.analytics(null, null));
+
+        LocalDateTime start = LocalDateTime.now().minusDays(90);
+        LocalDateTime end = LocalDateTime.now().minusDays(10);
+        assertAnalytics(InMemorySalesAggregator.analytics(metrics(inRange(start, end))), aggregator.analytics(start, end));
+    }
+
+    @Test
+    void byProductMatchesInMemory() {
+        Map<Long, ProductSalesDTO> expected = index(InMemorySalesAggregator.byProduct(metrics(sales)), ProductSalesDTO::getProductId);
+        List<ProductSalesDTO> actualList = aggregator.byProduct(null, null);
+        Map<Long, ProductSalesDTO> actual = index(actualList, ProductSalesDTO::getProductId);
+
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((id, dto) -> {
+            ProductSalesDTO other = actual.get(id);
+            assertEquals(dto.getProductName(), other.getProductName());
+            assertEquals(dto.getCategory(), other.getCategory());
+            assertEquals(dto.getTotalQuantity(), other.getTotalQuantity());
+            assertEquals(dto.getSalesCount(), other.getSalesCount());
+            assertEquals(dto.getTotalRevenue(), other.getTotalRevenue(), EPSILON);
+        });
+        assertSortedByRevenue(actualList.stream().map(ProductSalesDTO::getTotalRevenue).collect(Collectors.toList()));
+        
+        List<ProductSalesDTO> top = aggregator.topProducts(5, null, null);
+        assertEquals(actualList.subList(0, 5).stream().map(ProductSalesDTO::getProductId).collect(Collectors.toList()),
+            top.stream().map(ProductSalesDTO::getProductId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void byCategoryMatchesInMemory() {
+        LocalDateTime start = LocalDateTime.now().minusDays(200);
+        LocalDateTime end = LocalDateTime.now().minusDays(30);
+        Map<String, CategorySalesDTO> expected = index(
+            InMemorySalesAggregator.byCategory(metrics(inRange(start, end))), CategorySalesDTO::getCategory);
+        List<CategorySalesDTO> actualList = aggregator.byCategory(start, end);
+        Map<String, CategorySalesDTO> actual = index(actualList, CategorySalesDTO::getCategory);
+
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((category, dto) -> {
+            CategorySalesDTO other = actual.get(category);
+            assertEquals(dto.getTotalQuantity(), other.getTotalQuantity());
+            assertEquals(dto.getSalesCount(), other.getSalesCount());
+            assertEquals(dto.getTotalRevenue(), other.getTotalRevenue(), EPSILON);
+        });
+        assertSortedByRevenue(actualList.stream().map(CategorySalesDTO::getTotalRevenue).collect(Collectors.toList()));
+    }
+
+    @Test
+    void byPeriodMatchesInMemoryForEveryPeriod() {
+        for (SalesPeriod period : SalesPeriod.values()) {
+            List<TimePeriodSalesDTO> expected = InMemorySalesAggregator.byPeriod(period, metrics(sales));
+            List<TimePeriodSalesDTO> actual = aggregator.byPeriod(period, null, null);
+
+            assertEquals(expected.size(), actual.size(), period.name());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getPeriod(), actual.get(i).getPeriod(), period.name());
+                assertEquals(expected.get(i).getSalesCount(), actual.get(i).getSalesCount());
+                assertEquals(expected.get(i).getQuantity(), actual.get(i).getQuantity());
+                assertEquals(expected.get(i).getRevenue(), actual.get(i).getRevenue(), EPSILON);
+            }
+        }
+    }
+
+    private static void assertAnalytics(SalesAnalyticsDTO expected, SalesAnalyticsDTO actual) {
+        assertEquals(expected.getTotalSales(), actual.getTotalSales());
+        assertEquals(expected.getTotalQuantitySold(), actual.getTotalQuantitySold());
+        assertEquals(expected.getPremiumCustomerSales(), actual.getPremiumCustomerSales());
+        assertEquals(expected.getRegularCustomerSales(), actual.getRegularCustomerSales());
+        assertEquals(expected.getTotalRevenue(), actual.getTotalRevenue(), 0.01);
+        assertEquals(expected.getAverageOrderValue(), actual.getAverageOrderValue(), 0.01);
+        assertEquals(expected.getTotalDiscounts(), actual.getTotalDiscounts(), 0.01);
+    }
+
+    private static void assertSortedByRevenue(List<Double> revenues) {
+        for (int i = 1; i < revenues.size(); i++) {
+            assertTrue(revenues.get(i - 1) >= revenues.get(i));
+        }
+    }
+
+    private static <K, V> Map<K, V> index(List<V> values, Function<V, K> key) {
+        Map<K, V> map = new HashMap<>();
+        values.forEach(v -> map.put(key.apply(v), v));
+        return map;
+    }
+
+    private static Stream<SaleMetrics> metrics(List<Sale> sales) {
+        return sales.stream().map(SaleMetrics::from);
+    }
+    
+    private static List<Sale> inRange(LocalDateTime start, LocalDateTime end) {
+        return sales.stream()
+            .filter(s -> s.getSaleDate().isAfter(start) && s.getSaleDate().isBefore(end))
+            .collect(Collectors.toList());
+    }
+
+    static List<Sale> generateSales(int count) {
+        String[] categories = {"Electronics", "Books", "Food & Beverages", "Sports"};
+        String[] regions = {"Europe", "Asia Pacific", "North America"};
+        Random random = new Random(42);
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+
+        List<Sale> generated = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long productId = random.nextInt(40) + 1;
+            Sale sale = new Sale(
+                productId,
+                "Product " + productId,
+                categories[(int) (productId % categories.length)],
+                random.nextInt(15) + 1,
+                Math.round((5 + random.nextDouble() * 200) * 100.0) / 100.0,
+                (long) random.nextInt(100) + 1,
+                "Customer",
+                random.nextDouble() < 0.35,
+                "Credit Card",
+                regions[random.nextInt(regions.length)]
+            );
+            sale.setSaleDate(now.minusDays(random.nextInt(400)).minusMinutes(random.nextInt(24 * 60)));
+            generated.add(sale);
+        }
+        return generated;
+    }
+}
@@ -0,0 +1,62 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.dto.CategorySalesDTO;
+import com.apiserver.apinexus.dto.ProductSalesDTO;
+import com.apiserver.apinexus.repository.projection.SaleMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The chunked path must give the sequential reference result whether or not it goes parallel
+ */
+class ParallelSalesAggregatorTest {
+
+    private static final double EPSILON = 1e-6;
+
+    // Several full chunks plus a partial one
+    private final List<SaleMetrics> sales = MongoSalesAggregatorEquivalenceTest
+        .generateSales(ParallelSalesAggregator.CHUNK_SIZE * 3 + 123).stream()
+        .map(SaleMetrics::from)
+        .collect(Collectors.toList());
+
+    @Test
+    void matchesSequentialAboveAndBelowThreshold() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (int threshold : new int[] {0, 1_000, sales.size() + 1}) {
+                ParallelSalesAggregator aggregator = new ParallelSalesAggregator(pool, threshold);
+                assertProducts(InMemorySalesAggregator.byProduct(sales.stream()), aggregator.byProduct(sales.stream()));
+                assertCategories(InMemorySalesAggregator.byCategory(sales.stream()), aggregator.byCategory(sales.stream()));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertProducts(List<ProductSalesDTO> expected, List<ProductSalesDTO> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getProductId(), actual.get(i).getProductId());
+            assertEquals(expected.get(i).getProductName(), actual.get(i).getProductName());
+            assertEquals(expected.get(i).getCategory(), actual.get(i).getCategory());
+            assertEquals(expected.get(i).getTotalQuantity(), actual.get(i).getTotalQuantity());
+            assertEquals(expected.get(i).getSalesCount(), actual.get(i).getSalesCount());
+            assertEquals(expected.get(i).getTotalRevenue(), actual.get(i).getTotalRevenue(), EPSILON);
+        }
+    }
+
+    private static void assertCategories(List<CategorySalesDTO> expected, List<CategorySalesDTO> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getCategory(), actual.get(i).getCategory());
+            assertEquals(expected.get(i).getTotalQuantity(), actual.get(i).getTotalQuantity());
+            assertEquals(expected.get(i).getSalesCount(), actual.get(i).getSalesCount());
+            assertEquals(expected.get(i).getTotalRevenue(), actual.get(i).getTotalRevenue(), EPSILON);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.dto.ProductPerformanceDTO;
+import com.apiserver.apinexus.model.Sale;
+import com.apiserver.apinexus.repository.projection.SuggestionSaleView;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductVelocityTrackerTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 6, 1, 12, 0);
+
+    @Test
+    void lookupMatchesTheSnapshotScan() {
+        List<Sale> sales = generate(3_000);
+        ProductVelocityTracker tracker = new ProductVelocityTracker(true, 7);
+        tracker.append(sales);
+        tracker.markLoaded();
+
+        SuggestionSnapshot.Builder builder = SuggestionSnapshot.builder(NOW).velocityHalfLifeDays(7);
+        sales.forEach(sale -> builder.add(SuggestionSaleView.from(sale)));
+        List<ProductPerformanceDTO> scanned = builder.build().getProductPerformance();
+
+        List<ProductPerformanceDTO> tracked = tracker.productPerformance(NOW).orElseThrow();
+        assertEquals(scanned.size(), tracked.size());
+        for (ProductPerformanceDTO expected : scanned) {
+            ProductPerformanceDTO actual = tracker.performance(expected.getProductId(), NOW).orElseThrow();
+            assertEquals(expected.getPerformanceStatus(), actual.getPerformanceStatus());
+            assertEquals(expected.getTotalQuantitySold(), actual.getTotalQuantitySold());
+            assertEquals(expected.getTotalRevenue(), actual.getTotalRevenue(), 1e-6);
+            assertEquals(expected.getVelocityScore(), actual.getVelocityScore(), 1e-9);
+            assertEquals(expected.getRecentVelocity(), actual.getRecentVelocity(), 1e-9);
+        }
+    }
+
+    @Test
+    void decayedVelocityFollowsRecentDemandInAnyOrder() {
+        // 2 units/day for a year, then 10 units/day for the last 30 days
+        List<LocalDateTime> days = new ArrayList<>();
+        for (int day = 395; day > 0; day--) {
+            days.add(NOW.minusDays(day));
+        }
+        ProductStats inOrder = new ProductStats(7);
+        ProductStats shuffled = new ProductStats(7);
+        for (LocalDateTime day : days) {
+            inOrder.add("p", "c", quantity(day), 1.0, 1.0, day);
+        }
+        Collections.shuffle(days, new Random(3));
+        for (LocalDateTime day : days) {
+            shuffled.add("p", "c", quantity(day), 1.0, 1.0, day);
+        }
+
+        // Daily samples ending a day ago read slightly under the continuous rate
+        assertEquals(10.0, inOrder.decayedVelocity(NOW), 1.0);
+        assertEquals(inOrder.decayedVelocity(NOW), shuffled.decayedVelocity(NOW), 1e-6);
+        // The lifetime average barely moves
+        assertTrue(inOrder.toPerformance(1L, NOW).getVelocityScore() < 3.0);
+    }
+
+    private static int quantity(LocalDateTime day) {
+        return day.isAfter(NOW.minusDays(31)) ? 10 : 2;
+    }
+
+    private static List<Sale> generate(int count) {
+        Random random = new Random(17);
+        List<Sale> sales = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long productId = 1 + random.nextInt(30);
+            Sale sale = new Sale();
+            sale.setCustomerId(1L + random.nextInt(200));
+            sale.setProductId(productId);
+            sale.setProductName("Product " + productId);
+            sale.setCategory("Category " + productId % 4);
+            sale.setRegion("North");
+            sale.setQuantity(1 + random.nextInt(4));
+            sale.setUnitPrice(10.0 + productId);
+            sale.setFinalAmount(sale.getQuantity() * sale.getUnitPrice());
+            sale.setDiscountApplied(0.0);
+            sale.setIsPremiumCustomer(false);
+            sale.setSaleDate(NOW.minusHours(random.nextInt(24 * (productId < 5 ? 20 : 200))));
+            sales.add(sale);
+        }
+        return sales;
+    }
+}
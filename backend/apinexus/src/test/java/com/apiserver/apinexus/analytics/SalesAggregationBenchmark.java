@@ -0,0 +1,85 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.dto.CategorySalesDTO;
+import com.apiserver.apinexus.dto.ProductSalesDTO;
+import com.apiserver.apinexus.repository.projection.SaleMetrics;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequential reference aggregation against the chunked fork-join path on pre-built rows,
+ * so only the aggregation itself is measured (no cursor decoding).
+ * Not part of the test run; start it from the IDE via {@link #main}, or with
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/test.classpath
+ * java -cp target/test-classes:target/classes:$(cat target/test.classpath) \
+ *     org.openjdk.jmh.Main SalesAggregationBenchmark
+ * </pre>
+ * The 10M case holds about 1.5GB of rows, hence the larger fork heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SalesAggregationBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    private int rows;
+
+    private List<SaleMetrics> sales;
+    private ParallelSalesAggregator parallel;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] categories = {"Electronics", "Books", "Food & Beverages", "Sports", "Home & Garden", "Toys"};
+        Random random = new Random(42);
+        LocalDateTime now = LocalDateTime.now();
+
+        sales = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            long productId = random.nextInt(500) + 1;
+            int quantity = random.nextInt(15) + 1;
+            double amount = quantity * (5 + random.nextDouble() * 200);
+            sales.add(new SaleMetrics(productId, "Product " + productId, categories[(int) (productId % categories.length)],
+                quantity, amount, 0.0, now.minusMinutes(i), random.nextBoolean()));
+        }
+        parallel = new ParallelSalesAggregator(ForkJoinPool.commonPool(), 100_000);
+    }
+
+    @Benchmark
+    public List<ProductSalesDTO> byProductSequential() {
+        return InMemorySalesAggregator.byProduct(sales.stream());
+    }
+
+    @Benchmark
+    public List<ProductSalesDTO> byProductParallel() {
+        return parallel.byProduct(sales.stream());
+    }
+
+    @Benchmark
+    public List<CategorySalesDTO> byCategorySequential() {
+        return InMemorySalesAggregator.byCategory(sales.stream());
+    }
+
+    @Benchmark
+    public List<CategorySalesDTO> byCategoryParallel() {
+        return parallel.byCategory(sales.stream());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(SalesAggregationBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
@@ -0,0 +1,142 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.dto.CategorySalesDTO;
+import com.apiserver.apinexus.dto.DimensionSalesDTO;
+import com.apiserver.apinexus.dto.ProductSalesDTO;
+import com.apiserver.apinexus.dto.SalesAnalyticsDTO;
+import com.apiserver.apinexus.dto.TimePeriodSalesDTO;
+import com.apiserver.apinexus.model.Sale;
+import com.apiserver.apinexus.repository.projection.SaleMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the columnar cube against the in-memory reference path on the same data
+ */
+class SalesCubeTest {
+
+    private static final double EPSILON = 1e-6;
+
+    private List<Sale> sales;
+    private SalesCube cube;
+
+    @BeforeEach
+    void setUp() {
+        sales = MongoSalesAggregatorEquivalenceTest.generateSales(3_000);
+        cube = new SalesCube();
+        ReflectionTestUtils.setField(cube, "enabled", true);
+        // Two appends exercise column growth past the first batch
+        cube.append(sales.subList(0, 1_000));
+        cube.append(sales.subList(1_000, sales.size()));
+        cube.markLoaded();
+    }
+
+    @Test
+    void readsAreEmptyUntilLoaded() {
+        SalesCube unloaded = new SalesCube();
+        ReflectionTestUtils.setField(unloaded, "enabled", true);
+        unloaded.append(sales);
+
+        assertTrue(unloaded.analytics(null, null).isEmpty());
+        assertTrue(unloaded.byProduct(null, null).isEmpty());
+    }
+
+    @Test
+    void analyticsMatchesInMemory() {
+        LocalDateTime start = LocalDateTime.now().minusDays(120);
+        LocalDateTime end = LocalDateTime.now().minusDays(20);
+
+        assertAnalytics(InMemorySalesAggregator.analytics(metrics(sales)), cube.analytics(null, null).orElseThrow());
+        assertAnalytics(InMemorySalesAggregator.analytics(metrics(inRange(start, end))),
+            cube.analytics(start, end).orElseThrow());
+    }
+
+    @Test
+    void groupBysMatchInMemory() {
+        List<ProductSalesDTO> expectedProducts = InMemorySalesAggregator.byProduct(metrics(sales));
+        List<ProductSalesDTO> actualProducts = cube.byProduct(null, null).orElseThrow();
+        assertEquals(expectedProducts.size(), actualProducts.size());
+        for (int i = 0; i < expectedProducts.size(); i++) {
+            assertEquals(expectedProducts.get(i).getProductId(), actualProducts.get(i).getProductId());
+            assertEquals(expectedProducts.get(i).getProductName(), actualProducts.get(i).getProductName());
+            assertEquals(expectedProducts.get(i).getSalesCount(), actualProducts.get(i).getSalesCount());
+            assertEquals(expectedProducts.get(i).getTotalRevenue(), actualProducts.get(i).getTotalRevenue(), EPSILON);
+        }
+
+        List<CategorySalesDTO> expectedCategories = InMemorySalesAggregator.byCategory(metrics(sales));
+        List<CategorySalesDTO> actualCategories = cube.byCategory(null, null).orElseThrow();
+        assertEquals(expectedCategories.size(), actualCategories.size());
+        for (int i = 0; i < expectedCategories.size(); i++) {
+            assertEquals(expectedCategories.get(i).getCategory(), actualCategories.get(i).getCategory());
+            assertEquals(expectedCategories.get(i).getTotalQuantity(), actualCategories.get(i).getTotalQuantity());
+            assertEquals(expectedCategories.get(i).getTotalRevenue(), actualCategories.get(i).getTotalRevenue(), EPSILON);
+        }
+    }
+
+    @Test
+    void byDimensionMatchesGroupedSales() {
+        Map<String, Long> expected = sales.stream()
+            .collect(Collectors.groupingBy(Sale::getRegion, Collectors.counting()));
+        List<DimensionSalesDTO> actual = cube.byDimension(SalesDimension.REGION, null, null).orElseThrow();
+
+        assertEquals(expected.size(), actual.size());
+        for (DimensionSalesDTO dto : actual) {
+            assertEquals(expected.get(dto.getKey()).intValue(), dto.getSalesCount());
+        }
+        assertEquals(1, cube.byDimension(SalesDimension.PAYMENT_METHOD, null, null).orElseThrow().size());
+    }
+
+    @Test
+    void byPeriodMatchesInMemoryForEveryPeriod() {
+        LocalDateTime start = LocalDateTime.now().minusDays(300);
+        LocalDateTime end = LocalDateTime.now().minusDays(3);
+        for (SalesPeriod period : SalesPeriod.values()) {
+            List<TimePeriodSalesDTO> expected = InMemorySalesAggregator.byPeriod(period, metrics(inRange(start, end)));
+            List<TimePeriodSalesDTO> actual = cube.byPeriod(period, start, end).orElseThrow();
+
+            assertEquals(expected.size(), actual.size(), period.name());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getPeriod(), actual.get(i).getPeriod(), period.name());
+                assertEquals(expected.get(i).getSalesCount(), actual.get(i).getSalesCount());
+                assertEquals(expected.get(i).getQuantity(), actual.get(i).getQuantity());
+                assertEquals(expected.get(i).getRevenue(), actual.get(i).getRevenue(), EPSILON);
+            }
+        }
+    }
+
+    @Test
+    void clearEmptiesTheCube() {
+        cube.onSalesCleared(new SalesClearedEvent());
+
+        assertEquals(0, cube.size());
+        assertEquals(0, cube.analytics(null, null).orElseThrow().getTotalSales());
+        assertTrue(cube.byPeriod(SalesPeriod.DAILY, null, null).orElseThrow().isEmpty());
+    }
+
+    private static void assertAnalytics(SalesAnalyticsDTO expected, SalesAnalyticsDTO actual) {
+        assertEquals(expected.getTotalSales(), actual.getTotalSales());
+        assertEquals(expected.getTotalQuantitySold(), actual.getTotalQuantitySold());
+        assertEquals(expected.getPremiumCustomerSales(), actual.getPremiumCustomerSales());
+        assertEquals(expected.getTotalRevenue(), actual.getTotalRevenue(), 0.01);
+        assertEquals(expected.getTotalDiscounts(), actual.getTotalDiscounts(), 0.01);
+    }
+
+    private static Stream<SaleMetrics> metrics(List<Sale> sales) {
+        return sales.stream().map(SaleMetrics::from);
+    }
+
+    private List<Sale> inRange(LocalDateTime start, LocalDateTime end) {
+        return sales.stream()
+            .filter(s -> s.getSaleDate().isAfter(start) && s.getSaleDate().isBefore(end))
+            .collect(Collectors.toList());
+    }
+}
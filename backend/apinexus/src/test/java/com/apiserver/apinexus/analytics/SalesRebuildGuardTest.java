@@ -0,0 +1,107 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.MongoTestSupport;
+import com.apiserver.apinexus.model.Sale;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that sales recorded while a derived store is rebuilt are applied exactly once.
+ */
+class SalesRebuildGuardTest extends MongoTestSupport {
+
+    private static MongoTemplate mongoTemplate;
+
+    private final Map<String, Integer> applied = new HashMap<>();
+
+    @BeforeAll
+    static void setUp() {
+        mongoTemplate = mongoTemplate("nexuspay_rebuild_guard_test");
+    }
+
+    @AfterAll
+    static void tearDown() {
+        mongoTemplate.getDb().drop();
+    }
+
+    @BeforeEach
+    void dropSales() {
+        mongoTemplate.getDb().drop();
+    }
+
+    @Test
+    void salesRecordedDuringRebuildAreAppliedOnce() {
+        List<Sale> sales = new ArrayList<>();
+        for (int i = 0; i < 2_500; i++) {
+            sales.add(sale(i));
+        }
+        sales = new ArrayList<>(mongoTemplate.insertAll(sales));
+        List<Sale> existing = sales;
+        Sale[] written = new Sale[1];
+        SalesRebuildGuard[] guard = new SalesRebuildGuard[1];
+        guard[0] = new SalesRebuildGuard(mongoTemplate, "test_store", 1, batch -> {
+            if (written[0] == null && !batch.isEmpty()) {
+                // Writes landing while the first batch is applied: a new sale, one the scan has
+                // already passed and one it has yet to reach
+                written[0] = mongoTemplate.insert(sale(-1));
+                guard[0].record(List.of(written[0]));
+                guard[0].record(List.of(existing.get(0)));
+                guard[0].record(List.of(existing.get(2_400)));
+            }
+            batch.forEach(sale -> applied.merge(sale.getId(), 1, Integer::sum));
+        });
+
+        assertEquals(2_501, guard[0].rebuild(applied::clear));
+
+        assertEquals(2_501, applied.size());
+        assertTrue(applied.values().stream().allMatch(count -> count == 1), "a sale was applied twice");
+        assertTrue(guard[0].isBuilt());
+
+        // Once rebuilt, sales are applied as they are recorded
+        Sale later = mongoTemplate.insert(sale(-2));
+        guard[0].record(List.of(later));
+        assertEquals(1, applied.get(later.getId()));
+    }
+
+    @Test
+    void unfinishedRebuildIsNotRecordedAsBuilt() {
+        mongoTemplate.insert(sale(1));
+        SalesRebuildGuard built = new SalesRebuildGuard(mongoTemplate, "test_store", 1, batch -> { });
+        built.rebuild(() -> { });
+        assertTrue(built.isBuilt());
+
+        SalesRebuildGuard failing = new SalesRebuildGuard(mongoTemplate, "test_store", 1, batch -> {
+            if (!batch.isEmpty()) {
+                throw new IllegalStateException("write failed");
+            }
+        });
+        assertThrows(IllegalStateException.class, () -> failing.rebuild(() -> { }));
+        assertFalse(failing.isBuilt());
+
+        // Writes are applied directly again rather than buffered forever
+        assertThrows(IllegalStateException.class, () -> failing.record(List.of(sale(2))));
+
+        built.rebuild(() -> { });
+        built.invalidate();
+        assertFalse(built.isBuilt());
+
+        // A store built at an earlier layout version is rebuilt
+        built.rebuild(() -> { });
+        assertFalse(new SalesRebuildGuard(mongoTemplate, "test_store", 2, batch -> { }).isBuilt());
+    }
+
+    private static Sale sale(int i) {
+        Sale sale = new Sale(1L + i % 5, "Product", "Books", 1, 10.0, 1L + i % 50, "Customer", false,
+            "Credit Card", "Europe");
+        sale.setSaleDate(LocalDateTime.of(2024, 3, 1, 0, 0).plusMinutes(Math.abs(i)));
+        return sale;
+    }
+}
@@ -0,0 +1,79 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.model.Sale;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SalesResultCacheTest {
+
+    private static final LocalDateTime JAN = LocalDateTime.of(2025, 1, 1, 0, 0);
+    private static final LocalDateTime FEB = LocalDateTime.of(2025, 2, 1, 0, 0);
+    private static final LocalDateTime MAR = LocalDateTime.of(2025, 3, 1, 0, 0);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SalesResultCache cache = new SalesResultCache(true, 100, 300, registry);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void equivalentRequestsShareAnEntry() {
+        load(SalesCacheKey.of("analytics", null, null));
+        load(SalesCacheKey.of("analytics", JAN, null));
+        load(SalesCacheKey.of("by-period", JAN, FEB, SalesPeriod.from("Monthly"), null, null));
+        load(SalesCacheKey.of("by-period", JAN, FEB, SalesPeriod.MONTHLY, null, null));
+
+        assertEquals(2, loads.get());
+        assertEquals(2.0, registry.get("cache.gets").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void newSaleOnlyEvictsRangesContainingIt() {
+        SalesCacheKey january = SalesCacheKey.of("analytics", JAN, FEB);
+        SalesCacheKey february = SalesCacheKey.of("analytics", FEB, MAR);
+        SalesCacheKey allTime = SalesCacheKey.of("analytics", null, null);
+        load(january);
+        load(february);
+        load(allTime);
+
+        cache.onSalesRecorded(new SalesRecordedEvent(List.of(saleAt(FEB.plusDays(3)))));
+        assertEquals(1, cache.size());
+
+        loads.set(0);
+        load(january);
+        load(february);
+        load(allTime);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void rangeBoundsAreExclusive() {
+        LocalDateTime[] dates = {FEB};
+        assertFalse(SalesResultCache.covers(SalesCacheKey.of("v", JAN, FEB), dates));
+        assertFalse(SalesResultCache.covers(SalesCacheKey.of("v", FEB, MAR), dates));
+        assertTrue(SalesResultCache.covers(SalesCacheKey.of("v", JAN, MAR), dates));
+    }
+
+    @Test
+    void clearEvictsEverything() {
+        load(SalesCacheKey.of("analytics", JAN, FEB));
+        load(SalesCacheKey.of("by-category", FEB, MAR));
+
+        cache.onSalesCleared(new SalesClearedEvent());
+        assertEquals(0, cache.size());
+    }
+
+    private void load(SalesCacheKey key) {
+        cache.get(key, () -> loads.incrementAndGet());
+    }
+
+    private static Sale saleAt(LocalDateTime saleDate) {
+        Sale sale = new Sale(1L, "Product 1", "Books", 1, 10.0, 1L, "Customer", false, "Card", "Europe");
+        sale.setSaleDate(saleDate);
+        return sale;
+    }
+}
@@ -0,0 +1,120 @@
+package com.apiserver.apinexus.analytics;
+
+import com.apiserver.apinexus.MongoTestSupport;
+import com.apiserver.apinexus.dto.SalesAnalyticsDTO;
+import com.apiserver.apinexus.dto.TimePeriodSalesDTO;
+import com.apiserver.apinexus.model.Sale;
+import com.apiserver.apinexus.model.SalesRollup;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks that rollup reads use the same range bounds as the Mongo pipelines.
+ */
+class SalesRollupServiceTest extends MongoTestSupport {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 0, 0);
+    private static final LocalDateTime END = LocalDateTime.of(2024, 4, 1, 0, 0);
+
+    private static MongoTemplate mongoTemplate;
+    private static SalesRollupService rollups;
+    private static MongoSalesAggregator aggregator;
+
+    @BeforeAll
+    static void setUp() {
+        mongoTemplate = mongoTemplate("nexuspay_rollup_test");
+        mongoTemplate.getDb().drop();
+        rollups = new SalesRollupService(mongoTemplate);
+        ReflectionTestUtils.setField(rollups, "enabled", true);
+        aggregator = new MongoSalesAggregator(mongoTemplate);
+
+        // On both bounds, just inside them, and outside the range
+        List<Sale> sales = List.of(
+            sale(START, 10.0),
+            sale(START.plusSeconds(1), 20.0),
+            sale(START.plusDays(3), 40.0),
+            sale(END.minusSeconds(1), 80.0),
+            sale(END, 160.0),
+            sale(START.minusSeconds(1), 320.0));
+        mongoTemplate.insertAll(sales);
+        rollups.rebuild();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        mongoTemplate.getDb().drop();
+    }
+
+    @Test
+    void startBoundIsExclusiveLikeThePipelines() {
+        SalesAnalyticsDTO fromRollups = rollups.analytics(START, END).orElseThrow();
+        SalesAnalyticsDTO fromSales = aggregator.analytics(START, END);
+
+        assertEquals(3, fromRollups.getTotalSales());
+        assertEquals(fromSales.getTotalSales(), fromRollups.getTotalSales());
+        assertEquals(fromSales.getTotalRevenue(), fromRollups.getTotalRevenue(), 1e-6);
+        assertEquals(fromSales.getTotalQuantitySold(), fromRollups.getTotalQuantitySold());
+    }
+
+    @Test
+    void periodViewExcludesSalesAtStart() {
+        List<TimePeriodSalesDTO> fromRollups = rollups.byPeriod(SalesPeriod.DAILY, START, END).orElseThrow();
+        List<TimePeriodSalesDTO> fromSales = aggregator.byPeriod(SalesPeriod.DAILY, START, END);
+
+        assertEquals(fromSales.size(), fromRollups.size());
+        for (int i = 0; i < fromSales.size(); i++) {
+            assertEquals(fromSales.get(i).getPeriod(), fromRollups.get(i).getPeriod());
+            assertEquals(fromSales.get(i).getSalesCount(), fromRollups.get(i).getSalesCount());
+            assertEquals(fromSales.get(i).getRevenue(), fromRollups.get(i).getRevenue(), 1e-6);
+        }
+        assertEquals(20.0, fromRollups.get(0).getRevenue(), 1e-6);
+    }
+
+    @Test
+    void readsFallBackUntilRollupsAreReady() {
+        SalesRollupService unbuilt = new SalesRollupService(mongoTemplate);
+        ReflectionTestUtils.setField(unbuilt, "enabled", true);
+
+        assertTrue(unbuilt.analytics(START, END).isEmpty());
+        assertTrue(unbuilt.byPeriod(SalesPeriod.DAILY, START, END).isEmpty());
+        assertTrue(unbuilt.isBuilt());
+        unbuilt.markReady();
+        assertTrue(unbuilt.analytics(START, END).isPresent());
+    }
+
+    @Test
+    void failedRollupWriteDoesNotFailTheSale() {
+        MongoTemplate failing = mock(MongoTemplate.class);
+        when(failing.bulkOps(any(BulkOperations.BulkMode.class), eq(SalesRollup.class)))
+            .thenThrow(new DataAccessResourceFailureException("rollups unavailable"));
+        SalesRollupService broken = new SalesRollupService(failing);
+        ReflectionTestUtils.setField(broken, "enabled", true);
+        broken.markReady();
+
+        assertDoesNotThrow(() -> broken.onSalesRecorded(new SalesRecordedEvent(List.of(sale(START.plusDays(1), 5.0)))));
+
+        // Reads fall back to raw sales and the rollups are rebuilt on the next start
+        assertFalse(broken.isReady());
+        verify(failing).remove(any(Query.class), eq(SalesRebuildGuard.BUILDS_COLLECTION));
+    }
+
+    private static Sale sale(LocalDateTime saleDate, double unitPrice) {
+        Sale sale = new Sale(1L, "Product 1", "Books", 1, unitPrice, 1L, "Customer", false, "Credit Card", "Europe");
+        sale.setSaleDate(saleDate);
+        return sale;
+    }
+}
@@ -0,0 +1,65 @@
+package com.apiserver.apinexus.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpaceSavingSketchTest {
+
+    @Test
+    void topKMatchesFullSort() {
+        Random random = new Random(7);
+        List<Integer> values = random.ints(5_000, 0, 1_000_000).boxed().collect(Collectors.toList());
+
+        List<Integer> expected = values.stream()
+            .sorted(Comparator.reverseOrder())
+            .limit(25)
+            .collect(Collectors.toList());
+        assertEquals(expected, TopK.largest(values, 25, Comparator.naturalOrder()));
+        assertEquals(values.size(), TopK.largest(values, 10_000, Comparator.naturalOrder()).size());
+        assertTrue(TopK.largest(values, 0, Comparator.naturalOrder()).isEmpty());
+    }
+
+    @Test
+    void totalsAreExactWithinCapacity() {
+        SpaceSavingSketch<String, String> sketch = new SpaceSavingSketch<>(10);
+        Map<String, Double> truth = new HashMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 1_000; i++) {
+            String key = "k" + random.nextInt(10);
+            double weight = random.nextDouble() * 100;
+            truth.merge(key, weight, Double::sum);
+            sketch.offer(key, key, weight, 1);
+        }
+
+        for (SpaceSavingSketch.Counter<String, String> counter : sketch.top(10)) {
+            assertTrue(counter.isExact());
+            assertEquals(truth.get(counter.getKey()), counter.getWeight(), 1e-6);
+        }
+    }
+
+    @Test
+    void heavyKeysSurviveAndEstimatesStayWithinErrorBound() {
+        SpaceSavingSketch<Integer, String> sketch = new SpaceSavingSketch<>(20);
+        Map<Integer, Double> truth = new HashMap<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 20_000; i++) {
+            // Keys 0-4 carry most of the weight, 500 others form a long tail
+            int key = random.nextDouble() < 0.6 ? random.nextInt(5) : 5 + random.nextInt(500);
+            truth.merge(key, 1.0, Double::sum);
+            sketch.offer(key, null, 1.0, 1);
+        }
+
+        List<SpaceSavingSketch.Counter<Integer, String>> top = sketch.top(5);
+        assertEquals(Set.of(0, 1, 2, 3, 4), top.stream().map(SpaceSavingSketch.Counter::getKey).collect(Collectors.toSet()));
+        for (SpaceSavingSketch.Counter<Integer, String> counter : sketch.top(20)) {
+            double actual = truth.get(counter.getKey());
+            assertTrue(counter.getWeight() >= actual);
+            assertTrue(counter.getWeight() - counter.getError() <= actual);
+        }
+        assertEquals(20_000.0, sketch.getTotalWeight(), 1e-9);
+    }
+}
@@ -0,0 +1,116 @@
+package com.apiserver.apinexus.analytics.rules;
+
+import com.apiserver.apinexus.analytics.LongIntMap;
+import com.apiserver.apinexus.analytics.SuggestionSnapshot;
+import com.apiserver.apinexus.dto.ProductPerformanceDTO;
+import com.apiserver.apinexus.dto.SuggestionDTO;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of evaluating compiled suggestion rules once the statistics exist: the shipped rules
+ * are repeated with varied thresholds up to {@code rules}, over {@code products} product rows.
+ * Divide the evaluate score by the rule count for the cost per rule; buildFacts is the
+ * one-off cost of turning snapshot statistics into fact tables.
+ * Not part of the test run; start it from the IDE via {@link #main}, or with
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/test.classpath
+ * java -cp target/test-classes:target/classes:$(cat target/test.classpath) \
+ *     org.openjdk.jmh.Main SuggestionRuleBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SuggestionRuleBenchmark {
+
+    @Param({"1", "10", "50", "200"})
+    private int rules;
+
+    @Param({"1000", "10000"})
+    private int products;
+
+    private SuggestionRuleEngine engine;
+    private RuleFacts facts;
+    private List<ProductPerformanceDTO> performances;
+    private LongIntMap stock;
+    private Map<String, SuggestionSnapshot.CategoryTotals> categories;
+    private Map<String, Double> revenueByRegion;
+    private Map<String, Long> salesByRegion;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        String[] statuses = {"TOP_PERFORMER", "STEADY", "SLOW_MOVING", "STAGNANT"};
+        String[] categoryNames = {"Electronics", "Books", "Food & Beverages", "Sports", "Home & Garden", "Toys"};
+        performances = new ArrayList<>(products);
+        stock = new LongIntMap(products);
+        for (long id = 1; id <= products; id++) {
+            double velocity = random.nextDouble() * 4;
+            int sales = 1 + random.nextInt(200);
+            performances.add(new ProductPerformanceDTO(id, "Product " + id, categoryNames[(int) (id % categoryNames.length)],
+                sales, sales * 2, sales * 40.0, 40.0, 20.0, 90, random.nextInt(60),
+                statuses[random.nextInt(statuses.length)], velocity, velocity * random.nextDouble() * 2));
+            stock.put(id, random.nextInt(300));
+        }
+        categories = new HashMap<>();
+        for (String category : categoryNames) {
+            categories.put(category, new SuggestionSnapshot.CategoryTotals(random.nextDouble() * 1000,
+                random.nextDouble() * 100_000, 1 + random.nextInt(5000)));
+        }
+        revenueByRegion = new HashMap<>();
+        salesByRegion = new HashMap<>();
+        for (String region : new String[] {"North", "South", "East", "West", "Central"}) {
+            revenueByRegion.put(region, random.nextDouble() * 200_000);
+            salesByRegion.put(region, 1L + random.nextInt(10_000));
+        }
+
+        List<SuggestionRule> shipped = SuggestionRuleEngine.load(new ClassPathResource("suggestion-rules.json"));
+        List<SuggestionRule> declared = new ArrayList<>(rules);
+        for (int i = 0; i < rules; i++) {
+            SuggestionRule template = shipped.get(i % shipped.size());
+            double scale = 0.5 + (i / shipped.size()) * 0.01;
+            List<SuggestionRule.Condition> when = new ArrayList<>();
+            for (SuggestionRule.Condition condition : template.getWhen()) {
+                Object value = condition.getValue() instanceof Number n ? n.doubleValue() * scale * 2 : condition.getValue();
+                when.add(new SuggestionRule.Condition(condition.getField(), condition.getOp(), value));
+            }
+            declared.add(new SuggestionRule(template.getId() + "-" + i, template.getScope(), when,
+                template.getCategory(), template.getPriority(), template.getTitle(), template.getDescription(),
+                template.getActionable(), template.getImpactScore(), template.getMetric(),
+                template.getCurrentValue(), template.getPotentialValue(), template.getOrderBy(), template.getLimit()));
+        }
+        engine = new SuggestionRuleEngine(declared);
+        facts = buildFacts();
+    }
+
+    @Benchmark
+    public List<SuggestionDTO> evaluate() {
+        return engine.evaluate(facts);
+    }
+
+    @Benchmark
+    public RuleFacts buildFacts() {
+        return RuleFacts.builder()
+            .products(performances, stock)
+            .categories(categories)
+            .regions(revenueByRegion, salesByRegion)
+            .customers(50_000, 15_000, 2_000_000.0, 20_000, 4_000)
+            .build();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(SuggestionRuleBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
@@ -0,0 +1,136 @@
+package com.apiserver.apinexus.analytics.rules;
+
+import com.apiserver.apinexus.analytics.LongIntMap;
+import com.apiserver.apinexus.dto.ProductPerformanceDTO;
+import com.apiserver.apinexus.dto.SuggestionDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SuggestionRuleEngineTest {
+
+    @Test
+    void shippedRulesCompile() {
+        SuggestionRuleEngine engine = new SuggestionRuleEngine(true, new ClassPathResource("suggestion-rules.json"));
+
+        assertFalse(engine.getRules().isEmpty());
+    }
+
+    @Test
+    void aggregateThresholdsAndTemplates() {
+        SuggestionRule rule = new SuggestionRule();
+        rule.setId("weak-region");
+        rule.setScope("region");
+        rule.setWhen(List.of(new SuggestionRule.Condition("revenue", "<",
+            Map.of("field", "avg(revenue)", "times", 0.6))));
+        rule.setCategory("REGIONAL");
+        rule.setPriority("MEDIUM");
+        rule.setTitle("Boost Sales in {region}");
+        rule.setDescription("{revenue:%.1f} of {avg(revenue)} average over {salesCount} sales");
+        rule.setCurrentValue("revenue");
+        rule.setPotentialValue("avg(revenue)");
+        rule.setOrderBy("salesCount");
+
+        Map<String, Double> revenue = new LinkedHashMap<>();
+        revenue.put("North", 1000.0);
+        revenue.put("South", 100.0);
+        revenue.put("East", 1000.0);
+        revenue.put("West", 300.0);
+        Map<String, Long> sales = Map.of("North", 10L, "South", 2L, "East", 10L, "West", 5L);
+        // Average revenue 600, threshold 360: South and West, most sales first
+        List<SuggestionDTO> suggestions = new SuggestionRuleEngine(List.of(rule))
+            .evaluate(RuleFacts.builder().regions(revenue, sales).build());
+
+        assertEquals(List.of("Boost Sales in West", "Boost Sales in South"),
+            suggestions.stream().map(SuggestionDTO::getTitle).toList());
+        assertEquals("300.0 of 600 average over 5 sales", suggestions.get(0).getDescription());
+        assertEquals(600.0, suggestions.get(0).getPotentialValue());
+    }
+
+    @Test
+    void textConditionsAndLimit() {
+        SuggestionRule rule = new SuggestionRule();
+        rule.setId("top-restock");
+        rule.setScope("PRODUCT");
+        rule.setWhen(List.of(
+            new SuggestionRule.Condition("performanceStatus", "in", List.of("TOP_PERFORMER", "STEADY")),
+            new SuggestionRule.Condition("stock", "<", 50)));
+        rule.setCategory("INVENTORY");
+        rule.setPriority("HIGH");
+        rule.setTitle("Restock {productName}");
+        rule.setOrderBy("velocityScore");
+        rule.setLimit(1);
+
+        LongIntMap stock = new LongIntMap();
+        stock.put(1L, 10);
+        stock.put(2L, 10);
+        stock.put(3L, 500);
+        List<ProductPerformanceDTO> products = List.of(
+            product(1L, "A", "STEADY", 1.0),
+            product(2L, "B", "TOP_PERFORMER", 3.0),
+            product(3L, "C", "TOP_PERFORMER", 5.0),
+            product(4L, "D", "STAGNANT", 0.0));
+
+        List<SuggestionDTO> suggestions = new SuggestionRuleEngine(List.of(rule))
+            .evaluate(RuleFacts.builder().products(products, stock).build());
+
+        assertEquals(List.of("Restock B"), suggestions.stream().map(SuggestionDTO::getTitle).toList());
+    }
+
+    @Test
+    void mistakesFailAtLoadNamingTheRule() {
+        String json = """
+            {"rules": [{"id": "typo", "scope": "product", "category": "PRICING", "priority": "LOW",
+                        "title": "t", "when": [{"field": "velocty", "op": ">", "value": 1}]}]}
+            """;
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+            () -> new SuggestionRuleEngine(true, resource(json, "rules.json")));
+        assertTrue(e.getMessage().contains("Rule typo"), e.getMessage());
+        assertTrue(e.getMessage().contains("velocty"), e.getMessage());
+
+        String unknownProperty = """
+            {"rules": [{"id": "x", "scope": "product", "treshold": 1}]}
+            """;
+        assertThrows(IllegalStateException.class,
+            () -> new SuggestionRuleEngine(true, resource(unknownProperty, "rules.json")));
+    }
+
+    @Test
+    void readsYaml() {
+        String yaml = """
+            rules:
+              - id: premium-share
+                scope: customers
+                when:
+                  - { field: premiumRate, op: "<", value: 0.4 }
+                category: MARKETING
+                priority: HIGH
+                title: "Only {premiumCustomers} of {totalCustomers} customers are premium"
+            """;
+        SuggestionRuleEngine engine = new SuggestionRuleEngine(true, resource(yaml, "rules.yml"));
+
+        List<SuggestionDTO> suggestions = engine.evaluate(RuleFacts.builder().customers(100, 25, 0.0, 10, 5).build());
+
+        assertEquals("Only 25 of 100 customers are premium", suggestions.get(0).getTitle());
+    }
+
+    private static ProductPerformanceDTO product(long id, String name, String status, double velocity) {
+        return new ProductPerformanceDTO(id, name, "Books", 10, 10, 100.0, 10.0, 10.0, 30, 1, status, velocity, velocity);
+    }
+
+    private static ByteArrayResource resource(String content, String filename) {
+        return new ByteArrayResource(content.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public String getFilename() {
+                return filename;
+            }
+        };
+    }
+}
@@ -0,0 +1,66 @@
+package com.apiserver.apinexus.initializer;
+
+import com.apiserver.apinexus.analytics.SalesCube;
+import com.apiserver.apinexus.analytics.SalesRecordedEvent;
+import com.apiserver.apinexus.model.Sale;
+import com.apiserver.apinexus.repository.SaleRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SalesSinkInitializerTest {
+
+    private SalesCube cube;
+    private SaleRepository saleRepository;
+    private SalesSinkInitializer initializer;
+
+    @BeforeEach
+    void setUp() {
+        cube = new SalesCube();
+        ReflectionTestUtils.setField(cube, "enabled", true);
+        saleRepository = mock(SaleRepository.class);
+        initializer = new SalesSinkInitializer();
+        ReflectionTestUtils.setField(initializer, "sinks", List.of(cube));
+        ReflectionTestUtils.setField(initializer, "saleRepository", saleRepository);
+    }
+
+    @Test
+    void salesRecordedDuringLoadAreCountedOnce() throws Exception {
+        List<Sale> stored = new ArrayList<>();
+        for (int i = 0; i < 2_500; i++) {
+            stored.add(sale("S" + i));
+        }
+        Sale behindCursor = sale("LATE-1");
+        Sale aheadOfCursor = stored.get(2_000);
+        // Halfway through the scan one new sale lands behind the cursor and one ahead of it
+        when(saleRepository.streamAllBy()).thenReturn(Stream.concat(
+            stored.subList(0, 1_200).stream(),
+            Stream.of(1).flatMap(ignored -> {
+                initializer.onSalesRecorded(new SalesRecordedEvent(List.of(behindCursor, aheadOfCursor)));
+                return stored.subList(1_200, stored.size()).stream();
+            })));
+
+        initializer.run();
+        assertEquals(2_501, cube.size());
+
+        initializer.onSalesRecorded(new SalesRecordedEvent(List.of(sale("LATE-2"))));
+        assertEquals(2_502, cube.size());
+        assertEquals(2_502, cube.analytics(null, null).orElseThrow().getTotalSales());
+    }
+
+    private static Sale sale(String id) {
+        Sale sale = new Sale(1L, "Product 1", "Books", 1, 10.0, 1L, "Customer", false, "Credit Card", "Europe");
+        sale.setId(id);
+        sale.setSaleDate(LocalDateTime.of(2024, 3, 1, 12, 0));
+        return sale;
+    }
+}
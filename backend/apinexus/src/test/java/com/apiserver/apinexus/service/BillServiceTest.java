@@ -0,0 +1,255 @@
+package com.apiserver.apinexus.service;
+
+import com.apiserver.apinexus.MongoTestSupport;
+import com.apiserver.apinexus.dto.BillGenerationRequestDTO;
+import com.apiserver.apinexus.dto.BillLineItemDTO;
+import com.apiserver.apinexus.dto.GeneratedBillDTO;
+import com.apiserver.apinexus.model.Sale;
+import com.apiserver.apinexus.repository.BillRepository;
+import com.apiserver.apinexus.repository.GeneratedBillRepository;
+import com.apiserver.apinexus.repository.SaleRepository;
+import com.apiserver.apinexus.repository.SaleRepositoryCustomImpl;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks bills built from the filtered sales stream against totals computed over all sales in
+ * memory.
+ */
+class BillServiceTest extends MongoTestSupport {
+
+    private static final double EPSILON = 1e-6;
+    private static final LocalDate START = LocalDate.of(2024, 3, 1);
+    private static final LocalDate END = LocalDate.of(2024, 3, 31);
+    private static final String[] PRODUCTS = {"Laptop", "Mouse", "Keyboard", "Monitor", "Headset"};
+    private static final String[] METHODS = {"CARD", "CASH", "UPI"};
+    private static final String[] NAMES = {"Ann Lee", "Bob (Jr.) Stone", "Carla Annson", "Dev Patel"};
+
+    private static MongoTemplate mongoTemplate;
+    private static SaleRepository saleRepository;
+    private static BillService billService;
+    private static List<Sale> sales;
+
+    @BeforeAll
+    static void setUp() {
+        mongoTemplate = mongoTemplate("nexuspay_bill_test");
+        mongoTemplate.dropCollection(Sale.class);
+        sales = generateSales(1_500);
+        mongoTemplate.insertAll(sales);
+
+        SaleRepositoryCustomImpl custom = new SaleRepositoryCustomImpl(mongoTemplate);
+        saleRepository = mock(SaleRepository.class);
+        when(saleRepository.streamBillSales(any(), any(), any(), any())).thenAnswer(invocation ->
+            custom.streamBillSales(invocation.getArgument(0), invocation.getArgument(1),
+                invocation.getArgument(2), invocation.getArgument(3)));
+        when(saleRepository.billDataVersion(any(), any(), any(), any())).thenAnswer(invocation ->
+            custom.billDataVersion(invocation.getArgument(0), invocation.getArgument(1),
+                invocation.getArgument(2), invocation.getArgument(3)));
+        billService = new BillService(mock(BillRepository.class), saleRepository,
+            new MongoRepositoryFactory(mongoTemplate).getRepository(GeneratedBillRepository.class));
+    }
+
+    @AfterAll
+    static void tearDown() {
+        mongoTemplate.getDb().drop();
+    }
+
+    @Test
+    void billForCustomerIdMatchesInMemory() {
+        GeneratedBillDTO bill = billService.generateBillFromSales(request(2L, null));
+
+        assertBill(sale -> sale.getCustomerId().equals(2L), bill);
+        assertEquals(2L, bill.getCustomerId());
+        assertEquals(NAMES[2], bill.getCustomerName());
+    }
+
+    @Test
+    void billForCustomerNameMatchesCaseInsensitiveContains() {
+        GeneratedBillDTO bill = billService.generateBillFromSales(request(null, "ANN"));
+
+        assertBill(sale -> sale.getCustomerName().toLowerCase().contains("ann"), bill);
+        assertNotNull(bill.getCustomerId());
+    }
+
+    @Test
+    void customerNameIsMatchedLiterally() {
+        GeneratedBillDTO bill = billService.generateBillFromSales(request(null, "(jr.)"));
+
+        assertBill(sale -> sale.getCustomerName().toLowerCase().contains("(jr.)"), bill);
+        assertEquals(1L, bill.getCustomerId());
+    }
+
+    @Test
+    void billWithoutCustomerCoversWholePeriod() {
+        GeneratedBillDTO bill = billService.generateBillFromSales(request(null, null));
+
+        assertBill(sale -> true, bill);
+        assertNull(bill.getCustomerId());
+        assertNull(bill.getCustomerName());
+    }
+
+    @Test
+    void unknownCustomerGetsEmptyBill() {
+        GeneratedBillDTO bill = billService.generateBillFromSales(request(99L, null));
+
+        assertTrue(bill.getLineItems().isEmpty());
+        assertEquals(0, bill.getTotalTransactions());
+        assertEquals(0.0, bill.getGrandTotal(), EPSILON);
+        assertEquals("N/A", bill.getPaymentMethod());
+    }
+
+    @Test
+    void repeatRequestIsServedFromStoreUntilSalesChange() {
+        long customerId = 50L;
+        try {
+            mongoTemplate.insert(sale(customerId, "Laptop", 2, 100.0, START.plusDays(3).atTime(10, 0)));
+            GeneratedBillDTO first = billService.generateBillFromSales(request(customerId, null));
+            GeneratedBillDTO repeat = billService.generateBillFromSales(request(customerId, null));
+
+            assertEquals(first.getBillNumber(), repeat.getBillNumber());
+            assertEquals(first.getGeneratedDate(), repeat.getGeneratedDate());
+            verify(saleRepository, times(1)).streamBillSales(any(), any(), eq(customerId), any());
+            assertEquals(first.getBillNumber(), billService.getGeneratedBill(first.getBillNumber())
+                .map(GeneratedBillDTO::getBillNumber).orElse(null));
+            assertEquals(1, billService.getGeneratedBills(customerId, START, END).size());
+
+            // A new sale in the window changes the version, so the bill is recomputed and renumbered
+            mongoTemplate.insert(sale(customerId, "Mouse", 1, 20.0, START.plusDays(4).atTime(10, 0)));
+            GeneratedBillDTO changed = billService.generateBillFromSales(request(customerId, null));
+
+            assertNotEquals(first.getBillNumber(), changed.getBillNumber());
+            assertEquals(2, changed.getTotalTransactions());
+            assertEquals(220.0, changed.getSubtotal(), EPSILON);
+            assertTrue(billService.getGeneratedBill(first.getBillNumber()).isEmpty());
+            verify(saleRepository, times(2)).streamBillSales(any(), any(), eq(customerId), any());
+            
+            // So does a sale edited in place
+            mongoTemplate.updateFirst(Query.query(Criteria.where("customerId").is(customerId)
+                    .and("productName").is("Mouse")),
+                new Update().set("totalPrice", 30.0).set("finalAmount", 30.0), Sale.class);
+            GeneratedBillDTO edited = billService.generateBillFromSales(request(customerId, null));
+            
+            assertNotEquals(changed.getBillNumber(), edited.getBillNumber());
+            assertEquals(230.0, edited.getSubtotal(), EPSILON);
+            assertEquals(edited.getBillNumber(), billService.generateBillFromSales(request(customerId, null)).getBillNumber());
+            verify(saleRepository, times(3)).streamBillSales(any(), any(), eq(customerId), any());
+        } finally {
+            mongoTemplate.remove(Query.query(Criteria.where("customerId").is(customerId)), Sale.class);
+        }
+    }
+
+    @Test
+    void billNumberIsDeterministic() {
+        BillKey key = BillKey.of(3L, null, START, END);
+
+        assertEquals(key.billNumber("4:abc"), BillKey.of(3L, "ignored", START, END).billNumber("4:abc"));
+        assertNotEquals(key.billNumber("4:abc"), key.billNumber("5:abd"));
+        assertTrue(key.billNumber("4:abc").matches("SB-[0-9A-F]{24}"));
+        assertNotEquals(key.id(), BillKey.of(3L, null, START, END.plusDays(1)).id());
+        assertEquals(BillKey.of(null, "Ann", START, END).id(), BillKey.of(null, "aNN", START, END).id());
+    }
+
+    private static void assertBill(Predicate<Sale> filter, GeneratedBillDTO bill) {
+        LocalDateTime start = START.atStartOfDay();
+        LocalDateTime end = END.atTime(23, 59, 59);
+        Map<String, double[]> expected = new HashMap<>();
+        Map<String, Long> methods = new HashMap<>();
+        int transactions = 0;
+        int items = 0;
+        for (Sale sale : sales) {
+            if (!sale.getSaleDate().isAfter(start) || !sale.getSaleDate().isBefore(end) || !filter.test(sale)) {
+                continue;
+            }
+            transactions++;
+            items += sale.getQuantity();
+            methods.merge(sale.getPaymentMethod(), 1L, Long::sum);
+            double[] totals = expected.computeIfAbsent(sale.getProductName(), k -> new double[4]);
+            totals[0] += sale.getQuantity();
+            totals[1] += sale.getTotalPrice();
+            totals[2] += sale.getDiscountApplied();
+            totals[3] += sale.getFinalAmount();
+        }
+        assertTrue(transactions > 0);
+
+        assertEquals(transactions, bill.getTotalTransactions());
+        assertEquals(items, bill.getTotalItemsSold());
+        assertEquals(expected.size(), bill.getLineItems().size());
+        double subtotal = 0;
+        double discount = 0;
+        for (BillLineItemDTO item : bill.getLineItems()) {
+            double[] totals = expected.get(item.getProductName());
+            assertNotNull(totals, item.getProductName());
+            assertEquals((int) totals[0], item.getQuantity());
+            assertEquals(totals[1], item.getSubtotal(), EPSILON);
+            assertEquals(totals[2], item.getDiscount(), EPSILON);
+            assertEquals(totals[3], item.getTotal(), EPSILON);
+            subtotal += totals[1];
+            discount += totals[2];
+        }
+        assertEquals(subtotal, bill.getSubtotal(), EPSILON);
+        assertEquals(discount, bill.getTotalDiscount(), EPSILON);
+        assertEquals((subtotal - discount) * 1.10, bill.getGrandTotal(), EPSILON);
+        assertEquals(methods.get(bill.getPaymentMethod()), Collections.max(methods.values()));
+    }
+
+    private static BillGenerationRequestDTO request(Long customerId, String customerName) {
+        return new BillGenerationRequestDTO(BillGenerationRequestDTO.TimePeriod.CUSTOM, START, END,
+            customerId, customerName);
+    }
+
+    private static Sale sale(long customerId, String product, int quantity, double unitPrice, LocalDateTime date) {
+        Sale sale = new Sale();
+        sale.setProductName(product);
+        sale.setQuantity(quantity);
+        sale.setUnitPrice(unitPrice);
+        sale.setTotalPrice(unitPrice * quantity);
+        sale.setDiscountApplied(0.0);
+        sale.setFinalAmount(unitPrice * quantity);
+        sale.setCustomerId(customerId);
+        sale.setCustomerName("Customer " + customerId);
+        sale.setPaymentMethod("CARD");
+        sale.setSaleDate(date);
+        return sale;
+    }
+
+    private static List<Sale> generateSales(int count) {
+        Random random = new Random(11);
+        List<Sale> generated = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int customer = random.nextInt(NAMES.length);
+            int quantity = 1 + random.nextInt(4);
+            double unitPrice = 5 + random.nextInt(200);
+            double discount = random.nextBoolean() ? unitPrice * quantity * 0.1 : 0.0;
+            Sale sale = new Sale();
+            sale.setProductId((long) random.nextInt(PRODUCTS.length));
+            sale.setProductName(PRODUCTS[sale.getProductId().intValue()]);
+            sale.setQuantity(quantity);
+            sale.setUnitPrice(unitPrice);
+            sale.setTotalPrice(unitPrice * quantity);
+            sale.setDiscountApplied(discount);
+            sale.setFinalAmount(unitPrice * quantity - discount);
+            sale.setCustomerId((long) customer);
+            sale.setCustomerName(NAMES[customer]);
+            sale.setPaymentMethod(METHODS[random.nextInt(METHODS.length)]);
+            // Roughly a third of the sales fall outside March 2024
+            sale.setSaleDate(START.minusDays(15).atStartOfDay().plusMinutes(random.nextInt(60 * 24 * 50)));
+            generated.add(sale);
+        }
+        return generated;
+    }
+}
@@ -0,0 +1,263 @@
+package com.apiserver.apinexus.service;
+
+import com.apiserver.apinexus.MongoTestSupport;
+import com.apiserver.apinexus.dto.BillGenerationRequestDTO;
+import com.apiserver.apinexus.dto.GeneratedBillDTO;
+import com.apiserver.apinexus.model.BillingRun;
+import com.apiserver.apinexus.model.GeneratedBill;
+import com.apiserver.apinexus.model.Sale;
+import com.apiserver.apinexus.repository.BillRepository;
+import com.apiserver.apinexus.repository.BillingRunRepository;
+import com.apiserver.apinexus.repository.GeneratedBillRepository;
+import com.apiserver.apinexus.repository.SaleRepository;
+import com.apiserver.apinexus.repository.SaleRepositoryCustomImpl;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs batch billing against MongoDB and compares each customer's bill with a single-customer bill.
+ */
+class BillingJobServiceTest extends MongoTestSupport {
+
+    private static final double EPSILON = 1e-6;
+    private static final LocalDate START = LocalDate.of(2024, 3, 1);
+    private static final LocalDate END = LocalDate.of(2024, 3, 31);
+    private static final int CUSTOMERS = 25;
+
+    private static MongoTemplate mongoTemplate;
+    private static SaleRepository saleRepository;
+    private static BillingRunRepository billingRunRepository;
+    private static BillService billService;
+    private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules()
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @TempDir
+    Path exportDir;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeAll
+    static void setUp() {
+        mongoTemplate = mongoTemplate("nexuspay_billing_run_test");
+        mongoTemplate.getDb().drop();
+        mongoTemplate.insertAll(generateSales(3_000));
+
+        SaleRepositoryCustomImpl custom = new SaleRepositoryCustomImpl(mongoTemplate);
+        saleRepository = mock(SaleRepository.class);
+        when(saleRepository.streamBillSales(any(), any(), any(), any())).thenAnswer(invocation ->
+            custom.streamBillSales(invocation.getArgument(0), invocation.getArgument(1),
+                invocation.getArgument(2), invocation.getArgument(3)));
+        when(saleRepository.streamBillSalesByCustomer(any(), any(), any())).thenAnswer(invocation ->
+            custom.streamBillSalesByCustomer(invocation.getArgument(0), invocation.getArgument(1),
+                invocation.getArgument(2)));
+        billingRunRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(BillingRunRepository.class);
+        when(saleRepository.billDataVersion(any(), any(), any(), any())).thenAnswer(invocation ->
+            custom.billDataVersion(invocation.getArgument(0), invocation.getArgument(1),
+                invocation.getArgument(2), invocation.getArgument(3)));
+        billService = new BillService(mock(BillRepository.class), saleRepository,
+            new MongoRepositoryFactory(mongoTemplate).getRepository(GeneratedBillRepository.class));
+    }
+
+    @AfterAll
+    static void tearDown() {
+        mongoTemplate.getDb().drop();
+    }
+
+    @BeforeEach
+    void newRegistry() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void billsEveryCustomerLikeSingleCustomerBills() throws Exception {
+        BillingJobService service = service(7);
+        BillingRun run = service.execute(service.create(request(), BillingRun.ExportFormat.NDJSON).getId());
+
+        assertEquals(BillingRun.Status.COMPLETED, run.getStatus());
+        assertEquals(CUSTOMERS, run.getBillsWritten());
+        assertEquals(CUSTOMERS - 1, run.getLastCustomerId());
+        assertEquals(CUSTOMERS, meterRegistry.counter(BillingJobService.BILLS_COUNTER).count(), EPSILON);
+
+        List<String> lines = Files.readAllLines(service.getExportPath(run));
+        assertEquals(CUSTOMERS, lines.size());
+        // Stored under the same keys as single bills; cleared so those are computed afresh below
+        Map<Long, GeneratedBill> storedBills = new HashMap<>();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            storedBills.put((long) i, mongoTemplate.findById(BillKey.of((long) i, null, START, END).id(),
+                GeneratedBill.class));
+        }
+        mongoTemplate.remove(new Query(), GeneratedBill.class);
+        long sales = 0;
+        for (int i = 0; i < CUSTOMERS; i++) {
+            GeneratedBillDTO expected = billService.generateBillFromSales(request((long) i));
+            JsonNode exported = MAPPER.readTree(lines.get(i));
+            assertEquals(i, exported.get("customerId").asLong());
+            assertEquals(expected.getGrandTotal(), exported.get("grandTotal").asDouble(), EPSILON);
+            assertEquals(expected.getTotalTransactions(), exported.get("totalTransactions").asInt());
+            assertEquals(expected.getPaymentMethod(), exported.get("paymentMethod").asText());
+            assertEquals(expected.getBillNumber(), exported.get("billNumber").asText());
+
+            GeneratedBill stored = storedBills.get((long) i);
+            assertNotNull(stored);
+            assertEquals(run.getId(), stored.getRunId());
+            assertEquals(expected.getLineItems().size(), stored.getBill().getLineItems().size());
+            assertEquals(expected.getGrandTotal(), stored.getBill().getGrandTotal(), EPSILON);
+            sales += expected.getTotalTransactions();
+        }
+        assertEquals(sales, run.getSalesRead());
+    }
+
+    @Test
+    void resumesFromCheckpointAfterCrash() throws Exception {
+        BillingJobService service = service(10);
+        BillingRun complete = service.execute(service.create(request(), BillingRun.ExportFormat.CSV).getId());
+        List<String> expected = Files.readAllLines(service.getExportPath(complete));
+        assertEquals(CUSTOMERS + 1, expected.size());
+
+        // State after the first checkpoint, plus half-written output from the batch that followed
+        BillingRun run = service.create(request(), BillingRun.ExportFormat.CSV);
+        Path export = service.getExportPath(run);
+        Files.createDirectories(export.getParent());
+        String checkpointed = String.join("\n", expected.subList(0, 11)) + "\n";
+        Files.writeString(export, checkpointed + "SB-PARTIAL,10,Customer", StandardCharsets.UTF_8);
+        run.setLastCustomerId(9L);
+        run.setExportOffset((long) checkpointed.getBytes(StandardCharsets.UTF_8).length);
+        run.setBillsWritten(10L);
+        billingRunRepository.save(run);
+
+        BillingRun resumed = service.execute(run.getId());
+
+        assertEquals(BillingRun.Status.COMPLETED, resumed.getStatus());
+        assertEquals(CUSTOMERS, resumed.getBillsWritten());
+        // Partial line dropped, the rest re-made with the same numbers
+        assertEquals(expected, Files.readAllLines(export));
+        assertEquals(CUSTOMERS - 10, mongoTemplate.count(
+            Query.query(Criteria.where("runId").is(run.getId())), GeneratedBill.class));
+    }
+
+    @Test
+    void restartsWhenExportIsShorterThanCheckpoint() throws Exception {
+        BillingJobService service = service(10);
+        BillingRun complete = service.execute(service.create(request(), BillingRun.ExportFormat.CSV).getId());
+        List<String> expected = Files.readAllLines(service.getExportPath(complete));
+
+        // Checkpointed by an instance whose export file is not on this one's disk
+        BillingRun run = service.create(request(), BillingRun.ExportFormat.CSV);
+        Path export = service.getExportPath(run);
+        Files.deleteIfExists(export);
+        run.setLastCustomerId(9L);
+        run.setExportOffset(4_096L);
+        run.setBillsWritten(10L);
+        billingRunRepository.save(run);
+
+        BillingRun resumed = service.execute(run.getId());
+
+        assertEquals(BillingRun.Status.COMPLETED, resumed.getStatus());
+        assertEquals(CUSTOMERS, resumed.getBillsWritten());
+        assertEquals(expected, Files.readAllLines(export));
+        assertEquals(CUSTOMERS, mongoTemplate.count(
+            Query.query(Criteria.where("runId").is(run.getId())), GeneratedBill.class));
+    }
+
+    @Test
+    void rerunReplacesEarlierBills() {
+        BillingJobService service = service(10);
+        service.execute(service.create(request(), BillingRun.ExportFormat.NDJSON).getId());
+        BillingRun second = service.execute(service.create(request(), BillingRun.ExportFormat.NDJSON).getId());
+
+        List<GeneratedBillDTO> bills = billService.getGeneratedBills(3L, START, END);
+        assertEquals(1, bills.size());
+        assertEquals(CUSTOMERS, mongoTemplate.count(
+            Query.query(Criteria.where("runId").is(second.getId())), GeneratedBill.class));
+    }
+
+    @Test
+    void runLeasedByAnotherInstanceIsLeftAlone() {
+        BillingJobService service = service(10);
+        BillingRun run = service.create(request(), BillingRun.ExportFormat.NDJSON);
+        run.setOwner("other-instance");
+        run.setLeaseExpiresAt(LocalDateTime.now().plusMinutes(5));
+        billingRunRepository.save(run);
+
+        assertTrue(service.getInterruptedRuns().stream().noneMatch(r -> r.getId().equals(run.getId())));
+        assertEquals(0L, service.execute(run.getId()).getBillsWritten());
+        assertEquals("other-instance", billingRunRepository.findById(run.getId()).orElseThrow().getOwner());
+
+        // Once the lease runs out the run is taken over and finished
+        run.setLeaseExpiresAt(LocalDateTime.now().minusSeconds(1));
+        billingRunRepository.save(run);
+        assertTrue(service.getInterruptedRuns().stream().anyMatch(r -> r.getId().equals(run.getId())));
+        BillingRun taken = service.execute(run.getId());
+        assertEquals(BillingRun.Status.COMPLETED, taken.getStatus());
+        assertEquals(CUSTOMERS, taken.getBillsWritten());
+        assertNull(taken.getOwner());
+    }
+
+    @Test
+    void completedRunIsNotExecutedAgain() {
+        BillingJobService service = service(100);
+        BillingRun run = service.execute(service.create(request(), BillingRun.ExportFormat.NDJSON).getId());
+
+        assertFalse(service.resume(run.getId()));
+        assertEquals(run.getBillsWritten(), service.execute(run.getId()).getBillsWritten());
+    }
+
+    private BillingJobService service(int batchSize) {
+        return new BillingJobService(saleRepository, billingRunRepository, mongoTemplate, MAPPER, meterRegistry,
+            exportDir.toString(), batchSize, 300_000L);
+    }
+
+    private static BillGenerationRequestDTO request() {
+        return request(null);
+    }
+
+    private static BillGenerationRequestDTO request(Long customerId) {
+        return new BillGenerationRequestDTO(BillGenerationRequestDTO.TimePeriod.CUSTOM, START, END, customerId, null);
+    }
+
+    private static List<Sale> generateSales(int count) {
+        String[] products = {"Laptop", "Mouse", "Keyboard", "Monitor", "Headset", "Dock"};
+        String[] methods = {"CARD", "CASH", "UPI"};
+        Random random = new Random(23);
+        List<Sale> generated = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int customer = random.nextInt(CUSTOMERS);
+            int quantity = 1 + random.nextInt(3);
+            double unitPrice = 10 + random.nextInt(90);
+            double discount = random.nextInt(4) == 0 ? unitPrice * quantity * 0.05 : 0.0;
+            Sale sale = new Sale();
+            sale.setProductName(products[random.nextInt(products.length)]);
+            sale.setQuantity(quantity);
+            sale.setUnitPrice(unitPrice);
+            sale.setTotalPrice(unitPrice * quantity);
+            sale.setDiscountApplied(discount);
+            sale.setFinalAmount(unitPrice * quantity - discount);
+            sale.setCustomerId((long) customer);
+            sale.setCustomerName("Customer, " + customer);
+            sale.setPaymentMethod(methods[random.nextInt(methods.length)]);
+            sale.setSaleDate(START.minusDays(10).atStartOfDay().plusMinutes(random.nextInt(60 * 24 * 50)));
+            generated.add(sale);
+        }
+        return generated;
+    }
+}
@@ -0,0 +1,230 @@
+package com.apiserver.apinexus.service;
+
+import com.apiserver.apinexus.MongoTestSupport;
+import com.apiserver.apinexus.model.Transaction;
+import com.apiserver.apinexus.repository.TransactionRepository;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+class PaymentQueueTest extends MongoTestSupport {
+
+    private PaymentService paymentService;
+    private TransactionRepository transactionRepository;
+    private MongoTemplate mongoTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private PaymentQueue queue;
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch processed = new CountDownLatch(2);
+    private final List<Transaction> saved = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        paymentService = mock(PaymentService.class);
+        transactionRepository = mock(TransactionRepository.class);
+        mongoTemplate = mock(MongoTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        when(paymentService.createPendingPayment(anyLong(), anyString())).thenAnswer(invocation -> {
+            Transaction transaction = new Transaction();
+            transaction.setId("id-" + saved.size());
+            transaction.setTransactionId("TXN-" + saved.size());
+            transaction.setBillId(invocation.getArgument(0));
+            transaction.setStatus(Transaction.TransactionStatus.PENDING);
+            saved.add(transaction);
+            return transaction;
+        });
+        when(paymentService.settle(any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            Transaction transaction = invocation.getArgument(0);
+            transaction.setStatus(Transaction.TransactionStatus.SUCCESS);
+            processed.countDown();
+            return transaction;
+        });
+        // Claiming a submitted payment finds it by transaction id
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Transaction.class))).thenAnswer(invocation -> {
+            Object transactionId = invocation.getArgument(0, Query.class).getQueryObject().get("transactionId");
+            return saved.stream().filter(t -> t.getTransactionId().equals(transactionId)).findFirst().orElse(null);
+        });
+        when(paymentService.markFailed(any(), anyString())).thenAnswer(invocation -> {
+            Transaction transaction = invocation.getArgument(0);
+            transaction.setStatus(Transaction.TransactionStatus.FAILED);
+            transaction.setFailureReason(invocation.getArgument(1));
+            return transaction;
+        });
+        // Outcomes are recorded while the claim is held
+        when(mongoTemplate.findAndReplace(any(Query.class), any(Transaction.class)))
+            .thenAnswer(invocation -> invocation.getArgument(1));
+        // One worker and room for one waiting payment
+        queue = new PaymentQueue(paymentService, transactionRepository, mongoTemplate, meterRegistry, true, 1, 1,
+            300_000L);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        release.countDown();
+        queue.shutdown();
+    }
+
+    @Test
+    void refusesPaymentsOnceQueueIsFull() throws Exception {
+        // The first payment goes straight to the (blocked) worker, the second waits in the queue
+        Optional<Transaction> first = queue.submit(1L, "CARD");
+        Optional<Transaction> second = queue.submit(2L, "CARD");
+        Optional<Transaction> third = queue.submit(3L, "CARD");
+
+        assertTrue(first.isPresent());
+        assertTrue(second.isPresent());
+        assertTrue(third.isEmpty());
+        assertEquals(1, queue.getQueueDepth());
+        assertEquals(1.0, meterRegistry.counter(PaymentQueue.REJECTED_COUNTER).count());
+        assertEquals(Transaction.TransactionStatus.CANCELLED, saved.get(2).getStatus());
+        verify(transactionRepository).save(saved.get(2));
+
+        release.countDown();
+        assertTrue(processed.await(5, TimeUnit.SECONDS));
+        assertEquals(Transaction.TransactionStatus.SUCCESS, first.get().getStatus());
+        assertEquals(Transaction.TransactionStatus.SUCCESS, second.get().getStatus());
+        verify(paymentService, never()).settle(saved.get(2));
+    }
+
+    @Test
+    void refusesPaymentForMissingBill() {
+        doThrow(new IllegalArgumentException("Bill not found")).when(paymentService).createPendingPayment(99L, "CARD");
+
+        assertThrows(IllegalArgumentException.class, () -> queue.submit(99L, "CARD"));
+        assertEquals(0, queue.getQueueDepth());
+        verify(paymentService, never()).settle(any());
+    }
+
+    @Test
+    void unexpectedErrorMarksPaymentFailed() {
+        release.countDown();
+        doThrow(new IllegalStateException("connection reset")).when(paymentService).settle(any());
+
+        Transaction transaction = queue.submit(1L, "CARD").orElseThrow();
+
+        verify(paymentService, timeout(5000)).markFailed(eq(transaction), startsWith("Payment processing error"));
+        verify(mongoTemplate, timeout(5000)).findAndReplace(any(Query.class), eq(transaction));
+        assertEquals(Transaction.TransactionStatus.FAILED, transaction.getStatus());
+    }
+
+    @Test
+    void outcomeIsNotRecordedOnceClaimIsLost() throws Exception {
+        release.countDown();
+        when(mongoTemplate.findAndReplace(any(Query.class), any(Transaction.class))).thenReturn(null);
+
+        queue.submit(1L, "CARD");
+        queue.shutdown();
+
+        Timer lost = meterRegistry.find(PaymentQueue.PROCESS_TIMER).tag("outcome", "lost").timer();
+        assertNotNull(lost);
+        assertEquals(1L, lost.count());
+        verify(transactionRepository, never()).save(any());
+    }
+
+    @Test
+    void claimIsRenewedWhileProcessingAndCheckedOnCompletion() throws Exception {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Transaction.class)))
+            .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        queue.submit(1L, "CARD");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        queue.renewClaims();
+        ArgumentCaptor<Query> renewed = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> renewal = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(renewed.capture(), renewal.capture(), eq(Transaction.class));
+        assertEquals("id-0", renewed.getValue().getQueryObject().get("_id"));
+        Object until = renewal.getValue().getUpdateObject().get("$set", Document.class).get("scheduledRetryDate");
+        assertNotNull(until);
+
+        release.countDown();
+        queue.shutdown();
+        ArgumentCaptor<Query> completed = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndReplace(completed.capture(), eq(saved.get(0)));
+        assertEquals(until, completed.getValue().getQueryObject().get("scheduledRetryDate"));
+        assertEquals(Transaction.TransactionStatus.PENDING, completed.getValue().getQueryObject().get("status"));
+    }
+
+    @Test
+    void paymentClaimedElsewhereIsNotProcessedAgain() throws Exception {
+        release.countDown();
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+            eq(Transaction.class))).thenReturn(null);
+
+        queue.submit(1L, "CARD");
+        queue.shutdown();
+
+        verify(paymentService, never()).settle(any());
+    }
+
+    @Test
+    void renewedClaimMatchesTheStoredClaim() throws Exception {
+        MongoTemplate mongo = mongoTemplate("nexuspay_payment_queue_test");
+        mongo.getDb().drop();
+        when(paymentService.createPendingPayment(anyLong(), anyString())).thenAnswer(invocation -> {
+            Transaction transaction = new Transaction();
+            transaction.setTransactionId("TXN-MONGO");
+            transaction.setBillId(invocation.getArgument(0));
+            transaction.setStatus(Transaction.TransactionStatus.PENDING);
+            return mongo.insert(transaction);
+        });
+        PaymentQueue mongoQueue = new PaymentQueue(paymentService, transactionRepository, mongo, meterRegistry,
+            true, 1, 1, 300_000L);
+
+        mongoQueue.submit(1L, "CARD");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        mongoQueue.renewClaims();
+        release.countDown();
+        mongoQueue.shutdown();
+
+        Transaction stored = mongo.findOne(Query.query(Criteria.where("transactionId").is("TXN-MONGO")),
+            Transaction.class);
+        assertEquals(Transaction.TransactionStatus.SUCCESS, stored.getStatus());
+        mongo.getDb().drop();
+    }
+
+    @Test
+    void recoversStrandedPendingPayments() throws Exception {
+        release.countDown();
+        Transaction stranded = new Transaction();
+        stranded.setId("id-stranded");
+        stranded.setTransactionId("TXN-STRANDED");
+        stranded.setStatus(Transaction.TransactionStatus.PENDING);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+            eq(Transaction.class))).thenReturn(stranded, (Transaction) null);
+
+        assertEquals(1, queue.recoverPending(LocalDateTime.now()));
+        queue.shutdown();
+
+        verify(paymentService).settle(stranded);
+        assertEquals(Transaction.TransactionStatus.SUCCESS, stranded.getStatus());
+    }
+}
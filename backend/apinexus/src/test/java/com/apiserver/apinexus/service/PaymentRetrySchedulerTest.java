@@ -0,0 +1,188 @@
+package com.apiserver.apinexus.service;
+
+import com.apiserver.apinexus.MongoTestSupport;
+import com.apiserver.apinexus.model.Bill;
+import com.apiserver.apinexus.model.Transaction;
+import com.apiserver.apinexus.model.User;
+import com.apiserver.apinexus.repository.BillRepository;
+import com.apiserver.apinexus.repository.TransactionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.*;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Retries failed payments stored in MongoDB.
+ */
+class PaymentRetrySchedulerTest extends MongoTestSupport {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 1, 12, 0);
+
+    private static MongoTemplate mongoTemplate;
+    private static TransactionRepository transactionRepository;
+
+    private PaymentService paymentService;
+    private SimpleMeterRegistry meterRegistry;
+    private PaymentRetryScheduler scheduler;
+
+    @BeforeAll
+    static void connect() {
+        mongoTemplate = mongoTemplate("nexuspay_payment_retry_test");
+        transactionRepository = new MongoRepositoryFactory(mongoTemplate).getRepository(TransactionRepository.class);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        mongoTemplate.getDb().drop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.getDb().drop();
+        User user = new User();
+        user.setId(3L);
+        BillRepository billRepository = mock(BillRepository.class);
+        // A fresh unpaid bill per payment, as a paid bill is not charged again
+        when(billRepository.findByIdForUpdate(any())).thenAnswer(invocation -> {
+            Bill bill = new Bill();
+            bill.setUser(user);
+            bill.setAmount(new BigDecimal("19.99"));
+            return Optional.of(bill);
+        });
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        paymentService = new PaymentService(billRepository, transactionRepository, mongoTemplate,
+            transactionManager, new RetryBackoff(3_600_000L, 604_800_000L, 5));
+        meterRegistry = new SimpleMeterRegistry();
+        // Batches of 2, so five due payments take three batches
+        scheduler = new PaymentRetryScheduler(mongoTemplate, paymentService, meterRegistry, true, 2, 600_000L);
+    }
+
+    @Test
+    void retriesDuePaymentsOnceWithLineage() {
+        for (int i = 0; i < 5; i++) {
+            transactionRepository.save(payment("TXN-DUE-" + i, Transaction.TransactionStatus.FAILED,
+                NOW.minusMinutes(10 + i)));
+        }
+        transactionRepository.save(payment("TXN-LATER", Transaction.TransactionStatus.FAILED, NOW.plusHours(1)));
+        transactionRepository.save(payment("TXN-PAID", Transaction.TransactionStatus.SUCCESS, NOW.minusHours(1)));
+
+        assertEquals(5, scheduler.retryDue(NOW));
+        assertEquals(0, scheduler.retryDue(NOW));
+
+        Map<String, Transaction> byId = transactionRepository.findAll().stream()
+            .collect(Collectors.toMap(Transaction::getTransactionId, Function.identity()));
+        List<Transaction> retries = byId.values().stream()
+            .filter(t -> t.getParentTransactionId() != null)
+            .collect(Collectors.toList());
+        assertEquals(5, retries.size());
+        for (Transaction retry : retries) {
+            Transaction parent = byId.get(retry.getParentTransactionId());
+            assertTrue(parent.getTransactionId().startsWith("TXN-DUE-"));
+            assertEquals(parent.getTransactionId(), retry.getRootTransactionId());
+            assertEquals(retry.getTransactionId(), parent.getRetriedByTransactionId());
+            assertNull(parent.getScheduledRetryDate());
+            assertEquals(1, retry.getRetryCount());
+            if (retry.getStatus() == Transaction.TransactionStatus.FAILED) {
+                assertTrue(retry.getScheduledRetryDate().isAfter(LocalDateTime.now()));
+            } else {
+                assertEquals(Transaction.TransactionStatus.SUCCESS, retry.getStatus());
+            }
+        }
+        assertNull(byId.get("TXN-LATER").getRetriedByTransactionId());
+        assertEquals(NOW.plusHours(1), byId.get("TXN-LATER").getScheduledRetryDate());
+        assertNull(byId.get("TXN-PAID").getRetriedByTransactionId());
+
+        double attempts = meterRegistry.find(PaymentRetryScheduler.ATTEMPTS_COUNTER).counters().stream()
+            .mapToDouble(c -> c.count()).sum();
+        assertEquals(5.0, attempts);
+        assertEquals(3L, meterRegistry.timer(PaymentRetryScheduler.BATCH_TIMER).count());
+        assertEquals(0L, scheduler.getQueueDepth());
+    }
+
+    @Test
+    void failedRetryIsClaimedAgainWhenLeaseRunsOut() {
+        transactionRepository.save(payment("TXN-DUE", Transaction.TransactionStatus.FAILED, NOW.minusMinutes(10)));
+        PaymentService failing = mock(PaymentService.class);
+        when(failing.retryPayment(any(Transaction.class))).thenThrow(new RuntimeException("Database unavailable"));
+        PaymentRetryScheduler crashing = new PaymentRetryScheduler(mongoTemplate, failing, meterRegistry,
+            true, 2, 600_000L);
+
+        assertEquals(1, crashing.retryDue(NOW));
+        // Claimed for ten minutes
+        assertEquals(0, crashing.retryDue(NOW.plusMinutes(5)));
+        assertEquals(1, crashing.retryDue(NOW.plusMinutes(11)));
+
+        assertEquals(2.0, meterRegistry.counter(PaymentRetryScheduler.ATTEMPTS_COUNTER, "outcome", "error").count());
+        assertEquals(0L, crashing.getQueueDepth());
+        assertEquals(0.0, crashing.getLagSeconds());
+    }
+
+    @Test
+    void retryStoppedAfterMarkingIsFinishedUnderTheSameId() {
+        Transaction marked = payment("TXN-MARKED", Transaction.TransactionStatus.FAILED, NOW.minusMinutes(5));
+        marked.setRetriedByTransactionId("TXN-HALF");
+        transactionRepository.save(marked);
+        Transaction written = payment("TXN-WRITTEN", Transaction.TransactionStatus.FAILED, NOW.minusMinutes(5));
+        written.setRetriedByTransactionId("TXN-DONE");
+        transactionRepository.save(written);
+        Transaction done = payment("TXN-DONE", Transaction.TransactionStatus.SUCCESS, null);
+        done.setParentTransactionId("TXN-WRITTEN");
+        transactionRepository.save(done);
+
+        assertEquals(2, scheduler.retryDue(NOW));
+
+        Transaction half = transactionRepository.findByTransactionId("TXN-HALF").orElseThrow();
+        assertEquals("TXN-MARKED", half.getParentTransactionId());
+        for (String parentId : List.of("TXN-MARKED", "TXN-WRITTEN")) {
+            assertEquals(1, transactionRepository.findAll().stream()
+                .filter(t -> parentId.equals(t.getParentTransactionId())).count());
+            assertNull(transactionRepository.findByTransactionId(parentId).orElseThrow().getScheduledRetryDate());
+        }
+    }
+
+    @Test
+    void manualRetryAndScheduledRetryMakeOneRetry() {
+        transactionRepository.save(payment("TXN-RACE", Transaction.TransactionStatus.FAILED, NOW.minusMinutes(5)));
+        // The scheduler's copy, read before the manual retry marked the payment
+        Transaction stale = transactionRepository.findByTransactionId("TXN-RACE").orElseThrow();
+
+        Transaction manual = paymentService.retryPayment("TXN-RACE");
+
+        assertThrows(IllegalStateException.class, () -> paymentService.retryPayment(stale));
+        assertEquals(List.of(manual.getTransactionId()), transactionRepository.findAll().stream()
+            .filter(t -> "TXN-RACE".equals(t.getParentTransactionId()))
+            .map(Transaction::getTransactionId)
+            .collect(Collectors.toList()));
+    }
+
+    private static Transaction payment(String transactionId, Transaction.TransactionStatus status,
+                                       LocalDateTime scheduledRetryDate) {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionId(transactionId);
+        transaction.setBillId(7L);
+        transaction.setUserId(3L);
+        transaction.setAmount(new BigDecimal("19.99"));
+        transaction.setPaymentMethod("CARD");
+        transaction.setRetryCount(0);
+        transaction.setStatus(status);
+        transaction.setScheduledRetryDate(scheduledRetryDate);
+        transaction.setTransactionDate(NOW.minusDays(1));
+        return transaction;
+    }
+}
@@ -0,0 +1,206 @@
+package com.apiserver.apinexus.service;
+
+import com.apiserver.apinexus.model.Bill;
+import com.apiserver.apinexus.model.Transaction;
+import com.apiserver.apinexus.model.User;
+import com.apiserver.apinexus.repository.BillRepository;
+import com.apiserver.apinexus.repository.TransactionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PaymentServiceTest {
+
+    private BillRepository billRepository;
+    private TransactionRepository transactionRepository;
+    private MongoTemplate mongoTemplate;
+    private PlatformTransactionManager transactionManager;
+    private PaymentService paymentService;
+
+    @BeforeEach
+    void setUp() {
+        billRepository = mock(BillRepository.class);
+        transactionRepository = mock(TransactionRepository.class);
+        mongoTemplate = mock(MongoTemplate.class);
+        // Marking a failed payment as retried succeeds unless a test says otherwise
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+            eq(Transaction.class))).thenReturn(new Transaction());
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(billRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(transactionRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        paymentService = new PaymentService(billRepository, transactionRepository, mongoTemplate, transactionManager,
+            new RetryBackoff(3_600_000L, 604_800_000L, 5));
+    }
+
+    @Test
+    void pendingPaymentIsWrittenToMongoOnly() {
+        Bill bill = new Bill();
+        User user = new User();
+        user.setId(3L);
+        bill.setUser(user);
+        bill.setAmount(new BigDecimal("19.99"));
+        when(billRepository.findById(7L)).thenReturn(Optional.of(bill));
+
+        Transaction pending = paymentService.createPendingPayment(7L, "CARD");
+
+        assertEquals(Transaction.TransactionStatus.PENDING, pending.getStatus());
+        assertEquals(7L, pending.getBillId());
+        assertEquals(3L, pending.getUserId());
+        assertEquals(new BigDecimal("19.99"), pending.getAmount());
+        assertTrue(pending.getTransactionId().startsWith("TXN-"));
+        verify(transactionRepository).save(pending);
+        verify(billRepository, never()).save(any());
+        verifyNoInteractions(transactionManager);
+    }
+
+    @Test
+    void pendingPaymentForMissingBillIsRefused() {
+        when(billRepository.findById(99L)).thenReturn(Optional.empty());
+
+        assertThrows(IllegalArgumentException.class, () -> paymentService.createPendingPayment(99L, "CARD"));
+        assertThrows(IllegalArgumentException.class, () -> paymentService.createPendingPayment(null, "CARD"));
+        verify(transactionRepository, never()).save(any());
+    }
+
+    @Test
+    void transactionIsSavedAfterBillUpdateCommits() {
+        Bill bill = new Bill();
+        User user = new User();
+        user.setId(3L);
+        bill.setUser(user);
+        bill.setAmount(new BigDecimal("19.99"));
+        when(billRepository.findById(7L)).thenReturn(Optional.of(bill));
+        when(billRepository.findByIdForUpdate(7L)).thenReturn(Optional.of(bill));
+
+        Transaction processed = paymentService.processPayment(paymentService.createPendingPayment(7L, "CARD"));
+
+        assertNotEquals(Transaction.TransactionStatus.PENDING, processed.getStatus());
+        assertEquals(3L, processed.getUserId());
+        assertEquals(new BigDecimal("19.99"), processed.getAmount());
+        assertEquals(processed.getStatus() == Transaction.TransactionStatus.SUCCESS
+            ? Bill.BillStatus.PAID : Bill.BillStatus.FAILED, bill.getStatus());
+        InOrder order = inOrder(billRepository, transactionManager, transactionRepository);
+        order.verify(billRepository).save(bill);
+        order.verify(transactionManager).commit(any());
+        order.verify(transactionRepository).save(processed);
+    }
+
+    @Test
+    void missingBillCancelsPayment() {
+        Bill bill = new Bill();
+        User user = new User();
+        user.setId(3L);
+        bill.setUser(user);
+        when(billRepository.findById(7L)).thenReturn(Optional.of(bill));
+        // Deleted between submit and processing
+        when(billRepository.findByIdForUpdate(7L)).thenReturn(Optional.empty());
+
+        Transaction processed = paymentService.processPayment(paymentService.createPendingPayment(7L, "CARD"));
+
+        assertEquals(Transaction.TransactionStatus.CANCELLED, processed.getStatus());
+        assertEquals("Bill not found", processed.getFailureReason());
+        assertNull(processed.getScheduledRetryDate());
+    }
+
+    @Test
+    void retryIsLinkedToTheFailedPayment() {
+        Bill bill = new Bill();
+        User user = new User();
+        user.setId(3L);
+        bill.setUser(user);
+        bill.setAmount(new BigDecimal("19.99"));
+        when(billRepository.findByIdForUpdate(7L)).thenReturn(Optional.of(bill));
+        Transaction failed = new Transaction();
+        failed.setTransactionId("TXN-PARENT");
+        failed.setRootTransactionId("TXN-ROOT");
+        failed.setBillId(7L);
+        failed.setRetryCount(2);
+        failed.setStatus(Transaction.TransactionStatus.FAILED);
+        when(transactionRepository.findByTransactionId("TXN-PARENT")).thenReturn(Optional.of(failed));
+
+        Transaction retry = paymentService.retryPayment("TXN-PARENT");
+
+        assertEquals("TXN-PARENT", retry.getParentTransactionId());
+        assertEquals("TXN-ROOT", retry.getRootTransactionId());
+        assertEquals(3, retry.getRetryCount());
+        assertEquals(retry.getTransactionId(), failed.getRetriedByTransactionId());
+        assertNull(failed.getScheduledRetryDate());
+        assertThrows(RuntimeException.class, () -> paymentService.retryPayment("TXN-PARENT"));
+    }
+    @Test
+    void retryRacingAnotherRetryChargesNothing() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+            eq(Transaction.class))).thenReturn(null);
+        Transaction failed = new Transaction();
+        failed.setId("failed-id");
+        failed.setTransactionId("TXN-PARENT");
+        failed.setBillId(7L);
+        failed.setStatus(Transaction.TransactionStatus.FAILED);
+
+        assertThrows(IllegalStateException.class, () -> paymentService.retryPayment(failed));
+        verify(billRepository, never()).findByIdForUpdate(any());
+        verify(transactionRepository, never()).save(any());
+    }
+
+    @Test
+    void paidBillIsNotChargedAgainOnRetry() {
+        Bill bill = new Bill();
+        User user = new User();
+        user.setId(3L);
+        bill.setUser(user);
+        bill.setAmount(new BigDecimal("19.99"));
+        bill.setStatus(Bill.BillStatus.PAID);
+        LocalDateTime paidDate = LocalDateTime.of(2025, 1, 15, 10, 30);
+        bill.setPaidDate(paidDate);
+        when(billRepository.findByIdForUpdate(7L)).thenReturn(Optional.of(bill));
+        Transaction failed = new Transaction();
+        failed.setTransactionId("TXN-PARENT");
+        failed.setBillId(7L);
+        failed.setRetryCount(1);
+        failed.setStatus(Transaction.TransactionStatus.FAILED);
+        failed.setScheduledRetryDate(LocalDateTime.now());
+
+        Transaction retry = paymentService.retryPayment(failed);
+
+        assertEquals(Transaction.TransactionStatus.CANCELLED, retry.getStatus());
+        assertEquals("Bill already paid", retry.getFailureReason());
+        assertNull(retry.getScheduledRetryDate());
+        assertNull(failed.getScheduledRetryDate());
+        assertEquals(Bill.BillStatus.PAID, bill.getStatus());
+        assertEquals(paidDate, bill.getPaidDate());
+        verify(billRepository, never()).save(any());
+    }
+
+    @Test
+    void paidBillCancelsQueuedPayment() {
+        Bill bill = new Bill();
+        User user = new User();
+        user.setId(3L);
+        bill.setUser(user);
+        bill.setStatus(Bill.BillStatus.PAID);
+        when(billRepository.findById(7L)).thenReturn(Optional.of(bill));
+        when(billRepository.findByIdForUpdate(7L)).thenReturn(Optional.of(bill));
+
+        Transaction processed = paymentService.processPayment(paymentService.createPendingPayment(7L, "CARD"));
+
+        assertEquals(Transaction.TransactionStatus.CANCELLED, processed.getStatus());
+        assertEquals("Bill already paid", processed.getFailureReason());
+        verify(billRepository, never()).save(any());
+    }
+}
@@ -0,0 +1,38 @@
+package com.apiserver.apinexus.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryBackoffTest {
+
+    private final RetryBackoff backoff = new RetryBackoff(1_000L, 10_000L, 4);
+
+    @Test
+    void delayDoublesWithinJitterAndIsCapped() {
+        for (int i = 0; i < 200; i++) {
+            assertBetween(500, 1_000, backoff.delayMs(0));
+            assertBetween(1_000, 2_000, backoff.delayMs(1));
+            assertBetween(4_000, 8_000, backoff.delayMs(3));
+            assertBetween(5_000, 10_000, backoff.delayMs(4));
+            assertBetween(5_000, 10_000, backoff.delayMs(70));
+        }
+    }
+
+    @Test
+    void noRetryOnceRetriesAreUsedUp() {
+        LocalDateTime failedAt = LocalDateTime.of(2024, 3, 1, 12, 0);
+
+        LocalDateTime next = backoff.nextRetry(3, failedAt);
+
+        assertNotNull(next);
+        assertTrue(next.isAfter(failedAt.plusSeconds(3)) && !next.isAfter(failedAt.plusSeconds(8)));
+        assertNull(backoff.nextRetry(4, failedAt));
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual >= min && actual <= max, actual + " not in [" + min + ", " + max + "]");
+    }
+}
@@ -0,0 +1,175 @@
+package com.apiserver.apinexus.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs the scheduler against a mocked JdbcTemplate: each query answers the next queued batch
+ * of due subscription rows
+ */
+class SubscriptionBillingSchedulerTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 3, 20, 9, 0);
+
+    private JdbcTemplate jdbcTemplate;
+    private PlatformTransactionManager transactionManager;
+    private SimpleMeterRegistry meterRegistry;
+    private final Deque<List<ResultSet>> batches = new ArrayDeque<>();
+    private final List<Object[]> queryArgs = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        meterRegistry = new SimpleMeterRegistry();
+        doAnswer(invocation -> {
+            queryArgs.add(new Object[] {invocation.getArgument(2), invocation.getArgument(3),
+                invocation.getArgument(4), invocation.getArgument(5)});
+            RowMapper<Object> mapper = invocation.getArgument(1);
+            List<Object> rows = new ArrayList<>();
+            List<ResultSet> batch = batches.isEmpty() ? List.of() : batches.poll();
+            for (int i = 0; i < batch.size(); i++) {
+                rows.add(mapper.mapRow(batch.get(i), i));
+            }
+            return rows;
+        }).when(jdbcTemplate).query(anyString(), any(RowMapper.class), any(), any(), any(), any());
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            int[] counts = new int[((List<?>) invocation.getArgument(1)).size()];
+            Arrays.fill(counts, 1);
+            return counts;
+        });
+    }
+
+    @Test
+    void monthlySubscriptionIsBilledForOnePeriodAndAdvanced() throws SQLException {
+        LocalDateTime billingDate = LocalDateTime.of(2024, 3, 15, 10, 30);
+        batches.add(List.of(row(7L, 3L, "MONTHLY", billingDate, "9.99")));
+
+        assertEquals(1, scheduler(200).billDue(NOW));
+
+        Object[] bill = insertedBills().get(0);
+        assertEquals(3L, bill[0]);
+        assertEquals(7L, bill[1]);
+        assertEquals("BILL-7-20240315", bill[2]);
+        assertEquals(new BigDecimal("9.99"), bill[3]);
+        assertEquals("PENDING", bill[4]);
+        assertEquals(Timestamp.valueOf(billingDate), bill[5]);
+        assertEquals(Timestamp.valueOf(billingDate.plusMonths(1)), bill[6]);
+        assertEquals(Timestamp.valueOf(billingDate.plusDays(7)), bill[7]);
+
+        Object[] advance = advances().get(0);
+        assertEquals(Timestamp.valueOf(LocalDateTime.of(2024, 4, 15, 10, 30)), advance[0]);
+        assertEquals(7L, advance[2]);
+        assertEquals(1.0, meterRegistry.counter(SubscriptionBillingScheduler.BILLS_COUNTER).count());
+    }
+
+    @Test
+    void yearlySubscriptionGetsYearPeriodAndLongerDueDate() throws SQLException {
+        LocalDateTime billingDate = LocalDateTime.of(2024, 2, 29, 0, 0);
+        batches.add(List.of(row(8L, 4L, "YEARLY", billingDate, "99.99")));
+
+        scheduler(200).billDue(NOW);
+
+        Object[] bill = insertedBills().get(0);
+        assertEquals("BILL-8-20240229", bill[2]);
+        assertEquals(Timestamp.valueOf(LocalDateTime.of(2025, 2, 28, 0, 0)), bill[6]);
+        assertEquals(Timestamp.valueOf(billingDate.plusDays(14)), bill[7]);
+        assertEquals(Timestamp.valueOf(LocalDateTime.of(2025, 2, 28, 0, 0)), advances().get(0)[0]);
+    }
+
+    @Test
+    void batchesContinueAfterTheLastRowOfThePreviousBatch() throws SQLException {
+        LocalDateTime first = LocalDateTime.of(2024, 3, 1, 0, 0);
+        LocalDateTime second = LocalDateTime.of(2024, 3, 2, 0, 0);
+        batches.add(List.of(row(1L, 1L, "MONTHLY", first, "9.99"), row(5L, 2L, "MONTHLY", second, "9.99")));
+        batches.add(List.of(row(2L, 3L, "MONTHLY", second, "9.99")));
+
+        assertEquals(3, scheduler(2).billDue(NOW));
+
+        assertEquals(2, queryArgs.size());
+        assertEquals(Timestamp.valueOf(NOW), queryArgs.get(0)[0]);
+        assertEquals(0L, queryArgs.get(0)[2]);
+        // Second batch starts after (2024-03-02, 5); the short batch ends the run
+        assertEquals(Timestamp.valueOf(second), queryArgs.get(1)[1]);
+        assertEquals(5L, queryArgs.get(1)[2]);
+        assertEquals(2, queryArgs.get(1)[3]);
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    void existingBillNumbersAreNotCounted() throws SQLException {
+        batches.add(List.of(row(1L, 1L, "MONTHLY", LocalDateTime.of(2024, 3, 1, 0, 0), "9.99"),
+            row(2L, 2L, "MONTHLY", LocalDateTime.of(2024, 3, 1, 0, 0), "9.99"),
+            row(3L, 3L, "MONTHLY", LocalDateTime.of(2024, 3, 1, 0, 0), "9.99")));
+        when(jdbcTemplate.batchUpdate(contains("INSERT INTO bills"), anyList()))
+            .thenReturn(new int[] {1, 0, Statement.SUCCESS_NO_INFO});
+
+        assertEquals(2, scheduler(200).billDue(NOW));
+        // Every subscription still moves on, including the one whose bill already existed
+        assertEquals(3, advances().size());
+    }
+
+    @Test
+    void nothingDueWritesNothing() {
+        assertEquals(0, scheduler(200).billDue(NOW));
+
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    private SubscriptionBillingScheduler scheduler(int batchSize) {
+        return new SubscriptionBillingScheduler(jdbcTemplate, transactionManager, meterRegistry, true, batchSize);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> insertedBills() {
+        ArgumentCaptor<List<Object[]>> captor = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, atLeastOnce()).batchUpdate(contains("INSERT INTO bills"), captor.capture());
+        return captor.getAllValues().stream().flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> advances() {
+        ArgumentCaptor<List<Object[]>> captor = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, atLeastOnce()).batchUpdate(contains("UPDATE user_subscriptions"), captor.capture());
+        return captor.getAllValues().stream().flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    private static ResultSet row(long id, long userId, String cycle, LocalDateTime billingDate, String amount)
+            throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong(1)).thenReturn(id);
+        when(rs.getLong(2)).thenReturn(userId);
+        when(rs.getString(3)).thenReturn(cycle);
+        when(rs.getTimestamp(4)).thenReturn(Timestamp.valueOf(billingDate));
+        when(rs.getBigDecimal(5)).thenReturn(new BigDecimal(amount));
+        return rs;
+    }
+}
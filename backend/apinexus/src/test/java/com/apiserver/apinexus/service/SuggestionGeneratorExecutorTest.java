@@ -0,0 +1,98 @@
+package com.apiserver.apinexus.service;
+
+import com.apiserver.apinexus.dto.SuggestionDTO;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SuggestionGeneratorExecutorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SuggestionGeneratorExecutor executor = new SuggestionGeneratorExecutor(registry, true, 1_000, 8);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void latencyFollowsTheSlowestGeneratorNotTheSum() {
+        Map<String, Supplier<List<SuggestionDTO>>> generators = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            generators.put("g" + i, sleeping(200, "g" + i));
+        }
+
+        long start = System.nanoTime();
+        List<SuggestionDTO> suggestions = executor.runAll(generators);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(List.of("g0", "g1", "g2", "g3", "g4"), suggestions.stream().map(SuggestionDTO::getTitle).toList());
+        // Sequentially this is 1000 ms
+        assertTrue(elapsedMs < 600, "took " + elapsedMs + " ms");
+        Timer timer = registry.find(SuggestionGeneratorExecutor.TIMER).tags("generator", "g0", "outcome", "success").timer();
+        assertNotNull(timer);
+        assertEquals(1, timer.count());
+    }
+
+    @Test
+    void slowAndFailingGeneratorsAreLeftOut() {
+        Map<String, Supplier<List<SuggestionDTO>>> generators = new LinkedHashMap<>();
+        generators.put("fast", sleeping(10, "fast"));
+        generators.put("slow", sleeping(10_000, "slow"));
+        generators.put("broken", () -> {
+            throw new IllegalStateException("stock levels unavailable");
+        });
+        generators.put("other", sleeping(10, "other"));
+
+        long start = System.nanoTime();
+        List<SuggestionDTO> suggestions = executor.runAll(generators);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(List.of("fast", "other"), suggestions.stream().map(SuggestionDTO::getTitle).toList());
+        assertTrue(elapsedMs < 3_000, "took " + elapsedMs + " ms");
+        assertNotNull(registry.find(SuggestionGeneratorExecutor.TIMER).tags("generator", "slow", "outcome", "timeout").timer());
+        assertNotNull(registry.find(SuggestionGeneratorExecutor.TIMER).tags("generator", "broken", "outcome", "error").timer());
+    }
+
+    @Test
+    void generatorRunningPastItsTimeoutIsRecordedOnce() throws InterruptedException {
+        Map<String, Supplier<List<SuggestionDTO>>> generators = new LinkedHashMap<>();
+        // Ignores the interrupt from cancel, like CPU-bound work
+        generators.put("busy", () -> {
+            long end = System.nanoTime() + 1_500_000_000L;
+            while (System.nanoTime() < end) {
+                Thread.onSpinWait();
+            }
+            return List.of(new SuggestionDTO());
+        });
+
+        assertTrue(executor.runAll(generators).isEmpty());
+        Thread.sleep(1_000);
+
+        assertEquals(1, registry.find(SuggestionGeneratorExecutor.TIMER).tags("generator", "busy").timers().size());
+        assertEquals(1, registry.find(SuggestionGeneratorExecutor.TIMER).tags("generator", "busy", "outcome", "timeout")
+            .timer().count());
+    }
+
+    private static Supplier<List<SuggestionDTO>> sleeping(long millis, String title) {
+        return () -> {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return List.of();
+            }
+            SuggestionDTO suggestion = new SuggestionDTO();
+            suggestion.setTitle(title);
+            return List.of(suggestion);
+        };
+    }
+}
@@ -0,0 +1,60 @@
+package com.apiserver.apinexus.service;
+
+import com.apiserver.apinexus.analytics.SalesRecordedEvent;
+import com.apiserver.apinexus.analytics.SuggestionSnapshot;
+import com.apiserver.apinexus.dto.SuggestionDTO;
+import com.apiserver.apinexus.model.Sale;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SuggestionRefreshServiceTest {
+
+    private final SuggestionService suggestionService = mock(SuggestionService.class);
+    private final SuggestionRefreshService refreshService =
+        new SuggestionRefreshService(suggestionService, true, 60_000, 3);
+
+    @BeforeEach
+    void setUp() {
+        when(suggestionService.buildSnapshot())
+            .thenAnswer(inv -> SuggestionSnapshot.builder(LocalDateTime.now()).build());
+        when(suggestionService.getAllSuggestions(any(SuggestionSnapshot.class))).thenReturn(List.of(
+            new SuggestionDTO("MARKETING", "HIGH", "a", "", "", 80.0, "", 0.0, 0.0),
+            new SuggestionDTO("REGIONAL", "LOW", "b", "", "", 60.0, "", 0.0, 0.0)));
+    }
+
+    @Test
+    void readsServeThePublishedSnapshot() {
+        SuggestionRefreshService.Snapshot first = refreshService.current();
+        SuggestionRefreshService.Snapshot second = refreshService.current();
+
+        assertSame(first, second);
+        assertEquals(1, first.version());
+        assertEquals(1, first.highPriority().size());
+        assertEquals(first.computedAt().plusMinutes(1), refreshService.staleAfter(first));
+        verify(suggestionService, times(1)).buildSnapshot();
+    }
+
+    @Test
+    void enoughNewSalesTriggerABackgroundRefresh() throws InterruptedException {
+        refreshService.current();
+
+        refreshService.onSalesRecorded(new SalesRecordedEvent(Collections.nCopies(2, new Sale())));
+        assertEquals(2, refreshService.getPendingSales());
+        refreshService.onSalesRecorded(new SalesRecordedEvent(List.of(new Sale())));
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (refreshService.current().version() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, refreshService.current().version());
+        assertEquals(0, refreshService.getPendingSales());
+    }
+}
@@ -0,0 +1,214 @@
+package com.apiserver.apinexus.service;
+
+import com.apiserver.apinexus.analytics.CoPurchaseMiner;
+import com.apiserver.apinexus.analytics.CustomerProfileIndex;
+import com.apiserver.apinexus.analytics.CustomerReachTracker;
+import com.apiserver.apinexus.analytics.LongIntMap;
+import com.apiserver.apinexus.analytics.ProductVelocityTracker;
+import com.apiserver.apinexus.analytics.SalesRollupService;
+import com.apiserver.apinexus.analytics.SuggestionSnapshot;
+import com.apiserver.apinexus.analytics.rules.SuggestionRuleEngine;
+import com.apiserver.apinexus.dto.SuggestionDTO;
+import com.apiserver.apinexus.model.SalesRollup;
+import com.apiserver.apinexus.repository.SaleRepository;
+import com.apiserver.apinexus.repository.projection.SuggestionSaleView;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ClassPathResource;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SuggestionServiceTest {
+
+    private static final int SALES = 5_000;
+
+    @Mock
+    private SaleRepository saleRepository;
+
+    @Mock
+    private StockLevelCache stockLevelCache;
+
+    @Spy
+    private CoPurchaseMiner coPurchaseMiner = new CoPurchaseMiner(false, 100_000, 3, 0.0, 0.0);
+
+    @Spy
+    private ProductVelocityTracker productVelocityTracker = new ProductVelocityTracker(false, 7);
+
+    @Spy
+    private CustomerReachTracker customerReachTracker = new CustomerReachTracker(false, 11);
+
+    @Mock
+    private CustomerProfileIndex customerProfileIndex;
+
+    @Mock
+    private SalesRollupService salesRollupService;
+
+    @Spy
+    private SuggestionGeneratorExecutor generatorExecutor =
+        new SuggestionGeneratorExecutor(new SimpleMeterRegistry(), true, 30_000, 5);
+
+    @Spy
+    private SuggestionRuleEngine suggestionRuleEngine =
+        new SuggestionRuleEngine(true, new ClassPathResource("suggestion-rules.json"));
+
+    @InjectMocks
+    private SuggestionService suggestionService;
+
+    private final List<SuggestionSaleView> sales = generate(SALES);
+    private final AtomicLong documentsRead = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(saleRepository.streamSuggestionSales())
+            .thenAnswer(inv -> sales.stream().peek(sale -> documentsRead.incrementAndGet()));
+        LongIntMap stock = new LongIntMap();
+        stock.put(1L, 5);
+        stock.put(2L, 500);
+        lenient().when(stockLevelCache.levels()).thenReturn(stock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        generatorExecutor.shutdown();
+    }
+
+    @Test
+    void allSuggestionsReadTheCollectionOnce() {
+        List<SuggestionDTO> suggestions = suggestionService.getAllSuggestions();
+
+        assertFalse(suggestions.isEmpty());
+        assertTrue(suggestions.stream().anyMatch(s -> "PRODUCT".equals(s.getCategory())));
+        verify(saleRepository, times(1)).streamSuggestionSales();
+        verifyNoMoreInteractions(saleRepository);
+        // Previously five generators scanned separately, two of them twice: 7 x SALES documents
+        assertEquals(SALES, documentsRead.get());
+        System.out.printf("getAllSuggestions read %d documents for %d sales (was %d)%n",
+            documentsRead.get(), SALES, 7L * SALES);
+    }
+
+    @Test
+    void combinedResultMatchesTheIndividualGenerators() {
+        List<SuggestionDTO> expected = new ArrayList<>();
+        expected.addAll(suggestionService.getInventorySuggestions());
+        expected.addAll(suggestionService.getPricingSuggestions());
+        expected.addAll(suggestionService.getMarketingSuggestions());
+        expected.addAll(suggestionService.getRegionalSuggestions());
+        expected.addAll(suggestionService.getProductBundlingSuggestions());
+        expected.addAll(suggestionService.getRuleSuggestions());
+
+        List<SuggestionDTO> all = suggestionService.getAllSuggestions();
+
+        assertEquals(expected.size(), all.size());
+        assertTrue(all.containsAll(expected));
+    }
+
+    @Test
+    void marketingCountsComeFromTheProfileIndexWhenReady() {
+        when(customerProfileIndex.isReady()).thenReturn(true);
+        when(customerProfileIndex.totalCustomers()).thenReturn(1_000L);
+        when(customerProfileIndex.premiumCustomers()).thenReturn(100L);
+        when(customerProfileIndex.singleCategoryCustomers()).thenReturn(400L);
+        when(customerProfileIndex.lapsedCustomers(any())).thenReturn(250L);
+
+        List<SuggestionDTO> marketing = suggestionService.getMarketingSuggestions();
+
+        assertTrue(marketing.stream().anyMatch(s -> s.getDescription().startsWith("Only 10.0% of customers")));
+        assertTrue(marketing.stream().anyMatch(s -> s.getDescription().startsWith("400 customers (40.0%)")));
+        assertTrue(marketing.stream().anyMatch(s -> s.getDescription().startsWith("250 customers")));
+        verify(customerProfileIndex).lapsedCustomers(any());
+    }
+
+    @Test
+    void totalsComeFromTheRollupsWhenTheTrackersAreLoaded() {
+        SuggestionSnapshot scanned = suggestionService.buildSnapshot();
+
+        doReturn(true).when(productVelocityTracker).isLoaded();
+        doReturn(true).when(coPurchaseMiner).isLoaded();
+        when(customerProfileIndex.isReady()).thenReturn(true);
+        for (SalesRollup.Dimension dimension : List.of(SalesRollup.Dimension.ALL, SalesRollup.Dimension.CATEGORY,
+                SalesRollup.Dimension.REGION)) {
+            when(salesRollupService.totals(dimension)).thenReturn(Optional.of(totals(dimension)));
+        }
+
+        SuggestionSnapshot fromRollups = suggestionService.buildSnapshot();
+
+        verify(saleRepository, times(1)).streamSuggestionSales();
+        assertEquals(0, fromRollups.getSalesScanned());
+        assertEquals(scanned.getCategoryTotals().keySet(), fromRollups.getCategoryTotals().keySet());
+        scanned.getCategoryTotals().forEach((category, totals) -> {
+            SuggestionSnapshot.CategoryTotals served = fromRollups.getCategoryTotals().get(category);
+            assertEquals(totals.salesCount(), served.salesCount());
+            assertEquals(totals.totalRevenue(), served.totalRevenue(), 1e-6);
+            assertEquals(totals.totalDiscount(), served.totalDiscount(), 1e-6);
+        });
+        assertEquals(scanned.getSalesCountByRegion(), fromRollups.getSalesCountByRegion());
+        scanned.getRevenueByRegion().forEach((region, revenue) ->
+            assertEquals(revenue, fromRollups.getRevenueByRegion().get(region), 1e-6));
+        assertEquals(scanned.getRegularCustomerRevenue(), fromRollups.getRegularCustomerRevenue(), 1e-6);
+    }
+
+    /**
+     * All-time totals per key, as the rollups would hold them for the generated sales
+     */
+    private Map<String, SalesRollup> totals(SalesRollup.Dimension dimension) {
+        Map<String, SalesRollup> totals = new HashMap<>();
+        for (SuggestionSaleView sale : sales) {
+            String key = dimension == SalesRollup.Dimension.CATEGORY ? sale.category()
+                : dimension == SalesRollup.Dimension.REGION ? sale.region()
+                : "*";
+            SalesRollup total = totals.computeIfAbsent(key, k ->
+                new SalesRollup(null, SalesRollup.Granularity.MONTH, null, dimension, k, 0.0, 0L, 0L, 0.0, 0L, 0.0));
+            total.setRevenue(total.getRevenue() + sale.finalAmount());
+            total.setSalesCount(total.getSalesCount() + 1);
+            total.setQuantity(total.getQuantity() + sale.quantity());
+            total.setDiscount(total.getDiscount() + sale.discountApplied());
+            if (sale.premium()) {
+                total.setPremiumCount(total.getPremiumCount() + 1);
+                total.setPremiumRevenue(total.getPremiumRevenue() + sale.finalAmount());
+            }
+        }
+        return totals;
+    }
+
+    private static List<SuggestionSaleView> generate(int count) {
+        Random random = new Random(11);
+        String[] categories = {"Electronics", "Books", "Garden", "Toys"};
+        String[] regions = {"North", "South", "East", "West", "Central"};
+        LocalDateTime now = LocalDateTime.now();
+        List<SuggestionSaleView> sales = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long productId = 1 + random.nextInt(40);
+            int quantity = 1 + random.nextInt(5);
+            double unitPrice = 20 + productId * 3;
+            double discount = random.nextInt(4) == 0 ? unitPrice * quantity * 0.2 : 0.0;
+            sales.add(new SuggestionSaleView(
+                1L + random.nextInt(300),
+                productId,
+                "Product " + productId,
+                categories[(int) (productId % categories.length)],
+                // Skew revenue towards the first regions so some fall below the average
+                regions[Math.min(random.nextInt(8), regions.length - 1)],
+                quantity,
+                unitPrice,
+                unitPrice * quantity - discount,
+                discount,
+                now.minusDays(productId <= 5 ? random.nextInt(20) : random.nextInt(90)).minusHours(1),
+                random.nextInt(5) == 0));
+        }
+        return sales;
+    }
+}
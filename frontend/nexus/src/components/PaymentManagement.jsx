@@ -36,6 +36,18 @@ function PaymentManagement({ userId }) {
     }
   };
 
+  // A queued payment (202) is polled until a worker has charged it
+  const waitForPayment = async (transactionId) => {
+    for (let attempt = 0; attempt < 30; attempt++) {
+      await new Promise((resolve) => setTimeout(resolve, 1000));
+      const response = await paymentAPI.getPaymentStatus(transactionId);
+      if (response.data.status !== 'PENDING') {
+        return response.data;
+      }
+    }
+    return null;
+  };
+
   const handlePayment = async (billId) => {
     setProcessingPayment(true);
     try {
@@ -44,7 +56,16 @@ function PaymentManagement({ userId }) {
         paymentMethod: 'CREDIT_CARD',
       });
       
-      if (response.data.success) {
+      if (response.status === 202) {
+        const transaction = await waitForPayment(response.data.transactionId);
+        if (!transaction) {
+          alert(`Payment is still processing. Transaction ID: ${response.data.transactionId}`);
+        } else if (transaction.status === 'SUCCESS') {
+          alert(`Payment successful! Transaction ID: ${transaction.transactionId}`);
+        } else {
+          alert(`Payment failed: ${transaction.failureReason || transaction.status}`);
+        }
+      } else if (response.data.success) {
         alert(`Payment successful! Transaction ID: ${response.data.transactionId}`);
       } else {
         alert(`Payment failed: ${response.data.message}`);
@@ -53,7 +74,11 @@ function PaymentManagement({ userId }) {
       loadData();
     } catch (error) {
       console.error('Error processing payment:', error);
-      alert('Payment processing error');
+      if (error.response?.status === 503) {
+        alert('Payments are busy, please try again shortly');
+      } else {
+        alert('Payment processing error');
+      }
     } finally {
       setProcessingPayment(false);
     }
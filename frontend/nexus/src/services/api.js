@@ -71,6 +71,7 @@ export const billAPI = {
 export const paymentAPI = {
   initiatePayment: (paymentData) => api.post('/payments/initiate', paymentData),
   retryPayment: (transactionId) => api.post(`/payments/retry/${transactionId}`),
+  getPaymentStatus: (transactionId) => api.get(`/payments/status/${transactionId}`),
 };
 
 // Transaction API
@@ -88,6 +89,7 @@ export const salesAPI = {
   getSalesByCategory: (params) => api.get('/sales/by-category', { params }),
   getSalesByPeriod: (params) => api.get('/sales/by-period', { params }),
   getTopProducts: (params) => api.get('/sales/top-products', { params }),
+  getDashboard: (params) => api.get('/sales/dashboard', { params }),
   getSalesByRegion: (region) => api.get(`/sales/region/${region}`),
   createSale: (saleData) => api.post('/sales', saleData),
 };